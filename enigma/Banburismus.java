@@ -0,0 +1,414 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Looks for pairs of ciphertexts in depth: enciphered, at some relative
+ *  offset, with the same stretch of keystream, as happens to messages
+ *  with the same rotor order and rings whose start positions are close.
+ *  Two texts in depth agree letter for letter about as often as two
+ *  plaintexts do, well above the rate of one in the alphabet size of
+ *  unrelated texts, so every pair is slid against each other at every
+ *  offset up to a limit, and the coincidences counted.  Evidence is
+ *  weighed, as Banburismus did, in decibans: ten times the log of how
+ *  much likelier the counts are in depth than by chance.
+ *
+ *  Each text is held as one bitset per letter of the alphabet, with bit
+ *  K set when it has that letter at position K.  The coincidences of two
+ *  texts at an offset are the popcounts of the ANDs of their bitsets for
+ *  each letter, one shifted by the offset.  Pairs are taken in square
+ *  blocks of texts so that each block's bitsets stay in cache, and the
+ *  blocks are spread over a work-stealing pool.
+ *  @author Yunsu Ha
+ */
+public final class Banburismus {
+
+    /** Default largest relative offset tried. */
+    static final int DEFAULT_MAX_OFFSET = 25;
+
+    /** Default smallest overlap worth scoring. */
+    static final int DEFAULT_MIN_OVERLAP = 20;
+
+    /** Default rate at which two plaintexts agree at a position (that of
+     *  English). */
+    static final double DEFAULT_RATE = 0.0667;
+
+    /** Texts per side of a block of pairs. */
+    static final int BLOCK = 32;
+
+    /** Print the best evidence of depth among the ciphertexts in the file
+     *  ARGS[1], one per line, using the alphabet of the configuration file
+     *  ARGS[0].  Characters not in the alphabet are ignored.  Options:
+     *      --max-offset=N   largest relative offset (default 25);
+     *      --min-overlap=N  smallest overlap considered (default 20);
+     *      --top=N          pieces of evidence printed (default 20);
+     *      --rate=P         plaintext coincidence rate (default 0.0667);
+     *      --threads=N      parallelism (default: all processors). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--max-offset=(\\d+) --min-overlap=(\\d+) "
+                                + "--top=([1-9]\\d*) --rate=(0?\\.\\d+) "
+                                + "--threads=([1-9]\\d*) --=(.+){2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Banburismus [--max-offset=N] "
+                            + "[--min-overlap=N] [--top=N] [--rate=P] "
+                            + "[--threads=N] CONFIG MESSAGES");
+            }
+            Alphabet alpha =
+                Main.readConfig(options.get("--").get(0)).alphabet();
+            List<String> messages = new ArrayList<>();
+            String file = options.get("--").get(1);
+            try {
+                for (String line : Files.readAllLines(Paths.get(file))) {
+                    if (!line.isBlank()) {
+                        messages.add(line);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", file);
+            }
+            Banburismus banbury = new Banburismus(alpha, messages);
+            banbury.maxOffset(Integer.parseInt(
+                Main.option(options, "--max-offset", "" + DEFAULT_MAX_OFFSET)));
+            banbury.minOverlap(Integer.parseInt(
+                Main.option(options, "--min-overlap",
+                            "" + DEFAULT_MIN_OVERLAP)));
+            banbury.rate(Double.parseDouble(
+                Main.option(options, "--rate", "" + DEFAULT_RATE)));
+            int threads = Integer.parseInt(
+                Main.option(options, "--threads",
+                            "" + Runtime.getRuntime().availableProcessors()));
+            for (Evidence e : banbury.rank(
+                     Integer.parseInt(Main.option(options, "--top", "20")),
+                     threads)) {
+                System.out.println(e);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A detector for depths among MESSAGES, whose characters not in
+     *  ALPHA are ignored. */
+    Banburismus(Alphabet alpha, List<String> messages) {
+        _size = alpha.size();
+        _lengths = new int[messages.size()];
+        _bits = new long[messages.size()][][];
+        for (int m = 0; m < messages.size(); m += 1) {
+            String msg = messages.get(m);
+            int len = 0;
+            long[][] bits = new long[_size][msg.length() / WORD + 1];
+            for (int i = 0; i < msg.length(); i += 1) {
+                int c = alpha.toInt(msg.charAt(i));
+                if (c >= 0) {
+                    bits[c][len / WORD] |= 1L << len;
+                    len += 1;
+                }
+            }
+            _lengths[m] = len;
+            _bits[m] = bits;
+        }
+        rate(DEFAULT_RATE);
+    }
+
+    /** Try relative offsets up to OFFSET in each direction. */
+    void maxOffset(int offset) {
+        _maxOffset = offset;
+    }
+
+    /** Consider only alignments in which at least OVERLAP characters
+     *  overlap. */
+    void minOverlap(int overlap) {
+        _minOverlap = overlap;
+    }
+
+    /** Take RATE to be the rate at which plaintexts agree. */
+    void rate(double rate) {
+        double chance = 1.0 / _size;
+        _matchWeight = DECIBANS * Math.log10(rate / chance);
+        _mismatchWeight = DECIBANS * Math.log10((1 - rate) / (1 - chance));
+    }
+
+    /** Return the number of texts. */
+    int messages() {
+        return _lengths.length;
+    }
+
+    /** Return the number of characters of text I that overlap text J when
+     *  J starts OFFSET characters after I (or before, if OFFSET is
+     *  negative). */
+    int overlap(int i, int j, int offset) {
+        return Math.max(0, Math.min(_lengths[i], _lengths[j] + offset)
+                        - Math.max(0, offset));
+    }
+
+    /** Return the number of positions at which text I agrees with text J
+     *  started OFFSET characters after it: the characters I[K] and
+     *  J[K - OFFSET] that are equal. */
+    int coincidences(int i, int j, int offset) {
+        int lo = Math.max(0, offset);
+        int hi = Math.min(_lengths[i], _lengths[j] + offset);
+        if (lo >= hi) {
+            return 0;
+        }
+        long[][] a = _bits[i], b = _bits[j];
+        int result = 0;
+        for (int w = lo / WORD; w <= (hi - 1) / WORD; w += 1) {
+            long mask = -1L;
+            if (w == lo / WORD) {
+                mask &= -1L << (lo % WORD);
+            }
+            if (w == (hi - 1) / WORD) {
+                mask &= -1L >>> (WORD - 1 - (hi - 1) % WORD);
+            }
+            int from = w * WORD - offset;
+            for (int c = 0; c < _size; c += 1) {
+                long x = a[c][w] & mask;
+                if (x != 0) {
+                    result += Long.bitCount(x & window(b[c], from));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the weight in decibans of MATCHES coincidences in an overlap
+     *  of OVERLAP characters as evidence of depth. */
+    double score(int matches, int overlap) {
+        return matches * _matchWeight + (overlap - matches) * _mismatchWeight;
+    }
+
+    /** Return the TOP strongest pieces of evidence of depth over all
+     *  pairs of texts and offsets, strongest first, using THREADS
+     *  threads. */
+    List<Evidence> rank(int top, int threads) {
+        int blocks = (messages() + BLOCK - 1) / BLOCK;
+        int[] tiles = new int[blocks * (blocks + 1) / 2];
+        for (int bi = 0, t = 0; bi < blocks; bi += 1) {
+            for (int bj = bi; bj < blocks; bj += 1, t += 1) {
+                tiles[t] = bi * blocks + bj;
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new TileTask(tiles, 0, tiles.length, blocks,
+                                            top)).sorted();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Offer to TOP the evidence for each pair of texts in the block
+     *  BI, BJ, with the first text from block BI and the second from
+     *  block BJ (and after the first, if BI is BJ). */
+    private void block(int bi, int bj, Strongest top) {
+        for (int i = bi * BLOCK; i < Math.min(messages(), (bi + 1) * BLOCK);
+             i += 1) {
+            for (int j = bi == bj ? i + 1 : bj * BLOCK;
+                 j < Math.min(messages(), (bj + 1) * BLOCK); j += 1) {
+                for (int d = -_maxOffset; d <= _maxOffset; d += 1) {
+                    int overlap = overlap(i, j, d);
+                    if (overlap >= _minOverlap && overlap > 0) {
+                        int matches = coincidences(i, j, d);
+                        double score = score(matches, overlap);
+                        if (score >= top.threshold()) {
+                            top.offer(new Evidence(i, j, d, overlap,
+                                                   matches, score));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the WORD bits of BITS starting at bit FROM (which may be
+     *  negative or past the end, where the bits are 0). */
+    private static long window(long[] bits, int from) {
+        int q = Math.floorDiv(from, WORD), r = Math.floorMod(from, WORD);
+        long low = q >= 0 && q < bits.length ? bits[q] : 0;
+        if (r == 0) {
+            return low;
+        }
+        long high = q + 1 >= 0 && q + 1 < bits.length ? bits[q + 1] : 0;
+        return (low >>> r) | (high << (WORD - r));
+    }
+
+    /** A piece of evidence: a pair of texts, an offset, and how well they
+     *  agree there. */
+    static final class Evidence {
+
+        /** Orders evidence strongest first, and then by texts and
+         *  offset. */
+        static final Comparator<Evidence> STRONGEST_FIRST =
+            Comparator.comparingDouble((Evidence e) -> -e.score)
+            .thenComparingInt(e -> e.first).thenComparingInt(e -> e.second)
+            .thenComparingInt(e -> e.offset);
+
+        /** Evidence that texts FIRST and SECOND, the second starting
+         *  OFFSET characters after the first, are in depth, having
+         *  COINCIDENCES coincidences in OVERLAP characters, worth SCORE
+         *  decibans. */
+        Evidence(int first, int second, int offset, int overlap,
+                 int coincidences, double score) {
+            this.first = first;
+            this.second = second;
+            this.offset = offset;
+            this.overlap = overlap;
+            this.coincidences = coincidences;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                                 "%d %d offset %d: %d/%d coincide, "
+                                 + "%.1f dB", first, second, offset,
+                                 coincidences, overlap, score);
+        }
+
+        /** The texts, by index. */
+        final int first, second;
+
+        /** Offset of the second from the first. */
+        final int offset;
+
+        /** Characters overlapping. */
+        final int overlap;
+
+        /** Characters agreeing. */
+        final int coincidences;
+
+        /** Weight of the evidence, in decibans. */
+        final double score;
+    }
+
+    /** The strongest pieces of evidence offered, up to a limit. */
+    private static final class Strongest {
+
+        /** An empty set keeping the K strongest pieces of evidence. */
+        Strongest(int k) {
+            _k = k;
+        }
+
+        /** Offer evidence E. */
+        void offer(Evidence e) {
+            if (_heap.size() < _k) {
+                _heap.add(e);
+            } else if (Evidence.STRONGEST_FIRST.compare(e, _heap.peek())
+                       < 0) {
+                _heap.poll();
+                _heap.add(e);
+            }
+        }
+
+        /** Offer all the evidence in OTHER. */
+        void offerAll(Strongest other) {
+            for (Evidence e : other._heap) {
+                offer(e);
+            }
+        }
+
+        /** Return the score that evidence must reach to be kept. */
+        double threshold() {
+            return _heap.size() < _k ? Double.NEGATIVE_INFINITY
+                : _heap.peek().score;
+        }
+
+        /** Return my evidence, strongest first. */
+        List<Evidence> sorted() {
+            List<Evidence> result = new ArrayList<>(_heap);
+            result.sort(Evidence.STRONGEST_FIRST);
+            return result;
+        }
+
+        /** Number of pieces of evidence kept. */
+        private final int _k;
+
+        /** The evidence, weakest first. */
+        private final PriorityQueue<Evidence> _heap =
+            new PriorityQueue<>(Evidence.STRONGEST_FIRST.reversed());
+    }
+
+    /** Scores a range of blocks of pairs, splitting it among subtasks. */
+    private final class TileTask extends RecursiveTask<Strongest> {
+
+        /** A task for blocks TILES[FROM .. TO-1], each encoded as
+         *  BI * BLOCKS + BJ, keeping the TOP best pieces of evidence. */
+        TileTask(int[] tiles, int from, int to, int blocks, int top) {
+            _tiles = tiles;
+            _from = from;
+            _to = to;
+            _blocks = blocks;
+            _top = top;
+        }
+
+        @Override
+        protected Strongest compute() {
+            if (_to - _from <= 1) {
+                Strongest result = new Strongest(_top);
+                for (int t = _from; t < _to; t += 1) {
+                    block(_tiles[t] / _blocks, _tiles[t] % _blocks, result);
+                }
+                return result;
+            }
+            int mid = (_from + _to) >>> 1;
+            TileTask left = new TileTask(_tiles, _from, mid, _blocks, _top);
+            left.fork();
+            Strongest result =
+                new TileTask(_tiles, mid, _to, _blocks, _top).compute();
+            result.offerAll(left.join());
+            return result;
+        }
+
+        /** The blocks. */
+        private final int[] _tiles;
+
+        /** Range of blocks. */
+        private final int _from, _to;
+
+        /** Blocks per side. */
+        private final int _blocks;
+
+        /** Pieces of evidence to keep. */
+        private final int _top;
+    }
+
+    /** Bits per word. */
+    private static final int WORD = 64;
+
+    /** Decibans per unit of log (base 10) likelihood ratio. */
+    private static final double DECIBANS = 10.0;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Length of each text, in alphabet characters. */
+    private final int[] _lengths;
+
+    /** For each text and letter, a bitset of where it has the letter. */
+    private final long[][][] _bits;
+
+    /** Largest relative offset tried. */
+    private int _maxOffset = DEFAULT_MAX_OFFSET;
+
+    /** Smallest overlap scored. */
+    private int _minOverlap = DEFAULT_MIN_OVERLAP;
+
+    /** Decibans contributed by a coincidence and by a non-coincidence. */
+    private double _matchWeight, _mismatchWeight;
+}
@@ -0,0 +1,97 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Banburismus class.
+ *  @author Yunsu Ha
+ */
+public class BanburismusTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random string of LENGTH letters chosen with RAND. */
+    private static String randomLetters(Random rand, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return the encryption of a random stretch of LENGTH characters of
+     *  DECLARATION repeated, chosen with RAND, under SETTINGS, started
+     *  STEPS characters in. */
+    private static String encrypt(Random rand, int length, String settings,
+                                  int steps) {
+        String text = DECLARATION + DECLARATION + DECLARATION;
+        int from = rand.nextInt(text.length() - length);
+        Machine mach = navalMachine();
+        Main.setUp(mach, settings);
+        for (int i = 0; i < steps; i += 1) {
+            mach.advanceRotors();
+        }
+        return mach.convert(text.substring(from, from + length));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCoincidences() {
+        Random rand = new Random(42);
+        List<String> msgs = new ArrayList<>();
+        for (int len : new int[] { 0, 1, 63, 64, 65, 130, 200 }) {
+            msgs.add(randomLetters(rand, len).replace("Q", "Q. "));
+        }
+        Banburismus banbury = new Banburismus(UPPER, msgs);
+        for (int i = 0; i < msgs.size(); i += 1) {
+            for (int j = 0; j < msgs.size(); j += 1) {
+                String a = msgs.get(i).replaceAll("[^A-Z]", "");
+                String b = msgs.get(j).replaceAll("[^A-Z]", "");
+                for (int d = -70; d <= 70; d += 1) {
+                    int count = 0, overlap = 0;
+                    for (int k = Math.max(0, d);
+                         k < Math.min(a.length(), b.length() + d); k += 1) {
+                        overlap += 1;
+                        count += a.charAt(k) == b.charAt(k - d) ? 1 : 0;
+                    }
+                    assertEquals(overlap, banbury.overlap(i, j, d));
+                    assertEquals(count, banbury.coincidences(i, j, d));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindsDepth() {
+        Random rand = new Random(7);
+        List<String> msgs = new ArrayList<>();
+        for (int m = 0; m < 20; m += 1) {
+            msgs.add(encrypt(rand, 1000, "* B Beta I II III "
+                             + randomLetters(rand, 4), 0));
+        }
+        msgs.set(4, encrypt(rand, 1000, "* B Beta I II III AXLE", 0));
+        msgs.set(13, encrypt(rand, 1000, "* B Beta I II III AXLE", 9));
+        Banburismus banbury = new Banburismus(UPPER, msgs);
+        banbury.maxOffset(12);
+        List<Banburismus.Evidence> best = banbury.rank(5, 4);
+        assertEquals(5, best.size());
+        assertEquals(4, best.get(0).first);
+        assertEquals(13, best.get(0).second);
+        assertEquals(9, best.get(0).offset);
+        assertTrue(best.get(0).score > best.get(1).score);
+        assertEquals(best.toString(), banbury.rank(5, 1).toString());
+    }
+}
@@ -0,0 +1,403 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many input files against one configuration in a single JVM.
+ *  The configuration is read once; each file becomes a task on a
+ *  work-stealing pool, and large files are further cut into segments at
+ *  settings lines (where the machine is reset, apart from ring settings
+ *  that the lines before leave, which each segment is given) so that
+ *  their segments can be converted in parallel and reassembled in order.
+ *  @author Yunsu Ha
+ */
+public final class BatchRunner {
+
+    /** Convert the files named by ARGS[1] with the configuration file
+     *  ARGS[0], writing each result to the directory ARGS[2] under the
+     *  input file's name.  ARGS[1] is either a directory, all of whose
+     *  regular files are converted, or a glob such as "in/*.in" whose
+     *  last component selects files in the directory before it.  Prints
+     *  a throughput summary and exits with code 1 if any file failed. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("Usage: java enigma.BatchRunner CONFIG "
+                            + "INPUT-DIR|GLOB OUTPUT-DIR");
+            }
+            BatchRunner runner =
+                new BatchRunner(Main.readConfig(args[0]), inputs(args[1]),
+                                Paths.get(args[2]));
+            runner.run();
+            runner.report(System.out);
+            if (runner.failures() == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Smallest input segment worth a task of its own, in bytes. */
+    static final long MIN_SEGMENT = 1 << 18;
+
+    /** Largest input segment, in bytes. */
+    static final long MAX_SEGMENT = 1 << 23;
+
+    /** Segments per worker thread to aim for, for load balancing. */
+    private static final int SEGMENTS_PER_WORKER = 4;
+
+    /** A runner that converts each of INPUTS with copies of MACH,
+     *  writing results to directory OUTPUTDIR. */
+    BatchRunner(Machine mach, List<Path> inputs, Path outputDir) {
+        _machine = mach;
+        _outputDir = outputDir;
+        long total = 0;
+        for (Path p : inputs) {
+            _files.add(new FileResult(p));
+            try {
+                total += Files.size(p);
+            } catch (IOException excp) {
+                throw error("could not open %s", p);
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        long segments = Math.max(1, (total + MIN_SEGMENT - 1) / MIN_SEGMENT);
+        _parallelism = (int) Math.min(cores, segments);
+        _segment = Math.max(MIN_SEGMENT,
+                            Math.min(MAX_SEGMENT, total / (_parallelism
+                                                 * SEGMENTS_PER_WORKER)));
+    }
+
+    /** Return the files named by SPEC (see main). */
+    static List<Path> inputs(String spec) {
+        Path path = Paths.get(spec);
+        String glob = "*";
+        if (!Files.isDirectory(path)) {
+            glob = path.getFileName().toString();
+            path = path.getParent() == null ? Paths.get(".")
+                : path.getParent();
+        }
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(path,
+                                                                  glob)) {
+            for (Path p : dir) {
+                if (Files.isRegularFile(p)) {
+                    result.add(p);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not list %s", spec);
+        }
+        result.sort(null);
+        if (result.isEmpty()) {
+            throw error("no input files match %s", spec);
+        }
+        return result;
+    }
+
+    /** Convert all my files, waiting until they are done. */
+    void run() {
+        try {
+            Files.createDirectories(_outputDir);
+        } catch (IOException excp) {
+            throw error("could not create %s", _outputDir);
+        }
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        long start = System.nanoTime();
+        try {
+            List<FileTask> tasks = new ArrayList<>();
+            for (FileResult f : _files) {
+                tasks.add(new FileTask(f));
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        _elapsed = System.nanoTime() - start;
+    }
+
+    /** Return the number of files that could not be converted. */
+    int failures() {
+        int n = 0;
+        for (FileResult f : _files) {
+            if (f.error != null) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Print a per-file and total summary of the last run on OUT. */
+    void report(PrintStream out) {
+        long bytes = 0;
+        for (FileResult f : _files) {
+            bytes += f.bytes;
+            out.printf("%-40s %12d bytes %4d segs %9.1f ms %8.2f MB/s %s%n",
+                       f.input.getFileName(), f.bytes, f.segments,
+                       f.nanos / NANOS_PER_MILLI, rate(f.bytes, f.nanos),
+                       f.error == null ? "ok" : "FAILED: " + f.error);
+        }
+        out.printf("%d files (%d failed), %d bytes in %.1f ms on %d threads:"
+                   + " %.2f MB/s%n", _files.size(), failures(), bytes,
+                   _elapsed / NANOS_PER_MILLI, _parallelism,
+                   rate(bytes, _elapsed));
+    }
+
+    /** Return the rate in megabytes per second of BYTES in NANOS
+     *  nanoseconds. */
+    private static double rate(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes * NANOS_PER_SECOND / nanos / MEGABYTE;
+    }
+
+    /** Return the segments of FILE: the settings lines that may start a
+     *  new segment, spaced at least _segment bytes apart, with the ring
+     *  settings of all the rotors as they stand when each is reached.  The
+     *  first segment always starts at 0.  A settings line is only a
+     *  safe place to cut if the line before it is a non-blank message
+     *  line, and since a settings line without ring settings leaves each
+     *  rotor's rings as the last settings line that named it set them,
+     *  each segment starts with the rings that the settings lines before
+     *  it leave.  Then converting the pieces separately produces exactly
+     *  the output of converting the whole. */
+    private List<Segment> segments(Path file) throws IOException {
+        List<Rotor> rotors = _machine.allRotors();
+        HashMap<String, Integer> index = new HashMap<>();
+        char[] rings = new char[rotors.size()];
+        for (int j = 0; j < rotors.size(); j += 1) {
+            index.put(rotors.get(j).name(), j);
+            rings[j] = _machine.alphabet().toChar(
+                rotors.get(j).ringSetting());
+        }
+        List<Segment> result = new ArrayList<>();
+        result.add(new Segment(0, rings.clone()));
+        Lexer lexer = new Lexer();
+        try (InputStream in = Files.newInputStream(file)) {
+            LineInput lines = new LineInput(in);
+            boolean prevMessage = false;
+            while (lines.hasNextLine()) {
+                long lineStart = lines.offset();
+                String line = lines.nextLine();
+                boolean star = Lexer.classify(line) == Lexer.SETTINGS;
+                if (star && prevMessage
+                    && lineStart - result.get(result.size() - 1).start
+                       >= _segment) {
+                    result.add(new Segment(lineStart, rings.clone()));
+                }
+                if (star) {
+                    setRings(lexer, line, index, rings);
+                }
+                prevMessage = !star && !line.isBlank();
+            }
+        }
+        return result;
+    }
+
+    /** Record in RINGS, indexed as INDEX numbers my machine's rotors by
+     *  name, the ring settings given by settings line LINE, if it gives
+     *  any, splitting it with LEXER.  A malformed line changes nothing
+     *  (its segment will fail when converted). */
+    private void setRings(Lexer lexer, String line,
+                          HashMap<String, Integer> index, char[] rings) {
+        try {
+            lexer.lexSettings(line, 0, _machine.numRotors());
+        } catch (EnigmaException excp) {
+            return;
+        }
+        String given = lexer.rings();
+        if (given == null) {
+            return;
+        }
+        String[] names = lexer.rotors();
+        for (int k = 1; k < names.length; k += 1) {
+            Integer j = index.get(names[k]);
+            if (j != null) {
+                rings[j] = given.charAt(k - 1);
+            }
+        }
+    }
+
+    /** Convert the LEN bytes of FILE starting at SEGMENT with a fresh
+     *  copy of my machine, its rings set as SEGMENT says, writing the
+     *  results to OUT. */
+    private void convert(Path file, Segment segment, long len, Path out)
+        throws IOException {
+        Machine mach = _machine.copy();
+        for (int j = 0; j < segment.rings.length; j += 1) {
+            mach.allRotors().get(j).setRings(segment.rings[j]);
+        }
+        long start = segment.start;
+        try (FileInputStream in = new FileInputStream(file.toFile());
+             PrintStream output =
+             new PrintStream(new BufferedOutputStream(
+                 new FileOutputStream(out.toFile())))) {
+            in.getChannel().position(start);
+            new Main(mach, new LineInput(in, start, start + len),
+                     output).process();
+        }
+    }
+
+    /** Where a segment of an input file starts, and the ring settings
+     *  of the rotors there. */
+    private static class Segment {
+        /** A segment starting at byte START with ring settings RINGS. */
+        Segment(long start, char[] rings) {
+            this.start = start;
+            this.rings = rings;
+        }
+
+        /** Offset of the first byte. */
+        private final long start;
+        /** Ring setting of each rotor, by its index in allRotors. */
+        private final char[] rings;
+    }
+
+    /** Converts one file, forking a task per segment. */
+    private class FileTask extends RecursiveAction {
+
+        /** A task filling in RESULT. */
+        FileTask(FileResult result) {
+            _result = result;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            Path input = _result.input;
+            Path output = _outputDir.resolve(input.getFileName());
+            List<Path> parts = new ArrayList<>();
+            try {
+                _result.bytes = Files.size(input);
+                List<Segment> segments = segments(input);
+                _result.segments = segments.size();
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < segments.size(); i += 1) {
+                    Path part = segments.size() == 1 ? output
+                        : _outputDir.resolve("." + input.getFileName()
+                                             + ".part" + i);
+                    parts.add(part);
+                    Segment segment = segments.get(i);
+                    long to = i + 1 < segments.size()
+                        ? segments.get(i + 1).start : _result.bytes;
+                    tasks.add(ForkJoinTask.adapt(() -> {
+                        convert(input, segment, to - segment.start, part);
+                        return null;
+                    }));
+                }
+                invokeAll(tasks);
+                if (parts.size() > 1) {
+                    concatenate(parts, output);
+                }
+            } catch (RuntimeException excp) {
+                Throwable cause = excp.getCause() == null ? excp
+                    : excp.getCause();
+                _result.error = cause.getMessage() == null
+                    ? cause.toString() : cause.getMessage();
+            } catch (IOException excp) {
+                _result.error = excp.toString();
+            } finally {
+                if (parts.size() > 1) {
+                    for (Path part : parts) {
+                        try {
+                            Files.deleteIfExists(part);
+                        } catch (IOException excp) {
+                            continue;
+                        }
+                    }
+                }
+                _result.nanos = System.nanoTime() - start;
+            }
+        }
+
+        /** Write the contents of PARTS, in order, to OUTPUT. */
+        private void concatenate(List<Path> parts, Path output)
+            throws IOException {
+            try (FileChannel out =
+                 FileChannel.open(output, StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Path part : parts) {
+                    try (FileChannel in = FileChannel.open(part)) {
+                        long size = in.size();
+                        for (long done = 0; done < size; ) {
+                            done += in.transferTo(done, size - done, out);
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Where to record the outcome. */
+        private final FileResult _result;
+    }
+
+    /** The outcome of converting one file. */
+    private static class FileResult {
+        /** The result for converting INPUT. */
+        FileResult(Path input) {
+            this.input = input;
+        }
+
+        /** Input file. */
+        private final Path input;
+        /** Size of the input in bytes. */
+        private long bytes;
+        /** Number of segments it was cut into. */
+        private int segments;
+        /** Time taken, in nanoseconds. */
+        private long nanos;
+        /** Description of the failure, or null if it succeeded. */
+        private String error;
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Bytes per megabyte. */
+    private static final double MEGABYTE = 1 << 20;
+
+    /** Prototype for the machines used to convert. */
+    private final Machine _machine;
+
+    /** Directory for results. */
+    private final Path _outputDir;
+
+    /** The files to convert, and their outcomes. */
+    private final List<FileResult> _files = new ArrayList<>();
+
+    /** Number of worker threads. */
+    private final int _parallelism;
+
+    /** Target segment size, in bytes. */
+    private final long _segment;
+
+    /** Wall-clock time of the last run, in nanoseconds. */
+    private long _elapsed;
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchRunner class.
+ *  @author Yunsu Ha
+ */
+public class BatchRunnerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines of the blocks of the input: the second is cut at
+     *  and gives its own rings, the third is cut at and inherits the
+     *  rings of I from the first block and of III from the second. */
+    private static final String[] SETTINGS = {
+        "* B Beta II I AAA BCD", "* B Beta III II QRS EFG",
+        "* B Beta I III XYZ (AQ)",
+    };
+
+    /** Append to OUT a block of settings line SETTINGS and about BYTES
+     *  bytes of random message lines chosen with RAND. */
+    private static void block(StringBuilder out, String settings,
+                              int bytes, Random rand) {
+        out.append(settings).append('\n');
+        for (int n = 0; n < bytes; n += 61) {
+            for (int i = 0; i < 60; i += 1) {
+                out.append(i % 6 == 5 ? ' ' : (char) ('A' + rand.nextInt(26)));
+            }
+            out.append('\n');
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testInheritedRings() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-batch");
+        Path config = writeConfig(dir);
+        StringBuilder text = new StringBuilder();
+        Random rand = new Random(28);
+        for (String settings : SETTINGS) {
+            block(text, settings, (int) (BatchRunner.MIN_SEGMENT * 5 / 4),
+                  rand);
+        }
+        Path inDir = Files.createDirectories(dir.resolve("in"));
+        Path input = inDir.resolve("blocks.in");
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        new Main(Main.readConfig(config.toString()),
+                 new LineInput(new ByteArrayInputStream(
+                     Files.readAllBytes(input))),
+                 new PrintStream(whole, true)).process();
+
+        Path outDir = dir.resolve("out");
+        BatchRunner runner =
+            new BatchRunner(Main.readConfig(config.toString()),
+                            List.of(input), outDir);
+        runner.run();
+        assertEquals(0, runner.failures());
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        runner.report(new PrintStream(report, true));
+        assertTrue(report.toString(StandardCharsets.UTF_8)
+                   .contains(" 3 segs "));
+        assertEquals(whole.toString(StandardCharsets.UTF_8),
+                     Files.readString(outDir.resolve("blocks.in")));
+    }
+}
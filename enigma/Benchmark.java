@@ -0,0 +1,214 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Runs input files through Main in this JVM and reports, for each file
+ *  and mode of conversion, throughput, per-block latency percentiles and
+ *  allocation.  Each file is read into memory first and its output is
+ *  discarded, so the figures cover parsing, conversion and formatting but
+ *  not disk traffic.  Each measured run is preceded by warm-up runs so
+ *  that the figures describe compiled code.
+ *  @author Yunsu Ha
+ */
+public final class Benchmark {
+
+    /** Modes of conversion that can be compared. */
+    static final List<String> MODES =
+        Arrays.asList("plain", "pipeline", "tables");
+
+    /** Benchmark the conversion of the input files ARGS[1..] with the
+     *  configuration file ARGS[0].  Options:
+     *      --modes=M,...      modes to compare, from plain (Main's usual
+     *                         path), pipeline (--pipeline) and tables
+     *                         (--tables in a temporary directory);
+     *                         default plain;
+     *      --warmup=N         unmeasured runs per file and mode (default
+     *                         2);
+     *      --iterations=N     measured runs per file and mode (default
+     *                         5);
+     *      --engine=NAME      conversion engine forced in every mode (see
+     *                         EngineRegistry), or auto. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--modes=([a-z]+(,[a-z]+)*) "
+                                + "--warmup=(\\d+) "
+                                + "--iterations=([1-9]\\d*) "
+                                + "--engine=([a-z][a-z-]*) --=(.+){2,}",
+                                args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Benchmark [--modes=M,...] "
+                            + "[--warmup=N] [--iterations=N] "
+                            + "[--engine=NAME] CONFIG INPUT...");
+            }
+            List<String> modes = Arrays.asList(
+                (options.contains("--modes")
+                 ? options.get("--modes").get(0) : "plain").split(","));
+            for (String mode : modes) {
+                if (!MODES.contains(mode)) {
+                    throw error("unknown mode %s", mode);
+                }
+            }
+            List<String> files = options.get("--");
+            Benchmark bench = new Benchmark(Main.readConfig(files.get(0)));
+            bench._warmup = options.contains("--warmup")
+                ? Integer.parseInt(options.get("--warmup").get(0)) : 2;
+            bench._iterations = options.contains("--iterations")
+                ? Integer.parseInt(options.get("--iterations").get(0)) : 5;
+            if (options.contains("--engine")) {
+                bench._engine = options.get("--engine").get(0);
+            }
+            try {
+                for (String file : files.subList(1, files.size())) {
+                    for (String mode : modes) {
+                        bench.run(Paths.get(file), mode, System.out);
+                    }
+                }
+            } finally {
+                bench.close();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A benchmark converting with copies of MACH. */
+    Benchmark(Machine mach) {
+        _machine = mach;
+    }
+
+    /** Benchmark FILE in MODE, printing one line per measured run and a
+     *  summary on OUT.  The allocation figure covers every thread that
+     *  converts (see RunStats), so it compares across modes. */
+    void run(Path file, String mode, PrintStream out) {
+        byte[] input;
+        try {
+            input = Files.readAllBytes(file);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        for (int i = 0; i < _warmup; i += 1) {
+            measure(input, mode);
+        }
+        String label = _engine == null ? mode : mode + "/" + _engine;
+        double[] rates = new double[_iterations];
+        for (int i = 0; i < _iterations; i += 1) {
+            RunStats stats = measure(input, mode);
+            rates[i] = stats.characters() * NANOS_PER_SECOND
+                / Math.max(1, stats.wallNanos());
+            out.printf(Locale.ROOT, "%-24s %-8s run %2d: %7.2f MB/s "
+                       + "%11.0f chars/s  block p50 %.3f p90 %.3f "
+                       + "p99 %.3f ms  %6.1f B/char%n",
+                       file.getFileName(), label, i + 1,
+                       input.length * NANOS_PER_SECOND
+                       / Math.max(1, stats.wallNanos()) / MEGABYTE,
+                       rates[i], millis(stats.blockLatency(P50)),
+                       millis(stats.blockLatency(P90)),
+                       millis(stats.blockLatency(P99)),
+                       stats.bytesPerChar());
+        }
+        Arrays.sort(rates);
+        out.printf(Locale.ROOT, "%-24s %-8s median %.0f chars/s, "
+                   + "best %.0f chars/s over %d runs%n",
+                   file.getFileName(), label, rates[rates.length / 2],
+                   rates[rates.length - 1], rates.length);
+    }
+
+    /** Convert INPUT once in MODE, returning its statistics. */
+    private RunStats measure(byte[] input, String mode) {
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+        Main main = new Main(_machine.copy(), new LineInput(
+            new ByteArrayInputStream(input)), sink);
+        if (mode.equals("pipeline")) {
+            main.usePipeline(Pipeline.DEFAULT_CHUNK, Pipeline.DEFAULT_DEPTH);
+        } else if (mode.equals("tables")) {
+            main.shareTables(tablesDir());
+        }
+        if (_engine != null) {
+            main.useEngine(_engine);
+        }
+        RunStats stats = new RunStats();
+        main.recordStats(stats);
+        main.process();
+        stats.finish();
+        return stats;
+    }
+
+    /** Remove the temporary directory for shared tables, if one was
+     *  made, with the tables in it. */
+    void close() {
+        if (_tablesDir == null) {
+            return;
+        }
+        try (Stream<Path> tables = Files.list(_tablesDir)) {
+            for (Path table : (Iterable<Path>) tables::iterator) {
+                Files.delete(table);
+            }
+            Files.delete(_tablesDir);
+        } catch (IOException excp) {
+            throw error("could not remove %s", _tablesDir);
+        }
+        _tablesDir = null;
+    }
+
+    /** Return a temporary directory for shared tables, creating it the
+     *  first time. */
+    private Path tablesDir() {
+        if (_tablesDir == null) {
+            try {
+                _tablesDir = Files.createTempDirectory("enigma-bench");
+            } catch (IOException excp) {
+                throw error("could not create a directory for tables");
+            }
+        }
+        return _tablesDir;
+    }
+
+    /** Return NANOS in milliseconds. */
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Bytes per megabyte. */
+    private static final double MEGABYTE = 1 << 20;
+
+    /** Quantiles reported for block latency. */
+    private static final double P50 = 0.5, P90 = 0.9, P99 = 0.99;
+
+    /** Prototype for the machines used to convert. */
+    private final Machine _machine;
+
+    /** Number of unmeasured runs. */
+    private int _warmup = 2;
+
+    /** Number of measured runs. */
+    private int _iterations = 5;
+
+    /** Engine forced in every mode, or null. */
+    private String _engine;
+
+    /** Directory holding shared tables, or null. */
+    private Path _tablesDir;
+}
@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import static enigma.EnigmaException.*;
+
+/** The progress of a run of Main, as recorded in a checkpoint file: how
+ *  far into the input and output it had got, the settings line in
+ *  effect, the positions its rotors had reached, and the ring settings
+ *  of all the rotors (which a settings line without ring settings
+ *  inherits from the lines before it).  A run resumed from
+ *  a checkpoint produces exactly the output an uninterrupted run would.
+ *  @author Yunsu Ha
+ */
+class Checkpoint {
+
+    /** A checkpoint recording that the message line ending just before
+     *  input offset INPUT has been converted with machine M, under the
+     *  settings line SETTINGS, and that the output written so far has
+     *  length OUTPUT. */
+    Checkpoint(long input, long output, String settings, Machine M) {
+        _input = input;
+        _output = output;
+        _settings = settings;
+        _positions = new int[M.numRotors()];
+        for (int i = 0; i < _positions.length; i++) {
+            _positions[i] = M.rotorSlots()[i].setting();
+        }
+        _rings = new int[M.allRotors().size()];
+        for (int j = 0; j < _rings.length; j++) {
+            _rings[j] = M.allRotors().get(j).ringSetting();
+        }
+    }
+
+    /** A checkpoint with the given INPUT and OUTPUT offsets, SETTINGS
+     *  line, rotor POSITIONS and RINGS (null if not recorded). */
+    private Checkpoint(long input, long output, String settings,
+                       int[] positions, int[] rings) {
+        _input = input;
+        _output = output;
+        _settings = settings;
+        _positions = positions;
+        _rings = rings;
+    }
+
+    /** Return the checkpoint stored in FILE. */
+    static Checkpoint read(Path file) {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file,
+                                                 StandardCharsets.UTF_8)) {
+            props.load(in);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+        try {
+            int[] positions = parseInts(props.getProperty("rotors"));
+            String rings = props.getProperty("rings");
+            String settings = props.getProperty("settings");
+            if (settings == null) {
+                throw new NumberFormatException();
+            }
+            return new Checkpoint(Long.parseLong(props.getProperty("input")),
+                                  Long.parseLong(props.getProperty("output")),
+                                  settings, positions,
+                                  rings == null ? null : parseInts(rings));
+        } catch (NumberFormatException | NullPointerException excp) {
+            throw error("malformed checkpoint %s", file);
+        }
+    }
+
+    /** Store me in FILE, replacing it atomically so that a crash leaves
+     *  either the previous checkpoint or this one. */
+    void write(Path file) {
+        Properties props = new Properties();
+        props.setProperty("input", Long.toString(_input));
+        props.setProperty("output", Long.toString(_output));
+        props.setProperty("settings", _settings);
+        props.setProperty("rotors", join(_positions));
+        if (_rings != null) {
+            props.setProperty("rings", join(_rings));
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(tmp,
+                                                      StandardCharsets.UTF_8)) {
+                props.store(out, "enigma checkpoint");
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Set up M as it was when I was taken: apply my settings line, then
+     *  give its rotors my recorded ring settings and move those in its
+     *  slots to my recorded positions. */
+    void restore(Machine M) {
+        Main.setUp(M, _settings);
+        if (_positions.length != M.numRotors()
+            || _rings != null && _rings.length != M.allRotors().size()) {
+            throw error("checkpoint does not match configuration");
+        }
+        if (_rings != null) {
+            for (int j = 0; j < _rings.length; j++) {
+                Rotor r = M.allRotors().get(j);
+                r.setRings(M.alphabet().toChar(_rings[j]));
+            }
+        }
+        for (int i = 1; i < _positions.length; i++) {
+            M.rotorSlots()[i].set(_positions[i]);
+        }
+    }
+
+    /** Return the input offset at which to continue. */
+    long input() {
+        return _input;
+    }
+
+    /** Return the length of the output written so far. */
+    long output() {
+        return _output;
+    }
+
+    /** Return the settings line in effect. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the comma-separated integers in TEXT. */
+    private static int[] parseInts(String text) {
+        String[] items = text.split(",");
+        int[] result = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            result[i] = Integer.parseInt(items[i]);
+        }
+        return result;
+    }
+
+    /** Return VALUES, separated by commas. */
+    private static String join(int[] values) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            result.append(i == 0 ? "" : ",").append(values[i]);
+        }
+        return result.toString();
+    }
+
+    /** Offset of the first unprocessed byte of input. */
+    private final long _input;
+
+    /** Number of bytes of output written. */
+    private final long _output;
+
+    /** Settings line in effect. */
+    private final String _settings;
+
+    /** Settings of each rotor slot (slot 0 is the reflector). */
+    private final int[] _positions;
+
+    /** Ring setting of each rotor, in the order of the machine's
+     *  allRotors(), or null if the checkpoint did not record them. */
+    private final int[] _rings;
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class and Main's
+ *  --resume.
+ *  @author Yunsu Ha
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Input up to the checkpoint, which falls within a block whose
+     *  settings line inherits the rings of I from the first block and of
+     *  III from the second. */
+    private static final String BEFORE =
+        "* B Beta II I AAA BCD\nFROM HIS SHOULDER HIAWATHA\n"
+        + "* B Beta III II QRS EFG (TD)\nTOOK THE CAMERA OF ROSEWOOD\n"
+        + "* B Beta I III XYZ (AQ)\nMADE OF SLIDING FOLDING ROSEWOOD\n";
+
+    /** Input after the checkpoint: the rest of its block and one whose
+     *  settings line inherits the rings of II, which is in no slot at
+     *  the checkpoint, from the second block. */
+    private static final String AFTER =
+        "NEATLY PUT IT ALL TOGETHER\n"
+        + "* B Beta II III MNO\nIN ITS CASE IT LAY COMPACTLY\n";
+
+    /** Return the output of Main converting INPUT with MACH, which is
+     *  left as the conversion leaves it. */
+    private static String convert(Machine mach, String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(mach, new LineInput(new ByteArrayInputStream(
+            input.getBytes(StandardCharsets.UTF_8))),
+                 new PrintStream(out, true)).process();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testResumeInheritedRings() throws IOException {
+        Path config =
+            writeConfig(Files.createTempDirectory("enigma-checkpoint"));
+        Path input = config.resolveSibling("resume.in");
+        Path output = config.resolveSibling("resume.out");
+        Path saved = config.resolveSibling("resume.ckpt");
+        Files.write(input, (BEFORE + AFTER).getBytes(StandardCharsets.UTF_8));
+        String expected = convert(Main.readConfig(config.toString()),
+                                  BEFORE + AFTER);
+
+        Machine mach = Main.readConfig(config.toString());
+        String done = convert(mach, BEFORE);
+        Files.write(output, (done + "LOST OUTPUT\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        new Checkpoint(BEFORE.length(), done.length(),
+                       "* B Beta I III XYZ (AQ)", mach).write(saved);
+
+        new Main(List.of(config.toString(), input.toString(),
+                         output.toString()), Checkpoint.read(saved)).process();
+        assertEquals(expected, Files.readString(output));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path config =
+            writeConfig(Files.createTempDirectory("enigma-checkpoint"));
+        Machine mach = Main.readConfig(config.toString());
+        Main.setUp(mach, "* B Beta III II QRS EFG");
+        Main.setUp(mach, "* B Beta I II ABC DEF");
+        Path saved = config.resolveSibling("round.ckpt");
+        new Checkpoint(100, 80, "* B Beta I II ABC", mach).write(saved);
+        Checkpoint read = Checkpoint.read(saved);
+        assertEquals(100, read.input());
+        assertEquals(80, read.output());
+        assertEquals("* B Beta I II ABC", read.settings());
+
+        Machine fresh = Main.readConfig(config.toString());
+        read.restore(fresh);
+        for (int j = 0; j < mach.allRotors().size(); j += 1) {
+            assertEquals(mach.allRotors().get(j).ringSetting(),
+                         fresh.allRotors().get(j).ringSetting());
+        }
+        for (int i = 0; i < mach.numRotors(); i += 1) {
+            assertEquals(mach.rotorSlots()[i].setting(),
+                         fresh.rotorSlots()[i].setting());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package enigma;
+
+/** The state and conversion code of an Enigma machine specialized to one
+ *  selection of rotors.  Instances are made by MachineCompiler, whose
+ *  generated subclasses step and convert with straight-line code and
+ *  precomputed tables.  A CompiledMachine produces exactly the same
+ *  results as the Machine it was compiled from.
+ *  @author Yunsu Ha
+ */
+abstract class CompiledMachine {
+
+    /** Return the number of rotor slots I have. */
+    abstract int numRotors();
+
+    /** Return the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    abstract int convert(int c);
+
+    /** Convert MSG[FROM .. TO-1] (as alphabet indices) in place,
+     *  advancing the machine before each character. */
+    abstract void convert(int[] msg, int from, int to);
+
+    /** Set rotor #K to SETTINGS[K] with ring setting RINGS[K], for
+     *  1 <= K < numRotors(). */
+    abstract void setRotors(int[] settings, int[] rings);
+
+    /** Store the setting of rotor #K into SETTINGS[K], for
+     *  1 <= K < numRotors(). */
+    abstract void getRotors(int[] settings);
+
+    /** Set the plugboard to the mapping PLUGBOARD, whose K-th element is
+     *  the image of K. */
+    void setPlugboard(int[] plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** Returns the encoding/decoding of MSG (in alphabet ALPHA), updating
+     *  the state of the rotors accordingly. */
+    String convert(String msg, Alphabet alpha) {
+        int[] buf = new int[msg.length()];
+        for (int i = 0; i < buf.length; i++) {
+            buf[i] = alpha.toInt(msg.charAt(i));
+        }
+        convert(buf, 0, buf.length);
+        char[] result = new char[buf.length];
+        for (int i = 0; i < buf.length; i++) {
+            result[i] = alpha.toChar(buf[i]);
+        }
+        return new String(result);
+    }
+
+    /** The plugboard mapping. */
+    protected int[] _plugboard;
+}
@@ -0,0 +1,490 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import static enigma.EnigmaException.*;
+
+/** The conversion engines available, by name, and the choice among them
+ *  for a workload.  The standard registry holds the reference Machine
+ *  ("machine"), code generated by MachineCompiler ("compiled", when
+ *  running on a JDK) and SegmentTreeMachine ("segment-tree"); tables
+ *  shared through SharedTables ("tables") are added once some have been
+ *  opened.  select picks, among the engines that support a configuration
+ *  and fit in the memory available, the one whose estimated setup time
+ *  plus time per character over the expected message length is least.
+ *  The estimates are rough figures for a warmed-up JVM, good enough to
+ *  order the engines, not to predict run times.  The adaptive engine
+ *  selects for the length expected of each message and, as a message
+ *  runs longer, switches to the engine fastest per character as soon as
+ *  the time lost by not doing so would repay its setup; so a generated
+ *  class is compiled only for a rotor selection that converts enough
+ *  text, and is then reused for it.
+ *
+ *  KeystreamCache is not an engine: its entries are for settings lines
+ *  applied to a fresh machine, where an engine starts from a machine
+ *  whose rings may have been inherited from earlier lines, and it pays
+ *  only when the same settings recur, which nothing here can predict.
+ *  @author Yunsu Ha
+ */
+final class EngineRegistry {
+
+    /** Name of the reference engine. */
+    static final String MACHINE = "machine";
+
+    /** Name of the generated-code engine. */
+    static final String COMPILED = "compiled";
+
+    /** Name of the segment-tree engine. */
+    static final String SEGMENT_TREE = "segment-tree";
+
+    /** Name of the shared-table engine. */
+    static final String TABLES = "tables";
+
+    /** Name of the engine that selects another for each converter. */
+    static final String AUTO = "auto";
+
+    /** An empty registry. */
+    EngineRegistry() {
+    }
+
+    /** Return a registry holding the standard engines. */
+    static EngineRegistry standard() {
+        EngineRegistry result = new EngineRegistry();
+        result.register(new MachineEngine());
+        if (MachineCompiler.available()) {
+            result.register(new CompiledEngine());
+        }
+        result.register(new SegmentTreeEngine());
+        return result;
+    }
+
+    /** Return an engine converting with TABLES. */
+    static EnigmaEngine tables(SharedTables tables) {
+        return new TableEngine(tables);
+    }
+
+    /** Add ENGINE, replacing any engine of the same name. */
+    void register(EnigmaEngine engine) {
+        _engines.put(engine.name(), engine);
+    }
+
+    /** Return my engines, in the order they were first registered. */
+    List<EnigmaEngine> engines() {
+        return new ArrayList<>(_engines.values());
+    }
+
+    /** Return the engine named NAME. */
+    EnigmaEngine get(String name) {
+        EnigmaEngine result = _engines.get(name);
+        if (result == null) {
+            throw error("unknown engine %s (available: %s)", name,
+                        String.join(", ", _engines.keySet()));
+        }
+        return result;
+    }
+
+    /** Return the engine named NAME, checking that it supports the
+     *  configuration of M. */
+    EnigmaEngine get(String name, Machine M) {
+        EnigmaEngine result = get(name);
+        if (!result.supports(M)) {
+            throw error("engine %s does not support this configuration",
+                        name);
+        }
+        return result;
+    }
+
+    /** Return the engine expected to convert CHARS characters with M
+     *  soonest, using at most MEMORY bytes, or the reference engine if
+     *  none fits. */
+    EnigmaEngine select(Machine M, long chars, long memory) {
+        EnigmaEngine best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (EnigmaEngine engine : _engines.values()) {
+            if (!engine.supports(M) || engine.memory(M) > memory) {
+                continue;
+            }
+            double cost = engine.setupNanos(M)
+                + (double) chars * engine.nanosPerChar(M);
+            if (cost < bestCost) {
+                best = engine;
+                bestCost = cost;
+            }
+        }
+        return best == null ? get(MACHINE) : best;
+    }
+
+    /** Return the engine expected to convert CHARS characters with M
+     *  soonest, within the memory this JVM has free. */
+    EnigmaEngine select(Machine M, long chars) {
+        Runtime rt = Runtime.getRuntime();
+        return select(M, chars, rt.maxMemory()
+                      - (rt.totalMemory() - rt.freeMemory()));
+    }
+
+    /** Return an engine that opens each converter with the engine select
+     *  chooses for its machine and WORKLOAD characters, as of the time it
+     *  is opened, switching to the engine fastest per character once the
+     *  converter has run long enough to repay its setup. */
+    EnigmaEngine adaptive(LongSupplier workload) {
+        return new AdaptiveEngine(workload);
+    }
+
+    /** Return the bytes in an int table of N entries. */
+    private static long ints(long n) {
+        return n * Integer.BYTES;
+    }
+
+    /** The reference Machine, converting on a copy. */
+    private static final class MachineEngine implements EnigmaEngine {
+        @Override
+        public String name() {
+            return MACHINE;
+        }
+
+        @Override
+        public int maxAlphabet() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int maxRotors() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public long memory(Machine M) {
+            return 0;
+        }
+
+        @Override
+        public long setupNanos(Machine M) {
+            return COPY_NANOS * M.allRotors().size();
+        }
+
+        @Override
+        public double nanosPerChar(Machine M) {
+            return MACHINE_SLOT_NANOS * M.numRotors();
+        }
+
+        @Override
+        public Converter open(Machine M) {
+            Machine mach = M.copy();
+            return new Converter() {
+                @Override
+                public int convert(int c) {
+                    return mach.convert(c);
+                }
+
+                @Override
+                public void store(Machine dest) {
+                    for (int k = 1; k < dest.numRotors(); k++) {
+                        dest.getRotor(k).set(mach.getRotor(k).setting());
+                    }
+                }
+            };
+        }
+    }
+
+    /** Code generated by MachineCompiler for the rotor selection. */
+    private static final class CompiledEngine implements EnigmaEngine {
+        @Override
+        public String name() {
+            return COMPILED;
+        }
+
+        @Override
+        public int maxAlphabet() {
+            return MAX_COMPILED_ALPHABET;
+        }
+
+        @Override
+        public int maxRotors() {
+            return MAX_COMPILED_ROTORS;
+        }
+
+        @Override
+        public long memory(Machine M) {
+            long size = M.alphabet().size();
+            return ints(2 * M.numRotors() * size * size);
+        }
+
+        @Override
+        public long setupNanos(Machine M) {
+            return MachineCompiler.compiled(M) ? INSTANCE_NANOS
+                : COMPILE_NANOS;
+        }
+
+        @Override
+        public double nanosPerChar(Machine M) {
+            return COMPILED_SLOT_NANOS * M.numRotors();
+        }
+
+        @Override
+        public Converter open(Machine M) {
+            CompiledMachine mach = MachineCompiler.compile(M);
+            int[] settings = new int[M.numRotors()];
+            return new Converter() {
+                @Override
+                public int convert(int c) {
+                    return mach.convert(c);
+                }
+
+                @Override
+                public void store(Machine dest) {
+                    mach.getRotors(settings);
+                    for (int k = 1; k < dest.numRotors(); k++) {
+                        dest.getRotor(k).set(settings[k]);
+                    }
+                }
+            };
+        }
+    }
+
+    /** A SegmentTreeMachine, for very many rotor slots. */
+    private static final class SegmentTreeEngine implements EnigmaEngine {
+        @Override
+        public String name() {
+            return SEGMENT_TREE;
+        }
+
+        @Override
+        public int maxAlphabet() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int maxRotors() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public long memory(Machine M) {
+            return ints(6L * M.numRotors() * M.alphabet().size());
+        }
+
+        @Override
+        public long setupNanos(Machine M) {
+            return TREE_ENTRY_NANOS * M.numRotors() * M.alphabet().size();
+        }
+
+        @Override
+        public double nanosPerChar(Machine M) {
+            return TREE_CHAR_NANOS + TREE_LEVEL_NANOS
+                * (Integer.SIZE - Integer.numberOfLeadingZeros(M.numRotors()));
+        }
+
+        @Override
+        public Converter open(Machine M) {
+            SegmentTreeMachine mach = new SegmentTreeMachine(M);
+            return new Converter() {
+                @Override
+                public int convert(int c) {
+                    return mach.convert(c);
+                }
+
+                @Override
+                public void store(Machine dest) {
+                    mach.store(dest);
+                }
+            };
+        }
+    }
+
+    /** A TableMachine over tables already opened. */
+    private static final class TableEngine implements EnigmaEngine {
+
+        /** An engine converting with TABLES. */
+        TableEngine(SharedTables tables) {
+            _tables = tables;
+        }
+
+        @Override
+        public String name() {
+            return TABLES;
+        }
+
+        @Override
+        public int maxAlphabet() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int maxRotors() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public boolean supports(Machine M) {
+            return M.checksum() == _tables.checksum();
+        }
+
+        @Override
+        public long memory(Machine M) {
+            return 0;
+        }
+
+        @Override
+        public long setupNanos(Machine M) {
+            return TABLE_OPEN_NANOS;
+        }
+
+        @Override
+        public double nanosPerChar(Machine M) {
+            return TABLE_SLOT_NANOS * M.numRotors();
+        }
+
+        @Override
+        public Converter open(Machine M) {
+            TableMachine mach = new TableMachine(_tables, M);
+            return new Converter() {
+                @Override
+                public int convert(int c) {
+                    return mach.convert(c);
+                }
+
+                @Override
+                public void store(Machine dest) {
+                    mach.store(dest);
+                }
+            };
+        }
+
+        /** The tables. */
+        private final SharedTables _tables;
+    }
+
+    /** Chooses among my engines for each converter. */
+    private final class AdaptiveEngine implements EnigmaEngine {
+
+        /** An engine choosing for WORKLOAD characters. */
+        AdaptiveEngine(LongSupplier workload) {
+            _workload = workload;
+        }
+
+        @Override
+        public String name() {
+            return AUTO;
+        }
+
+        @Override
+        public int maxAlphabet() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int maxRotors() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public long memory(Machine M) {
+            return select(M, _workload.getAsLong()).memory(M);
+        }
+
+        @Override
+        public long setupNanos(Machine M) {
+            return select(M, _workload.getAsLong()).setupNanos(M);
+        }
+
+        @Override
+        public double nanosPerChar(Machine M) {
+            return select(M, _workload.getAsLong()).nanosPerChar(M);
+        }
+
+        @Override
+        public Converter open(Machine M) {
+            EnigmaEngine first = select(M, _workload.getAsLong());
+            EnigmaEngine fastest = select(M, LONG_RUN);
+            double saving =
+                first.nanosPerChar(M) - fastest.nanosPerChar(M);
+            if (saving <= 0) {
+                return first.open(M);
+            }
+            long chars =
+                (long) Math.ceil(fastest.setupNanos(M) / saving);
+            return new Switching(M, first.open(M), fastest, chars);
+        }
+
+        /** Expected characters per converter. */
+        private final LongSupplier _workload;
+    }
+
+    /** A converter that switches engines after a number of characters
+     *  (the break-even point of the switch, so that the total cost is at
+     *  most twice that of choosing right from the start, however long
+     *  the message turns out to be). */
+    private static final class Switching implements EnigmaEngine.Converter {
+
+        /** A converter for M using FIRST, a converter opened for M, for
+         *  CHARS characters and then one of engine NEXT. */
+        Switching(Machine M, EnigmaEngine.Converter first,
+                  EnigmaEngine next, long chars) {
+            _machine = M.copy();
+            _current = first;
+            _next = next;
+            _left = chars;
+        }
+
+        @Override
+        public int convert(int c) {
+            if (_left == 0) {
+                _current.store(_machine);
+                _current = _next.open(_machine);
+            }
+            _left -= 1;
+            return _current.convert(c);
+        }
+
+        @Override
+        public void store(Machine M) {
+            _current.store(M);
+        }
+
+        /** A copy of the machine opened for, through which the converter
+         *  is handed over. */
+        private final Machine _machine;
+
+        /** The engine switched to. */
+        private final EnigmaEngine _next;
+
+        /** The converter in use. */
+        private EnigmaEngine.Converter _current;
+
+        /** Characters until the switch (negative once made). */
+        private long _left;
+    }
+
+    /** Largest alphabet and number of slots for which code is generated
+     *  (beyond them, the generated tables and methods grow too big). */
+    private static final int MAX_COMPILED_ALPHABET = 256,
+        MAX_COMPILED_ROTORS = 64;
+
+    /** Estimated nanoseconds to copy a rotor, to instantiate a generated
+     *  class, to compile one, and to open a TableMachine. */
+    private static final long COPY_NANOS = 2_000, INSTANCE_NANOS = 50_000,
+        COMPILE_NANOS = 300_000_000, TABLE_OPEN_NANOS = 20_000;
+
+    /** Characters for which the engine fastest per character is
+     *  selected. */
+    private static final long LONG_RUN = 1L << 40;
+
+    /** Estimated nanoseconds to fill one entry of a segment tree. */
+    private static final long TREE_ENTRY_NANOS = 150;
+
+    /** Estimated nanoseconds per character per rotor slot for Machine,
+     *  generated code and shared tables. */
+    private static final double MACHINE_SLOT_NANOS = 150,
+        COMPILED_SLOT_NANOS = 2.5, TABLE_SLOT_NANOS = 8;
+
+    /** Estimated nanoseconds per character for a segment tree, and per
+     *  level of the tree. */
+    private static final double TREE_CHAR_NANOS = 35, TREE_LEVEL_NANOS = 1;
+
+    /** Engines by name. */
+    private final LinkedHashMap<String, EnigmaEngine> _engines =
+        new LinkedHashMap<>();
+}
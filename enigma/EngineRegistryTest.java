@@ -0,0 +1,134 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EngineRegistry class and the
+ *  engines it holds.
+ *  @author Yunsu Ha
+ */
+public class EngineRegistryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE LMNO (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the registry of standard engines plus tables for the naval
+     *  machine. */
+    private static EngineRegistry registry() throws IOException {
+        EngineRegistry result = EngineRegistry.standard();
+        result.register(EngineRegistry.tables(SharedTables.open(
+            navalMachine(), Files.createTempDirectory("enigma-engines"))));
+        return result;
+    }
+
+    /** Check that ENGINE converts as the naval machine does, and stores
+     *  its settings. */
+    private static void checkEngine(EnigmaEngine engine) {
+        checkEngine(engine, 20000);
+    }
+
+    /** Check that ENGINE converts N characters as the naval machine
+     *  does, and stores its settings. */
+    private static void checkEngine(EnigmaEngine engine, int n) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTINGS);
+        assertTrue(engine.name(), engine.supports(mach));
+        EnigmaEngine.Converter conv = engine.open(mach);
+        Machine ref = mach.copy();
+        Random rand = new Random(47);
+        for (int i = 0; i < n; i += 1) {
+            int c = rand.nextInt(26);
+            assertEquals(engine.name(), ref.convert(c), conv.convert(c));
+        }
+        assertEquals(UPPER.toInt('E'), mach.getRotor(4).setting());
+        conv.store(mach);
+        for (int k = 1; k < 5; k += 1) {
+            assertEquals(engine.name(), ref.getRotor(k).setting(),
+                         mach.getRotor(k).setting());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEnginesAgree() throws IOException {
+        EngineRegistry registry = registry();
+        assertEquals(MachineCompiler.available() ? 4 : 3,
+                     registry.engines().size());
+        for (EnigmaEngine engine : registry.engines()) {
+            checkEngine(engine);
+        }
+        checkEngine(registry.adaptive(() -> 100));
+    }
+
+    @Test
+    public void testSelect() throws IOException {
+        EngineRegistry registry = registry();
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTINGS);
+        assertEquals(EngineRegistry.TABLES,
+                     registry.select(mach, 1L << 30, 0).name());
+        assertEquals(EngineRegistry.MACHINE, EngineRegistry.standard()
+                     .select(mach, 1L << 30, 0).name());
+        if (MachineCompiler.available()) {
+            registry.get(EngineRegistry.COMPILED).open(mach);
+            assertEquals(EngineRegistry.COMPILED,
+                         registry.select(mach, 1L << 30).name());
+        }
+        EnigmaEngine chosen = registry.select(mach, 1);
+        assertTrue(chosen.setupNanos(mach) + chosen.nanosPerChar(mach)
+                   <= registry.get(EngineRegistry.MACHINE).setupNanos(mach)
+                   + registry.get(EngineRegistry.MACHINE)
+                   .nanosPerChar(mach));
+    }
+
+    @Test
+    public void testSwitching() throws IOException {
+        checkEngine(registry().adaptive(() -> 0), 100);
+        checkEngine(EngineRegistry.standard().adaptive(() -> 0), 1_000_000);
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTINGS);
+        EnigmaEngine.Converter conv = registry().adaptive(() -> 0).open(mach);
+        Machine ref = mach.copy();
+        for (int i = 0; i < 1000; i += 1) {
+            assertEquals(ref.convert(i % 26), conv.convert(i % 26));
+            if (i % 7 == 0) {
+                conv.store(mach);
+                assertEquals(ref.getRotor(4).setting(),
+                             mach.getRotor(4).setting());
+            }
+        }
+    }
+
+    @Test
+    public void testManySlots() {
+        Machine huge = new Machine(UPPER, 100, 3, navalMachine().allRotors());
+        EngineRegistry registry = EngineRegistry.standard();
+        if (MachineCompiler.available()) {
+            assertFalse(registry.get(EngineRegistry.COMPILED).supports(huge));
+        }
+        assertEquals(EngineRegistry.SEGMENT_TREE,
+                     registry.select(huge, 1L << 30).name());
+        assertEquals(EngineRegistry.MACHINE,
+                     registry.select(huge, 1L << 30, 0).name());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknown() {
+        EngineRegistry.standard().get("quantum");
+    }
+}
@@ -0,0 +1,193 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+
+import static enigma.EnigmaException.*;
+
+/** A channel giving random access to the plaintext of a file encrypted
+ *  under one settings line.  The file holds one byte per character (as in
+ *  ISO-8859-1), the byte at offset N having been converted at the N-th
+ *  position after the settings, so the alphabet's characters must all fit
+ *  in a byte; bytes that are not characters of the alphabet are stored as
+ *  they are, though they still take up a position.  Reading decrypts and
+ *  writing encrypts just the bytes transferred.  The rotor settings for
+ *  the first of them come straight from a Stepper, so a read in the
+ *  middle of a large file costs about the same as one at its start;
+ *  sequential transfers just keep stepping.  Writes are converted through
+ *  a buffer of my own, a piece at a time, so they allocate nothing.
+ *
+ *  Like other channels with a position, an EnigmaChannel is not meant to
+ *  be used by several threads at once.
+ *  @author Yunsu Ha
+ */
+final class EnigmaChannel implements SeekableByteChannel {
+
+    /** Return a channel over FILE, opened with OPTIONS, whose contents are
+     *  encrypted with the configuration of CONFIG (whose settings do not
+     *  matter) under settings line SETTINGS. */
+    static EnigmaChannel open(Path file, Machine config, String settings,
+                              OpenOption... options) throws IOException {
+        return new EnigmaChannel(FileChannel.open(file, options), config,
+                                 settings);
+    }
+
+    /** A channel over the encrypted bytes in FILE, as for open. */
+    EnigmaChannel(SeekableByteChannel file, Machine config,
+                  String settings) {
+        _file = file;
+        _machine = config.copy();
+        Main.setUp(_machine, settings);
+        _alphabet = _machine.alphabet();
+        for (int c = 0; c < _alphabet.size(); c += 1) {
+            if (_alphabet.toChar(c) > BYTE_MASK) {
+                throw error("alphabet does not fit in bytes");
+            }
+        }
+        _stepper = new Stepper(_machine);
+        _settings = new int[_machine.numRotors()];
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkOpen();
+        int start = dst.position();
+        _file.position(_position);
+        int n = _file.read(dst);
+        if (n > 0) {
+            seek(_position);
+            for (int i = start; i < start + n; i += 1) {
+                dst.put(i, convert(dst.get(i)));
+            }
+            _position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkOpen();
+        int n = src.remaining();
+        seek(_position);
+        _file.position(_position);
+        while (src.hasRemaining()) {
+            _buffer.clear();
+            while (_buffer.hasRemaining() && src.hasRemaining()) {
+                _buffer.put(convert(src.get()));
+            }
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                _file.write(_buffer);
+            }
+        }
+        _position += n;
+        return n;
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return _position;
+    }
+
+    @Override
+    public EnigmaChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        _position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return _file.size();
+    }
+
+    @Override
+    public EnigmaChannel truncate(long size) throws IOException {
+        checkOpen();
+        _file.truncate(size);
+        _position = Math.min(_position, size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return _file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _file.close();
+    }
+
+    /** Set my machine's rotors to where they are after the first POSN
+     *  positions, unless they are there already. */
+    private void seek(long posn) {
+        if (posn != _at) {
+            _stepper.settingsAt(posn, _settings);
+            for (int k = 1; k < _settings.length; k += 1) {
+                _machine.getRotor(k).set(_settings[k]);
+            }
+            _at = posn;
+        }
+    }
+
+    /** Return the conversion of byte B at the next position, advancing my
+     *  machine past it. */
+    private byte convert(byte b) {
+        _machine.advanceRotors();
+        _at += 1;
+        int c = _alphabet.toInt((char) (b & BYTE_MASK));
+        if (c < 0) {
+            return b;
+        }
+        return (byte) _alphabet.toChar(_machine.map(c));
+    }
+
+    /** Throw ClosedChannelException if I am closed. */
+    private void checkOpen() throws ClosedChannelException {
+        if (!_file.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /** Mask selecting the bits of an unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Size of the buffer through which writes are converted. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The underlying channel over the encrypted bytes. */
+    private final SeekableByteChannel _file;
+
+    /** My copy of the machine, set up with my settings line. */
+    private final Machine _machine;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Computes rotor settings at any position. */
+    private final Stepper _stepper;
+
+    /** Scratch space for rotor settings. */
+    private final int[] _settings;
+
+    /** Holds converted bytes on their way to _file.  It is direct, so
+     *  that a FileChannel need not copy it again. */
+    private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /** Current position. */
+    private long _position;
+
+    /** Number of positions my machine's rotors have been advanced past. */
+    private long _at;
+}
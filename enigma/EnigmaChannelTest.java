@@ -0,0 +1,223 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaChannel and Stepper
+ *  classes.
+ *  @author Yunsu Ha
+ */
+public class EnigmaChannelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String SETTING =
+        "* B Beta III VI VIII AXLE ZQCM (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a random text of LENGTH characters chosen with RAND: mostly
+     *  letters, with an occasional newline. */
+    private static String randomText(Random rand, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(rand.nextInt(50) == 0 ? '\n'
+                          : UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return TEXT converted as an EnigmaChannel does, by a machine set up
+     *  with SETTINGS and stepped once per character. */
+    private static String expected(String settings, String text) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, settings);
+        StringBuilder result = new StringBuilder();
+        for (char ch : text.toCharArray()) {
+            mach.advanceRotors();
+            int c = UPPER.toInt(ch);
+            result.append(c < 0 ? ch : UPPER.toChar(mach.map(c)));
+        }
+        return result.toString();
+    }
+
+    /** Check that a Stepper for M agrees with stepping M for N steps,
+     *  at every position for the first few revolutions and at random
+     *  ones chosen with RAND after that. */
+    private static void checkStepper(Machine M, int n, Random rand) {
+        Stepper stepper = new Stepper(M);
+        int[] settings = new int[M.numRotors()];
+        for (int i = 0; i <= n; i += 1) {
+            if (i < 2000 || rand.nextInt(100) == 0) {
+                stepper.settingsAt(i, settings);
+                for (int k = 0; k < M.numRotors(); k += 1) {
+                    assertEquals(msg("stepper", "slot %d after %d", k, i),
+                                 M.getRotor(k).setting(), settings[k]);
+                }
+            }
+            M.advanceRotors();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testStepperMatchesMachine() {
+        Random rand = new Random(39);
+        for (String settings : new String[] {
+                SETTING, "* B Beta I II III AAAA", "* C Gamma V IV II AAAA",
+                "* B Beta VI VII VIII AZYZ BCDE" }) {
+            Machine mach = navalMachine();
+            Main.setUp(mach, settings);
+            checkStepper(mach, 60000, rand);
+        }
+    }
+
+    @Test
+    public void testStepperManyPawls() {
+        Machine mach = new Machine(UPPER, 6, 5, navalMachine().allRotors());
+        Main.setUp(mach, "* B I II VI VII VIII QEZMA");
+        Stepper stepper = new Stepper(mach);
+        assertTrue(stepper.revolutionCycle() > 0);
+        checkStepper(mach, 100000, new Random(5));
+    }
+
+    @Test
+    public void testFarOffsets() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTING);
+        Stepper stepper = new Stepper(mach);
+        long period = (long) stepper.size() * stepper.revolutionCycle();
+        long tail = (long) stepper.size() * stepper.revolutionTail();
+        int[] near = new int[5], far = new int[5];
+        for (long n = tail; n < tail + 3000; n += 7) {
+            stepper.settingsAt(n, near);
+            stepper.settingsAt(n + 12345678L * period, far);
+            assertArrayEquals(near, far);
+        }
+    }
+
+    @Test
+    public void testRandomReads() throws IOException {
+        Random rand = new Random(1);
+        String plain = randomText(rand, 50000);
+        Path file = Files.createTempFile("enigma", ".enc");
+        try {
+            Files.write(file, expected(SETTING, plain)
+                        .getBytes(StandardCharsets.ISO_8859_1));
+            try (EnigmaChannel chan = EnigmaChannel.open(
+                     file, navalMachine(), SETTING, StandardOpenOption.READ)) {
+                assertEquals(plain.length(), chan.size());
+                for (int t = 0; t < 200; t += 1) {
+                    int from = rand.nextInt(plain.length());
+                    ByteBuffer buf = ByteBuffer.allocate(rand.nextInt(4096));
+                    chan.position(from);
+                    int n = Math.max(0, chan.read(buf));
+                    assertEquals(Math.min(buf.capacity(),
+                                          plain.length() - from), n);
+                    assertEquals(plain.substring(from, from + n),
+                                 new String(buf.array(), 0, n,
+                                            StandardCharsets.ISO_8859_1));
+                    assertEquals(from + n, chan.position());
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testPatch() throws IOException {
+        Random rand = new Random(2);
+        String plain = randomText(rand, 20000);
+        Path file = Files.createTempFile("enigma", ".enc");
+        try {
+            Files.write(file, expected(SETTING, plain)
+                        .getBytes(StandardCharsets.ISO_8859_1));
+            String patch = randomText(rand, 700);
+            try (EnigmaChannel chan = EnigmaChannel.open(
+                     file, navalMachine(), SETTING, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+                chan.position(12000);
+                chan.write(ByteBuffer.wrap(
+                    patch.getBytes(StandardCharsets.ISO_8859_1)));
+                chan.position(19900);
+                chan.write(ByteBuffer.wrap(
+                    patch.getBytes(StandardCharsets.ISO_8859_1)));
+            }
+            String patched = plain.substring(0, 12000) + patch
+                + plain.substring(12700, 19900) + patch;
+            assertEquals(expected(SETTING, patched),
+                         new String(Files.readAllBytes(file),
+                                    StandardCharsets.ISO_8859_1));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLongWrite() throws IOException {
+        Random rand = new Random(3);
+        String plain = randomText(rand, 30000);
+        Path file = Files.createTempFile("enigma", ".enc");
+        try {
+            try (EnigmaChannel chan = EnigmaChannel.open(
+                     file, navalMachine(), SETTING, StandardOpenOption.WRITE)) {
+                ByteBuffer src = ByteBuffer.wrap(
+                    plain.getBytes(StandardCharsets.ISO_8859_1), 100, 29000);
+                chan.position(100);
+                assertEquals(29000, chan.write(src));
+                assertFalse(src.hasRemaining());
+                assertEquals(29100, chan.position());
+                chan.position(0);
+                chan.write(ByteBuffer.wrap(
+                    plain.substring(0, 100)
+                    .getBytes(StandardCharsets.ISO_8859_1)));
+            }
+            assertEquals(expected(SETTING, plain.substring(0, 29100)),
+                         new String(Files.readAllBytes(file),
+                                    StandardCharsets.ISO_8859_1));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        Path file = Files.createTempFile("enigma", ".enc");
+        try {
+            EnigmaChannel chan = EnigmaChannel.open(
+                file, navalMachine(), SETTING, StandardOpenOption.WRITE);
+            chan.close();
+            try {
+                chan.size();
+                fail("size of a closed channel");
+            } catch (ClosedChannelException excp) {
+                /* Expected. */
+            }
+            try {
+                chan.truncate(0);
+                fail("truncated a closed channel");
+            } catch (ClosedChannelException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
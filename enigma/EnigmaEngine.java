@@ -0,0 +1,57 @@
+package enigma;
+
+/** A strategy for converting messages with the machine of a settings
+ *  line: the reference Machine, or one of the faster equivalents built
+ *  from it.  An engine declares which configurations it can handle, how
+ *  much memory it needs for one, and estimates of what it costs to set up
+ *  and per character, from which EngineRegistry picks the cheapest engine
+ *  for a workload.  Every engine converts exactly as Machine does.
+ *  @author Yunsu Ha
+ */
+interface EnigmaEngine {
+
+    /** Return my name, as given to --engine. */
+    String name();
+
+    /** Return the largest alphabet I handle. */
+    int maxAlphabet();
+
+    /** Return the largest number of rotor slots I handle. */
+    int maxRotors();
+
+    /** Return true iff I can convert for the configuration of M. */
+    default boolean supports(Machine M) {
+        return M.alphabet().size() <= maxAlphabet()
+            && M.numRotors() <= maxRotors();
+    }
+
+    /** Return the bytes of memory I need for the configuration of M,
+     *  beyond what M itself holds. */
+    long memory(Machine M);
+
+    /** Return an estimate of the nanoseconds it takes me to open a
+     *  converter for M. */
+    long setupNanos(Machine M);
+
+    /** Return an estimate of the nanoseconds it takes me to convert a
+     *  character for M, once set up. */
+    double nanosPerChar(Machine M);
+
+    /** Return a converter starting from the rotor selection, rotor and
+     *  ring settings and plugboard of M, which I leave unchanged.  M must
+     *  be supported. */
+    Converter open(Machine M);
+
+    /** The state of one conversion, as opened by an engine. */
+    interface Converter {
+
+        /** Return the result of converting the input character C (as an
+         *  index in the range 0..alphabet size - 1), after first
+         *  advancing the machine. */
+        int convert(int c);
+
+        /** Set the rotors of M (which must hold the rotor selection I was
+         *  opened with) to my current settings. */
+        void store(Machine M);
+    }
+}
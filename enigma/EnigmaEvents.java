@@ -0,0 +1,93 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JDK Flight Recorder events describing what Main does.  They are
+ *  disabled unless a recording enables them (for example with the
+ *  settings in enigma.jfc, which sits beside this class), and a disabled
+ *  event costs no more than an allocation the JIT can usually remove.
+ *  Enable them with, e.g.,
+ *
+ *      java -XX:StartFlightRecording:settings=enigma/enigma.jfc,\
+ *           filename=enigma.jfr enigma.Main CONFIG INPUT OUTPUT
+ *
+ *  @author Yunsu Ha
+ */
+final class EnigmaEvents {
+
+    /** Not instantiable. */
+    private EnigmaEvents() {
+    }
+
+    /** Reading of a configuration file; its duration is the parse time. */
+    @Name("enigma.ConfigRead")
+    @Label("Configuration Read")
+    @Category("Enigma")
+    @Description("A machine configuration file was parsed")
+    @StackTrace(false)
+    static final class ConfigRead extends Event {
+        /** Number of rotors described by the configuration. */
+        @Label("Rotors")
+        int rotors;
+
+        /** Number of rotor slots. */
+        @Label("Slots")
+        int slots;
+
+        /** Number of pawls. */
+        @Label("Pawls")
+        int pawls;
+
+        /** Size of the alphabet. */
+        @Label("Alphabet Size")
+        int alphabetSize;
+    }
+
+    /** Application of a settings line to a machine. */
+    @Name("enigma.SettingsApplied")
+    @Label("Settings Applied")
+    @Category("Enigma")
+    @Description("A settings line was applied to a machine, or rejected")
+    @StackTrace(false)
+    static final class SettingsApplied extends Event {
+        /** The settings line. */
+        @Label("Settings")
+        String settings;
+
+        /** True iff the settings were valid. */
+        @Label("Accepted")
+        boolean accepted;
+
+        /** Exception class describing why the settings were rejected, or
+         *  null. */
+        @Label("Failure Type")
+        String failureType;
+
+        /** Message describing why the settings were rejected, or null. */
+        @Label("Failure")
+        String failure;
+    }
+
+    /** Conversion of the message lines that follow one settings line;
+     *  its duration is the block's latency. */
+    @Name("enigma.BlockConverted")
+    @Label("Message Block Converted")
+    @Category("Enigma")
+    @Description("The message lines following a settings line were "
+                 + "converted")
+    @StackTrace(false)
+    static final class BlockConverted extends Event {
+        /** Number of message lines. */
+        @Label("Lines")
+        long lines;
+
+        /** Number of characters converted. */
+        @Label("Characters")
+        long characters;
+    }
+}
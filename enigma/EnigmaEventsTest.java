@@ -0,0 +1,137 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaEvents class.
+ *  @author Yunsu Ha
+ */
+public class EnigmaEventsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Names of the events recorded. */
+    private static final String[] EVENTS = {
+        "enigma.ConfigRead", "enigma.SettingsApplied",
+        "enigma.BlockConverted",
+    };
+
+    /** Directory for the configuration and the recording. */
+    private Path _dir;
+
+    /** The recording of each test. */
+    private Recording _recording;
+
+    @Before
+    public void startRecording() throws IOException {
+        _dir = Files.createTempDirectory("enigma-events");
+        _recording = new Recording();
+        for (String name : EVENTS) {
+            _recording.enable(name);
+        }
+        _recording.start();
+    }
+
+    @After
+    public void removeDir() throws IOException {
+        _recording.close();
+        try (Stream<Path> files = Files.list(_dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(_dir);
+    }
+
+    /** Stop recording and return the events named NAME that were
+     *  recorded, in order of their start.  Call at most once a test. */
+    private List<RecordedEvent> recorded(String name) throws IOException {
+        _recording.stop();
+        Path file = _dir.resolve("events.jfr");
+        _recording.dump(file);
+        List<RecordedEvent> result = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().equals(name)) {
+                result.add(event);
+            }
+        }
+        result.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        return result;
+    }
+
+    /** Check that BLOCKS are the events of converting MESSAGES. */
+    private static void checkBlocks(List<RecordedEvent> blocks) {
+        assertEquals(2, blocks.size());
+        assertEquals(2, blocks.get(0).getLong("lines"));
+        assertEquals(46, blocks.get(0).getLong("characters"));
+        assertEquals(1, blocks.get(1).getLong("lines"));
+        assertEquals(10, blocks.get(1).getLong("characters"));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConfigRead() throws IOException {
+        readConfig(_dir);
+        List<RecordedEvent> read = recorded("enigma.ConfigRead");
+        assertEquals(1, read.size());
+        assertEquals(5, read.get(0).getInt("rotors"));
+        assertEquals(4, read.get(0).getInt("slots"));
+        assertEquals(2, read.get(0).getInt("pawls"));
+        assertEquals(26, read.get(0).getInt("alphabetSize"));
+    }
+
+    @Test
+    public void testSettingsApplied() throws IOException {
+        Machine mach = readConfig(_dir);
+        Main.setUp(mach, "* B Beta III I QEZ (AB)");
+        try {
+            Main.setUp(mach, "* B Beta I I AAA");
+            fail("rotor repeated");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        List<RecordedEvent> applied = recorded("enigma.SettingsApplied");
+        assertEquals(2, applied.size());
+        assertEquals("* B Beta III I QEZ (AB)",
+                     applied.get(0).getString("settings"));
+        assertTrue(applied.get(0).getBoolean("accepted"));
+        assertNull(applied.get(0).getString("failure"));
+        assertFalse(applied.get(1).getBoolean("accepted"));
+        assertNotNull(applied.get(1).getString("failureType"));
+        assertNotNull(applied.get(1).getString("failure"));
+    }
+
+    @Test
+    public void testBlockConverted() throws IOException {
+        new Main(readConfig(_dir), messageInput(), discard()).process();
+        checkBlocks(recorded("enigma.BlockConverted"));
+    }
+
+    @Test
+    public void testPipelineBlocks() throws IOException {
+        new Pipeline(readConfig(_dir), messageInput(), discard(), 16, 2)
+            .run();
+        checkBlocks(recorded("enigma.BlockConverted"));
+    }
+}
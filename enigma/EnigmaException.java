@@ -12,6 +12,13 @@ class EnigmaException extends RuntimeException {
         super(msg);
     }
 
+    /** An exception whose getMessage() value is MSG, with a stack trace
+     *  iff TRACE.  One without is much cheaper to create, for errors
+     *  that are reported only by their message. */
+    EnigmaException(String msg, boolean trace) {
+        super(msg, null, false, trace);
+    }
+
     /** A utility method that returns a new exception with a message
      *  formed from MSGFORMAT and ARGUMENTS, interpreted as for the
      *  String.format method or the standard printf methods.
@@ -0,0 +1,387 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+import static enigma.EnigmaException.*;
+
+/** A Flow.Processor that converts streams of message chunks with Enigma
+ *  machines.  Each item names a stream; an item carrying a settings line
+ *  (in the format accepted by Main.setUp) resets that stream's machine
+ *  before its message is converted, and an item without one continues
+ *  from where the stream's previous item left off.  Every input item
+ *  produces exactly one output item on the same stream holding the
+ *  converted message.
+ *
+ *  Work for different streams runs concurrently on a caller-supplied
+ *  executor, while the items of any one stream are converted and
+ *  delivered in the order received.  Items of a stream that arrive while
+ *  it is busy are batched into a single task, and no more than a fixed
+ *  window of items is ever requested from upstream ahead of what has been
+ *  delivered to every subscriber: upstream is asked for another item
+ *  only as the slowest subscriber takes one.  So a slow subscriber
+ *  throttles the whole pipeline, while results waiting for it never
+ *  exceed the publisher's buffer, and conversion tasks never block the
+ *  executor.  Subscribers should subscribe before items arrive; one that
+ *  subscribes later sees only the results published after it did.
+ *  @author Yunsu Ha
+ */
+class EnigmaProcessor
+    implements Flow.Processor<EnigmaProcessor.Item, EnigmaProcessor.Item> {
+
+    /** One chunk of a message stream. */
+    static final class Item {
+
+        /** A chunk MESSAGE of stream STREAM, applying SETTINGS (which may
+         *  be null) first. */
+        Item(String stream, String settings, String message) {
+            _stream = stream;
+            _settings = settings;
+            _message = message;
+        }
+
+        /** Return a chunk MESSAGE continuing stream STREAM. */
+        static Item chunk(String stream, String message) {
+            return new Item(stream, null, message);
+        }
+
+        /** Return the name of my stream. */
+        String stream() {
+            return _stream;
+        }
+
+        /** Return my settings line, or null if I continue my stream. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return my message text. */
+        String message() {
+            return _message;
+        }
+
+        @Override
+        public String toString() {
+            return _stream + ": " + _message;
+        }
+
+        /** Name of my stream. */
+        private final String _stream;
+
+        /** Settings line to apply before my message, or null. */
+        private final String _settings;
+
+        /** Message text. */
+        private final String _message;
+    }
+
+    /** Default number of message characters gathered into one task. */
+    static final int DEFAULT_BATCH = 4096;
+
+    /** Default number of items requested ahead of delivery. */
+    static final int DEFAULT_WINDOW = 256;
+
+    /** A processor that converts with copies of PROTOTYPE on the common
+     *  fork/join pool, using the default batch size and window. */
+    EnigmaProcessor(Machine prototype) {
+        this(prototype, ForkJoinPool.commonPool(), DEFAULT_BATCH,
+             DEFAULT_WINDOW);
+    }
+
+    /** A processor that converts with copies of PROTOTYPE, running tasks
+     *  on EXECUTOR.  Up to BATCH message characters of a stream are
+     *  converted per task, and at most WINDOW items are outstanding
+     *  between upstream and my subscribers. */
+    EnigmaProcessor(Machine prototype, Executor executor, int batch,
+                    int window) {
+        if (batch <= 0 || window <= 0) {
+            throw error("batch and window must be positive");
+        }
+        _prototype = prototype;
+        _executor = executor;
+        _batch = batch;
+        _window = window;
+        _publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(),
+                                               window);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Item> subscriber) {
+        synchronized (_downstream) {
+            Downstream down = new Downstream(subscriber, _published);
+            _downstream.add(down);
+            _publisher.subscribe(down);
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        subscription.request(_window);
+    }
+
+    @Override
+    public void onNext(Item item) {
+        if (_failed != null) {
+            return;
+        }
+        Stream stream = _streams.get(item.stream());
+        if (stream == null) {
+            stream = new Stream();
+            _streams.put(item.stream(), stream);
+        }
+        synchronized (stream) {
+            stream.pending.add(item);
+            stream.pendingChars += item.message().length();
+            if (stream.scheduled == 0 || stream.pendingChars >= _batch) {
+                schedule(stream);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable err) {
+        fail(err);
+    }
+
+    @Override
+    public void onComplete() {
+        ArrayList<CompletableFuture<Void>> tails = new ArrayList<>();
+        for (Stream s : _streams.values()) {
+            synchronized (s) {
+                if (!s.pending.isEmpty()) {
+                    schedule(s);
+                }
+                tails.add(s.tail);
+            }
+        }
+        CompletableFuture.allOf(tails.toArray(new CompletableFuture<?>[0]))
+            .whenComplete((ignored, err) -> {
+                if (_failed == null) {
+                    _publisher.close();
+                }
+            });
+    }
+
+    /** Schedule the pending items of STREAM as one task, chained after
+     *  the stream's previous task.  Must hold STREAM's lock. */
+    private void schedule(Stream stream) {
+        List<Item> batch = stream.pending;
+        stream.pending = new ArrayList<>();
+        stream.pendingChars = 0;
+        stream.scheduled += 1;
+        stream.tail = stream.tail.thenRunAsync(() -> convert(stream, batch),
+                                               _executor);
+    }
+
+    /** Convert the items of BATCH in order with STREAM's machine,
+     *  publishing each result.  Items that arrived for STREAM while this
+     *  task ran are scheduled next, so nothing waits for a batch to fill
+     *  up. */
+    private void convert(Stream stream, List<Item> batch) {
+        if (_failed != null) {
+            return;
+        }
+        try {
+            for (Item item : batch) {
+                if (item.settings() != null) {
+                    if (stream.machine == null) {
+                        stream.machine = _prototype.copy();
+                    }
+                    Main.setUp(stream.machine, item.settings());
+                } else if (stream.machine == null) {
+                    throw error("no settings for stream %s", item.stream());
+                }
+                String text = item.message().replaceAll("\\s+", "");
+                publish(Item.chunk(item.stream(),
+                                   stream.machine.convert(text)));
+            }
+        } catch (RuntimeException excp) {
+            fail(excp);
+            return;
+        }
+        synchronized (stream) {
+            stream.scheduled -= 1;
+            if (stream.scheduled == 0 && !stream.pending.isEmpty()) {
+                schedule(stream);
+            }
+        }
+    }
+
+    /** Hand RESULT to my subscribers.  This never blocks: at most _window
+     *  results are awaiting any subscriber, which the publisher's buffer
+     *  holds. */
+    private void publish(Item result) {
+        synchronized (_downstream) {
+            _publisher.submit(result);
+            _published += 1;
+        }
+        requestMore();
+    }
+
+    /** Ask upstream for as many items as every subscriber has taken
+     *  since it was last asked (any item, if there are no
+     *  subscribers). */
+    private void requestMore() {
+        long more;
+        synchronized (_downstream) {
+            long taken = _published;
+            for (Downstream down : _downstream) {
+                taken = Math.min(taken, down.taken());
+            }
+            more = taken - _credited;
+            _credited = Math.max(taken, _credited);
+        }
+        if (more > 0 && _upstream != null) {
+            _upstream.request(more);
+        }
+    }
+
+    /** Stop counting what DOWN takes. */
+    private void unsubscribed(Downstream down) {
+        synchronized (_downstream) {
+            _downstream.remove(down);
+        }
+        requestMore();
+    }
+
+    /** A subscriber, as seen by my publisher: counts the results
+     *  delivered to it, and asks upstream for more as it takes them. */
+    private final class Downstream implements Flow.Subscriber<Item> {
+
+        /** A wrapper for SUBSCRIBER, subscribing after PUBLISHED results
+         *  had been published. */
+        Downstream(Flow.Subscriber<? super Item> subscriber,
+                   long published) {
+            _subscriber = subscriber;
+            _taken = published;
+        }
+
+        /** Return the number of results published that I have taken or
+         *  will never be offered.  Must hold the lock on _downstream. */
+        long taken() {
+            return _taken;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                    unsubscribed(Downstream.this);
+                }
+            });
+        }
+
+        @Override
+        public void onNext(Item item) {
+            _subscriber.onNext(item);
+            synchronized (_downstream) {
+                _taken += 1;
+            }
+            requestMore();
+        }
+
+        @Override
+        public void onError(Throwable err) {
+            unsubscribed(this);
+            _subscriber.onError(err);
+        }
+
+        @Override
+        public void onComplete() {
+            unsubscribed(this);
+            _subscriber.onComplete();
+        }
+
+        /** The subscriber wrapped. */
+        private final Flow.Subscriber<? super Item> _subscriber;
+
+        /** Results taken, or published before I subscribed.  Guarded by
+         *  the lock on _downstream. */
+        private long _taken;
+    }
+
+    /** Stop processing because of ERR, cancelling upstream and passing
+     *  ERR on to my subscribers. */
+    private void fail(Throwable err) {
+        synchronized (this) {
+            if (_failed != null) {
+                return;
+            }
+            _failed = err;
+        }
+        if (_upstream != null) {
+            _upstream.cancel();
+        }
+        _publisher.closeExceptionally(err);
+    }
+
+    /** Per-stream state.  PENDING, PENDINGCHARS, SCHEDULED and TAIL are
+     *  guarded by the stream's lock; MACHINE is used by one task at a
+     *  time. */
+    private static final class Stream {
+        /** Items received but not yet scheduled. */
+        private List<Item> pending = new ArrayList<>();
+        /** Total message length of PENDING. */
+        private int pendingChars;
+        /** Number of tasks scheduled but not yet finished. */
+        private int scheduled;
+        /** Completes when the stream's last scheduled task finishes. */
+        private CompletableFuture<Void> tail =
+            CompletableFuture.completedFuture(null);
+        /** The stream's machine, created by its first settings item. */
+        private Machine machine;
+    }
+
+    /** Machine copied for each new stream. */
+    private final Machine _prototype;
+
+    /** Runs conversion tasks. */
+    private final Executor _executor;
+
+    /** Message characters per task. */
+    private final int _batch;
+
+    /** Items outstanding between upstream and my subscribers. */
+    private final int _window;
+
+    /** Delivers results to my subscribers. */
+    private final SubmissionPublisher<Item> _publisher;
+
+    /** My subscribers, whose lock also guards _published and
+     *  _credited. */
+    private final ArrayList<Downstream> _downstream = new ArrayList<>();
+
+    /** Number of results published. */
+    private long _published;
+
+    /** Number of results for which upstream has been asked for another
+     *  item. */
+    private long _credited;
+
+    /** The streams seen so far, by name. */
+    private final HashMap<String, Stream> _streams = new HashMap<>();
+
+    /** My upstream subscription. */
+    private volatile Flow.Subscription _upstream;
+
+    /** The error that stopped me, if any. */
+    private volatile Throwable _failed;
+}
@@ -0,0 +1,242 @@
+package enigma;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author Yunsu Ha
+ */
+public class EnigmaProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String SETTING1 =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+    private static final String SETTING2 = "* B Beta I II III AAAA";
+
+    /** A subscriber that records what it receives, one item at a time. */
+    private static class Collector implements Flow.Subscriber<
+        EnigmaProcessor.Item> {
+        private Flow.Subscription subscription;
+        private final List<EnigmaProcessor.Item> items = new ArrayList<>();
+        private Throwable error;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(EnigmaProcessor.Item item) {
+            items.add(item);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable err) {
+            error = err;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        /** Return the concatenated messages received for STREAM. */
+        String text(String stream) {
+            StringBuilder result = new StringBuilder();
+            for (EnigmaProcessor.Item item : items) {
+                if (item.stream().equals(stream)) {
+                    result.append(item.message());
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    /** An upstream subscription that counts the items requested. */
+    private static class Upstream implements Flow.Subscription {
+        private final AtomicLong requested = new AtomicLong();
+
+        @Override
+        public void request(long n) {
+            requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        /** Wait until N items in all have been requested. */
+        void await(long n) throws InterruptedException {
+            while (requested.get() < n) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /** Run ITEMS through a processor with batch size BATCH and window
+     *  WINDOW on four threads, returning the collector. */
+    private Collector run(List<EnigmaProcessor.Item> items, int batch,
+                          int window) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            EnigmaProcessor proc =
+                new EnigmaProcessor(navalMachine(), pool, batch, window);
+            Collector out = new Collector();
+            proc.subscribe(out);
+            SubmissionPublisher<EnigmaProcessor.Item> in =
+                new SubmissionPublisher<>();
+            in.subscribe(proc);
+            for (EnigmaProcessor.Item item : items) {
+                in.submit(item);
+            }
+            in.close();
+            assertTrue(out.done.await(5, TimeUnit.SECONDS));
+            return out;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testStreamsMatchMachine() throws InterruptedException {
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        List<EnigmaProcessor.Item> items = new ArrayList<>();
+        items.add(new EnigmaProcessor.Item("a", SETTING1, ""));
+        items.add(new EnigmaProcessor.Item("b", SETTING2, "HELLO"));
+        StringBuilder bText = new StringBuilder("HELLO");
+        for (int i = 0; i < 50; i += 1) {
+            items.add(EnigmaProcessor.Item.chunk("a", msg));
+            items.add(EnigmaProcessor.Item.chunk("b", "WORLD "));
+            bText.append("WORLD");
+        }
+        Collector out = run(items, 16, 8);
+        assertNull(out.error);
+        assertEquals(items.size(), out.items.size());
+
+        Machine expect = navalMachine();
+        Main.setUp(expect, SETTING1);
+        StringBuilder aText = new StringBuilder();
+        for (int i = 0; i < 50; i += 1) {
+            aText.append(msg);
+        }
+        assertEquals(expect.convert(aText.toString()), out.text("a"));
+        Main.setUp(expect, SETTING2);
+        assertEquals(expect.convert(bText.toString()), out.text("b"));
+    }
+
+    @Test
+    public void testSettingsResetStream() throws InterruptedException {
+        List<EnigmaProcessor.Item> items = new ArrayList<>();
+        items.add(new EnigmaProcessor.Item("a", SETTING1, "HIAWATHA"));
+        items.add(new EnigmaProcessor.Item("a", SETTING1, "HIAWATHA"));
+        Collector out = run(items, 1, 4);
+        assertNull(out.error);
+        assertEquals(2, out.items.size());
+        assertEquals(out.items.get(0).message(),
+                     out.items.get(1).message());
+    }
+
+    @Test
+    public void testSlowSubscriberThrottles() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            EnigmaProcessor proc =
+                new EnigmaProcessor(navalMachine(), pool, 1, 4);
+            Collector out = new Collector() {
+                @Override
+                public void onNext(EnigmaProcessor.Item item) {
+                    super.items.add(item);
+                }
+            };
+            proc.subscribe(out);
+            Upstream up = new Upstream();
+            proc.onSubscribe(up);
+            assertEquals(4, up.requested.get());
+            proc.onNext(new EnigmaProcessor.Item("a", SETTING1, "HELLO"));
+            for (int i = 0; i < 3; i += 1) {
+                proc.onNext(new EnigmaProcessor.Item("b" + i, SETTING2,
+                                                     "WORLD"));
+            }
+            up.await(5);
+            CountDownLatch idle = new CountDownLatch(1);
+            pool.execute(idle::countDown);
+            assertTrue(idle.await(1, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(1, out.items.size());
+            assertEquals(5, up.requested.get());
+
+            out.subscription.request(2);
+            up.await(7);
+            Thread.sleep(100);
+            assertEquals(3, out.items.size());
+            assertEquals(7, up.requested.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBusyStreamBatched() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        EnigmaProcessor proc =
+            new EnigmaProcessor(navalMachine(), tasks::add, 1000, 16);
+        Upstream up = new Upstream();
+        proc.onSubscribe(up);
+        proc.onNext(new EnigmaProcessor.Item("a", SETTING1, "FROMHIS"));
+        proc.onNext(EnigmaProcessor.Item.chunk("a", "SHOULDER"));
+        proc.onNext(EnigmaProcessor.Item.chunk("a", "HIAWATHA"));
+        proc.onNext(new EnigmaProcessor.Item("b", SETTING2, "HELLO"));
+        assertEquals(2, tasks.size());
+        int run = 0;
+        while (!tasks.isEmpty()) {
+            tasks.remove().run();
+            run += 1;
+        }
+        assertEquals(3, run);
+        assertEquals(20, up.requested.get());
+    }
+
+    @Test
+    public void testMissingSettings() throws InterruptedException {
+        List<EnigmaProcessor.Item> items = new ArrayList<>();
+        items.add(EnigmaProcessor.Item.chunk("a", "HELLO"));
+        Collector out = run(items, 16, 8);
+        assertTrue(out.error instanceof EnigmaException);
+    }
+
+    @Test
+    public void testBadSettings() throws InterruptedException {
+        List<EnigmaProcessor.Item> items = new ArrayList<>();
+        items.add(new EnigmaProcessor.Item("a", "* B Beta III IV X AXLE",
+                                           "HELLO"));
+        Collector out = run(items, 16, 8);
+        assertTrue(out.error instanceof EnigmaException);
+        assertEquals("Invalid rotor name", out.error.getMessage());
+    }
+}
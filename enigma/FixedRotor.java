@@ -17,4 +17,9 @@ class FixedRotor extends Rotor {
     int type() {
         return 2;
     }
+
+    @Override
+    Rotor copy() {
+        return copyState(new FixedRotor(name(), permutation()));
+    }
 }
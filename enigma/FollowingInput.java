@@ -0,0 +1,159 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/** The bytes of a file that others are appending to, as in "tail -f".
+ *  At the end of the file, a read waits for it to grow rather than
+ *  reporting the end of input, so a LineInput over it hands each line to
+ *  its reader as soon as the line is complete, and earlier content is
+ *  never read again.  Waiting is on a WatchService for the file's
+ *  directory, where one is available, but never for longer than a bound
+ *  that doubles, from MIN_WAIT to MAX_WAIT milliseconds, with each wait
+ *  that finds nothing new; so input is noticed promptly even where
+ *  changes go unreported, and an idle file costs a few wakeups a second.
+ *  The end of input is reported only once the file has been idle for the
+ *  time given.  A file that shrinks is reported as an error.
+ *  @author Yunsu Ha
+ */
+final class FollowingInput extends InputStream {
+
+    /** Idle time of input followed until the process is stopped. */
+    static final long FOREVER = Long.MAX_VALUE;
+
+    /** Shortest and longest waits for the file to grow, in
+     *  milliseconds. */
+    static final long MIN_WAIT = 1, MAX_WAIT = 200;
+
+    /** The contents of FILE from byte offset START on, waiting at its end
+     *  for more until it has been idle for IDLE milliseconds (FOREVER
+     *  never to stop), and running BEFOREWAIT each time before waiting
+     *  (for example, to flush output). */
+    FollowingInput(Path file, long start, long idle, Runnable beforeWait)
+        throws IOException {
+        _file = file;
+        _channel = FileChannel.open(file, StandardOpenOption.READ);
+        _channel.position(start);
+        _idle = idle;
+        _beforeWait = beforeWait;
+        _lastData = System.currentTimeMillis();
+        try {
+            _watcher = FileSystems.getDefault().newWatchService();
+            file.toAbsolutePath().getParent()
+                .register(_watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException excp) {
+            closeWatcher();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (b != _array) {
+            _array = b;
+            _wrapped = ByteBuffer.wrap(b);
+        }
+        _wrapped.limit(off + len).position(off);
+        long wait = MIN_WAIT;
+        while (true) {
+            int n = _channel.read(_wrapped);
+            if (n > 0) {
+                _lastData = System.currentTimeMillis();
+                return n;
+            }
+            if (_channel.size() < _channel.position()) {
+                throw new IOException(_file + " was truncated");
+            }
+            long left = _idle == FOREVER ? FOREVER
+                : _lastData + _idle - System.currentTimeMillis();
+            if (left <= 0) {
+                return -1;
+            }
+            _beforeWait.run();
+            await(Math.min(wait, left));
+            wait = Math.min(2 * wait, MAX_WAIT);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeWatcher();
+        _channel.close();
+    }
+
+    /** Wait up to MILLIS milliseconds for a change in the directory of my
+     *  file. */
+    private void await(long millis) throws IOException {
+        try {
+            if (_watcher == null) {
+                Thread.sleep(millis);
+                return;
+            }
+            WatchKey key = _watcher.poll(millis, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                key.pollEvents();
+                key.reset();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while following " + _file);
+        }
+    }
+
+    /** Stop watching for changes. */
+    private void closeWatcher() {
+        if (_watcher != null) {
+            try {
+                _watcher.close();
+            } catch (IOException excp) {
+                /* Ignore: nothing more is read from it. */
+            }
+            _watcher = null;
+        }
+    }
+
+    /** The file followed. */
+    private final Path _file;
+
+    /** Reads the file. */
+    private final FileChannel _channel;
+
+    /** Milliseconds without new data after which input ends, or
+     *  FOREVER. */
+    private final long _idle;
+
+    /** Run before each wait. */
+    private final Runnable _beforeWait;
+
+    /** Time at which data last arrived (or reading began). */
+    private long _lastData;
+
+    /** Watches my file's directory for changes, or null if that is not
+     *  possible. */
+    private WatchService _watcher;
+
+    /** The array last read into. */
+    private byte[] _array;
+
+    /** A buffer wrapping _array. */
+    private ByteBuffer _wrapped;
+}
@@ -0,0 +1,140 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the FollowingInput class and
+ *  Main's --follow mode.
+ *  @author Yunsu Ha
+ */
+public class FollowingInputTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Input appended in pieces, which split lines. */
+    private static final String[] PIECES = {
+        "* B Beta III I QEZ (AB)\nFROM HIS SHOULDER ",
+        "HIAWATHA\nTOOK THE CAMERA\n\n", "* B Beta II I AAA\nHEL",
+        "LO WORLD\n", "\n",
+    };
+
+    /** Append TEXT to FILE. */
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /** Wait until the contents of FILE end with TAIL. */
+    private static void awaitOutput(Path file, String tail)
+        throws IOException, InterruptedException {
+        while (!read(file).endsWith(tail)) {
+            Thread.sleep(5);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testWaitsForData() throws Exception {
+        Path file = Files.createTempFile("enigma-follow", ".in");
+        Files.write(file, "ABC".getBytes(StandardCharsets.UTF_8));
+        int[] waits = new int[1];
+        byte[] buf = new byte[16];
+        try (FollowingInput in =
+                 new FollowingInput(file, 1, 10_000, () -> waits[0]++)) {
+            assertEquals(2, in.read(buf, 0, 16));
+            assertEquals(0, waits[0]);
+            Thread writer = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    append(file, "DEFG");
+                } catch (IOException | InterruptedException excp) {
+                    throw new RuntimeException(excp);
+                }
+            });
+            writer.start();
+            int n = in.read(buf, 2, 14);
+            writer.join();
+            assertEquals("BCDEFG", new String(buf, 0, 2 + n,
+                                              StandardCharsets.UTF_8));
+            assertTrue(waits[0] > 0);
+        }
+    }
+
+    @Test
+    public void testIdle() throws IOException {
+        Path file = Files.createTempFile("enigma-follow", ".in");
+        Files.write(file, "AB".getBytes(StandardCharsets.UTF_8));
+        long start = System.currentTimeMillis();
+        try (FollowingInput in = new FollowingInput(file, 0, 300, () -> { })) {
+            assertEquals('A', in.read());
+            assertEquals('B', in.read());
+            assertEquals(-1, in.read());
+        }
+        assertTrue(System.currentTimeMillis() - start >= 300);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        Path file = Files.createTempFile("enigma-follow", ".in");
+        Files.write(file, "ABCD".getBytes(StandardCharsets.UTF_8));
+        try (FollowingInput in = new FollowingInput(file, 0, 5000, () -> { })) {
+            in.read(new byte[4], 0, 4);
+            Files.write(file, "AB".getBytes(StandardCharsets.UTF_8));
+            in.read();
+        }
+    }
+
+    @Test
+    public void testMainFollows() throws Exception {
+        Path dir = Files.createTempDirectory("enigma-follow");
+        Path config = writeConfig(dir);
+        Path input = dir.resolve("follow.in");
+        Path output = dir.resolve("follow.out");
+        Files.write(input, new byte[0]);
+
+        Machine mach = Main.readConfig(config.toString());
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        new Main(mach, new LineInput(new java.io.ByteArrayInputStream(
+            String.join("", PIECES).getBytes(StandardCharsets.UTF_8))),
+                 new PrintStream(whole, true)).process();
+        String expected = whole.toString(StandardCharsets.UTF_8);
+
+        Main main = new Main(List.of(config.toString(), input.toString(),
+                                     output.toString()), null, 1000);
+        Thread follower = new Thread(main::process);
+        follower.start();
+        append(input, PIECES[0]);
+        append(input, PIECES[1]);
+        String[] lines = expected.split("\n", -1);
+        awaitOutput(output, lines[0] + "\n" + lines[1] + "\n");
+        append(input, PIECES[2]);
+        append(input, PIECES[3]);
+        awaitOutput(output, lines[3] + "\n");
+        append(input, PIECES[4]);
+        follower.join();
+        assertEquals(expected, read(output));
+    }
+}
@@ -0,0 +1,841 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A search of a KeySpace for the settings under which a ciphertext
+ *  decrypts to the most likely plaintext, as judged by an NgramScorer,
+ *  shared among worker processes by a coordinator.
+ *
+ *  The coordinator divides the key space into leases of consecutive
+ *  settings and listens on a local socket.  Workers connect, are told the
+ *  search (by the paths of its configuration and n-gram count files,
+ *  which they read themselves, and the ciphertext), and then repeatedly
+ *  ask for a lease, search it, and send back its best few candidates.
+ *  While searching they send heartbeats.  A lease whose worker
+ *  disconnects or misses heartbeats for the timeout is handed out again;
+ *  if the first worker finishes it after all, whichever result arrives
+ *  first counts.  After each finished lease the coordinator records in a
+ *  progress file which leases are done and the best candidates so far,
+ *  so that a search that is stopped can be resumed.
+ *
+ *  The protocol is lines of text.  A worker sends HELLO NAME and gets
+ *  back JOB followed by the search, tab-separated.  It then sends
+ *  REQUEST, answered by LEASE ID FROM TO, WAIT MILLIS (all remaining
+ *  leases are out) or DONE.  While working on lease ID it sends
+ *  HEARTBEAT ID; when done, CANDIDATE ID SCORE KEY for each candidate,
+ *  then COMPLETE ID.
+ *  @author Yunsu Ha
+ */
+public final class KeySearch {
+
+    /** Default number of settings in a lease. */
+    static final long DEFAULT_LEASE = 100000;
+
+    /** Default number of candidates kept. */
+    static final int DEFAULT_TOP = 10;
+
+    /** Default time after which a silent worker's lease is reassigned, in
+     *  milliseconds. */
+    static final long DEFAULT_TIMEOUT = 10000;
+
+    /** Time between heartbeats, in milliseconds. */
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    /** Time a worker is told to wait when no lease is free, in
+     *  milliseconds. */
+    static final long WAIT_MILLIS = 200;
+
+    /** Search for the settings of the ciphertext in the file ARGS[2] under
+     *  the configuration file ARGS[0], with n-gram counts from ARGS[1]
+     *  (as written by NgramScorer), printing the best candidates; or, with
+     *  --worker, work for a coordinator.  Options:
+     *      --worker=HOST:PORT  work for the coordinator at HOST:PORT;
+     *      --port=N            port to listen on (default: any free one,
+     *                          which is printed);
+     *      --spawn=N           start N worker processes on this host;
+     *      --lease=N           settings per lease (default 100000);
+     *      --top=K             candidates to report (default 10);
+     *      --rings=N           sweep the rings of the N rightmost slots
+     *                          (default 0);
+     *      --rotors=R,...      use only the named rotors;
+     *      --progress=FILE     record progress in FILE, resuming from it
+     *                          if it exists;
+     *      --timeout=MS        reassign leases of workers silent this
+     *                          long (default 10000). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--worker=(.+:\\d+) --port=(\\d+) "
+                                + "--spawn=(\\d+) --lease=([1-9]\\d*) "
+                                + "--top=([1-9]\\d*) --rings=(\\d+) "
+                                + "--rotors=(.+) --progress=(.+) "
+                                + "--timeout=([1-9]\\d*) --=(.+){0,3}",
+                                args);
+            boolean worker = options.contains("--worker");
+            if (!options.ok() || options.number("--") != (worker ? 0 : 3)) {
+                throw error("Usage: java enigma.KeySearch [options] "
+                            + "CONFIG NGRAMS CIPHERTEXT%n"
+                            + "   or: java enigma.KeySearch "
+                            + "--worker=HOST:PORT");
+            }
+            if (worker) {
+                String address = options.get("--worker").get(0);
+                int colon = address.lastIndexOf(':');
+                work(address.substring(0, colon),
+                     Integer.parseInt(address.substring(colon + 1)));
+            } else {
+                coordinate(options);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp);
+        }
+        System.exit(1);
+    }
+
+    /** Run the search described by OPTIONS (see main) as coordinator. */
+    private static void coordinate(CommandArgs options) throws IOException {
+        List<String> files = options.get("--");
+        Machine config = Main.readConfig(files.get(0));
+        StringBuilder cipher = new StringBuilder();
+        try {
+            for (char c : Files.readString(Paths.get(files.get(2)))
+                     .toCharArray()) {
+                if (config.alphabet().contains(c)) {
+                    cipher.append(c);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", files.get(2));
+        }
+        Job job = new Job(Paths.get(files.get(0)).toAbsolutePath()
+                          .toString(),
+                          Paths.get(files.get(1)).toAbsolutePath()
+                          .toString(),
+                          cipher.toString(),
+                          Integer.parseInt(
+                              Main.option(options, "--rings", "0")),
+                          options.contains("--rotors")
+                          ? Arrays.asList(options.get("--rotors").get(0)
+                                          .split(","))
+                          : null,
+                          Integer.parseInt(Main.option(options, "--top",
+                                                       "" + DEFAULT_TOP)));
+        KeySearch search = new KeySearch(
+            job, Long.parseLong(Main.option(options, "--lease",
+                                            "" + DEFAULT_LEASE)),
+            options.contains("--progress")
+            ? Paths.get(options.get("--progress").get(0)) : null);
+        search.timeout(Long.parseLong(Main.option(options, "--timeout",
+                                                  "" + DEFAULT_TIMEOUT)));
+        List<Process> spawned = new ArrayList<>();
+        List<Candidate> best;
+        try (ServerSocket server = new ServerSocket(
+                 Integer.parseInt(Main.option(options, "--port", "0")), 0,
+                 InetAddress.getLoopbackAddress())) {
+            System.err.printf("Listening on port %d%n",
+                              server.getLocalPort());
+            int spawn = Integer.parseInt(Main.option(options, "--spawn", "0"));
+            for (int i = 0; i < spawn; i += 1) {
+                spawned.add(new ProcessBuilder(
+                    Paths.get(System.getProperty("java.home"), "bin",
+                              "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    "enigma.KeySearch",
+                    "--worker=" + server.getInetAddress().getHostAddress()
+                    + ":" + server.getLocalPort())
+                            .inheritIO().start());
+            }
+            best = search.run(server);
+        } finally {
+            for (Process p : spawned) {
+                p.destroy();
+            }
+        }
+        Searcher searcher = search._searcher;
+        for (Candidate c : best) {
+            System.out.printf("%.4f %s%n    %s%n", c.score,
+                              searcher.space().settingsLine(c.key),
+                              searcher.decrypt(c.key));
+        }
+    }
+
+    /** A coordinator for JOB, handing out leases of LEASESIZE settings and
+     *  recording progress in PROGRESS, if it is not null, resuming from it
+     *  if it exists. */
+    KeySearch(Job job, long leaseSize, Path progress) {
+        _job = job;
+        _searcher = new Searcher(job);
+        _leaseSize = leaseSize;
+        _total = _searcher.space().size();
+        long leases = (_total + leaseSize - 1) / leaseSize;
+        if (leases > Integer.MAX_VALUE) {
+            throw error("lease size too small for %d settings", _total);
+        }
+        _leases = (int) leases;
+        _best = new TopK(job.top);
+        _progress = progress;
+        if (progress != null && Files.exists(progress)) {
+            load(progress);
+        }
+    }
+
+    /** Reassign the leases of workers silent for MILLIS milliseconds. */
+    void timeout(long millis) {
+        _timeoutMillis = millis;
+    }
+
+    /** Return the number of leases. */
+    int leases() {
+        return _leases;
+    }
+
+    /** Return the number of leases finished. */
+    synchronized int leasesDone() {
+        return _done.cardinality();
+    }
+
+    /** Return the number of times a lease was taken back from a worker. */
+    synchronized int reassigned() {
+        return _reassigned;
+    }
+
+    /** Accept workers on SERVER until every lease is done, returning the
+     *  best candidates, best first. */
+    List<Candidate> run(ServerSocket server) {
+        Thread acceptor = new Thread(() -> accept(server),
+                                     "keysearch-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        try {
+            synchronized (this) {
+                while (_done.cardinality() < _leases) {
+                    expire(System.currentTimeMillis());
+                    wait(HEARTBEAT_MILLIS);
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("search interrupted");
+        } finally {
+            try {
+                server.close();
+            } catch (IOException excp) {
+                /* Ignore: the search is over. */
+            }
+            synchronized (this) {
+                for (Socket s : _sockets) {
+                    try {
+                        s.close();
+                    } catch (IOException excp) {
+                        /* Ignore. */
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            return _best.sorted();
+        }
+    }
+
+    /** Work for the coordinator listening on HOST at PORT until it has no
+     *  more leases or goes away. */
+    static void work(String host, int port) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.print("HELLO " + ProcessHandle.current().pid() + "-"
+                      + Thread.currentThread().getName() + "\n");
+            out.flush();
+            String job = in.readLine();
+            if (job == null || !job.startsWith("JOB\t")) {
+                throw error("bad reply from coordinator: %s", job);
+            }
+            Searcher searcher = new Searcher(Job.decode(job.substring(4)));
+            while (true) {
+                out.print("REQUEST\n");
+                out.flush();
+                String reply = in.readLine();
+                if (reply == null || reply.equals("DONE")) {
+                    return;
+                }
+                String[] fields = reply.split(" ");
+                if (fields[0].equals("WAIT")) {
+                    try {
+                        Thread.sleep(Long.parseLong(fields[1]));
+                    } catch (InterruptedException excp) {
+                        return;
+                    }
+                    continue;
+                }
+                String id = fields[1];
+                TopK top = new TopK(searcher.top());
+                long[] last = { System.currentTimeMillis() };
+                searcher.search(Long.parseLong(fields[2]),
+                                Long.parseLong(fields[3]), top, () -> {
+                                    long now = System.currentTimeMillis();
+                                    if (now - last[0] >= HEARTBEAT_MILLIS) {
+                                        out.print("HEARTBEAT " + id + "\n");
+                                        out.flush();
+                                        last[0] = now;
+                                    }
+                                });
+                for (Candidate c : top.sorted()) {
+                    out.print("CANDIDATE " + id + " " + c.score + " " + c.key
+                              + "\n");
+                }
+                out.print("COMPLETE " + id + "\n");
+                out.flush();
+            }
+        }
+    }
+
+    /** Accept connections on SERVER, serving each on its own thread,
+     *  until SERVER is closed. */
+    private void accept(ServerSocket server) {
+        for (int count = 1; !server.isClosed(); count += 1) {
+            try {
+                Socket socket = server.accept();
+                synchronized (this) {
+                    _sockets.add(socket);
+                }
+                Thread t = new Thread(() -> serve(socket),
+                                      "keysearch-worker-" + count);
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Serve the worker connected by SOCKET until it disconnects. */
+    private void serve(Socket socket) {
+        Set<Integer> mine = new HashSet<>();
+        Map<Integer, List<Candidate>> found = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String[] fields = line.split(" ");
+                switch (fields[0]) {
+                case "HELLO":
+                    out.print("JOB\t" + _job.encode() + "\n");
+                    break;
+                case "REQUEST":
+                    out.print(assign(socket, mine) + "\n");
+                    break;
+                case "HEARTBEAT":
+                    heartbeat(socket, Integer.parseInt(fields[1]));
+                    break;
+                case "CANDIDATE":
+                    found.computeIfAbsent(Integer.parseInt(fields[1]),
+                                          k -> new ArrayList<>())
+                        .add(new Candidate(Double.parseDouble(fields[2]),
+                                           Long.parseLong(fields[3])));
+                    break;
+                case "COMPLETE":
+                    int id = Integer.parseInt(fields[1]);
+                    complete(id, found.getOrDefault(id,
+                                                    Collections.emptyList()));
+                    found.remove(id);
+                    mine.remove(id);
+                    break;
+                default:
+                    return;
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException excp) {
+            /* Treat as a disconnection. */
+        } finally {
+            release(socket, mine);
+        }
+    }
+
+    /** Return the reply to a request for a lease from the worker on
+     *  SOCKET, adding any lease given to MINE. */
+    private synchronized String assign(Socket socket, Set<Integer> mine) {
+        if (_done.cardinality() == _leases) {
+            return "DONE";
+        }
+        int id = -1;
+        while (id < 0 && !_returned.isEmpty()) {
+            int r = _returned.poll();
+            if (!_done.get(r) && !_owner.containsKey(r)) {
+                id = r;
+            }
+        }
+        while (id < 0 && _next < _leases) {
+            if (!_done.get(_next)) {
+                id = _next;
+            }
+            _next += 1;
+        }
+        if (id < 0) {
+            return "WAIT " + WAIT_MILLIS;
+        }
+        _owner.put(id, socket);
+        _deadline.put(id, System.currentTimeMillis() + _timeoutMillis);
+        mine.add(id);
+        long from = id * _leaseSize;
+        return "LEASE " + id + " " + from + " "
+            + Math.min(_total, from + _leaseSize);
+    }
+
+    /** Note that the worker on SOCKET is still working on lease ID. */
+    private synchronized void heartbeat(Socket socket, int id) {
+        if (_owner.get(id) == socket) {
+            _deadline.put(id, System.currentTimeMillis() + _timeoutMillis);
+        }
+    }
+
+    /** Record that lease ID is done, with best candidates FOUND, unless it
+     *  was already. */
+    private synchronized void complete(int id, List<Candidate> found) {
+        if (id < 0 || id >= _leases || _done.get(id)) {
+            return;
+        }
+        _done.set(id);
+        _owner.remove(id);
+        _deadline.remove(id);
+        for (Candidate c : found) {
+            _best.offer(c.score, c.key);
+        }
+        if (_progress != null) {
+            save(_progress);
+        }
+        notifyAll();
+    }
+
+    /** Return the leases in MINE still held by the worker on SOCKET to the
+     *  pool. */
+    private synchronized void release(Socket socket, Set<Integer> mine) {
+        for (int id : mine) {
+            if (_owner.get(id) == socket) {
+                _owner.remove(id);
+                _deadline.remove(id);
+                _returned.add(id);
+                _reassigned += 1;
+            }
+        }
+        _sockets.remove(socket);
+        notifyAll();
+    }
+
+    /** Return to the pool the leases whose deadlines are before NOW. */
+    private void expire(long now) {
+        List<Integer> late = new ArrayList<>();
+        for (Map.Entry<Integer, Long> e : _deadline.entrySet()) {
+            if (e.getValue() < now) {
+                late.add(e.getKey());
+            }
+        }
+        for (int id : late) {
+            _owner.remove(id);
+            _deadline.remove(id);
+            _returned.add(id);
+            _reassigned += 1;
+        }
+    }
+
+    /** Record my progress in FILE, replacing it atomically. */
+    private void save(Path file) {
+        Properties props = new Properties();
+        props.setProperty("job", _job.encode());
+        props.setProperty("lease", Long.toString(_leaseSize));
+        StringBuilder done = new StringBuilder();
+        for (int i = _done.nextSetBit(0); i >= 0;
+             i = _done.nextSetBit(_done.nextClearBit(i))) {
+            int end = _done.nextClearBit(i);
+            done.append(done.length() == 0 ? "" : ",").append(i).append('-')
+                .append(end);
+        }
+        props.setProperty("done", done.toString());
+        StringBuilder best = new StringBuilder();
+        for (Candidate c : _best.sorted()) {
+            best.append(best.length() == 0 ? "" : ",").append(c.score)
+                .append(':').append(c.key);
+        }
+        props.setProperty("best", best.toString());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(tmp,
+                                                      StandardCharsets.UTF_8)) {
+                props.store(out, "enigma key search progress");
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write progress file %s", file);
+        }
+    }
+
+    /** Resume from the progress recorded in FILE. */
+    private void load(Path file) {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file,
+                                                 StandardCharsets.UTF_8)) {
+            props.load(in);
+        } catch (IOException excp) {
+            throw error("could not read progress file %s", file);
+        }
+        if (!_job.encode().equals(props.getProperty("job"))
+            || !Long.toString(_leaseSize).equals(props.getProperty("lease"))) {
+            throw error("progress file %s is for a different search", file);
+        }
+        try {
+            for (String range : props.getProperty("done", "").split(",")) {
+                if (!range.isEmpty()) {
+                    String[] ends = range.split("-");
+                    _done.set(Integer.parseInt(ends[0]),
+                              Math.min(_leases, Integer.parseInt(ends[1])));
+                }
+            }
+            for (String c : props.getProperty("best", "").split(",")) {
+                if (!c.isEmpty()) {
+                    String[] parts = c.split(":");
+                    _best.offer(Double.parseDouble(parts[0]),
+                                Long.parseLong(parts[1]));
+                }
+            }
+        } catch (NumberFormatException
+                 | ArrayIndexOutOfBoundsException excp) {
+            throw error("malformed progress file %s", file);
+        }
+    }
+
+    /** A setting and its score. */
+    static final class Candidate {
+
+        /** A candidate with score SCORE for setting KEY. */
+        Candidate(double score, long key) {
+            this.score = score;
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return key + ":" + score;
+        }
+
+        /** Orders candidates best first: higher scores, then lower
+         *  keys. */
+        static final Comparator<Candidate> BEST_FIRST =
+            Comparator.comparingDouble((Candidate c) -> -c.score)
+            .thenComparingLong(c -> c.key);
+
+        /** The score. */
+        final double score;
+
+        /** The setting, as a key in the KeySpace. */
+        final long key;
+    }
+
+    /** The best K candidates offered. */
+    static final class TopK {
+
+        /** An empty set keeping the best K candidates. */
+        TopK(int k) {
+            _k = k;
+        }
+
+        /** Offer the candidate with score SCORE for setting KEY. */
+        void offer(double score, long key) {
+            if (_heap.size() < _k) {
+                _heap.add(new Candidate(score, key));
+            } else {
+                Candidate worst = _heap.peek();
+                if (score > worst.score
+                    || score == worst.score && key < worst.key) {
+                    _heap.poll();
+                    _heap.add(new Candidate(score, key));
+                }
+            }
+        }
+
+        /** Return the score a candidate must reach to be kept. */
+        double threshold() {
+            return _heap.size() < _k ? Double.NEGATIVE_INFINITY
+                : _heap.peek().score;
+        }
+
+        /** Return my candidates, best first. */
+        List<Candidate> sorted() {
+            List<Candidate> result = new ArrayList<>(_heap);
+            result.sort(Candidate.BEST_FIRST);
+            return result;
+        }
+
+        /** Number of candidates kept. */
+        private final int _k;
+
+        /** The candidates, worst first. */
+        private final PriorityQueue<Candidate> _heap =
+            new PriorityQueue<>(Candidate.BEST_FIRST.reversed());
+    }
+
+    /** What to search, as sent to workers. */
+    static final class Job {
+
+        /** The search for the settings of CIPHER, a string of characters
+         *  of the alphabet, under the configuration file CONFIG, scoring
+         *  with the n-gram counts file NGRAMS, sweeping the rings of the
+         *  RINGSLOTS rightmost slots, using only the named ROTORS (all, if
+         *  null), and keeping the TOP best candidates. */
+        Job(String config, String ngrams, String cipher, int ringSlots,
+            List<String> rotors, int top) {
+            this.config = config;
+            this.ngrams = ngrams;
+            this.cipher = cipher;
+            this.ringSlots = ringSlots;
+            this.rotors = rotors;
+            this.top = top;
+        }
+
+        /** Return me as one line of tab-separated fields. */
+        String encode() {
+            return String.join("\t", config, ngrams,
+                               Integer.toString(ringSlots),
+                               rotors == null ? "" : String.join(",", rotors),
+                               Integer.toString(top), cipher);
+        }
+
+        /** Return the job encoded as LINE. */
+        static Job decode(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) {
+                throw error("malformed job: %s", line);
+            }
+            return new Job(fields[0], fields[1], fields[5],
+                           Integer.parseInt(fields[2]),
+                           fields[3].isEmpty() ? null
+                           : Arrays.asList(fields[3].split(",")),
+                           Integer.parseInt(fields[4]));
+        }
+
+        /** Path of the configuration file. */
+        final String config;
+
+        /** Path of the n-gram counts file. */
+        final String ngrams;
+
+        /** The ciphertext. */
+        final String cipher;
+
+        /** Number of rightmost slots whose rings are swept. */
+        final int ringSlots;
+
+        /** Rotors to use, or null for all. */
+        final List<String> rotors;
+
+        /** Number of candidates to keep. */
+        final int top;
+    }
+
+    /** Searches ranges of a job's key space.  Where MachineCompiler can,
+     *  each setting is tried with code generated for its rotor order
+     *  (compiled once per order, which consecutive settings share), and
+     *  otherwise with the reference Machine. */
+    static final class Searcher {
+
+        /** A searcher for JOB, reading its files. */
+        Searcher(Job job) {
+            Machine config = Main.readConfig(job.config);
+            Alphabet alpha = config.alphabet();
+            _machine = config.copy();
+            _machine.setPlugboard(new Permutation("", alpha));
+            _space = new KeySpace(config, job.rotors, job.ringSlots);
+            try (Reader in = Files.newBufferedReader(Paths.get(job.ngrams))) {
+                _scorer = NgramScorer.read(alpha, in);
+            } catch (IOException excp) {
+                throw error("could not read %s", job.ngrams);
+            }
+            _cipher = new int[job.cipher.length()];
+            for (int i = 0; i < _cipher.length; i += 1) {
+                _cipher[i] = alpha.toInt(job.cipher.charAt(i));
+            }
+            _plain = new int[_cipher.length];
+            _top = job.top;
+            _compile = compilable(config);
+            _settings = new int[config.numRotors()];
+            _rings = new int[config.numRotors()];
+        }
+
+        /** Offer the settings FROM .. TO-1 to TOP, calling TICK every so
+         *  often. */
+        void search(long from, long to, TopK top, Runnable tick) {
+            int n = _cipher.length;
+            int order = -1;
+            CompiledMachine compiled = null;
+            for (long key = from; key < to; key += 1) {
+                _space.apply(key, _machine);
+                if (!_compile) {
+                    for (int i = 0; i < n; i += 1) {
+                        _plain[i] = _machine.convert(_cipher[i]);
+                    }
+                } else {
+                    if (_space.order(key) != order) {
+                        order = _space.order(key);
+                        compiled = MachineCompiler.compile(_machine);
+                    } else {
+                        for (int k = 1; k < _settings.length; k += 1) {
+                            _settings[k] = _machine.getRotor(k).setting();
+                            _rings[k] = _machine.getRotor(k).ringSetting();
+                        }
+                        compiled.setRotors(_settings, _rings);
+                    }
+                    System.arraycopy(_cipher, 0, _plain, 0, n);
+                    compiled.convert(_plain, 0, n);
+                }
+                double threshold = top.threshold();
+                double score = _scorer.score(_plain, 0, n, threshold);
+                if (score >= threshold) {
+                    top.offer(score, key);
+                }
+                if ((key & TICK_MASK) == 0) {
+                    tick.run();
+                }
+            }
+        }
+
+        /** Return the decryption of the ciphertext under setting KEY. */
+        String decrypt(long key) {
+            _space.apply(key, _machine);
+            StringBuilder result = new StringBuilder();
+            for (int c : _cipher) {
+                result.append(_machine.alphabet().toChar(
+                    _machine.convert(c)));
+            }
+            return result.toString();
+        }
+
+        /** Return the key space searched. */
+        KeySpace space() {
+            return _space;
+        }
+
+        /** Return the number of candidates to keep. */
+        int top() {
+            return _top;
+        }
+
+        /** Return true iff the compiled engine supports the configuration
+         *  of M. */
+        private static boolean compilable(Machine M) {
+            for (EnigmaEngine engine : EngineRegistry.standard().engines()) {
+                if (engine.name().equals(EngineRegistry.COMPILED)) {
+                    return engine.supports(M);
+                }
+            }
+            return false;
+        }
+
+        /** Call the tick every this many settings, plus one. */
+        private static final long TICK_MASK = (1 << 10) - 1;
+
+        /** The machine decrypting. */
+        private final Machine _machine;
+
+        /** The key space. */
+        private final KeySpace _space;
+
+        /** The scorer. */
+        private final NgramScorer _scorer;
+
+        /** The ciphertext and a buffer for its decryption, as indices. */
+        private final int[] _cipher, _plain;
+
+        /** Number of candidates to keep. */
+        private final int _top;
+
+        /** True iff settings are tried with generated code. */
+        private final boolean _compile;
+
+        /** Rotor and ring settings of the setting being tried, by
+         *  slot. */
+        private final int[] _settings, _rings;
+    }
+
+    /** The search. */
+    private final Job _job;
+
+    /** Searcher used to describe results. */
+    private final Searcher _searcher;
+
+    /** Settings per lease. */
+    private final long _leaseSize;
+
+    /** Number of settings. */
+    private final long _total;
+
+    /** Number of leases. */
+    private final int _leases;
+
+    /** Progress file, or null. */
+    private final Path _progress;
+
+    /** Time after which a silent worker's lease is reassigned. */
+    private long _timeoutMillis = DEFAULT_TIMEOUT;
+
+    /** Leases done. */
+    private final BitSet _done = new BitSet();
+
+    /** Socket of the worker holding each lease out. */
+    private final Map<Integer, Socket> _owner = new HashMap<>();
+
+    /** Time by which each lease out must hear from its worker. */
+    private final Map<Integer, Long> _deadline = new HashMap<>();
+
+    /** Leases taken back from workers. */
+    private final ArrayDeque<Integer> _returned = new ArrayDeque<>();
+
+    /** First lease never handed out. */
+    private int _next;
+
+    /** Number of leases taken back. */
+    private int _reassigned;
+
+    /** Sockets of connected workers. */
+    private final Set<Socket> _sockets = new HashSet<>();
+
+    /** Best candidates of the leases done. */
+    private final TopK _best;
+}
@@ -0,0 +1,237 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch and KeySpace classes.
+ *  @author Yunsu Ha
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CORPUS =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season "
+        + "of Light, it was the season of Darkness, it was the spring of "
+        + "hope, it was the winter of despair.";
+
+    /** Rotors added to CONFIG for the search. */
+    private static final String[] EXTRA_ROTORS = {
+        " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n",
+        " Gamma N   (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n",
+    };
+
+    private static final String PLAIN = "ITWASTHESEASONOFLIGHTITWASTHEAGE";
+
+    private static final String KEY = "* B Beta II I QEZ AAA";
+
+    private static final List<String> ROTORS =
+        Arrays.asList("B", "Beta", "I", "II");
+
+    /** Return a job searching for the settings of PLAIN, encrypted under
+     *  KEY, with configuration CONFIG and EXTRA_ROTORS, writing its files
+     *  in DIR. */
+    private static KeySearch.Job job(Path dir) throws IOException {
+        Path config = writeConfig(dir, EXTRA_ROTORS);
+        Machine mach = Main.readConfig(config.toString());
+        long[] counts = new long[NgramScorer.tableSize(mach.alphabet(), 3)];
+        NgramScorer.count(mach.alphabet(), 3, new StringReader(CORPUS),
+                          counts);
+        Path ngrams = dir.resolve("search.ngrams");
+        try (Writer out = Files.newBufferedWriter(ngrams)) {
+            NgramScorer.write(mach.alphabet(), 3, counts, out);
+        }
+        Main.setUp(mach, KEY);
+        return new KeySearch.Job(config.toString(), ngrams.toString(),
+                                 mach.convert(PLAIN), 0, ROTORS, 3);
+    }
+
+    /** Run SEARCH with WORKERS workers in this JVM, returning its best
+     *  candidates. */
+    private static List<KeySearch.Candidate> run(KeySearch search,
+                                                 int workers)
+        throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(workers + 1);
+        try (ServerSocket server = new ServerSocket(
+                 0, 0, InetAddress.getLoopbackAddress())) {
+            Future<List<KeySearch.Candidate>> result =
+                pool.submit(() -> search.run(server));
+            for (int i = 0; i < workers; i += 1) {
+                pool.submit(() -> {
+                    KeySearch.work(server.getInetAddress().getHostAddress(),
+                                   server.getLocalPort());
+                    return null;
+                });
+            }
+            return result.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Directory for the files of a test. */
+    private Path _dir;
+
+    @Before
+    public void makeDir() throws IOException {
+        _dir = Files.createTempDirectory("enigma-search");
+    }
+
+    @After
+    public void removeDir() throws IOException {
+        try (Stream<Path> files = Files.list(_dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(_dir);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKeySpace() {
+        Machine mach = navalMachine();
+        KeySpace space = new KeySpace(mach, null, 2);
+        assertEquals(2 * 2 * 8 * 7 * 6 * 26L * 26 * 26 * 26 * 26 * 26,
+                     space.size());
+        Machine direct = mach.copy(), parsed = mach.copy();
+        direct.setPlugboard(new Permutation("", mach.alphabet()));
+        for (long key : new long[] { 0, 1, 456975, 456976, 98765432109L,
+                                     space.size() - 1 }) {
+            space.apply(key, direct);
+            Main.setUp(parsed, space.settingsLine(key));
+            assertEquals(parsed.convert(UPPER_STRING),
+                         direct.convert(UPPER_STRING));
+        }
+        assertTrue(space.settingsLine(space.size() - 1)
+                   .endsWith(" ZZZZ AAZZ"));
+    }
+
+    @Test
+    public void testFindsKey() throws Exception {
+        KeySearch search = new KeySearch(job(_dir), 5000, null);
+        List<KeySearch.Candidate> best = run(search, 3);
+        assertEquals(3, best.size());
+        KeySearch.Searcher searcher = new KeySearch.Searcher(job(_dir));
+        assertEquals(KEY, searcher.space().settingsLine(best.get(0).key));
+        assertEquals(PLAIN, searcher.decrypt(best.get(0).key));
+        assertEquals(search.leases(), search.leasesDone());
+    }
+
+    @Test
+    public void testSpawnedWorkers() throws IOException {
+        KeySearch.Job job = job(_dir);
+        Path cipher = _dir.resolve("search.txt");
+        Files.write(cipher, job.cipher.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out, stderr = System.err;
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(new ByteArrayOutputStream(), true));
+        try {
+            KeySearch.main("--spawn=2", "--lease=5000", "--top=3",
+                           "--rotors=" + String.join(",", ROTORS),
+                           job.config, job.ngrams, cipher.toString());
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(6, lines.length);
+        assertTrue(lines[0].endsWith(" " + KEY));
+        assertEquals("    " + PLAIN, lines[1]);
+    }
+
+    @Test
+    public void testDeadWorker() throws Exception {
+        KeySearch search = new KeySearch(job(_dir), 5000, null);
+        search.timeout(500);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try (ServerSocket server = new ServerSocket(
+                 0, 0, InetAddress.getLoopbackAddress())) {
+            Future<List<KeySearch.Candidate>> result =
+                pool.submit(() -> search.run(server));
+            String host = server.getInetAddress().getHostAddress();
+            Socket dead = new Socket(host, server.getLocalPort());
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                dead.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(dead.getOutputStream(), true);
+            out.print("HELLO dead\nREQUEST\n");
+            out.flush();
+            assertTrue(in.readLine().startsWith("JOB\t"));
+            assertTrue(in.readLine().startsWith("LEASE 0 "));
+            Socket hung = new Socket(host, server.getLocalPort());
+            in = new BufferedReader(new InputStreamReader(
+                hung.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(hung.getOutputStream(), true);
+            out.print("HELLO hung\nREQUEST\n");
+            out.flush();
+            in.readLine();
+            assertTrue(in.readLine().startsWith("LEASE 1 "));
+            dead.close();
+            pool.submit(() -> {
+                KeySearch.work(host, server.getLocalPort());
+                return null;
+            });
+            List<KeySearch.Candidate> best = result.get();
+            hung.close();
+            assertTrue(search.reassigned() >= 2);
+            KeySearch.Searcher searcher = new KeySearch.Searcher(job(_dir));
+            assertEquals(KEY,
+                         searcher.space().settingsLine(best.get(0).key));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        Path progress = _dir.resolve("search.progress");
+        KeySearch search = new KeySearch(job(_dir), 20000, progress);
+        List<KeySearch.Candidate> best = run(search, 2);
+        KeySearch resumed = new KeySearch(job(_dir), 20000, progress);
+        assertEquals(resumed.leases(), resumed.leasesDone());
+        List<KeySearch.Candidate> again = run(resumed, 0);
+        assertEquals(best.toString(), again.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testWrongProgress() throws Exception {
+        Path progress = _dir.resolve("search.progress");
+        run(new KeySearch(job(_dir), 20000, progress), 1);
+        new KeySearch(job(_dir), 30000, progress);
+    }
+}
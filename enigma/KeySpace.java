@@ -0,0 +1,205 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The settings of a configuration that a key search tries, numbered by
+ *  longs from 0 to size() - 1.  A setting is a rotor order (a reflector,
+ *  then distinct non-moving rotors, then distinct moving rotors in the
+ *  rightmost slots, one per pawl as far as the slots allow, as
+ *  WorkloadGenerator chooses them), rotor positions, and ring settings
+ *  for the rightmost few slots (the others' rings at the first letter of
+ *  the alphabet).  The plugboard is left empty.  Positions vary fastest
+ *  as the number increases, then rings, then rotor order, so that
+ *  consecutive settings differ in few rotors.
+ *  @author Yunsu Ha
+ */
+final class KeySpace {
+
+    /** The settings of the configuration of CONFIG using only the rotors
+     *  named in ROTORS (or all its rotors, if ROTORS is null), with the
+     *  rings of the rightmost RINGSLOTS slots swept. */
+    KeySpace(Machine config, Collection<String> rotors, int ringSlots) {
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        _numRotors = config.numRotors();
+        _ringSlots = ringSlots;
+        if (ringSlots < 0 || ringSlots > _numRotors - 1) {
+            throw error("cannot sweep rings of %d slots", ringSlots);
+        }
+        List<String> reflectors = new ArrayList<>(), moving =
+            new ArrayList<>(), fixed = new ArrayList<>();
+        for (Rotor r : config.allRotors()) {
+            if (rotors != null && !rotors.contains(r.name())) {
+                continue;
+            } else if (r.type() == 3) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        int movers = Math.min(config.numPawls(), _numRotors - 1);
+        for (String reflector : reflectors) {
+            String[] order = new String[_numRotors];
+            order[0] = reflector;
+            addOrders(order, 1, _numRotors - movers, fixed, moving);
+        }
+        if (_orders.isEmpty()) {
+            throw error("no rotor orders to search");
+        }
+        _positions = power(_size, _numRotors - 1);
+        _rings = power(_size, ringSlots);
+        _total = multiply(multiply(_orders.size(), _rings), _positions);
+    }
+
+    /** Return the number of settings. */
+    long size() {
+        return _total;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of rightmost slots whose rings are swept. */
+    int ringSlots() {
+        return _ringSlots;
+    }
+
+    /** Return the number of rotor orders. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the rotor order of setting KEY, as an index. */
+    int order(long key) {
+        return (int) (key / _positions / _rings);
+    }
+
+    /** Return the names of the rotors in rotor order ORDER, the reflector
+     *  first.  The result must not be modified. */
+    String[] rotorNames(int order) {
+        return _orders.get(order);
+    }
+
+    /** Put M, a machine with my configuration, in setting KEY, inserting
+     *  rotors only if its rotor order is different. */
+    void apply(long key, Machine M) {
+        String[] names = _orders.get(order(key));
+        boolean same = true;
+        for (int k = 0; k < _numRotors && same; k += 1) {
+            same = M.getRotor(k) != null
+                && M.getRotor(k).name().equals(names[k]);
+        }
+        if (!same) {
+            M.insertRotors(names);
+        }
+        long posns = key % _positions;
+        long rings = key / _positions % _rings;
+        for (int k = _numRotors - 1; k >= 1; k -= 1) {
+            M.getRotor(k).set((int) (posns % _size));
+            posns /= _size;
+            if (k >= _numRotors - _ringSlots) {
+                M.getRotor(k).setRings(_alphabet.toChar((int) (rings
+                                                              % _size)));
+                rings /= _size;
+            } else {
+                M.getRotor(k).setRings(_alphabet.toChar(0));
+            }
+        }
+    }
+
+    /** Return a settings line for setting KEY, with an empty plugboard,
+     *  that Main.setUp accepts. */
+    String settingsLine(long key) {
+        StringBuilder line = new StringBuilder("*");
+        for (String name : _orders.get(order(key))) {
+            line.append(' ').append(name);
+        }
+        char[] posns = new char[_numRotors - 1];
+        char[] rings = new char[_numRotors - 1];
+        long p = key % _positions, r = key / _positions % _rings;
+        for (int k = _numRotors - 2; k >= 0; k -= 1) {
+            posns[k] = _alphabet.toChar((int) (p % _size));
+            p /= _size;
+            if (k >= _numRotors - 1 - _ringSlots) {
+                rings[k] = _alphabet.toChar((int) (r % _size));
+                r /= _size;
+            } else {
+                rings[k] = _alphabet.toChar(0);
+            }
+        }
+        return line.append(' ').append(posns).append(' ').append(rings)
+            .toString();
+    }
+
+    /** Add to _orders every completion of ORDER from slot K on, with
+     *  FIXED rotors up to slot MOVINGFROM and MOVING ones from there. */
+    private void addOrders(String[] order, int k, int movingFrom,
+                           List<String> fixed, List<String> moving) {
+        if (k == order.length) {
+            _orders.add(order.clone());
+            return;
+        }
+        for (String name : k < movingFrom ? fixed : moving) {
+            boolean used = false;
+            for (int j = 1; j < k; j += 1) {
+                used |= order[j].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                addOrders(order, k + 1, movingFrom, fixed, moving);
+            }
+        }
+    }
+
+    /** Return BASE to the power EXP, checking for overflow. */
+    private static long power(long base, int exp) {
+        long result = 1;
+        for (int i = 0; i < exp; i += 1) {
+            result = multiply(result, base);
+        }
+        return result;
+    }
+
+    /** Return X * Y, checking for overflow. */
+    private static long multiply(long x, long y) {
+        try {
+            return Math.multiplyExact(x, y);
+        } catch (ArithmeticException excp) {
+            throw error("key space too large");
+        }
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Its size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of rightmost slots whose rings are swept. */
+    private final int _ringSlots;
+
+    /** The rotor orders. */
+    private final List<String[]> _orders = new ArrayList<>();
+
+    /** Numbers of position and ring combinations. */
+    private final long _positions, _rings;
+
+    /** Number of settings. */
+    private final long _total;
+}
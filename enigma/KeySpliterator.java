@@ -0,0 +1,300 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/** The settings of a KeySpace that meet some Constraints, as a
+ *  Spliterator of their keys in increasing order, for LongStreams.  The
+ *  settings meeting the constraints are numbered 0 .. size - 1 in mixed
+ *  radix, with a digit for the rotor order (over the orders allowed), one
+ *  for each swept ring and one for each rotor position (over the ranges
+ *  allowed), in order of significance in the key; so a range of numbers
+ *  splits in half by arithmetic alone, every part has an exact size, and
+ *  forEachRemaining steps from key to key by additions.  Each worker of a
+ *  parallel stream can then put a machine of its own in each setting with
+ *  KeySpace.apply, which allocates nothing.  For example,
+ *
+ *      ThreadLocal<Machine> machines = ThreadLocal.withInitial(M::copy);
+ *      new KeySpliterator.Constraints(space).reflector("B")
+ *          .positions(4, 'A', 'M').stream()
+ *          .forEach(key -> {
+ *              Machine mach = machines.get();
+ *              space.apply(key, mach);
+ *              ...
+ *          });
+ *  @author Yunsu Ha
+ */
+final class KeySpliterator implements Spliterator.OfLong {
+
+    /** The settings numbered FROM .. TO-1 by the digits ORDERS, LOW,
+     *  COUNT and WEIGHT (see Constraints). */
+    private KeySpliterator(int[] orders, int[] low, int[] count,
+                           long[] weight, long from, long to) {
+        _orders = orders;
+        _low = low;
+        _count = count;
+        _weight = weight;
+        _from = from;
+        _to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(LongConsumer action) {
+        if (_from >= _to) {
+            return false;
+        }
+        long rest = _from;
+        long key = 0;
+        for (int d = _count.length - 1; d >= 0; d -= 1) {
+            key += value(d, (int) (rest % _count[d])) * _weight[d];
+            rest /= _count[d];
+        }
+        _from += 1;
+        action.accept(key);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(LongConsumer action) {
+        if (_from >= _to) {
+            return;
+        }
+        int last = _count.length - 1;
+        int[] digits = new int[_count.length];
+        long rest = _from;
+        long key = 0;
+        for (int d = last; d >= 0; d -= 1) {
+            digits[d] = (int) (rest % _count[d]);
+            rest /= _count[d];
+            key += value(d, digits[d]) * _weight[d];
+        }
+        long n = _to - _from;
+        _from = _to;
+        action.accept(key);
+        for (long i = 1; i < n; i += 1) {
+            int d = last;
+            while (digits[d] == _count[d] - 1) {
+                key -= (value(d, digits[d]) - value(d, 0)) * _weight[d];
+                digits[d] = 0;
+                d -= 1;
+            }
+            key += (value(d, digits[d] + 1) - value(d, digits[d]))
+                * _weight[d];
+            digits[d] += 1;
+            action.accept(key);
+        }
+    }
+
+    @Override
+    public KeySpliterator trySplit() {
+        long n = _to - _from;
+        if (n < 2) {
+            return null;
+        }
+        long mid = _from + n / 2;
+        KeySpliterator prefix =
+            new KeySpliterator(_orders, _low, _count, _weight, _from, mid);
+        _from = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return _to - _from;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL
+            | IMMUTABLE;
+    }
+
+    @Override
+    public Comparator<? super Long> getComparator() {
+        return null;
+    }
+
+    /** Return the value in the key of digit D when it is V. */
+    private long value(int d, int v) {
+        return d == 0 ? _orders[v] : _low[d] + v;
+    }
+
+    /** The constraints on the settings of a KeySpace to visit: the
+     *  rotors in given slots, and ranges of the positions and of the
+     *  swept rings of given slots.  Each constraint narrows those already
+     *  given. */
+    static final class Constraints {
+
+        /** No constraints on the settings of SPACE. */
+        Constraints(KeySpace space) {
+            _space = space;
+            _alphabet = space.alphabet();
+            int numRotors = space.numRotors();
+            _names = new String[numRotors];
+            _posLow = new int[numRotors];
+            _posHigh = new int[numRotors];
+            _ringLow = new int[numRotors];
+            _ringHigh = new int[numRotors];
+            for (int k = 1; k < numRotors; k += 1) {
+                _posHigh[k] = _alphabet.size() - 1;
+                if (k >= numRotors - space.ringSlots()) {
+                    _ringHigh[k] = _alphabet.size() - 1;
+                }
+            }
+        }
+
+        /** Allow only the reflector named NAME. */
+        Constraints reflector(String name) {
+            return rotor(0, name);
+        }
+
+        /** Allow only the rotor named NAME in slot SLOT (0 for the
+         *  reflector). */
+        Constraints rotor(int slot, String name) {
+            checkSlot(slot, 0);
+            if (_names[slot] != null && !_names[slot].equals(name)) {
+                _empty = true;
+            }
+            _names[slot] = name;
+            return this;
+        }
+
+        /** Allow only the positions FROM .. TO (inclusive, by their order
+         *  in the alphabet) for the rotor in slot SLOT. */
+        Constraints positions(int slot, char from, char to) {
+            checkSlot(slot, 1);
+            _posLow[slot] = Math.max(_posLow[slot], index(from));
+            _posHigh[slot] = Math.min(_posHigh[slot], index(to));
+            return this;
+        }
+
+        /** Allow only the ring settings FROM .. TO (inclusive, by their
+         *  order in the alphabet) for the rotor in slot SLOT, which must be
+         *  one whose rings are swept. */
+        Constraints rings(int slot, char from, char to) {
+            checkSlot(slot, _space.numRotors() - _space.ringSlots());
+            _ringLow[slot] = Math.max(_ringLow[slot], index(from));
+            _ringHigh[slot] = Math.min(_ringHigh[slot], index(to));
+            return this;
+        }
+
+        /** Return the number of settings allowed. */
+        long size() {
+            return spliterator().estimateSize();
+        }
+
+        /** Return a spliterator over the keys of the settings allowed. */
+        KeySpliterator spliterator() {
+            int numRotors = _space.numRotors();
+            int ringSlots = _space.ringSlots();
+            int digits = numRotors + ringSlots;
+            int[] orders = allowedOrders();
+            int[] low = new int[digits], count = new int[digits];
+            long[] weight = new long[digits];
+            long size = _alphabet.size();
+            long scale = 1;
+            for (int k = numRotors - 1; k >= 1; k -= 1) {
+                int d = ringSlots + k;
+                low[d] = _posLow[k];
+                count[d] = _posHigh[k] - _posLow[k] + 1;
+                weight[d] = scale;
+                scale *= size;
+            }
+            for (int k = numRotors - 1; k >= numRotors - ringSlots; k -= 1) {
+                int d = k - (numRotors - 1 - ringSlots);
+                low[d] = _ringLow[k];
+                count[d] = _ringHigh[k] - _ringLow[k] + 1;
+                weight[d] = scale;
+                scale *= size;
+            }
+            count[0] = orders.length;
+            weight[0] = scale;
+            long total = 1;
+            for (int c : count) {
+                total = c <= 0 ? 0 : total * c;
+            }
+            return new KeySpliterator(orders, low, count, weight, 0, total);
+        }
+
+        /** Return a parallel stream of the keys of the settings
+         *  allowed. */
+        LongStream stream() {
+            return StreamSupport.longStream(spliterator(), true);
+        }
+
+        /** Return the indices of the rotor orders allowed, in increasing
+         *  order. */
+        private int[] allowedOrders() {
+            if (_empty) {
+                return new int[0];
+            }
+            int[] result = new int[_space.orders()];
+            int n = 0;
+            for (int i = 0; i < result.length; i += 1) {
+                String[] names = _space.rotorNames(i);
+                boolean ok = true;
+                for (int k = 0; k < names.length && ok; k += 1) {
+                    ok = _names[k] == null || _names[k].equals(names[k]);
+                }
+                if (ok) {
+                    result[n] = i;
+                    n += 1;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+
+        /** Check that SLOT is between FIRST and the last slot. */
+        private void checkSlot(int slot, int first) {
+            if (slot < first || slot >= _space.numRotors()) {
+                throw error("slot %d cannot be constrained here", slot);
+            }
+        }
+
+        /** Return the index of C in my alphabet, checking that it is
+         *  there. */
+        private int index(char c) {
+            if (!_alphabet.contains(c)) {
+                throw error("'%c' is not in the alphabet", c);
+            }
+            return _alphabet.toInt(c);
+        }
+
+        /** The key space. */
+        private final KeySpace _space;
+
+        /** Its alphabet. */
+        private final Alphabet _alphabet;
+
+        /** The name of the rotor required in each slot, or null. */
+        private final String[] _names;
+
+        /** Ranges of positions and rings allowed in each slot, as alphabet
+         *  indices. */
+        private final int[] _posLow, _posHigh, _ringLow, _ringHigh;
+
+        /** True iff two constraints have ruled out every setting. */
+        private boolean _empty;
+    }
+
+    /** Indices of the rotor orders allowed. */
+    private final int[] _orders;
+
+    /** Lowest value in the key of each digit but the first. */
+    private final int[] _low;
+
+    /** Number of values of each digit. */
+    private final int[] _count;
+
+    /** Weight of each digit in the key. */
+    private final long[] _weight;
+
+    /** Number of the next setting, and of the one after my last. */
+    private long _from, _to;
+}
@@ -0,0 +1,159 @@
+package enigma;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.LongStream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpliterator class.
+ *  @author Yunsu Ha
+ */
+public class KeySpliteratorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Rotors of the small key spaces searched. */
+    private static final List<String> ROTORS =
+        List.of("B", "C", "Beta", "Gamma", "I", "II", "III");
+
+    /** Return the key space of the naval machine with ROTORS, sweeping
+     *  the rings of RINGSLOTS slots. */
+    private static KeySpace space(int ringSlots) {
+        return new KeySpace(navalMachine(), ROTORS, ringSlots);
+    }
+
+    /** Return the key space of the naval machine with reflector B, Beta
+     *  and rotors I to III, sweeping the rings of RINGSLOTS slots. */
+    private static KeySpace smallSpace(int ringSlots) {
+        return new KeySpace(navalMachine(),
+                            List.of("B", "Beta", "I", "II", "III"),
+                            ringSlots);
+    }
+
+    /** Return the position of the rotor in slot K of the naval machine
+     *  in setting KEY, as a character. */
+    private static char position(long key, int k) {
+        for (int j = k; j < 4; j += 1) {
+            key /= 26;
+        }
+        return UPPER.toChar((int) (key % 26));
+    }
+
+    /** Return constraints on SPACE for testSplits. */
+    private static KeySpliterator.Constraints constrained(KeySpace space) {
+        return new KeySpliterator.Constraints(space).reflector("B")
+            .positions(1, 'A', 'B').positions(2, 'C', 'E')
+            .positions(3, 'D', 'K');
+    }
+
+    /** Return the keys of SPLIT, visited by tryAdvance. */
+    private static long[] advance(Spliterator.OfLong split) {
+        LongStream.Builder result = LongStream.builder();
+        while (split.tryAdvance((long key) -> result.add(key))) {
+            continue;
+        }
+        return result.build().toArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testUnconstrained() {
+        KeySpace space = smallSpace(0);
+        KeySpliterator.Constraints all = new KeySpliterator.Constraints(space);
+        assertEquals(space.size(), all.size());
+        assertArrayEquals(LongStream.range(0, space.size()).toArray(),
+                          all.stream().toArray());
+    }
+
+    @Test
+    public void testConstrained() {
+        KeySpace space = space(0);
+        KeySpliterator.Constraints some = new KeySpliterator.Constraints(space)
+            .reflector("C").rotor(3, "II").positions(4, 'C', 'H')
+            .positions(2, 'X', 'Z').positions(4, 'A', 'F');
+        long[] expected = LongStream.range(0, space.size()).filter(key -> {
+            String[] names = space.rotorNames(space.order(key));
+            char last = position(key, 4);
+            char second = position(key, 2);
+            return names[0].equals("C") && names[3].equals("II")
+                && last >= 'C' && last <= 'F'
+                && second >= 'X' && second <= 'Z';
+        }).toArray();
+        assertEquals(expected.length, some.size());
+        assertArrayEquals(expected, some.stream().toArray());
+        assertArrayEquals(expected, advance(some.spliterator()));
+    }
+
+    @Test
+    public void testRings() {
+        KeySpace space = space(2);
+        KeySpliterator.Constraints some = new KeySpliterator.Constraints(space)
+            .rotor(1, "Gamma").rings(4, 'B', 'C').rings(3, 'Z', 'Z')
+            .positions(1, 'Q', 'Q');
+        assertEquals(12 * 2 * 26 * 26 * 26, some.size());
+        Machine mach = navalMachine();
+        some.stream().limit(2000).forEach(key -> {
+            Machine local = mach.copy();
+            space.apply(key, local);
+            assertEquals("Gamma", local.getRotor(1).name());
+            assertEquals(UPPER.toInt('Q'), local.getRotor(1).setting());
+            assertEquals(UPPER.toInt('Z'), local.getRotor(3).ringSetting());
+            int ring = local.getRotor(4).ringSetting();
+            assertTrue(ring == UPPER.toInt('B') || ring == UPPER.toInt('C'));
+        });
+        try {
+            some.rings(2, 'A', 'B');
+            fail("rings of an unswept slot constrained");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testSplits() {
+        KeySpace space = smallSpace(1);
+        KeySpliterator whole = constrained(space).spliterator();
+        long size = whole.estimateSize();
+        assertTrue(whole.hasCharacteristics(Spliterator.SUBSIZED));
+        KeySpliterator left = whole.trySplit();
+        assertEquals(size / 2, left.estimateSize());
+        assertEquals(size - size / 2, whole.estimateSize());
+        KeySpliterator inner = left.trySplit();
+        long[] keys = advance(inner.trySplit());
+        LongStream.Builder rest = LongStream.builder();
+        inner.forEachRemaining((long key) -> rest.add(key));
+        left.forEachRemaining((long key) -> rest.add(key));
+        whole.forEachRemaining((long key) -> rest.add(key));
+        long[] all = LongStream.concat(LongStream.of(keys), rest.build())
+            .toArray();
+        assertEquals(size, all.length);
+        assertArrayEquals(LongStream.range(0, space.size()).filter(key ->
+            space.rotorNames(space.order(key))[0].equals("B")
+            && position(key, 1) <= 'B'
+            && position(key, 2) >= 'C' && position(key, 2) <= 'E'
+            && position(key, 3) >= 'D' && position(key, 3) <= 'K')
+                          .toArray(), all);
+    }
+
+    @Test
+    public void testEmpty() {
+        KeySpliterator.Constraints none =
+            new KeySpliterator.Constraints(space(0))
+            .rotor(2, "I").rotor(2, "II");
+        assertEquals(0, none.size());
+        assertEquals(0, none.stream().count());
+        assertEquals(0, new KeySpliterator.Constraints(space(0))
+                     .positions(1, 'M', 'C').stream().count());
+    }
+}
@@ -0,0 +1,331 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** A bounded cache of keystream for one machine configuration.  For a
+ *  settings line and a chunk of CHUNK consecutive positions after it,
+ *  an entry holds the machine's complete permutation at each of those
+ *  positions, so that converting a message under settings seen before
+ *  is a table lookup per character, with no stepping or rotor traversal.
+ *  Settings are normalized first (see normalize), so lines differing
+ *  only in spacing share entries.  Each settings line is applied to a
+ *  fresh copy of the machine the cache was made from, so ring settings it
+ *  omits are that machine's, not left over from earlier lines.
+ *
+ *  The cache holds at most a given number of bytes of tables.  Its
+ *  entries are spread over independently locked stripes, each evicting
+ *  its least recently used entries when over its share of the limit, so
+ *  that concurrent users rarely contend.  Hits, misses and evictions are
+ *  counted.
+ *  @author Yunsu Ha
+ */
+final class KeystreamCache {
+
+    /** Positions per entry. */
+    static final int CHUNK = 256;
+
+    /** Default number of stripes. */
+    static final int DEFAULT_STRIPES = 16;
+
+    /** Approximate fixed cost of an entry, in bytes, besides its table and
+     *  settings string. */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    /** A cache of keystream for the configuration of CONFIG (whose rotor
+     *  settings do not matter), holding at most MAXBYTES bytes in STRIPES
+     *  stripes. */
+    KeystreamCache(Machine config, long maxBytes, int stripes) {
+        _config = config.copy();
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        _stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i += 1) {
+            _stripes[i] = new Stripe(maxBytes / stripes);
+        }
+    }
+
+    /** A cache of keystream for the configuration of CONFIG holding at
+     *  most MAXBYTES bytes. */
+    KeystreamCache(Machine config, long maxBytes) {
+        this(config, maxBytes, DEFAULT_STRIPES);
+    }
+
+    /** Return the conversion of MSG under settings line SETTINGS, as
+     *  Machine.convert would give it right after Main.setUp. */
+    String convert(String settings, String msg) {
+        char[] text = msg.toCharArray();
+        convert(settings, 0, text, 0, text.length);
+        return new String(text);
+    }
+
+    /** Convert TEXT[FROM .. TO-1] in place, as the characters at
+     *  positions OFFSET, OFFSET + 1, ... of a message under settings line
+     *  SETTINGS. */
+    void convert(String settings, long offset, char[] text, int from,
+                 int to) {
+        String key = normalize(settings);
+        Cursor cursor = null;
+        int i = from;
+        while (i < to) {
+            long pos = offset + (i - from);
+            long chunk = pos / CHUNK;
+            int within = (int) (pos % CHUNK);
+            char[] table = get(key, chunk);
+            if (table == null) {
+                if (cursor == null) {
+                    cursor = new Cursor(settings);
+                }
+                table = cursor.generate(chunk);
+                put(key, chunk, table);
+            }
+            int end = (int) Math.min(to, i + (long) (CHUNK - within));
+            for (int base = within * _size; i < end; i += 1) {
+                int c = _alphabet.toInt(text[i]);
+                text[i] = table[base + (c < 0 ? _size - 1 : c)];
+                base += _size;
+            }
+        }
+    }
+
+    /** Return SETTINGS in normal form: its items separated by single
+     *  spaces. */
+    static String normalize(String settings) {
+        StringBuilder result = new StringBuilder(settings.length());
+        boolean blank = false;
+        for (int i = 0; i < settings.length(); i += 1) {
+            char c = settings.charAt(i);
+            if (c == ' ' || c == '\t') {
+                blank = true;
+            } else {
+                if (blank && result.length() > 0) {
+                    result.append(' ');
+                }
+                blank = false;
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the number of lookups that found their entry. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of lookups that did not. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of entries evicted. */
+    long evictions() {
+        return _evictions.sum();
+    }
+
+    /** Return the number of entries held. */
+    int entries() {
+        int result = 0;
+        for (Stripe s : _stripes) {
+            s.lock.lock();
+            try {
+                result += s.map.size();
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of bytes held, by my estimate. */
+    long bytes() {
+        long result = 0;
+        for (Stripe s : _stripes) {
+            s.lock.lock();
+            try {
+                result += s.bytes;
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        long hits = hits(), total = hits + misses();
+        return String.format("%d hits, %d misses (%.1f%% hit rate), "
+                             + "%d evictions, %d entries, %d bytes",
+                             hits, misses(),
+                             total == 0 ? 0.0 : 100.0 * hits / total,
+                             evictions(), entries(), bytes());
+    }
+
+    /** Return the table for chunk CHUNK under settings KEY, or null. */
+    private char[] get(String key, long chunk) {
+        Key k = new Key(key, chunk);
+        Stripe s = stripe(k);
+        char[] result;
+        s.lock.lock();
+        try {
+            result = s.map.get(k);
+        } finally {
+            s.lock.unlock();
+        }
+        if (result == null) {
+            _misses.increment();
+        } else {
+            _hits.increment();
+        }
+        return result;
+    }
+
+    /** Store TABLE for chunk CHUNK under settings KEY, evicting least
+     *  recently used entries as needed. */
+    private void put(String key, long chunk, char[] table) {
+        Key k = new Key(key, chunk);
+        Stripe s = stripe(k);
+        long bytes = cost(k, table);
+        if (bytes > s.limit) {
+            return;
+        }
+        s.lock.lock();
+        try {
+            char[] old = s.map.put(k, table);
+            if (old != null) {
+                s.bytes -= cost(k, old);
+            }
+            s.bytes += bytes;
+            Iterator<Map.Entry<Key, char[]>> eldest =
+                s.map.entrySet().iterator();
+            while (s.bytes > s.limit) {
+                Map.Entry<Key, char[]> e = eldest.next();
+                s.bytes -= cost(e.getKey(), e.getValue());
+                eldest.remove();
+                _evictions.increment();
+            }
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /** Return the stripe holding K. */
+    private Stripe stripe(Key k) {
+        int h = k.hashCode();
+        h ^= h >>> 16;
+        return _stripes[Math.floorMod(h, _stripes.length)];
+    }
+
+    /** Return the estimated size in bytes of an entry with key K and
+     *  table TABLE. */
+    private static long cost(Key k, char[] table) {
+        return ENTRY_OVERHEAD + 2L * table.length + 2L * k.settings.length();
+    }
+
+    /** A machine set up for one settings line, advanced to some position
+     *  after it, from which chunks of keystream are generated. */
+    private final class Cursor {
+
+        /** A cursor at position 0 after SETTINGS. */
+        Cursor(String settings) {
+            _machine = _config.copy();
+            Main.setUp(_machine, settings);
+        }
+
+        /** Return the table for chunk CHUNK, which must not precede the
+         *  chunk I am at, leaving me at the start of the next chunk. */
+        char[] generate(long chunk) {
+            for (long start = chunk * CHUNK; _position < start;
+                 _position += 1) {
+                _machine.advanceRotors();
+            }
+            char[] result = new char[CHUNK * _size];
+            for (int p = 0; p < CHUNK; p += 1) {
+                _machine.advanceRotors();
+                for (int c = 0; c < _size; c += 1) {
+                    result[p * _size + c] =
+                        _alphabet.toChar(_machine.map(c));
+                }
+            }
+            _position += CHUNK;
+            return result;
+        }
+
+        /** The machine. */
+        private final Machine _machine;
+
+        /** Number of characters the machine has been advanced past. */
+        private long _position;
+    }
+
+    /** Identifies an entry. */
+    private static final class Key {
+
+        /** The key for chunk CHUNK under normalized settings SETTINGS. */
+        Key(String settings, long chunk) {
+            this.settings = settings;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return chunk == other.chunk && settings.equals(other.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return settings.hashCode() * 31 + Long.hashCode(chunk);
+        }
+
+        /** Normalized settings line. */
+        private final String settings;
+
+        /** Chunk index. */
+        private final long chunk;
+    }
+
+    /** A part of the cache with its own lock and share of the limit. */
+    private static final class Stripe {
+
+        /** A stripe holding at most LIMIT bytes. */
+        Stripe(long limit) {
+            this.limit = limit;
+        }
+
+        /** Guards the fields below. */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** Entries, least recently used first. */
+        private final LinkedHashMap<Key, char[]> map =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+        /** Bytes held. */
+        private long bytes;
+
+        /** Most bytes to hold. */
+        private final long limit;
+    }
+
+    /** Prototype machine of the configuration. */
+    private final Machine _config;
+
+    /** Alphabet of the configuration. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The stripes. */
+    private final Stripe[] _stripes;
+
+    /** Counts of lookups and evictions. */
+    private final LongAdder _hits = new LongAdder(), _misses = new LongAdder(),
+        _evictions = new LongAdder();
+}
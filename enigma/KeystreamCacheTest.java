@@ -0,0 +1,129 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Yunsu Ha
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String SETTING1 =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+    private static final String SETTING2 = "* B Beta I II III AAAA";
+
+    /** Return a random message of LENGTH letters chosen with RAND. */
+    private static String randomMessage(Random rand, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return MSG converted by a fresh machine set up with SETTINGS. */
+    private static String expected(String settings, String msg) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, settings);
+        return mach.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        KeystreamCache cache = new KeystreamCache(navalMachine(), 1 << 22);
+        Random rand = new Random(38);
+        for (int length : new int[] { 0, 1, 255, 256, 257, 3000 }) {
+            String msg = randomMessage(rand, length);
+            assertEquals(expected(SETTING1, msg),
+                         cache.convert(SETTING1, msg));
+            assertEquals(expected(SETTING2, msg),
+                         cache.convert(SETTING2, msg));
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     cache.convert("*  B Beta III IV I AXLE (HQ) (EX) "
+                                   + "(IP)\t(TR) (BY) ",
+                                   "FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testOffsets() {
+        KeystreamCache cache = new KeystreamCache(navalMachine(), 1 << 22);
+        String msg = randomMessage(new Random(1), 2000);
+        String whole = expected(SETTING1, msg);
+        char[] part = msg.substring(700, 1300).toCharArray();
+        cache.convert(SETTING1, 700, part, 0, part.length);
+        assertEquals(whole.substring(700, 1300), new String(part));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        KeystreamCache cache = new KeystreamCache(navalMachine(), 1 << 22);
+        String msg = randomMessage(new Random(2), 600);
+        cache.convert(SETTING1, msg);
+        assertEquals(0, cache.hits());
+        assertEquals(3, cache.misses());
+        cache.convert(SETTING1, msg);
+        cache.convert(SETTING1 + "  ", msg.substring(0, 10));
+        assertEquals(4, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(3, cache.entries());
+    }
+
+    @Test
+    public void testBoundedBytes() {
+        long limit = 200_000;
+        KeystreamCache cache = new KeystreamCache(navalMachine(), limit, 4);
+        Random rand = new Random(3);
+        String msg = randomMessage(rand, 5000);
+        for (int i = 0; i < 5; i += 1) {
+            assertEquals(expected(SETTING2, msg),
+                         cache.convert(SETTING2, msg));
+            assertTrue(cache.bytes() <= limit);
+        }
+        assertTrue(cache.evictions() > 0);
+        assertTrue(cache.entries() > 0);
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        KeystreamCache cache = new KeystreamCache(navalMachine(), 1 << 20);
+        String msg = randomMessage(new Random(4), 4000);
+        String want1 = expected(SETTING1, msg), want2 = expected(SETTING2,
+                                                                  msg);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 16; t += 1) {
+                String settings = t % 2 == 0 ? SETTING1 : SETTING2;
+                String want = t % 2 == 0 ? want1 : want2;
+                results.add(pool.submit(
+                    () -> want.equals(cache.convert(settings, msg))));
+            }
+            for (Future<Boolean> f : results) {
+                assertTrue(f.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(16 * 16, cache.hits() + cache.misses());
+    }
+}
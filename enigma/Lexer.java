@@ -0,0 +1,230 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass lexer for the lines of Main's input.  Lines are
+ *  classified as settings lines (those containing '*'), blank (empty)
+ *  lines, and message lines.  The text of a message line is copied,
+ *  without its whitespace, into a caller's buffer without allocating.  A
+ *  settings line is split, in one scan, into its rotor names, rotor
+ *  positions, optional ring settings and plugboard cycles; malformed
+ *  lines are reported with their line and column.  The grammar is
+ *
+ *      * NAME ... NAME POSITIONS [RINGS] [CYCLES]
+ *
+ *  with one NAME per rotor slot, where items are separated by spaces or
+ *  tabs, POSITIONS and RINGS are words of one character per non-reflector
+ *  slot, and CYCLES is a sequence of parenthesized cycles such as
+ *  "(AB) (CD)".
+ *  @author Yunsu Ha
+ */
+final class Lexer {
+
+    /** Kinds of input line. */
+    static final int BLANK = 0, SETTINGS = 1, MESSAGE = 2;
+
+    /** Return the kind of input line LINE. */
+    static int classify(CharSequence line) {
+        int n = line.length();
+        if (n == 0) {
+            return BLANK;
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (line.charAt(i) == '*') {
+                return SETTINGS;
+            }
+        }
+        return MESSAGE;
+    }
+
+    /** Return true iff C is whitespace within a message line (one of the
+     *  characters matched by the regular expression \s). */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000b'
+            || c == '\f' || c == '\r';
+    }
+
+    /** Copy the characters of message line LINE other than whitespace
+     *  into DEST, starting at index AT, and return the index after the
+     *  last one copied.  DEST must have room for all of LINE. */
+    static int squeeze(CharSequence line, char[] dest, int at) {
+        int n = line.length();
+        for (int i = 0; i < n; i += 1) {
+            char c = line.charAt(i);
+            if (!isSpace(c)) {
+                dest[at] = c;
+                at += 1;
+            }
+        }
+        return at;
+    }
+
+    /** Split settings line LINE, which is line number LINENUMBER of its
+     *  input (or 0 if that is unknown), for a machine with NUMROTORS rotor
+     *  slots.  The parts are then available from rotors(), positions(),
+     *  rings() and plugboard(). */
+    void lexSettings(CharSequence line, int lineNumber, int numRotors) {
+        _line = line;
+        _lineNumber = lineNumber;
+        _n = line.length();
+        _rotors = new String[numRotors];
+        _rings = null;
+        _plugboard = "";
+        _pos = 0;
+
+        skipBlanks();
+        if (_pos == _n || line.charAt(_pos) != '*') {
+            throw fail(_pos, "settings must begin with '*'");
+        }
+        _pos += 1;
+        if (_pos < _n && !isBlank(line.charAt(_pos))) {
+            throw fail(_pos, "expected space after '*'");
+        }
+        for (int k = 0; k < numRotors; k += 1) {
+            skipBlanks();
+            if (_pos == _n) {
+                throw fail(_pos, "expected %d rotor names, found %d",
+                           numRotors, k);
+            }
+            _rotors[k] = word("rotor name");
+        }
+        skipBlanks();
+        if (_pos == _n) {
+            throw fail(_pos, "missing rotor positions");
+        }
+        _positions = setting("rotor positions", numRotors - 1);
+        skipBlanks();
+        if (_pos < _n && line.charAt(_pos) != '(') {
+            _rings = setting("ring settings", numRotors - 1);
+            skipBlanks();
+        }
+        if (_pos < _n) {
+            _plugboard = cycles();
+        }
+    }
+
+    /** Return the rotor names from the last settings line, reflector
+     *  first. */
+    String[] rotors() {
+        return _rotors;
+    }
+
+    /** Return the rotor positions from the last settings line. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return the ring settings from the last settings line, or null if
+     *  it had none. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return the plugboard cycles from the last settings line (empty if
+     *  it had none), in the form Permutation expects. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Return true iff C separates the items of a settings line. */
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /** Advance past spaces and tabs. */
+    private void skipBlanks() {
+        while (_pos < _n && isBlank(_line.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** Return the word starting at the current position, which is
+     *  described as WHAT in error messages, and advance past it. */
+    private String word(String what) {
+        int start = _pos;
+        while (_pos < _n && !isBlank(_line.charAt(_pos))) {
+            char c = _line.charAt(_pos);
+            if (c == '(' || c == ')' || c == '*') {
+                throw fail(_pos, "unexpected '%c' in %s", c, what);
+            }
+            _pos += 1;
+        }
+        return _line.subSequence(start, _pos).toString();
+    }
+
+    /** Return the word starting at the current position, which is
+     *  described as WHAT in error messages and must have LENGTH
+     *  characters, and advance past it. */
+    private String setting(String what, int length) {
+        int start = _pos;
+        String result = word(what);
+        if (result.length() != length) {
+            throw fail(start, "expected %d %s, found %d", length, what,
+                       result.length());
+        }
+        return result;
+    }
+
+    /** Return the plugboard cycles from the current position to the end
+     *  of the line, checking that they are well formed. */
+    private String cycles() {
+        int start = _pos, end = _pos;
+        while (_pos < _n) {
+            if (_line.charAt(_pos) != '(') {
+                throw fail(_pos, "expected '(' to begin plugboard cycle");
+            }
+            int open = _pos;
+            _pos += 1;
+            while (true) {
+                if (_pos == _n) {
+                    throw fail(open, "unclosed '('");
+                }
+                char c = _line.charAt(_pos);
+                _pos += 1;
+                if (c == ')') {
+                    break;
+                } else if (c == '(' || c == '*' || isSpace(c)) {
+                    throw fail(_pos - 1, "unexpected %s in plugboard cycle",
+                               isSpace(c) ? "space" : "'" + c + "'");
+                }
+            }
+            end = _pos;
+            skipBlanks();
+        }
+        return _line.subSequence(start, end).toString();
+    }
+
+    /** Return an exception reporting the problem described by String.format
+     *  of MSGFORMAT and ARGS at index COLUMN of the current line. */
+    private EnigmaException fail(int column, String msgFormat,
+                                 Object... args) {
+        String where = _lineNumber > 0
+            ? String.format("line %d, column %d", _lineNumber, column + 1)
+            : String.format("column %d", column + 1);
+        return error("%s: %s", where, String.format(msgFormat, args));
+    }
+
+    /** The line being split. */
+    private CharSequence _line;
+
+    /** Its line number, or 0. */
+    private int _lineNumber;
+
+    /** Its length. */
+    private int _n;
+
+    /** Index of the next character to examine. */
+    private int _pos;
+
+    /** Rotor names. */
+    private String[] _rotors;
+
+    /** Rotor positions. */
+    private String _positions;
+
+    /** Ring settings, or null. */
+    private String _rings;
+
+    /** Plugboard cycles. */
+    private String _plugboard;
+}
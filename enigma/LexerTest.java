@@ -0,0 +1,105 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Lexer class.
+ *  @author Yunsu Ha
+ */
+public class LexerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the message of the error from lexing settings LINE, line 3
+     *  of its input, for 5 rotor slots, or null if there is none. */
+    private static String errorFrom(String line) {
+        try {
+            new Lexer().lexSettings(line, 3, 5);
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testClassify() {
+        assertEquals(Lexer.BLANK, Lexer.classify(""));
+        assertEquals(Lexer.MESSAGE, Lexer.classify("   "));
+        assertEquals(Lexer.MESSAGE, Lexer.classify("HELLO WORLD"));
+        assertEquals(Lexer.SETTINGS, Lexer.classify("* B Beta I II III"));
+        assertEquals(Lexer.SETTINGS, Lexer.classify("HELLO * WORLD"));
+    }
+
+    @Test
+    public void testSqueeze() {
+        char[] buf = new char[32];
+        buf[0] = '#';
+        int end = Lexer.squeeze(" HEL\tLO \u000bWO\fRLD\r", buf, 1);
+        assertEquals("#HELLOWORLD", new String(buf, 0, end));
+        assertEquals(0, Lexer.squeeze("", buf, 0));
+    }
+
+    @Test
+    public void testSettings() {
+        Lexer lexer = new Lexer();
+        lexer.lexSettings("*  B Beta\tIII IV I AXLE", 1, 5);
+        assertArrayEquals(new String[] { "B", "Beta", "III", "IV", "I" },
+                          lexer.rotors());
+        assertEquals("AXLE", lexer.positions());
+        assertNull(lexer.rings());
+        assertEquals("", lexer.plugboard());
+
+        lexer.lexSettings("* B Beta III IV I AXLE BCDE (HQ) (EX)(IP) ",
+                          1, 5);
+        assertEquals("BCDE", lexer.rings());
+        assertEquals("(HQ) (EX)(IP)", lexer.plugboard());
+
+        lexer.lexSettings("* B Beta III IV I AXLE (HQ)", 1, 5);
+        assertNull(lexer.rings());
+        assertEquals("(HQ)", lexer.plugboard());
+    }
+
+    @Test
+    public void testErrors() {
+        assertEquals("line 3, column 1: settings must begin with '*'",
+                     errorFrom("B Beta III IV I AXLE *"));
+        assertEquals("line 3, column 2: expected space after '*'",
+                     errorFrom("*B Beta III IV I AXLE"));
+        assertEquals("line 3, column 13: expected 5 rotor names, found 3",
+                     errorFrom("* B Beta III"));
+        assertEquals("line 3, column 19: missing rotor positions",
+                     errorFrom("* B Beta III IV I "));
+        assertEquals("line 3, column 19: expected 4 rotor positions, "
+                     + "found 3", errorFrom("* B Beta III IV I AXL"));
+        assertEquals("line 3, column 24: expected 4 ring settings, "
+                     + "found 1", errorFrom("* B Beta III IV I AXLE B"));
+        assertEquals("line 3, column 24: unclosed '('",
+                     errorFrom("* B Beta III IV I AXLE (HQ"));
+        assertEquals("line 3, column 27: unexpected space in plugboard "
+                     + "cycle", errorFrom("* B Beta III IV I AXLE (HQ E)"));
+        assertEquals("line 3, column 29: expected '(' to begin plugboard "
+                     + "cycle", errorFrom("* B Beta III IV I AXLE (HQ) EX"));
+        assertEquals("line 3, column 7: unexpected '(' in rotor name",
+                     errorFrom("* B Be(a III IV I AXLE"));
+    }
+
+    @Test
+    public void testNoLineNumber() {
+        try {
+            new Lexer().lexSettings("* B", 0, 5);
+            fail("no error");
+        } catch (EnigmaException excp) {
+            assertEquals("column 4: expected 5 rotor names, found 1",
+                         excp.getMessage());
+        }
+    }
+}
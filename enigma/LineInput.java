@@ -0,0 +1,179 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** A source of input lines that keeps track of how many bytes of its
+ *  underlying stream have been consumed.  Its hasNext and nextLine
+ *  methods behave like those of java.util.Scanner with the default
+ *  delimiter, so it can stand in for the Scanner Main used to read
+ *  messages, while offset() tells where the next line starts.
+ *  @author Yunsu Ha
+ */
+class LineInput {
+
+    /** Initial size of the byte buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Lines read from IN, whose first byte is at offset START of the
+     *  input, decoded with the platform's default charset.  Input stops
+     *  at offset END, even if IN has more. */
+    LineInput(InputStream in, long start, long end) {
+        _in = in;
+        _offset = start;
+        _end = end;
+        _charset = Charset.defaultCharset();
+        _buf = new byte[BUFFER_SIZE];
+    }
+
+    /** Lines read from IN, whose first byte is at offset START of the
+     *  input. */
+    LineInput(InputStream in, long start) {
+        this(in, start, Long.MAX_VALUE);
+    }
+
+    /** Lines read from the start of IN. */
+    LineInput(InputStream in) {
+        this(in, 0);
+    }
+
+    /** Return true iff any non-whitespace character remains, as for
+     *  Scanner.hasNext(). */
+    boolean hasNext() {
+        for (int i = _pos; ; i += 1) {
+            if (i == _limit) {
+                int base = _pos;
+                if (!fill()) {
+                    return false;
+                }
+                i -= base - _pos;
+            }
+            if (!isWhitespace(_buf[i])) {
+                return true;
+            }
+        }
+    }
+
+    /** Return true iff any input (even an empty line) remains. */
+    boolean hasNextLine() {
+        return _pos < _limit || fill();
+    }
+
+    /** Return the rest of the current line, without its terminator,
+     *  and advance past the terminator.  A terminator is "\n", "\r\n"
+     *  or "\r". */
+    String nextLine() {
+        if (!hasNextLine()) {
+            throw new NoSuchElementException("No line found");
+        }
+        int i = _pos;
+        while (true) {
+            if (i == _limit) {
+                int base = _pos;
+                if (!fill()) {
+                    return take(_limit - _pos, 0);
+                }
+                i -= base - _pos;
+            }
+            byte b = _buf[i];
+            if (b == '\n') {
+                return take(i - _pos, 1);
+            } else if (b == '\r') {
+                if (i + 1 == _limit) {
+                    int base = _pos;
+                    fill();
+                    i -= base - _pos;
+                }
+                int term = i + 1 < _limit && _buf[i + 1] == '\n' ? 2 : 1;
+                return take(i - _pos, term);
+            }
+            i += 1;
+        }
+    }
+
+    /** Return the number of lines returned by nextLine so far, which is
+     *  the line number of the last of them, counting from where reading
+     *  began. */
+    int lineNumber() {
+        return _lineNumber;
+    }
+
+    /** Return the offset in the input of the next unread byte. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Return the next LEN buffered bytes as a string and skip them and
+     *  the TERM bytes that follow. */
+    private String take(int len, int term) {
+        String result = new String(_buf, _pos, len, _charset);
+        _pos += len + term;
+        _offset += len + term;
+        _lineNumber += 1;
+        return result;
+    }
+
+    /** Read more input into the buffer, moving unread bytes to its front
+     *  (and growing it when full).  Return false at end of input. */
+    private boolean fill() {
+        if (_pos > 0) {
+            System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+        }
+        if (_limit == _buf.length) {
+            byte[] bigger = new byte[2 * _buf.length];
+            System.arraycopy(_buf, 0, bigger, 0, _limit);
+            _buf = bigger;
+        }
+        long left = _end - (_offset + _limit - _pos);
+        if (left <= 0) {
+            return false;
+        }
+        try {
+            int n = _in.read(_buf, _limit,
+                             (int) Math.min(left, _buf.length - _limit));
+            if (n <= 0) {
+                return false;
+            }
+            _limit += n;
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Return true iff B encodes a whitespace character (in the sense of
+     *  Character.isWhitespace) by itself. */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && Character.isWhitespace((char) b);
+    }
+
+    /** Source of bytes. */
+    private final InputStream _in;
+
+    /** Charset used to decode lines. */
+    private final Charset _charset;
+
+    /** Buffered input; bytes _pos.._limit-1 are unread. */
+    private byte[] _buf;
+
+    /** Index of the first unread byte in _buf. */
+    private int _pos;
+
+    /** Number of valid bytes in _buf. */
+    private int _limit;
+
+    /** Input offset of the byte at _buf[_pos]. */
+    private long _offset;
+
+    /** Number of lines returned. */
+    private int _lineNumber;
+
+    /** Input offset at which to stop reading. */
+    private final long _end;
+}
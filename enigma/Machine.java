@@ -47,6 +47,8 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        _stepsKnown = false;
+        _steps = null;
         for (int i = 0; i < rotors.length; i++) {
             for (int j = 0; j < _allRotors.size(); j++) {
                 if (rotors[i].equals(_allRotors.get(j).name())) {
@@ -101,8 +103,50 @@ class Machine {
         return c;
     }
 
-    /** advances the rotors. */
-    private void advanceRotors() {
+    /** Return the conversion of C (as for convert) with the rotors where
+     *  they are now, without advancing them first. */
+    int map(int c) {
+        return plugboard().permute(applyRotors(plugboard().permute(c)));
+    }
+
+    /** advances the rotors.  If my rotor selection has a StepTable, the
+     *  settings of its rotating rotors are packed into a state, and one
+     *  lookup gives the rotors that move.  The state is packed afresh on
+     *  each keypress, since rotors may have been set directly. */
+    void advanceRotors() {
+        StepTable steps = steps();
+        if (steps == null) {
+            advanceRotorsDirectly();
+            return;
+        }
+        int moved = steps.moved(steps.state(_rotorSlots));
+        for (int j = 0; moved != 0; j++, moved >>>= 1) {
+            if ((moved & 1) != 0) {
+                _rotorSlots[steps.slot(j)].advance();
+            }
+        }
+    }
+
+    /** Return the number of keypresses after which my rotors, from their
+     *  current settings, first return to settings they have had, or -1
+     *  if my rotor selection has too many states to tabulate. */
+    long period() {
+        StepTable steps = steps();
+        return steps == null ? -1 : steps.period(steps.state(_rotorSlots));
+    }
+
+    /** Return the StepTable of my rotor selection, or null if it has
+     *  none. */
+    private StepTable steps() {
+        if (!_stepsKnown) {
+            _steps = StepTable.of(this);
+            _stepsKnown = true;
+        }
+        return _steps;
+    }
+
+    /** advances the rotors by testing their notches. */
+    private void advanceRotorsDirectly() {
         boolean nextAtNotch = false;
         for (int i = numRotors() - numPawls(); i < numRotors() - 1; i++) {
             if (_rotorSlots[i + 1].atNotch()) {
@@ -141,6 +185,49 @@ class Machine {
         return returnVal;
     }
 
+    /** Return a new machine with the same alphabet, slots and pawls as
+     *  me, holding copies of all my rotors in their current settings and
+     *  my plugboard.  The copy can be stepped independently of me (for
+     *  example, on another thread). */
+    Machine copy() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _allRotors) {
+            rotors.add(r.copy());
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _pawls, rotors);
+        result.setPlugboard(_plugboard);
+        result._validator = _validator;
+        result._checksum = _checksum;
+        result._checksummed = _checksummed;
+        if (_rotorSlots[_numRotors - 1] != null) {
+            String[] names = new String[_numRotors];
+            for (int i = 0; i < _numRotors; i++) {
+                names[i] = _rotorSlots[i].name();
+            }
+            result.insertRotors(names);
+        }
+        return result;
+    }
+
+    /** Return the validator of settings lines for my configuration,
+     *  which my copies share. */
+    SettingsValidator validator() {
+        if (_validator == null) {
+            _validator = new SettingsValidator(this);
+        }
+        return _validator;
+    }
+
+    /** Return the checksum identifying my configuration (see
+     *  SharedTables.checksum), computed once and shared with my copies. */
+    long checksum() {
+        if (!_checksummed) {
+            _checksum = SharedTables.checksum(this);
+            _checksummed = true;
+        }
+        return _checksum;
+    }
+
     /** Returns _allRotors. */
     ArrayList<Rotor> allRotors() {
         return _allRotors;
@@ -169,4 +256,20 @@ class Machine {
     /** the plugboard. */
     private Permutation _plugboard;
 
+    /** the stepping table of the rotors slotted in, if _stepsKnown. */
+    private StepTable _steps;
+
+    /** the validator of settings lines, once one is needed. */
+    private SettingsValidator _validator;
+
+    /** the checksum of my configuration, if _checksummed. */
+    private long _checksum;
+
+    /** whether _checksum has been computed. */
+    private boolean _checksummed;
+
+    /** whether _steps has been looked up since the rotors were
+     *  slotted in. */
+    private boolean _stepsKnown;
+
 }
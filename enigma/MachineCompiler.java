@@ -0,0 +1,356 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import static enigma.EnigmaException.*;
+
+/** Compiles the rotor selection of a Machine into a specialized
+ *  CompiledMachine.  The generated class has one field per rotor, steps
+ *  with the Machine's pawl and notch rules unrolled into straight-line
+ *  code with the notch positions as constants, and converts each
+ *  character with one table lookup per rotor pass, the tables (one entry
+ *  per rotor offset and input) being static final fields.  It is
+ *  defined as a hidden class in this package, and generated classes are
+ *  cached, keyed by everything that determines their code: the alphabet,
+ *  the number of pawls, and the wiring, kind and notches of the rotor in
+ *  each slot.  Ring settings, rotor positions and the plugboard are
+ *  per-instance state, so one class serves every settings line that
+ *  selects the same rotors.
+ *
+ *  The Java source of each class is compiled with the system Java
+ *  compiler, so compilation is only available when running on a JDK.
+ *  @author Yunsu Ha
+ */
+class MachineCompiler {
+
+    /** Largest number of generated classes kept in the cache. */
+    static final int MAX_CACHED = 4096;
+
+    /** Return true iff compilation is possible in this JVM. */
+    static boolean available() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /** Return a compiled machine whose rotor selection, rotor and ring
+     *  settings, and plugboard are those of M, which must have all its
+     *  rotor slots filled. */
+    static CompiledMachine compile(Machine M) {
+        String key = key(M);
+        MethodHandle make = CACHE.get(key);
+        if (make == null) {
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            make = CACHE.computeIfAbsent(key, k -> define(M));
+        }
+        CompiledMachine result;
+        try {
+            result = (CompiledMachine) make.invoke();
+        } catch (Throwable excp) {
+            throw error("could not instantiate compiled machine: %s", excp);
+        }
+        int n = M.numRotors();
+        int[] settings = new int[n], rings = new int[n];
+        for (int i = 1; i < n; i++) {
+            settings[i] = M.getRotor(i).setting();
+            rings[i] = M.getRotor(i).ringSetting();
+        }
+        result.setRotors(settings, rings);
+        int[] plugboard = new int[M.alphabet().size()];
+        for (int c = 0; c < plugboard.length; c++) {
+            plugboard[c] = M.plugboard().permute(c);
+        }
+        result.setPlugboard(plugboard);
+        return result;
+    }
+
+    /** Return true iff a class for the rotor selection of M has already
+     *  been generated (so that compile need not run the compiler). */
+    static boolean compiled(Machine M) {
+        return CACHE.containsKey(key(M));
+    }
+
+    /** Return the number of generated classes currently cached. */
+    static int cacheSize() {
+        return CACHE.size();
+    }
+
+    /** Return the cache key for the rotor selection of M. */
+    private static String key(Machine M) {
+        StringBuilder key = new StringBuilder();
+        Alphabet alpha = M.alphabet();
+        key.append(alpha.returnChars()).append('|').append(M.numPawls());
+        for (int i = 0; i < M.numRotors(); i++) {
+            Rotor r = M.getRotor(i);
+            if (r == null) {
+                throw error("rotor slot %d is empty", i);
+            }
+            key.append('|').append(r.type()).append(r.notches()).append(':');
+            if (i == 0) {
+                key.append(r.setting()).append(',').append(r.ringSetting())
+                    .append(':');
+            }
+            for (int c = 0; c < alpha.size(); c++) {
+                key.append(alpha.toChar(r.permutation().permute(c)));
+            }
+        }
+        return key.toString();
+    }
+
+    /** Generate, compile and define the class for the rotor selection of
+     *  M, returning a handle on its constructor. */
+    private static MethodHandle define(Machine M) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw error("no Java compiler available");
+        }
+        String source = source(M);
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        JavaFileManager files =
+            new ForwardingJavaFileManager<JavaFileManager>(
+                javac.getStandardFileManager(null, null, null)) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(
+                    Location loc, String name, JavaFileObject.Kind kind,
+                    FileObject sibling) {
+                    return new SimpleJavaFileObject(
+                        URI.create("mem:///" + name + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            ByteArrayOutputStream out =
+                                new ByteArrayOutputStream();
+                            classes.put(name, out);
+                            return out;
+                        }
+                    };
+                }
+            };
+        JavaFileObject unit = new SimpleJavaFileObject(
+            URI.create("string:///enigma/" + CLASS_NAME + ".java"),
+            JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreErrors) {
+                return source;
+            }
+        };
+        StringWriter diagnostics = new StringWriter();
+        boolean ok = javac.getTask(diagnostics, files, null,
+                                   List.of("-g:none", "-proc:none"), null,
+                                   List.of(unit)).call();
+        ByteArrayOutputStream bytes = classes.get("enigma." + CLASS_NAME);
+        if (!ok || bytes == null) {
+            throw error("could not compile machine: %s", diagnostics);
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes.toByteArray(),
+                                                tables(M), true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                                          MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException excp) {
+            throw error("could not define compiled machine: %s", excp);
+        }
+    }
+
+    /** Return the conversion tables for the rotors of M: for each slot K,
+     *  elements 2K and 2K+1 are the forward and backward tables of rotor
+     *  #K, in which entry D * N + C is the conversion of C when the
+     *  rotor's setting less its ring setting is D (N being the alphabet
+     *  size).  The reflector's tables have only one offset. */
+    private static int[][] tables(Machine M) {
+        int n = M.alphabet().size();
+        int[][] result = new int[2 * M.numRotors()][];
+        for (int k = 0; k < M.numRotors(); k++) {
+            Rotor r = M.getRotor(k);
+            Permutation perm = r.permutation();
+            int[] fwd = new int[n], inv = new int[n];
+            for (int c = 0; c < n; c++) {
+                fwd[c] = perm.permute(c);
+                inv[fwd[c]] = c;
+            }
+            int offsets = k == 0 ? 1 : n;
+            int[] forward = new int[offsets * n];
+            int[] backward = new int[offsets * n];
+            for (int d = 0; d < offsets; d++) {
+                int shift = k == 0 ? r.setting() - r.ringSetting() : d;
+                for (int c = 0; c < n; c++) {
+                    int in = perm.wrap(c + shift);
+                    forward[d * n + c] = perm.wrap(fwd[in] - shift);
+                    backward[d * n + c] = perm.wrap(inv[in] - shift);
+                }
+            }
+            result[2 * k] = forward;
+            result[2 * k + 1] = backward;
+        }
+        return result;
+    }
+
+    /** Return the Java source of the class for the rotor selection of M.
+     *  Rotor #K's setting and offset (setting less ring setting) are kept
+     *  multiplied by the alphabet size in fields _sK and _oK. */
+    private static String source(Machine M) {
+        int n = M.alphabet().size(), rotors = M.numRotors();
+        StringBuilder src = new StringBuilder();
+        src.append("package enigma;\n")
+            .append("final class ").append(CLASS_NAME)
+            .append(" extends CompiledMachine {\n")
+            .append("  private static final int N = ").append(n)
+            .append(", NN = ").append(n * n).append(";\n");
+        for (int k = 0; k < rotors; k++) {
+            src.append("  private static final int[] F").append(k)
+                .append(", B").append(k).append(";\n");
+        }
+        src.append("  static {\n    try {\n")
+            .append("      int[][] t = java.lang.invoke.MethodHandles"
+                    + ".classData(java.lang.invoke.MethodHandles.lookup(),"
+                    + " java.lang.constant.ConstantDescs.DEFAULT_NAME,"
+                    + " int[][].class);\n");
+        for (int k = 0; k < rotors; k++) {
+            src.append("      F").append(k).append(" = t[").append(2 * k)
+                .append("]; B").append(k).append(" = t[").append(2 * k + 1)
+                .append("];\n");
+        }
+        src.append("    } catch (IllegalAccessException e) {\n")
+            .append("      throw new ExceptionInInitializerError(e);\n")
+            .append("    }\n  }\n");
+        for (int k = 1; k < rotors; k++) {
+            src.append("  private int _s").append(k).append(", _o").append(k)
+                .append(";\n");
+        }
+        src.append("  int numRotors() { return ").append(rotors)
+            .append("; }\n");
+
+        src.append("  void setRotors(int[] settings, int[] rings) {\n");
+        for (int k = 1; k < rotors; k++) {
+            src.append("    _s").append(k).append(" = settings[").append(k)
+                .append("] * N; _o").append(k).append(" = Math.floorMod(")
+                .append("settings[").append(k).append("] - rings[")
+                .append(k).append("], N) * N;\n");
+        }
+        src.append("  }\n  void getRotors(int[] settings) {\n");
+        for (int k = 1; k < rotors; k++) {
+            src.append("    settings[").append(k).append("] = _s").append(k)
+                .append(" / N;\n");
+        }
+        src.append("  }\n");
+
+        String load = locals(rotors, "int s%1$d = _s%1$d, o%1$d = _o%1$d;");
+        String store = locals(rotors, "_s%1$d = s%1$d; _o%1$d = o%1$d;");
+        String body = step(M) + lookup(rotors);
+        src.append("  int convert(int c) {\n    int[] pb = _plugboard;\n")
+            .append(load).append(body).append(store)
+            .append("    return c;\n  }\n")
+            .append("  void convert(int[] msg, int from, int to) {\n")
+            .append("    int[] pb = _plugboard;\n").append(load)
+            .append("    for (int i = from; i < to; i += 1) {\n")
+            .append("      int c = msg[i];\n").append(body)
+            .append("      msg[i] = c;\n    }\n").append(store)
+            .append("  }\n}\n");
+        return src.toString();
+    }
+
+    /** Return FORMAT instantiated for each rotor number 1 .. ROTORS-1,
+     *  one per line. */
+    private static String locals(int rotors, String format) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 1; k < rotors; k++) {
+            result.append("    ").append(String.format(format, k))
+                .append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the statements that advance the rotors of M, unrolled from
+     *  Machine.advanceRotors. */
+    private static String step(Machine M) {
+        int rotors = M.numRotors();
+        StringBuilder result = new StringBuilder();
+        if (M.numPawls() > 1) {
+            result.append("    boolean carry = false;\n");
+        }
+        for (int i = rotors - M.numPawls(); i < rotors - 1; i++) {
+            String notch = notchTest(M, i + 1);
+            String advance = advance(M, i);
+            if (notch != null) {
+                result.append("    if (").append(notch).append(") { ")
+                    .append(advance).append("carry = true; } else ");
+            } else {
+                result.append("    ");
+            }
+            result.append("if (carry) { ").append(advance)
+                .append("carry = false; }\n");
+        }
+        result.append("    ").append(advance(M, rotors - 1)).append('\n');
+        return result.toString();
+    }
+
+    /** Return an expression that is true iff rotor #K of M is at a notch,
+     *  or null if it never is. */
+    private static String notchTest(Machine M, int k) {
+        Rotor r = M.getRotor(k);
+        if (!r.rotates() || r.notches().isEmpty()) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder();
+        int n = M.alphabet().size();
+        for (int j = 0; j < r.notches().length(); j++) {
+            int posn = M.alphabet().toInt(r.notches().charAt(j));
+            if (posn >= 0) {
+                result.append(result.length() == 0 ? "" : " || ")
+                    .append("s").append(k).append(" == ").append(posn * n);
+            }
+        }
+        return result.length() == 0 ? null : result.toString();
+    }
+
+    /** Return the statements that advance rotor #K of M by one position
+     *  (none if it does not rotate). */
+    private static String advance(Machine M, int k) {
+        if (!M.getRotor(k).rotates()) {
+            return "";
+        }
+        return String.format("s%1$d += N; if (s%1$d == NN) { s%1$d = 0; } "
+                             + "o%1$d += N; if (o%1$d == NN) { o%1$d = 0; } ",
+                             k);
+    }
+
+    /** Return the statements that send C through the plugboard and the
+     *  ROTORS rotors and back. */
+    private static String lookup(int rotors) {
+        StringBuilder result = new StringBuilder("    c = pb[c];\n");
+        for (int k = rotors - 1; k > 0; k--) {
+            result.append("    c = F").append(k).append("[o").append(k)
+                .append(" + c];\n");
+        }
+        result.append("    c = F0[c];\n");
+        for (int k = 1; k < rotors; k++) {
+            result.append("    c = B").append(k).append("[o").append(k)
+                .append(" + c];\n");
+        }
+        return result.append("    c = pb[c];\n").toString();
+    }
+
+    /** Simple name of the generated classes. */
+    private static final String CLASS_NAME = "GeneratedMachine";
+
+    /** Constructors of the generated classes, by rotor selection. */
+    private static final ConcurrentHashMap<String, MethodHandle> CACHE =
+        new ConcurrentHashMap<>();
+}
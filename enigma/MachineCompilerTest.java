@@ -0,0 +1,107 @@
+package enigma;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineCompiler class.  Each
+ *  compiled machine is checked against the interpreted Machine it was
+ *  compiled from.
+ *  @author Yunsu Ha
+ */
+public class MachineCompilerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a naval machine set up according to SETTINGS. */
+    private Machine machine(String settings) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, settings);
+        return mach;
+    }
+
+    /** Check that the machine compiled from SETTINGS converts LEN random
+     *  characters (chosen with SEED) as the interpreted machine does, and
+     *  ends in the same rotor positions. */
+    private void checkAgainstMachine(String settings, int len, long seed) {
+        Machine mach = machine(settings);
+        CompiledMachine comp = MachineCompiler.compile(mach);
+        Random random = new Random(seed);
+        int[] msg = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            msg[i] = random.nextInt(UPPER.size());
+        }
+        int[] expected = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            expected[i] = mach.convert(msg[i]);
+        }
+        comp.convert(msg, 0, len);
+        assertArrayEquals(settings, expected, msg);
+        int[] posns = new int[mach.numRotors()];
+        comp.getRotors(posns);
+        for (int k = 1; k < mach.numRotors(); k += 1) {
+            assertEquals(settings, mach.getRotor(k).setting(), posns[k]);
+        }
+        assertEquals(mach.convert(7), comp.convert(7));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertMsg() {
+        if (!MachineCompiler.available()) {
+            return;
+        }
+        Machine mach =
+            machine("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+        CompiledMachine comp = MachineCompiler.compile(mach);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     comp.convert("FROMHISSHOULDERHIAWATHA", UPPER));
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        if (!MachineCompiler.available()) {
+            return;
+        }
+        checkAgainstMachine("* B Beta III IV I AXLE (HQ) (EX)", 20000, 1);
+        checkAgainstMachine("* C Gamma VI VII VIII ZZZZ BCDE (AZ)", 20000,
+                            2);
+        checkAgainstMachine("* B Beta I II III AADU", 5000, 3);
+        checkAgainstMachine("* B Gamma V VI II QEVZ MMMM", 20000, 4);
+    }
+
+    @Test
+    public void testDoubleStep() {
+        if (!MachineCompiler.available()) {
+            return;
+        }
+        checkAgainstMachine("* B Beta I II III AADU", 3, 5);
+        checkAgainstMachine("* B Beta I II III AAEV", 3, 6);
+    }
+
+    @Test
+    public void testCache() {
+        if (!MachineCompiler.available()) {
+            return;
+        }
+        CompiledMachine m1 =
+            MachineCompiler.compile(machine("* B Beta I II III AAAA"));
+        CompiledMachine m2 =
+            MachineCompiler.compile(machine("* B Beta I II III XYZW DEFG"));
+        CompiledMachine m3 =
+            MachineCompiler.compile(machine("* B Beta I II IV AAAA"));
+        assertSame(m1.getClass(), m2.getClass());
+        assertNotSame(m1.getClass(), m3.getClass());
+        assertTrue(m1.getClass().isHidden());
+    }
+}
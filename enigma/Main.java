@@ -1,14 +1,16 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import java.util.List;
 import java.util.Scanner;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.regex.Pattern;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
@@ -21,6 +23,12 @@ import static enigma.EnigmaException.*;
  */
 public final class Main {
 
+    /** Default time between checkpoints, in seconds. */
+    static final long DEFAULT_CHECKPOINT_INTERVAL = 30;
+
+    /** Milliseconds per second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
      *  ARGS[0] is the name of a configuration file.
@@ -29,18 +37,105 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  With --checkpoint=FILE, progress is saved to FILE at most every
+     *  --checkpoint-interval=SECONDS (default 30) seconds; both INPUT and
+     *  OUTPUT must then be named, since progress is measured in their
+     *  bytes.  With --resume as well, a run continues from the
+     *  checkpoint in FILE, if there is one, appending to OUTPUT.
+     *
+     *  With --stats, a summary of runtime metrics is printed on the
+     *  standard error at exit; with --stats-file=FILE, it is written to
+     *  FILE as JSON.  --stats-interval=SECONDS adds a one-line progress
+     *  report on the standard error every SECONDS seconds.
+     *
+     *  With --tables=DIR, messages are converted with tables shared
+     *  between processes through a memory-mapped file in DIR (see
+     *  SharedTables), which is built if it does not yet exist.
+     *
+     *  With --pipeline, reading, conversion, formatting and writing each
+     *  run on their own thread (see Pipeline), passing chunks of about
+     *  --chunk-size=CHARS message characters, at most --queue-depth=N of
+     *  them in flight.  It cannot be combined with --checkpoint.
+     *
+     *  With --engine=NAME, messages are converted with the engine of
+     *  that name in EngineRegistry (with tables, "tables" is the
+     *  default); with --engine=auto, the engine is chosen for each
+     *  settings line by the configuration, the mean length of the blocks
+     *  of messages converted so far and the memory free, and replaced
+     *  by a faster one in a block that runs long enough to repay its
+     *  setup (see EngineRegistry).
+     *
+     *  --verbose, which traces the conversions of the reference Machine,
+     *  cannot be combined with --tables or --engine (nor, therefore,
+     *  with --shadow).
+     *
+     *  With --shadow=FRACTION as well as --tables or --engine, that
+     *  fraction of the messages converted with the engine is converted
+     *  again, in the background, by the reference Machine, and any
+     *  mismatch is written out for reproduction under --shadow-dir=DIR
+     *  (see ShadowVerifier) and reported on the standard error at
+     *  exit.
+     *
+     *  With --follow, INPUT is followed as it grows, like "tail -f":
+     *  lines appended to it are processed as they arrive, with the
+     *  machine and output carrying on from where they were, until the
+     *  process is stopped or, with --follow-timeout=SECONDS, until no
+     *  input has arrived for SECONDS seconds.  It cannot be combined
+     *  with --pipeline. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
+                new CommandArgs("--verbose --checkpoint=(.+) "
+                                + "--checkpoint-interval=(\\d+) --resume "
+                                + "--stats --stats-file=(.+) "
+                                + "--stats-interval=([1-9]\\d*) "
+                                + "--tables=(.+) --pipeline "
+                                + "--chunk-size=([1-9]\\d*) "
+                                + "--queue-depth=([1-9]\\d*) "
+                                + "--engine=([a-z][a-z-]*) "
+                                + "--shadow=(\\d*\\.?\\d+) "
+                                + "--shadow-dir=(.+) --follow "
+                                + "--follow-timeout=([1-9]\\d*) "
+                                + "--=(.*){1,3}", args);
+            if (!options.ok()
+                || (options.contains("--resume")
+                    || options.contains("--checkpoint-interval"))
+                   && !options.contains("--checkpoint")
+                || (options.contains("--chunk-size")
+                    || options.contains("--queue-depth"))
+                   && !options.contains("--pipeline")
+                || options.contains("--checkpoint")
+                   && (options.get("--").size() < 3
+                       || options.contains("--pipeline"))
+                || options.contains("--shadow")
+                   && !options.contains("--tables")
+                   && !options.contains("--engine")
+                || options.contains("--shadow-dir")
+                   && !options.contains("--shadow")
+                || options.contains("--verbose")
+                   && (options.contains("--tables")
+                       || options.contains("--engine"))
+                || options.contains("--follow")
+                   && (options.get("--").size() < 2
+                       || options.contains("--pipeline"))
+                || options.contains("--follow-timeout")
+                   && !options.contains("--follow")) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--checkpoint=FILE "
+                            + "[--checkpoint-interval=SECONDS] [--resume]] "
+                            + "[--stats] [--stats-file=FILE] "
+                            + "[--stats-interval=SECONDS] [--tables=DIR] "
+                            + "[--pipeline [--chunk-size=CHARS] "
+                            + "[--queue-depth=N]] [--engine=NAME] "
+                            + "[--shadow=FRACTION [--shadow-dir=DIR]] "
+                            + "[--follow [--follow-timeout=SECONDS]] "
+                            + "CONFIG [INPUT [OUTPUT]]");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            open(options).run();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -48,24 +143,177 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Return a Main for the files and options given by OPTIONS (see
+     *  main). */
+    private static Main open(CommandArgs options) {
+        Checkpoint resume = null;
+        Path checkpoint = null;
+        if (options.contains("--checkpoint")) {
+            checkpoint = Paths.get(options.get("--checkpoint").get(0));
+            if (options.contains("--resume") && Files.exists(checkpoint)) {
+                resume = Checkpoint.read(checkpoint);
+            }
+        }
+        long follow = 0;
+        if (options.contains("--follow")) {
+            follow = FollowingInput.FOREVER;
+            if (options.contains("--follow-timeout")) {
+                follow = MILLIS_PER_SECOND * Long.parseLong(
+                    options.get("--follow-timeout").get(0));
+            }
+        }
+        Main main = new Main(options.get("--"), resume, follow);
+        if (checkpoint != null) {
+            long interval = DEFAULT_CHECKPOINT_INTERVAL;
+            if (options.contains("--checkpoint-interval")) {
+                interval = Long.parseLong(
+                    options.get("--checkpoint-interval").get(0));
+            }
+            main.checkpointTo(checkpoint, interval);
+        }
+        if (options.contains("--stats") || options.contains("--stats-file")
+            || options.contains("--stats-interval")) {
+            main.recordStats(new RunStats());
+            main._statsToStderr = options.contains("--stats");
+            if (options.contains("--stats-file")) {
+                main._statsFile =
+                    Paths.get(options.get("--stats-file").get(0));
+            }
+            if (options.contains("--stats-interval")) {
+                main._stats.reportEvery(
+                    Long.parseLong(options.get("--stats-interval").get(0)),
+                    System.err);
+            }
+        }
+        if (options.contains("--tables")) {
+            main.shareTables(Paths.get(options.get("--tables").get(0)));
+        }
+        if (options.contains("--pipeline")) {
+            int chunkSize = Pipeline.DEFAULT_CHUNK;
+            int depth = Pipeline.DEFAULT_DEPTH;
+            if (options.contains("--chunk-size")) {
+                chunkSize =
+                    Integer.parseInt(options.get("--chunk-size").get(0));
+            }
+            if (options.contains("--queue-depth")) {
+                depth = Integer.parseInt(options.get("--queue-depth").get(0));
+            }
+            main.usePipeline(chunkSize, depth);
+        }
+        if (options.contains("--engine")) {
+            main.useEngine(options.get("--engine").get(0));
+        }
+        if (options.contains("--shadow")) {
+            String config = options.get("--").get(0);
+            Path dir = Paths.get(System.getProperty("java.io.tmpdir"),
+                                 "enigma-shadow");
+            if (options.contains("--shadow-dir")) {
+                dir = Paths.get(options.get("--shadow-dir").get(0));
+            }
+            try {
+                main.shadow(new ShadowVerifier(
+                    Files.readString(Paths.get(config)),
+                    Double.parseDouble(options.get("--shadow").get(0)),
+                    dir, System.nanoTime()));
+            } catch (IOException excp) {
+                throw error("could not open %s", config);
+            }
+        }
+        return main;
+    }
+
+    /** Process my input, then report statistics if they were requested
+     *  (even if processing fails). */
+    private void run() {
+        try {
+            process();
+        } finally {
+            if (_shadow != null) {
+                _shadow.close();
+                if (_shadow.mismatches() > 0) {
+                    System.err.printf("Warning: %d of %d shadow checks "
+                                      + "mismatched; see %s%n",
+                                      _shadow.mismatches(),
+                                      _shadow.checked(), _shadow.dir());
+                }
+            }
+            if (_stats != null) {
+                _output.flush();
+                _stats.finish();
+                if (_statsToStderr) {
+                    _stats.report(System.err);
+                }
+                if (_statsFile != null) {
+                    _stats.writeJson(_statsFile);
+                }
+            }
+        }
+    }
+
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
+        this(args, null);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS (see comment
+     *  on main), continuing from checkpoint RESUME unless it is null. */
+    Main(List<String> args, Checkpoint resume) {
+        this(args, resume, 0);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS, continuing
+     *  from checkpoint RESUME unless it is null, as for Main(ARGS,
+     *  RESUME).  If FOLLOW is positive, the input file (which must be
+     *  named) is followed as it grows, until it has been idle for FOLLOW
+     *  milliseconds (see FollowingInput). */
+    Main(List<String> args, Checkpoint resume, long follow) {
         _config = getInput(args.get(0));
+        _resume = resume;
+        long start = resume == null ? 0 : resume.input();
 
-        if (args.size() > 1) {
-            _input = getInput(args.get(1));
+        if (follow > 0) {
+            _input = followLines(args.get(1), start, follow);
+        } else if (args.size() > 1) {
+            _input = getLines(args.get(1), start);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineInput(System.in);
         }
 
         if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+            _output = getOutput(args.get(2), resume);
         } else {
             _output = System.out;
         }
     }
 
+    /** A Main that converts the messages in INPUT with machine MACH
+     *  (whose configuration has already been read), sending the results
+     *  to OUTPUT. */
+    Main(Machine mach, LineInput input, PrintStream output) {
+        _machine = mach;
+        _alphabet = mach.alphabet();
+        _input = input;
+        _output = output;
+    }
+
+    /** A Main that only reads the configuration file named CONFIG. */
+    private Main(String config) {
+        _config = getInput(config);
+    }
+
+    /** Return an Enigma machine configured from the contents of the
+     *  configuration file named CONFIG. */
+    static Machine readConfig(String config) {
+        return new Main(config).readConfig();
+    }
+
+    /** Return the value of option NAME in OPTIONS, or DEFLT if it is
+     *  absent.  For the command-line tools beside Main. */
+    static String option(CommandArgs options, String name, String deflt) {
+        return options.contains(name) ? options.get(name).get(0) : deflt;
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -75,113 +323,344 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return the lines of the file named NAME, starting at byte offset
+     *  START. */
+    private LineInput getLines(String name, long start) {
+        try {
+            FileInputStream in = new FileInputStream(name);
+            in.getChannel().position(start);
+            return new LineInput(in, start);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the lines of the file named NAME, starting at byte offset
+     *  START, following the file as it grows until it has been idle for
+     *  IDLE milliseconds.  Output is flushed whenever the input is
+     *  waited for. */
+    private LineInput followLines(String name, long start, long idle) {
+        try {
+            return new LineInput(
+                new FollowingInput(Paths.get(name), start, idle,
+                                   () -> _output.flush()),
+                start);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME.  If RESUME is
+     *  not null, the file is cut back to the length recorded in RESUME
+     *  and written from there; otherwise it is overwritten. */
+    private PrintStream getOutput(String name, Checkpoint resume) {
         try {
-            return new PrintStream(new File(name));
+            _outputFile = new FileOutputStream(name, resume != null);
+            if (resume != null) {
+                _outputFile.getChannel().truncate(resume.output());
+            }
+            return new PrintStream(_outputFile);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Convert with tables shared through directory DIR (see
+     *  SharedTables). */
+    void shareTables(Path dir) {
+        _tablesDir = dir;
+    }
+
+    /** Convert with the engine named NAME in EngineRegistry, or one
+     *  chosen by it if NAME is "auto". */
+    void useEngine(String name) {
+        _engineName = name;
+    }
+
+    /** Process input through a Pipeline with chunks of CHUNKSIZE
+     *  characters, DEPTH of them in flight. */
+    void usePipeline(int chunkSize, int depth) {
+        _chunkSize = chunkSize;
+        _queueDepth = depth;
+    }
+
+    /** Check a sample of the conversions made by my engine with
+     *  VERIFIER. */
+    void shadow(ShadowVerifier verifier) {
+        _shadow = verifier;
+    }
+
+    /** Record runtime metrics in STATS while processing. */
+    void recordStats(RunStats stats) {
+        _stats = stats;
+    }
+
+    /** Save progress to FILE every INTERVAL seconds while processing. */
+    private void checkpointTo(Path file, long interval) {
+        _checkpoint = file;
+        _checkpointInterval = interval * MILLIS_PER_SECOND;
+        _lastCheckpoint = System.currentTimeMillis();
+    }
+
     /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine mach = readConfig();
-        _temp = _input.nextLine();
-        if (!_temp.contains("*")) {
-            throw new EnigmaException("Setting format incorrect");
+     *  file _config (unless one was supplied) and apply it to the messages
+     *  in _input, sending the results to _output. */
+    void process() {
+        Machine mach = _machine == null ? readConfig() : _machine;
+        if (_tablesDir != null) {
+            _tables = SharedTables.open(mach, _tablesDir);
+        }
+        chooseEngine(mach);
+        if (_chunkSize > 0) {
+            pipeline(mach);
+            return;
         }
-        while (_input.hasNext()) {
-            String outVal = "";
-            setUp(mach, _temp);
+        boolean inMessage = _resume != null;
+        if (inMessage) {
+            _resume.restore(mach);
+            _settings = _resume.settings();
+            useEngine(mach);
+            beginBlock();
+            readMessageLine();
+        } else {
             _temp = _input.nextLine();
-            if (Pattern.matches("^$", _temp)) {
-                _output.println();
+            _tempLine = _input.lineNumber();
+            if (!_temp.contains("*")) {
+                throw new EnigmaException("Setting format incorrect");
             }
-            while (!_temp.contains("*") && _input.hasNext()) {
-                String tempString = _temp.replaceAll("\\s+", "");
-                outVal = mach.convert(tempString);
-                printMessageLine(outVal);
-                _temp = _input.nextLine();
-                if (Pattern.matches("^$", _temp)) {
-                    _output.println();
+        }
+        while (inMessage || _input.hasNext()) {
+            if (!inMessage) {
+                setUp(mach, _temp, _tempLine);
+                _settings = _temp;
+                if (_verbose) {
+                    System.err.printf("[period %d]%n", mach.period());
                 }
+                if (_stats != null) {
+                    _stats.settingsApplied();
+                }
+                useEngine(mach);
+                beginBlock();
+                readMessageLine();
             }
-            if (!_input.hasNext() && !_temp.contains("*")) {
-                String tempString = _temp.replaceAll("\\s+", "");
-                outVal = mach.convert(tempString);
-                printMessageLine(outVal);
+            inMessage = false;
+            while (!_temp.contains("*")) {
+                convertMessageLine(mach);
+                if (!_input.hasNext()) {
+                    break;
+                }
+                saveProgress(mach);
+                readMessageLine();
             }
         }
+        endBlock();
+        finishCheckpoints();
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] rotorNames = new String[M.numRotors()];
-        String[] splitSettings = settings.split(" ");
-
-        Iterator<String> iterSettings = Arrays.stream(splitSettings).iterator();
-        _temp = iterSettings.next();
-        String plugboard = "";
-        for (int i = 0; i < M.numRotors(); i++) {
-            rotorNames[i] = iterSettings.next();
-        }
-        for (int i = 0; i < rotorNames.length; i++) {
-            boolean same = false;
-            for (int j = 0; j < M.allRotors().size(); j++) {
-                if (M.allRotors().get(j).name().equals(rotorNames[i])) {
-                    same = true;
-                }
-            }
-            if (!same) {
-                throw new EnigmaException("Invalid rotor name");
-            }
+    /** Process my input with M as process() does, but through a
+     *  Pipeline. */
+    private void pipeline(Machine M) {
+        Pipeline pipe = new Pipeline(M, _input, _output, _chunkSize,
+                                     _queueDepth);
+        if (_engine != null) {
+            pipe.useEngine(_engine);
         }
-        M.insertRotors(rotorNames);
-        if (M.rotorSlots()[0].type() != 3) {
-            throw new EnigmaException("First rotor is not reflector");
+        if (_shadow != null) {
+            pipe.shadow(_shadow);
         }
-        int tempCounter = 0;
-        for (int i = 0; i < M.numRotors(); i++) {
-            if (M.rotorSlots()[i].type() == 1) {
-                tempCounter += 1;
+        if (_stats != null) {
+            pipe.recordStats(_stats);
+        }
+        pipe.run();
+    }
+
+    /** Set _engine for the configuration of M from the options: the
+     *  engine named by --engine, else the shared tables if in use, else
+     *  none (converting with M itself). */
+    private void chooseEngine(Machine M) {
+        EngineRegistry registry = EngineRegistry.standard();
+        if (_tables != null) {
+            registry.register(EngineRegistry.tables(_tables));
+        }
+        if (_engineName == null) {
+            _engine = _tables == null ? null
+                : registry.get(EngineRegistry.TABLES);
+        } else if (_engineName.equals(EngineRegistry.AUTO)) {
+            _engine = registry.adaptive(() -> _blocksDone == 0 ? 0
+                                        : _charactersDone / _blocksDone);
+        } else {
+            _engine = registry.get(_engineName, M);
+        }
+    }
+
+    /** Convert with a converter of _engine set up like M from now on, if
+     *  there is an engine. */
+    private void useEngine(Machine M) {
+        if (_engine != null) {
+            _fast = _engine.open(M);
+        }
+    }
+
+    /** Start timing a new block of message lines, ending the current
+     *  one. */
+    private void beginBlock() {
+        endBlock();
+        if (_stats != null) {
+            _stats.messageStarted();
+        }
+        _block = new EnigmaEvents.BlockConverted();
+        _block.begin();
+    }
+
+    /** Report the current block of message lines, if any. */
+    private void endBlock() {
+        if (_block != null) {
+            _blocksDone += 1;
+            _charactersDone += _block.characters;
+            _block.commit();
+            _block = null;
+            if (_stats != null) {
+                _stats.blockFinished();
             }
         }
-        if (tempCounter > M.numPawls()) {
-            throw new EnigmaException("Too many moving rotors");
+    }
+
+    /** Read the next input line into _temp, echoing it if it is empty. */
+    private void readMessageLine() {
+        _temp = _input.nextLine();
+        _tempLine = _input.lineNumber();
+        if (Lexer.classify(_temp) == Lexer.BLANK) {
+            _output.println();
         }
-        M.setRotors(iterSettings.next());
-        if (iterSettings.hasNext()) {
-            _temp = iterSettings.next();
-            if (!_temp.contains("(") && !_temp.contains(")")) {
-                char[] ringVals = _temp.toCharArray();
-                for (int i = 1; i < M.numRotors(); i++) {
-                    M.getRotor(i).setRings(ringVals[i - 1]);
-                }
-                if (iterSettings.hasNext()) {
-                    _temp = iterSettings.next();
-                }
+    }
+
+    /** Convert the message line in _temp with M and print the result. */
+    private void convertMessageLine(Machine M) {
+        if (_text.length < _temp.length()) {
+            _text = new char[_temp.length()];
+        }
+        int length = Lexer.squeeze(_temp, _text, 0);
+        Machine start = null;
+        String message = null;
+        if (_fast != null && _shadow != null && _shadow.sample()) {
+            start = M.copy();
+            _fast.store(start);
+            message = new String(_text, 0, length);
+        }
+        for (int i = 0; i < length; i++) {
+            int c = _alphabet.toInt(_text[i]);
+            _text[i] = _alphabet.toChar(_fast == null ? M.convert(c)
+                                        : _fast.convert(c));
+        }
+        if (start != null) {
+            _shadow.check(start, _settings, message,
+                          new String(_text, 0, length));
+        }
+        _line.setLength(0);
+        formatMessageLine(_text, 0, length, _line);
+        _output.print(_line);
+        _block.lines += 1;
+        _block.characters += length;
+        if (_stats != null) {
+            _stats.lineConverted(length);
+        }
+    }
+
+    /** Write a checkpoint for M and the current input and output
+     *  positions, if checkpointing and one is due. */
+    private void saveProgress(Machine M) {
+        if (_checkpoint == null || _outputFile == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - _lastCheckpoint < _checkpointInterval) {
+            return;
+        }
+        if (_fast != null) {
+            _fast.store(M);
+        }
+        try {
+            _output.flush();
+            _outputFile.getChannel().force(false);
+            long written = _outputFile.getChannel().position();
+            new Checkpoint(_input.offset(), written, _settings, M)
+                .write(_checkpoint);
+        } catch (IOException excp) {
+            throw error("could not save progress: %s", excp.getMessage());
+        }
+        _lastCheckpoint = now;
+    }
+
+    /** Remove the checkpoint file once all input has been processed. */
+    private void finishCheckpoints() {
+        if (_checkpoint == null) {
+            return;
+        }
+        _output.flush();
+        try {
+            Files.deleteIfExists(_checkpoint);
+        } catch (IOException excp) {
+            throw error("could not remove %s", _checkpoint);
+        }
+    }
+
+    /** Set M according to the specification given on SETTINGS,
+     *  which must have the format specified in the assignment. */
+    static void setUp(Machine M, String settings) {
+        setUp(M, settings, 0);
+    }
+
+    /** Set M according to SETTINGS, as for setUp(M, SETTINGS), where
+     *  SETTINGS is line number LINE of the input (0 if unknown), for
+     *  error messages. */
+    static void setUp(Machine M, String settings, int line) {
+        EnigmaEvents.SettingsApplied event =
+            new EnigmaEvents.SettingsApplied();
+        event.begin();
+        try {
+            applySettings(M, settings, line);
+            event.accepted = true;
+        } catch (RuntimeException excp) {
+            event.failureType = excp.getClass().getSimpleName();
+            event.failure = excp.getMessage();
+            throw excp;
+        } finally {
+            if (event.shouldCommit()) {
+                event.settings = settings;
+                event.commit();
             }
-            if (_temp.contains("(")) {
-                while (_temp.contains("(")) {
-                    plugboard = plugboard + _temp + " ";
-                    if (iterSettings.hasNext()) {
-                        _temp = iterSettings.next();
-                    } else {
-                        break;
-                    }
-                }
+        }
+    }
+
+    /** Set M according to SETTINGS, which is line LINE of the input (see
+     *  setUp).  The line is first checked by M's SettingsValidator, so
+     *  that a bad one is rejected cheaply, with an exception that carries
+     *  no stack trace. */
+    private static void applySettings(Machine M, String settings,
+                                      int line) {
+        SettingsValidator validator = M.validator();
+        long checked = validator.check(settings);
+        if (SettingsValidator.code(checked) != SettingsValidator.OK) {
+            throw validator.reject(settings, checked, line);
+        }
+        Lexer lexer = new Lexer();
+        lexer.lexSettings(settings, line, M.numRotors());
+        M.insertRotors(lexer.rotors());
+        M.setRotors(lexer.positions());
+        String rings = lexer.rings();
+        if (rings != null) {
+            for (int i = 1; i < M.numRotors(); i++) {
+                M.getRotor(i).setRings(rings.charAt(i - 1));
             }
         }
-        M.setPlugboard(new Permutation(plugboard, _alphabet));
+        M.setPlugboard(new Permutation(lexer.plugboard(), M.alphabet()));
     }
 
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
+        EnigmaEvents.ConfigRead event = new EnigmaEvents.ConfigRead();
+        event.begin();
         try {
             String alph = _config.next();
             _alphabet = new Alphabet(alph);
@@ -197,6 +676,14 @@ public final class Main {
             while (_config.hasNext()) {
                 _rotors.add(readRotor());
             }
+            event.end();
+            if (event.shouldCommit()) {
+                event.rotors = _rotors.size();
+                event.slots = numRotors;
+                event.pawls = numPawls;
+                event.alphabetSize = _alphabet.size();
+                event.commit();
+            }
             return new Machine(_alphabet, numRotors, numPawls, _rotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
@@ -242,27 +729,34 @@ public final class Main {
         return _verbose;
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 5) {
-            int maximum = msg.length() - i;
-            if (maximum < 5) {
-                _output.println(msg.substring(i));
+    /** Append TEXT[FROM .. TO-1] to OUT in groups of five (except that
+     *  the last group may have fewer letters), followed by a line
+     *  separator, unless it is empty. */
+    static void formatMessageLine(char[] text, int from, int to,
+                                  StringBuilder out) {
+        for (int i = from; i < to; i += 5) {
+            if (to - i < 5) {
+                out.append(text, i, to - i).append(NEWLINE);
             } else {
-                _output.print(msg.substring(i, i + 5) + " ");
-                if (i == msg.length() - 5) {
-                    _output.println();
+                out.append(text, i, 5).append(' ');
+                if (i == to - 5) {
+                    out.append(NEWLINE);
                 }
             }
         }
     }
 
+    /** Line separator of the platform. */
+    private static final String NEWLINE = System.lineSeparator();
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineInput _input;
+
+    /** Machine to use, if the configuration has already been read. */
+    private Machine _machine;
 
     /** Source of machine configuration. */
     private Scanner _config;
@@ -281,4 +775,73 @@ public final class Main {
 
     /** Temporarily used to store nextLine(). */
     private String _temp;
+
+    /** Line number of _temp. */
+    private int _tempLine;
+
+    /** Message text of the current line, converted in place. */
+    private char[] _text = new char[0];
+
+    /** Formatted output of the current line. */
+    private StringBuilder _line = new StringBuilder();
+
+    /** The settings line currently in effect. */
+    private String _settings;
+
+    /** The output file, when output does not go to the standard
+     *  output. */
+    private FileOutputStream _outputFile;
+
+    /** The checkpoint to continue from, or null. */
+    private Checkpoint _resume;
+
+    /** File to which progress is saved, or null. */
+    private Path _checkpoint;
+
+    /** Minimum time between checkpoints, in milliseconds. */
+    private long _checkpointInterval;
+
+    /** Time the last checkpoint was written (or checkpointing began). */
+    private long _lastCheckpoint;
+
+    /** Directory of shared conversion tables, or null. */
+    private Path _tablesDir;
+
+    /** Shared conversion tables for my configuration, or null. */
+    private SharedTables _tables;
+
+    /** Name of the engine requested, or null. */
+    private String _engineName;
+
+    /** Engine converting messages, or null to use the machine itself. */
+    private EnigmaEngine _engine;
+
+    /** Converter of _engine, set up for the current settings line. */
+    private EnigmaEngine.Converter _fast;
+
+    /** Number of blocks of message lines converted, and of characters in
+     *  them. */
+    private long _blocksDone, _charactersDone;
+
+    /** Checker of a sample of the conversions made by _engine, or
+     *  null. */
+    private ShadowVerifier _shadow;
+
+    /** Runtime metrics, if requested. */
+    private RunStats _stats;
+
+    /** True iff a metrics summary goes to the standard error. */
+    private boolean _statsToStderr;
+
+    /** File to receive metrics as JSON, or null. */
+    private Path _statsFile;
+
+    /** Characters per pipeline chunk, or 0 if not pipelining. */
+    private int _chunkSize;
+
+    /** Number of pipeline chunks in flight. */
+    private int _queueDepth;
+
+    /** Flight recorder event for the current block of message lines. */
+    private EnigmaEvents.BlockConverted _block;
 }
@@ -32,6 +32,11 @@ class MovingRotor extends Rotor {
         set(setting() + 1);
     }
 
+    @Override
+    Rotor copy() {
+        return copyState(new MovingRotor(name(), permutation(), _notches));
+    }
+
     @Override
     String notches() {
         return _notches;
@@ -0,0 +1,339 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Scores candidate plaintexts by how likely they are as language, summing
+ *  the log (base 10) probabilities of their n-grams of one order (2 for
+ *  bigrams, 3 for trigrams, 4 for quadgrams, ...).  Texts are arrays of
+ *  alphabet indices, and the n-gram ending at a character is found by a
+ *  rolling index, CHAR + SIZE * (index of the previous n-gram mod
+ *  SIZE^(ORDER-1)), into one flat table of SIZE^ORDER floats, so that
+ *  scoring allocates nothing.  N-grams never seen in the counts the
+ *  table was made from get a floor probability a little below that of
+ *  one seen once.
+ *
+ *  Counts come from a corpus of text, of which only the characters in
+ *  the alphabet count (lower-case letters counting as upper-case ones if
+ *  the alphabet has only those); everything else is skipped, as Main
+ *  drops spaces from messages.  Counts are saved and read as lines of the
+ *  form "NGRAM COUNT".
+ *  @author Yunsu Ha
+ */
+public final class NgramScorer {
+
+    /** Largest number of entries in a table. */
+    static final int MAX_TABLE = 1 << 26;
+
+    /** Count the n-grams of the corpora ARGS[2..] for the alphabet of the
+     *  configuration file ARGS[0], writing the counts to ARGS[1].
+     *  Options:
+     *      --order=N    n-gram length (default 4). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--order=([1-9]) --=(.+){3,}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.NgramScorer [--order=N] "
+                            + "CONFIG OUTPUT CORPUS...");
+            }
+            List<String> files = options.get("--");
+            Alphabet alpha = Main.readConfig(files.get(0)).alphabet();
+            int order = options.contains("--order")
+                ? Integer.parseInt(options.get("--order").get(0)) : 4;
+            long[] counts = new long[tableSize(alpha, order)];
+            for (String corpus : files.subList(2, files.size())) {
+                try (Reader in = Files.newBufferedReader(Paths.get(corpus))) {
+                    count(alpha, order, in, counts);
+                } catch (IOException excp) {
+                    throw error("could not read %s", corpus);
+                }
+            }
+            try (Writer out =
+                     Files.newBufferedWriter(Paths.get(files.get(1)))) {
+                write(alpha, order, counts, out);
+            } catch (IOException excp) {
+                throw error("could not write %s", files.get(1));
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A scorer for n-grams of length ORDER over ALPHA, whose
+     *  probabilities are estimated from COUNTS, indexed as my table is. */
+    NgramScorer(Alphabet alpha, int order, long[] counts) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        _order = order;
+        int n = tableSize(alpha, order);
+        if (counts.length != n) {
+            throw error("expected %d n-gram counts, got %d", n,
+                        counts.length);
+        }
+        _high = n / _size;
+        _index = indexTable(alpha);
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        _floor = (float) Math.log10(FLOOR_COUNT / Math.max(1, total));
+        _table = new float[n];
+        for (int i = 0; i < n; i += 1) {
+            _table[i] = counts[i] == 0 ? _floor
+                : (float) Math.log10((double) counts[i] / total);
+        }
+    }
+
+    /** Return a scorer for n-grams of length ORDER over ALPHA whose
+     *  counts are taken from CORPUS. */
+    static NgramScorer build(Alphabet alpha, int order, Reader corpus)
+        throws IOException {
+        long[] counts = new long[tableSize(alpha, order)];
+        count(alpha, order, corpus, counts);
+        return new NgramScorer(alpha, order, counts);
+    }
+
+    /** Return a scorer over ALPHA for the counts in IN, as written by
+     *  write.  The order is the length of the n-grams in IN. */
+    static NgramScorer read(Alphabet alpha, Reader in) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        long[] counts = null;
+        int order = 0;
+        for (String line = lines.readLine(); line != null;
+             line = lines.readLine()) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length == 1 && fields[0].isEmpty()) {
+                continue;
+            }
+            if (fields.length != 2) {
+                throw error("bad n-gram count line: %s", line);
+            }
+            if (counts == null) {
+                order = fields[0].length();
+                counts = new long[tableSize(alpha, order)];
+            } else if (fields[0].length() != order) {
+                throw error("n-grams of different lengths: %s", fields[0]);
+            }
+            int index = 0;
+            for (char ch : fields[0].toCharArray()) {
+                int c = alpha.toInt(ch);
+                if (c < 0) {
+                    throw error("character not in alphabet: %s", fields[0]);
+                }
+                index = index * alpha.size() + c;
+            }
+            try {
+                counts[index] += Long.parseLong(fields[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count: %s", line);
+            }
+        }
+        if (counts == null) {
+            throw error("no n-gram counts");
+        }
+        return new NgramScorer(alpha, order, counts);
+    }
+
+    /** Add the counts of the n-grams of length ORDER over ALPHA in CORPUS
+     *  to COUNTS. */
+    static void count(Alphabet alpha, int order, Reader corpus,
+                      long[] counts) throws IOException {
+        int size = alpha.size();
+        int high = tableSize(alpha, order) / size;
+        int[] index = indexTable(alpha);
+        char[] buf = new char[BUFFER_SIZE];
+        int gram = 0, length = 0;
+        for (int n = corpus.read(buf); n >= 0; n = corpus.read(buf)) {
+            for (int i = 0; i < n; i += 1) {
+                int c = buf[i] < index.length ? index[buf[i]] : -1;
+                if (c >= 0) {
+                    gram = gram % high * size + c;
+                    length += 1;
+                    if (length >= order) {
+                        counts[gram] += 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Write the nonzero COUNTS of the n-grams of length ORDER over ALPHA
+     *  to OUT, one "NGRAM COUNT" line apiece. */
+    static void write(Alphabet alpha, int order, long[] counts, Writer out)
+        throws IOException {
+        char[] gram = new char[order];
+        for (int i = 0; i < counts.length; i += 1) {
+            if (counts[i] != 0) {
+                for (int k = order - 1, j = i; k >= 0; k -= 1) {
+                    gram[k] = alpha.toChar(j % alpha.size());
+                    j /= alpha.size();
+                }
+                out.write(gram);
+                out.write(' ');
+                out.write(Long.toString(counts[i]));
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+
+    /** Return the score of TEXT[FROM .. TO-1], a sequence of alphabet
+     *  indices: the sum of the log probabilities of its n-grams. */
+    double score(int[] text, int from, int to) {
+        return score(text, from, to, Double.NEGATIVE_INFINITY);
+    }
+
+    /** Return the score of TEXT[FROM .. TO-1] as for score(TEXT, FROM,
+     *  TO), except that, since a score only falls as n-grams are added,
+     *  scoring stops as soon as it falls below THRESHOLD, returning the
+     *  partial (and so also too low) score. */
+    double score(int[] text, int from, int to, double threshold) {
+        int start = from + _order - 1;
+        if (start >= to) {
+            return 0.0;
+        }
+        int gram = 0;
+        for (int i = from; i < start; i += 1) {
+            gram = gram * _size + text[i];
+        }
+        final float[] table = _table;
+        final int size = _size, high = _high;
+        double result = 0.0;
+        for (int i = start; i < to; i += 1) {
+            gram = gram % high * size + text[i];
+            result += table[gram];
+            if (result < threshold) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** Return the score of the characters of TEXT that count, as in a
+     *  corpus. */
+    double score(CharSequence text) {
+        int[] codes = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            int c = ch < _index.length ? _index[ch] : -1;
+            if (c >= 0) {
+                codes[n] = c;
+                n += 1;
+            }
+        }
+        return score(codes, 0, n);
+    }
+
+    /** Return the log probability of the n-gram TEXT[AT .. AT+ORDER-1],
+     *  which must lie within TEXT. */
+    float gram(int[] text, int at) {
+        int gram = 0;
+        for (int i = at; i < at + _order; i += 1) {
+            gram = gram * _size + text[i];
+        }
+        return _table[gram];
+    }
+
+    /** Return the log probability of the n-gram whose index (its
+     *  characters read as base-SIZE digits) is INDEX. */
+    float logProbability(int index) {
+        return _table[index];
+    }
+
+    /** Return the log probability given to unseen n-grams. */
+    float floor() {
+        return _floor;
+    }
+
+    /** Return the length of my n-grams. */
+    int order() {
+        return _order;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of n-grams of length ORDER over ALPHA, checking
+     *  that it is in range. */
+    static int tableSize(Alphabet alpha, int order) {
+        if (order < 1) {
+            throw error("n-gram order must be positive");
+        }
+        long n = 1;
+        for (int k = 0; k < order; k += 1) {
+            n *= alpha.size();
+            if (n > MAX_TABLE) {
+                throw error("%d-gram table too large for alphabet", order);
+            }
+        }
+        return (int) n;
+    }
+
+    /** Return a table giving the index in ALPHA of each character up to
+     *  the largest in ALPHA, or -1 for characters not in it.  Lower-case
+     *  letters map as their upper-case forms if those are in ALPHA and
+     *  they are not. */
+    private static int[] indexTable(Alphabet alpha) {
+        char max = 0;
+        for (int c = 0; c < alpha.size(); c += 1) {
+            max = (char) Math.max(max, Character.toLowerCase(alpha.toChar(c)));
+            max = (char) Math.max(max, alpha.toChar(c));
+        }
+        int[] result = new int[max + 1];
+        Arrays.fill(result, -1);
+        for (int c = 0; c < alpha.size(); c += 1) {
+            char lower = Character.toLowerCase(alpha.toChar(c));
+            if (!alpha.contains(lower)) {
+                result[lower] = c;
+            }
+        }
+        for (int c = 0; c < alpha.size(); c += 1) {
+            result[alpha.toChar(c)] = c;
+        }
+        return result;
+    }
+
+    /** Count given to unseen n-grams when computing the floor. */
+    private static final double FLOOR_COUNT = 0.01;
+
+    /** Characters read from a corpus at a time. */
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Its size. */
+    private final int _size;
+
+    /** Length of my n-grams. */
+    private final int _order;
+
+    /** SIZE^(ORDER-1), the modulus dropping the oldest character from a
+     *  rolling index. */
+    private final int _high;
+
+    /** Index of each character that counts, as from indexTable. */
+    private final int[] _index;
+
+    /** Log probability of each n-gram, by index. */
+    private final float[] _table;
+
+    /** Log probability of an unseen n-gram. */
+    private final float _floor;
+}
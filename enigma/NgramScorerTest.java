@@ -0,0 +1,128 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the NgramScorer class.
+ *  @author Yunsu Ha
+ */
+public class NgramScorerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CORPUS =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season "
+        + "of Light, it was the season of Darkness, it was the spring of "
+        + "hope, it was the winter of despair, we had everything before "
+        + "us, we had nothing before us, we were all going direct to "
+        + "Heaven, we were all going direct the other way.";
+
+    /** Return the indices in UPPER of the characters of S. */
+    private static int[] codes(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i += 1) {
+            result[i] = UPPER.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the score of TEXT under SCORER computed the slow way. */
+    private static double slowScore(NgramScorer scorer, int[] text) {
+        double result = 0.0;
+        for (int i = 0; i + scorer.order() <= text.length; i += 1) {
+            result += scorer.gram(text, i);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCounts() throws IOException {
+        long[] counts = new long[NgramScorer.tableSize(UPPER, 2)];
+        NgramScorer.count(UPPER, 2, new StringReader("ab, Ab ba!"), counts);
+        assertEquals(2, counts[1]);
+        assertEquals(2, counts[26]);
+        assertEquals(1, counts[27]);
+        StringWriter out = new StringWriter();
+        NgramScorer.write(UPPER, 2, counts, out);
+        assertEquals("AB 2\nBA 2\nBB 1\n", out.toString());
+    }
+
+    @Test
+    public void testScores() throws IOException {
+        for (int order = 1; order <= 4; order += 1) {
+            NgramScorer scorer =
+                NgramScorer.build(UPPER, order, new StringReader(CORPUS));
+            int[] text = codes("ITWASTHEBESTOFTIMESQXZJ");
+            assertEquals(slowScore(scorer, text),
+                         scorer.score(text, 0, text.length), 1e-3);
+            assertEquals(slowScore(scorer, text), scorer.score(
+                "it was the best of times, qxzj"), 1e-3);
+            assertEquals(0.0, scorer.score(text, 3, 3 + order - 1), 0.0);
+        }
+    }
+
+    @Test
+    public void testEnglishBeatsNoise() throws IOException {
+        NgramScorer scorer =
+            NgramScorer.build(UPPER, 4, new StringReader(CORPUS));
+        Random rand = new Random(40);
+        String english = "ITWASTHEAGEOFTHEWINTEROFWISDOM";
+        StringBuilder noise = new StringBuilder();
+        for (int i = 0; i < english.length(); i += 1) {
+            noise.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        assertTrue(scorer.score(english) > scorer.score(noise));
+    }
+
+    @Test
+    public void testEarlyExit() throws IOException {
+        NgramScorer scorer =
+            NgramScorer.build(UPPER, 3, new StringReader(CORPUS));
+        int[] text = codes("QQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQ");
+        double full = scorer.score(text, 0, text.length);
+        double threshold = full / 2;
+        double partial = scorer.score(text, 0, text.length, threshold);
+        assertTrue(partial < threshold);
+        assertTrue(partial > full);
+        assertEquals(full, scorer.score(text, 0, text.length, full - 1),
+                     0.0);
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        long[] counts = new long[NgramScorer.tableSize(UPPER, 3)];
+        NgramScorer.count(UPPER, 3, new StringReader(CORPUS), counts);
+        StringWriter out = new StringWriter();
+        NgramScorer.write(UPPER, 3, counts, out);
+        NgramScorer read =
+            NgramScorer.read(UPPER, new StringReader(out.toString()));
+        NgramScorer built = new NgramScorer(UPPER, 3, counts);
+        assertEquals(3, read.order());
+        for (int i = 0; i < counts.length; i += 1) {
+            assertEquals(built.logProbability(i), read.logProbability(i),
+                         0.0f);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCounts() throws IOException {
+        NgramScorer.read(UPPER, new StringReader("AB 3\nABC 4\n"));
+    }
+}
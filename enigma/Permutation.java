@@ -1,7 +1,10 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
+import static enigma.EnigmaException.*;
+
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
  *  @author Yunsu Ha
@@ -24,6 +27,23 @@ class Permutation {
         }
     }
 
+    /** Set this Permutation to the one that maps each index C of
+     *  ALPHABET to TABLE[C], which must be a permutation of 0 .. ALPHABET
+     *  size - 1. */
+    Permutation(int[] table, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _cycles = new HashMap<Character, Character>();
+        if (table.length != alphabet.size() || !isPermutation(table)) {
+            throw error("table is not a permutation of the alphabet");
+        }
+        for (int c = 0; c < table.length; c += 1) {
+            if (table[c] != c) {
+                _cycles.put(alphabet.toChar(c),
+                            alphabet.toChar(table[c]));
+            }
+        }
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
@@ -89,6 +109,192 @@ class Permutation {
         return c;
     }
 
+    /** Return DEST, after setting DEST[C] to permute(C) for each index C
+     *  of my alphabet.  DEST must have room for all of them. */
+    int[] toArray(int[] dest) {
+        for (int c = 0; c < size(); c += 1) {
+            dest[c] = permute(c);
+        }
+        return dest;
+    }
+
+    /** Return my mapping as a table, as for toArray. */
+    int[] toArray() {
+        return toArray(new int[size()]);
+    }
+
+    /* The operations below work on permutations of 0 .. N-1 given as int
+     * tables P of length N, P[C] being the image of C.  Each writes its
+     * result into a caller-supplied destination table, which it returns,
+     * so that repeated use allocates nothing.  Unless noted, the
+     * destination must not be one of the arguments. */
+
+    /** Return true iff P is a permutation of 0 .. P.length - 1. */
+    static boolean isPermutation(int[] p) {
+        int n = p.length;
+        long[] seen = new long[(n + Long.SIZE - 1) / Long.SIZE];
+        for (int c = 0; c < n; c += 1) {
+            int x = p[c];
+            if (x < 0 || x >= n || (seen[x >>> 6] & (1L << x)) != 0) {
+                return false;
+            }
+            seen[x >>> 6] |= 1L << x;
+        }
+        return true;
+    }
+
+    /** Return DEST set to the composition of P with Q, which applies Q
+     *  and then P: DEST[C] = P[Q[C]].  DEST may be Q. */
+    static int[] compose(int[] p, int[] q, int[] dest) {
+        checkDest(dest, p);
+        for (int c = 0; c < q.length; c += 1) {
+            dest[c] = p[q[c]];
+        }
+        return dest;
+    }
+
+    /** Return DEST set to the inverse of P. */
+    static int[] inverse(int[] p, int[] dest) {
+        checkDest(dest, p);
+        for (int c = 0; c < p.length; c += 1) {
+            dest[p[c]] = c;
+        }
+        return dest;
+    }
+
+    /** Return DEST set to P conjugated by a shift of SHIFT places:
+     *  DEST[C] = P[C + SHIFT] - SHIFT, modulo the size of P.  This is
+     *  the mapping of a rotor with permutation P whose setting less ring
+     *  setting is SHIFT. */
+    static int[] conjugate(int[] p, int shift, int[] dest) {
+        checkDest(dest, p);
+        int n = p.length;
+        shift = Math.floorMod(shift, n);
+        for (int c = 0; c < n; c += 1) {
+            int x = c + shift < n ? c + shift : c + shift - n;
+            int y = p[x] - shift;
+            dest[c] = y < 0 ? y + n : y;
+        }
+        return dest;
+    }
+
+    /** Return DEST set to P applied K times (its inverse applied -K times
+     *  if K is negative).  Takes time proportional to the size of P,
+     *  whatever K is. */
+    static int[] power(int[] p, long k, int[] dest) {
+        checkDest(dest, p);
+        int n = p.length;
+        Arrays.fill(dest, 0, n, -1);
+        for (int start = 0; start < n; start += 1) {
+            if (dest[start] >= 0) {
+                continue;
+            }
+            int len = 1;
+            for (int x = p[start]; x != start; x = p[x]) {
+                len += 1;
+            }
+            int ahead = start;
+            for (long s = Math.floorMod(k, (long) len); s > 0; s -= 1) {
+                ahead = p[ahead];
+            }
+            int x = start;
+            do {
+                dest[x] = ahead;
+                x = p[x];
+                ahead = p[ahead];
+            } while (x != start);
+        }
+        return dest;
+    }
+
+    /** Decompose P into cycles, writing the elements of each cycle in
+     *  turn into ELEMENTS, each cycle starting at its smallest element,
+     *  and the length of the I-th cycle into LENGTHS[I].  Both must have
+     *  room for P.length entries.  Return the number of cycles. */
+    static int cycles(int[] p, int[] elements, int[] lengths) {
+        checkDest(elements, p);
+        checkDest(lengths, p);
+        int n = p.length;
+        Arrays.fill(lengths, 0, n, 0);
+        int k = 0;
+        for (int start = 0; start < n; start += 1) {
+            if (lengths[start] != 0) {
+                continue;
+            }
+            elements[k] = ~start;
+            lengths[start] = 1;
+            k += 1;
+            for (int x = p[start]; x != start; x = p[x]) {
+                elements[k] = x;
+                lengths[x] = 1;
+                k += 1;
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (elements[i] < 0) {
+                elements[i] = ~elements[i];
+                lengths[count] = 0;
+                count += 1;
+            }
+            lengths[count - 1] += 1;
+        }
+        return count;
+    }
+
+    /** Return DEST, after setting DEST[L] to the number of cycles of
+     *  length L in P, for 0 <= L <= P.length.  This cycle type is the
+     *  same for all conjugates of P.  DEST must have room for P.length + 1
+     *  entries, and WORK for P.length. */
+    static int[] cycleType(int[] p, int[] dest, int[] work) {
+        checkDest(dest, p);
+        checkDest(work, p);
+        int n = p.length;
+        Arrays.fill(dest, 0, n + 1, 0);
+        Arrays.fill(work, 0, n, 0);
+        for (int start = 0; start < n; start += 1) {
+            if (work[start] != 0) {
+                continue;
+            }
+            int len = 1;
+            work[start] = 1;
+            for (int x = p[start]; x != start; x = p[x]) {
+                work[x] = 1;
+                len += 1;
+            }
+            dest[len] += 1;
+        }
+        return dest;
+    }
+
+    /** Return a compact description of cycle type TYPE (as produced by
+     *  cycleType), listing each cycle length present, longest first,
+     *  with its count as an exponent when more than one: for example,
+     *  "13^2" or "10 6^2 3 1". */
+    static String cycleTypeSignature(int[] type) {
+        StringBuilder result = new StringBuilder();
+        for (int len = type.length - 1; len > 0; len -= 1) {
+            if (type[len] == 0) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(len);
+            if (type[len] > 1) {
+                result.append('^').append(type[len]);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Check that DEST is not ARG. */
+    private static void checkDest(int[] dest, int[] arg) {
+        if (dest == arg) {
+            throw new IllegalArgumentException("destination is an argument");
+        }
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
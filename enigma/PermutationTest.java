@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -87,4 +89,152 @@ public class PermutationTest {
         assertFalse(perm.derangement());
         assertTrue(perm2.derangement());
     }
+
+    /** Return a random permutation of 0 .. N-1 chosen with RAND. */
+    private static int[] randomTable(Random rand, int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = rand.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    @Test
+    public void testTables() {
+        perm = new Permutation("(BACD) (WXYZ)", defaultAlpha);
+        int[] table = perm.toArray();
+        assertEquals(2, table[0]);
+        assertEquals(22, table[25]);
+        assertEquals(4, table[4]);
+        Permutation back = new Permutation(table, defaultAlpha);
+        assertArrayEquals(table, back.toArray(new int[26]));
+        assertTrue(Permutation.isPermutation(table));
+        assertFalse(Permutation.isPermutation(new int[] { 0, 2, 2 }));
+        assertFalse(Permutation.isPermutation(new int[] { 0, 3, 1 }));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadTable() {
+        new Permutation(new int[] { 1, 1, 0, 3, 4, 5 }, alph);
+    }
+
+    @Test
+    public void testComposeInverse() {
+        Random rand = new Random(36);
+        for (int n : new int[] { 1, 2, 26, 97, 1000 }) {
+            int[] p = randomTable(rand, n), q = randomTable(rand, n);
+            int[] pq = Permutation.compose(p, q, new int[n]);
+            int[] inv = Permutation.inverse(p, new int[n]);
+            for (int c = 0; c < n; c += 1) {
+                assertEquals(p[q[c]], pq[c]);
+                assertEquals(c, inv[p[c]]);
+            }
+            int[] id = Permutation.compose(inv, p, new int[n]);
+            for (int c = 0; c < n; c += 1) {
+                assertEquals(c, id[c]);
+            }
+            Permutation.compose(p, q, q);
+            assertArrayEquals(pq, q);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAliasedDestination() {
+        int[] p = { 1, 2, 0 };
+        Permutation.inverse(p, p);
+    }
+
+    @Test
+    public void testConjugate() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        int[] p = perm.toArray();
+        int[] dest = new int[26];
+        Rotor rotor = new FixedRotor("I", perm);
+        for (int shift = -30; shift <= 30; shift += 1) {
+            Permutation.conjugate(p, shift, dest);
+            rotor.set(Math.floorMod(shift, 26));
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(rotor.convertForward(c), dest[c]);
+            }
+        }
+        assertArrayEquals(p, Permutation.conjugate(p, 52, dest));
+    }
+
+    @Test
+    public void testPower() {
+        Random rand = new Random(37);
+        int n = 200;
+        int[] p = randomTable(rand, n), dest = new int[n];
+        int[] expected = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            expected[c] = c;
+        }
+        int[] scratch = new int[n];
+        for (int k = 0; k < 50; k += 1) {
+            assertArrayEquals(expected, Permutation.power(p, k, dest));
+            Permutation.compose(p, expected, expected);
+        }
+        int[] inv = Permutation.inverse(p, scratch);
+        assertArrayEquals(inv, Permutation.power(p, -1, dest));
+        assertArrayEquals(Permutation.power(p, 7, new int[n]),
+                          Permutation.power(p, 7 + 1_000_000_000_000L
+                                            * lcmOfCycles(p), dest));
+    }
+
+    /** Return the order of permutation P. */
+    private static long lcmOfCycles(int[] p) {
+        int[] elements = new int[p.length], lengths = new int[p.length];
+        int count = Permutation.cycles(p, elements, lengths);
+        long result = 1;
+        for (int i = 0; i < count; i += 1) {
+            result = result / gcd(result, lengths[i]) * lengths[i];
+        }
+        return result;
+    }
+
+    /** Return the greatest common divisor of A and B. */
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    @Test
+    public void testCycles() {
+        perm = new Permutation("(BACD) (WXYZ) (EF)", defaultAlpha);
+        int[] p = perm.toArray();
+        int[] elements = new int[26], lengths = new int[26];
+        int count = Permutation.cycles(p, elements, lengths);
+        assertEquals(2 + 1 + 16, count);
+        assertArrayEquals(new int[] { 0, 2, 3, 1 },
+                          Arrays.copyOf(elements, 4));
+        assertEquals(4, lengths[0]);
+        assertEquals(2, lengths[1]);
+        assertArrayEquals(new int[] { 4, 5 },
+                          Arrays.copyOfRange(elements, 4, 6));
+        assertEquals(1, lengths[2]);
+        int[] type = Permutation.cycleType(p, new int[27], new int[26]);
+        assertEquals(16, type[1]);
+        assertEquals(1, type[2]);
+        assertEquals(2, type[4]);
+        assertEquals("4^2 2 1^16", Permutation.cycleTypeSignature(type));
+    }
+
+    @Test
+    public void testCycleTypeOfConjugates() {
+        Random rand = new Random(38);
+        int[] p = randomTable(rand, 500), q = randomTable(rand, 500);
+        int[] work = new int[500];
+        int[] qInv = Permutation.inverse(q, new int[500]);
+        int[] conj = Permutation.compose(q, Permutation.compose(
+            p, qInv, new int[500]), new int[500]);
+        assertArrayEquals(Permutation.cycleType(p, new int[501], work),
+                          Permutation.cycleType(conj, new int[501], work));
+        int total = 0;
+        int[] type = Permutation.cycleType(p, new int[501], work);
+        for (int len = 1; len <= 500; len += 1) {
+            total += len * type[len];
+        }
+        assertEquals(500, total);
+    }
 }
@@ -0,0 +1,449 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/** Converts input as Main.process does, but in four stages, each on its
+ *  own thread: reading and parsing lines, converting message text,
+ *  formatting it into groups of five, and writing the result.  The stages
+ *  pass a fixed set of reusable chunks, each holding a run of parsed
+ *  lines, through bounded single-producer, single-consumer RingBuffers;
+ *  the writer hands written chunks back to the reader.  The output, and
+ *  the exception (if any) that ends processing, are exactly those of
+ *  Main.process: everything preceding an error is written before the
+ *  error is thrown on the calling thread.
+ *  @author Yunsu Ha
+ */
+class Pipeline {
+
+    /** Default number of message characters per chunk. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** Default number of chunks in flight. */
+    static final int DEFAULT_DEPTH = 8;
+
+    /** Kinds of line held in a chunk. */
+    private static final byte SETTINGS = 0, BLANK = 1, MESSAGE = 2;
+
+    /** A pipeline converting the messages in INPUT with machine M and
+     *  writing the results to OUTPUT, passing chunks of about CHUNKSIZE
+     *  message characters with at most DEPTH chunks in flight. */
+    Pipeline(Machine M, LineInput input, PrintStream output,
+             int chunkSize, int depth) {
+        if (chunkSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("bad chunk size or depth");
+        }
+        _machine = M;
+        _alphabet = M.alphabet();
+        _input = input;
+        _output = output;
+        _free = new RingBuffer<>(depth);
+        _parsed = new RingBuffer<>(depth);
+        _converted = new RingBuffer<>(depth);
+        _formatted = new RingBuffer<>(depth);
+        for (int i = 0; i < depth; i++) {
+            _free.offer(new Chunk(chunkSize));
+        }
+    }
+
+    /** Convert with converters opened by ENGINE (which must support my
+     *  machine's configuration) rather than with the machine. */
+    void useEngine(EnigmaEngine engine) {
+        _engine = engine;
+    }
+
+    /** Check a sample of the conversions made by my engine with
+     *  VERIFIER. */
+    void shadow(ShadowVerifier verifier) {
+        _shadow = verifier;
+    }
+
+    /** Record counts of work done in STATS. */
+    void recordStats(RunStats stats) {
+        _stats = stats;
+    }
+
+    /** Process all input, returning when it has all been written, or
+     *  throwing the exception that Main.process would have thrown once
+     *  the output preceding it has been written. */
+    void run() {
+        start("enigma-read", this::read);
+        start("enigma-convert", this::convert);
+        start("enigma-format", this::format);
+        write();
+    }
+
+    /** Start a daemon thread named NAME running STAGE, stopping the
+     *  pipeline if STAGE fails unexpectedly. */
+    private void start(String name, Runnable stage) {
+        Runnable body = _stats == null ? stage : _stats.measured(stage);
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Stopped excp) {
+                return;
+            } catch (Throwable excp) {
+                _failure = excp;
+                _stopped = true;
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** The reading stage: split the input into settings, blank and
+     *  message lines, following the logic of Main.process. */
+    private void read() {
+        Chunk chunk = take(_free);
+        try {
+            String line = _input.nextLine();
+            if (!line.contains("*")) {
+                throw new EnigmaException("Setting format incorrect");
+            }
+            while (_input.hasNext()) {
+                chunk = addSettings(chunk, line);
+                line = _input.nextLine();
+                chunk = addIfBlank(chunk, line);
+                while (!line.contains("*") && _input.hasNext()) {
+                    chunk = addMessage(chunk, line);
+                    line = _input.nextLine();
+                    chunk = addIfBlank(chunk, line);
+                }
+                if (!_input.hasNext() && !line.contains("*")) {
+                    chunk = addMessage(chunk, line);
+                }
+            }
+            chunk.last = true;
+        } catch (Stopped excp) {
+            throw excp;
+        } catch (RuntimeException | Error excp) {
+            chunk.error = excp;
+        }
+        put(_parsed, chunk);
+    }
+
+    /** Add settings line SETTINGS to CHUNK, or to a fresh chunk if CHUNK
+     *  is full, and return the chunk added to. */
+    private Chunk addSettings(Chunk chunk, String settings) {
+        chunk = room(chunk, 0);
+        chunk.settings[chunk.count] = settings;
+        chunk.start[chunk.count] = _input.lineNumber();
+        chunk.add(SETTINGS);
+        return chunk;
+    }
+
+    /** Add a blank line to CHUNK (or a fresh chunk, as for addSettings) if
+     *  LINE is empty, and return the chunk added to. */
+    private Chunk addIfBlank(Chunk chunk, String line) {
+        if (line.isEmpty()) {
+            chunk = room(chunk, 0);
+            chunk.add(BLANK);
+        }
+        return chunk;
+    }
+
+    /** Add the text of message line LINE, less whitespace, to CHUNK (or a
+     *  fresh chunk, as for addSettings), and return the chunk added
+     *  to. */
+    private Chunk addMessage(Chunk chunk, String line) {
+        chunk = room(chunk, line.length());
+        chunk.start[chunk.count] = chunk.used;
+        chunk.used = Lexer.squeeze(line, chunk.text, chunk.used);
+        chunk.end[chunk.count] = chunk.used;
+        chunk.add(MESSAGE);
+        return chunk;
+    }
+
+    /** Return CHUNK if it has room for another line of up to CHARS
+     *  characters, and otherwise pass it on and return a fresh chunk
+     *  with that much room. */
+    private Chunk room(Chunk chunk, int chars) {
+        if (chunk.count == chunk.kind.length
+            || chunk.count > 0 && chunk.used + chars > chunk.text.length) {
+            put(_parsed, chunk);
+            chunk = take(_free);
+        }
+        chunk.reserve(chars);
+        return chunk;
+    }
+
+    /** The converting stage: apply settings lines and convert message
+     *  text in place. */
+    private void convert() {
+        Machine mach = _machine;
+        EnigmaEngine.Converter fast = null;
+        String settings = null;
+        EnigmaEvents.BlockConverted block = null;
+        while (true) {
+            Chunk chunk = take(_parsed);
+            for (int r = 0; r < chunk.count; r++) {
+                if (chunk.kind[r] == SETTINGS) {
+                    try {
+                        Main.setUp(mach, chunk.settings[r],
+                                   chunk.start[r]);
+                    } catch (RuntimeException excp) {
+                        chunk.count = r;
+                        chunk.error = excp;
+                        break;
+                    }
+                    if (_engine != null) {
+                        fast = _engine.open(mach);
+                    }
+                    settings = chunk.settings[r];
+                    if (block != null) {
+                        block.commit();
+                        if (_stats != null) {
+                            _stats.blockFinished();
+                        }
+                    }
+                    block = new EnigmaEvents.BlockConverted();
+                    block.begin();
+                    if (_stats != null) {
+                        _stats.settingsApplied();
+                        _stats.messageStarted();
+                    }
+                } else if (chunk.kind[r] == MESSAGE) {
+                    int length = chunk.end[r] - chunk.start[r];
+                    Machine start = null;
+                    if (fast != null && _shadow != null
+                        && _shadow.sample()) {
+                        start = mach.copy();
+                        fast.store(start);
+                    }
+                    String message = start == null ? null
+                        : new String(chunk.text, chunk.start[r], length);
+                    convert(chunk.text, chunk.start[r], chunk.end[r],
+                            mach, fast);
+                    if (start != null) {
+                        _shadow.check(start, settings, message,
+                                      new String(chunk.text, chunk.start[r],
+                                                 length));
+                    }
+                    block.lines += 1;
+                    block.characters += length;
+                    if (_stats != null) {
+                        _stats.lineConverted(length);
+                    }
+                }
+            }
+            boolean done = chunk.last || chunk.error != null;
+            if (done && block != null) {
+                block.commit();
+                if (_stats != null) {
+                    _stats.blockFinished();
+                }
+            }
+            put(_converted, chunk);
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    /** Convert TEXT[FROM .. TO-1] in place with FAST, if it is not null,
+     *  and otherwise with M, as Machine.convert(String) would. */
+    private void convert(char[] text, int from, int to, Machine M,
+                         EnigmaEngine.Converter fast) {
+        Alphabet alpha = _alphabet;
+        for (int i = from; i < to; i++) {
+            int c = alpha.toInt(text[i]);
+            text[i] = alpha.toChar(fast == null ? M.convert(c)
+                                   : fast.convert(c));
+        }
+    }
+
+    /** The formatting stage: render each chunk's blank and message lines
+     *  as Main.printMessageLine would. */
+    private void format() {
+        while (true) {
+            Chunk chunk = take(_converted);
+            for (int r = 0; r < chunk.count; r++) {
+                if (chunk.kind[r] == BLANK) {
+                    chunk.out.append(System.lineSeparator());
+                } else if (chunk.kind[r] == MESSAGE) {
+                    Main.formatMessageLine(chunk.text, chunk.start[r],
+                                           chunk.end[r], chunk.out);
+                }
+            }
+            put(_formatted, chunk);
+            if (chunk.last || chunk.error != null) {
+                return;
+            }
+        }
+    }
+
+    /** The writing stage, run on the calling thread: write each chunk's
+     *  output, and then either recycle it, or finish or throw if it is
+     *  the last. */
+    private void write() {
+        while (true) {
+            Chunk chunk = _formatted.take(this::stopped);
+            if (chunk == null) {
+                _output.flush();
+                rethrow(_failure);
+            }
+            _output.append(chunk.out);
+            if (chunk.error != null) {
+                _stopped = true;
+                _output.flush();
+                rethrow(chunk.error);
+            }
+            if (chunk.last) {
+                _output.flush();
+                return;
+            }
+            chunk.clear();
+            _free.offer(chunk);
+        }
+    }
+
+    /** Throw EXCP, which must be unchecked. */
+    private static void rethrow(Throwable excp) {
+        if (excp instanceof Error) {
+            throw (Error) excp;
+        }
+        throw (RuntimeException) excp;
+    }
+
+    /** Return the next chunk from QUEUE, throwing Stopped if the
+     *  pipeline stops while waiting. */
+    private Chunk take(RingBuffer<Chunk> queue) {
+        Chunk result = queue.take(this::stopped);
+        if (result == null) {
+            throw STOPPED;
+        }
+        return result;
+    }
+
+    /** Add CHUNK to QUEUE, throwing Stopped if the pipeline stops while
+     *  waiting. */
+    private void put(RingBuffer<Chunk> queue, Chunk chunk) {
+        if (!queue.put(chunk, this::stopped)) {
+            throw STOPPED;
+        }
+    }
+
+    /** Return true iff processing has ended early. */
+    private boolean stopped() {
+        return _stopped;
+    }
+
+    /** A run of parsed input lines, together with their conversion and
+     *  formatted output once later stages have filled those in.  Chunks
+     *  are reused; each is touched by one stage at a time. */
+    private static final class Chunk {
+
+        /** A chunk with room for CHARS message characters. */
+        Chunk(int chars) {
+            int lines = Math.max(MIN_LINES, chars / CHARS_PER_LINE);
+            text = new char[chars];
+            kind = new byte[lines];
+            start = new int[lines];
+            end = new int[lines];
+            settings = new String[lines];
+        }
+
+        /** Make sure that there is room for a line of CHARS characters in
+         *  an otherwise empty chunk. */
+        void reserve(int chars) {
+            if (chars > text.length) {
+                text = new char[chars];
+            }
+        }
+
+        /** Record a line of kind WHAT, whose other attributes have been
+         *  filled in. */
+        void add(byte what) {
+            kind[count] = what;
+            count += 1;
+        }
+
+        /** Empty me for reuse. */
+        void clear() {
+            Arrays.fill(settings, 0, count, null);
+            count = 0;
+            used = 0;
+            out.setLength(0);
+            error = null;
+            last = false;
+        }
+
+        /** Fewest lines a chunk holds. */
+        private static final int MIN_LINES = 64;
+
+        /** Assumed characters per message line, for sizing. */
+        private static final int CHARS_PER_LINE = 16;
+
+        /** Message characters, converted in place. */
+        private char[] text;
+        /** Number of characters of text in use. */
+        private int used;
+        /** Kind of each line. */
+        private final byte[] kind;
+        /** Start and end in text of each message line; start holds the
+         *  line number of each settings line. */
+        private final int[] start, end;
+        /** Each settings line. */
+        private final String[] settings;
+        /** Number of lines. */
+        private int count;
+        /** Formatted output. */
+        private final StringBuilder out = new StringBuilder();
+        /** Exception ending processing after my lines, or null. */
+        private Throwable error;
+        /** True iff I hold the end of the input. */
+        private boolean last;
+    }
+
+    /** Thrown within a stage to abandon it once the pipeline has
+     *  stopped. */
+    private static final class Stopped extends RuntimeException {
+        /** A Stopped without message or stack trace. */
+        Stopped() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** The instance of Stopped. */
+    private static final Stopped STOPPED = new Stopped();
+
+    /** Machine used for conversion. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Source of input lines. */
+    private final LineInput _input;
+
+    /** Destination of output. */
+    private final PrintStream _output;
+
+    /** Engine converting messages, or null. */
+    private EnigmaEngine _engine;
+
+    /** Checker of a sample of the conversions made by _engine, or
+     *  null. */
+    private ShadowVerifier _shadow;
+
+    /** Runtime metrics, or null. */
+    private RunStats _stats;
+
+    /** Empty chunks, from the writer to the reader. */
+    private final RingBuffer<Chunk> _free;
+
+    /** Chunks from the reader to the converter. */
+    private final RingBuffer<Chunk> _parsed;
+
+    /** Chunks from the converter to the formatter. */
+    private final RingBuffer<Chunk> _converted;
+
+    /** Chunks from the formatter to the writer. */
+    private final RingBuffer<Chunk> _formatted;
+
+    /** True iff processing has ended early. */
+    private volatile boolean _stopped;
+
+    /** Unexpected failure of a stage, if any. */
+    private volatile Throwable _failure;
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Yunsu Ha
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "\n"
+        + "Took the camera of rosewood\n"
+        + "   \n"
+        + "* B Beta I II III AAAA\n"
+        + "\n"
+        + "HELLO WORLD\n"
+        + "ABCDE\n"
+        + "Made of sliding folding rosewood";
+
+    /** The output and exception, if any, of processing INPUT with
+     *  Main.process (if CHUNK is 0) or with a Pipeline using chunks of
+     *  CHUNK characters, DEPTH at a time. */
+    private static String run(String input, int chunk, int depth) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        LineInput in = new LineInput(new ByteArrayInputStream(
+            input.getBytes(StandardCharsets.UTF_8)));
+        String error = "";
+        try {
+            if (chunk == 0) {
+                new Main(navalMachine(), in, out).process();
+            } else {
+                new Pipeline(navalMachine(), in, out, chunk, depth).run();
+            }
+        } catch (RuntimeException excp) {
+            error = excp.getClass().getName() + ": " + excp.getMessage();
+        }
+        out.flush();
+        return bytes.toString() + "|" + error;
+    }
+
+    /** Check that Pipelines of various chunk sizes and depths agree with
+     *  Main.process on INPUT. */
+    private static void checkAgrees(String input) {
+        String expected = run(input, 0, 0);
+        for (int chunk : new int[] { 1, 3, 16, Pipeline.DEFAULT_CHUNK }) {
+            for (int depth : new int[] { 1, 2, Pipeline.DEFAULT_DEPTH }) {
+                assertEquals(msg("pipeline", "chunk %d depth %d", chunk,
+                                 depth),
+                             expected, run(input, chunk, depth));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMain() {
+        checkAgrees(INPUT);
+        checkAgrees(INPUT + "\n");
+        checkAgrees(INPUT.replace("\n", "\r\n"));
+    }
+
+    @Test
+    public void testLongInput() {
+        StringBuilder input = new StringBuilder(INPUT);
+        for (int i = 0; i < 2000; i += 1) {
+            input.append("\nFROMHISSHOULDERHIAWATHA");
+        }
+        checkAgrees(input.toString());
+    }
+
+    @Test
+    public void testErrors() {
+        checkAgrees("B Beta III IV I AXLE\nHELLO\n");
+        checkAgrees(INPUT + "\n* B Beta III IV X AXLE\nHELLO\n");
+        checkAgrees(INPUT + "\n* B III Beta IV I AXLE\nHELLO\n");
+        assertTrue(run("", 0, 0).endsWith("NoSuchElementException: "
+                                           + "No line found"));
+        checkAgrees("");
+    }
+}
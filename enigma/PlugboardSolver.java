@@ -0,0 +1,539 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the plugboard of a ciphertext whose rotor order, rings and
+ *  start positions are known, by hill-climbing on the n-gram score of the
+ *  decryption.  A climb starts from a plugboard (the first from the empty
+ *  one that Main.setUp makes of a settings line with no plugs, the rest
+ *  from random ones) and repeatedly tries toggling the pair of two
+ *  letters: unplugging them if they are plugged together, and otherwise
+ *  unplugging whatever they are plugged to and plugging them together.
+ *  It keeps any change that raises the score, and stops when no pair
+ *  does.
+ *
+ *  Each climb is scored incrementally.  With plugboard P and the rotors'
+ *  permutation R_I at position I, ciphertext C_I decrypts to
+ *  P(R_I(P(C_I))), and the R_I, which a plugboard does not change, are
+ *  tabulated once.  A toggle changes P only on at most four letters, so
+ *  only the positions whose ciphertext or rotor output is one of those
+ *  letters change, and only the n-grams covering them are rescored; the
+ *  positions of each ciphertext letter are indexed once, and those of
+ *  each rotor output are reindexed whenever a change is kept.
+ *
+ *  Restarts are independent and run in parallel, each on its own copy of
+ *  the working state, keeping the best result found by any of them and
+ *  stopping when a time budget runs out.
+ *  @author Yunsu Ha
+ */
+public final class PlugboardSolver {
+
+    /** Default largest number of plugged pairs (as on the services'
+     *  machines). */
+    static final int DEFAULT_MAX_PAIRS = 10;
+
+    /** Print the plugboard best explaining the ciphertext in the file
+     *  ARGS[3] under the settings line ARGS[2] (whose plugboard is
+     *  ignored) of the configuration file ARGS[0], scored by the n-gram
+     *  counts in ARGS[1], and the decryption under it.  Options:
+     *      --restarts=N   climbs (default 100);
+     *      --seconds=N    time budget (default 10);
+     *      --max-pairs=N  most plugged pairs (default 10);
+     *      --seed=N       random seed (default 0);
+     *      --threads=N    parallelism (default: all processors). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--restarts=([1-9]\\d*) --seconds=(\\d+) "
+                                + "--max-pairs=(\\d+) --seed=(-?\\d+) "
+                                + "--threads=([1-9]\\d*) --=(.+){4}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.PlugboardSolver "
+                            + "[--restarts=N] [--seconds=N] [--max-pairs=N] "
+                            + "[--seed=N] [--threads=N] CONFIG NGRAMS "
+                            + "SETTINGS CIPHER");
+            }
+            List<String> files = options.get("--");
+            Machine mach = Main.readConfig(files.get(0));
+            Main.setUp(mach, files.get(2));
+            NgramScorer scorer;
+            String cipher;
+            try (BufferedReader in =
+                     Files.newBufferedReader(Paths.get(files.get(1)))) {
+                scorer = NgramScorer.read(mach.alphabet(), in);
+            } catch (IOException excp) {
+                throw error("could not read %s", files.get(1));
+            }
+            try {
+                cipher = String.join("", Files.readAllLines(
+                    Paths.get(files.get(3))));
+            } catch (IOException excp) {
+                throw error("could not read %s", files.get(3));
+            }
+            PlugboardSolver solver =
+                new PlugboardSolver(mach, cipher, scorer);
+            solver.maxPairs(Integer.parseInt(
+                Main.option(options, "--max-pairs", "" + DEFAULT_MAX_PAIRS)));
+            Result best = solver.solve(
+                Integer.parseInt(Main.option(options, "--restarts", "100")),
+                TimeUnit.SECONDS.toMillis(
+                    Long.parseLong(Main.option(options, "--seconds", "10"))),
+                Integer.parseInt(
+                    Main.option(options, "--threads", "" + Runtime
+                                .getRuntime().availableProcessors())),
+                Long.parseLong(Main.option(options, "--seed", "0")));
+            System.out.println(best);
+            System.out.println(solver.decrypt(best));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A solver for the plugboard of CIPHER, whose characters not in the
+     *  alphabet are ignored, enciphered by M as it is now set (its own
+     *  plugboard aside), scoring decryptions with SCORER. */
+    PlugboardSolver(Machine M, String cipher, NgramScorer scorer) {
+        Alphabet alpha = M.alphabet();
+        if (scorer.alphabet().size() != alpha.size()) {
+            throw error("n-grams are for a different alphabet");
+        }
+        _machine = M.copy();
+        _machine.setPlugboard(new Permutation("", alpha));
+        _scorer = scorer;
+        _size = alpha.size();
+        int[] codes = new int[cipher.length()];
+        int len = 0;
+        for (int i = 0; i < cipher.length(); i += 1) {
+            int c = alpha.toInt(cipher.charAt(i));
+            if (c >= 0) {
+                codes[len] = c;
+                len += 1;
+            }
+        }
+        _cipher = Arrays.copyOf(codes, len);
+        _rotors = new int[len * _size];
+        Machine mach = _machine.copy();
+        for (int i = 0; i < len; i += 1) {
+            mach.advanceRotors();
+            for (int x = 0; x < _size; x += 1) {
+                _rotors[i * _size + x] = mach.map(x);
+            }
+        }
+        _inStart = new int[_size + 1];
+        _inPos = new int[len];
+        bucket(_cipher, _inStart, _inPos);
+        maxPairs(DEFAULT_MAX_PAIRS);
+    }
+
+    /** Plug at most PAIRS pairs of letters. */
+    void maxPairs(int pairs) {
+        _maxPairs = Math.min(pairs, _size / 2);
+    }
+
+    /** Return the best result of up to RESTARTS climbs, the first from
+     *  the empty plugboard and the rest from random ones chosen with seed
+     *  SEED, run on THREADS threads and started within BUDGET
+     *  milliseconds.  The first climb is always made; others that would
+     *  start after the budget is spent are not, and climbs running when
+     *  it is spent stop where they are. */
+    Result solve(int restarts, long budget, int threads, long seed) {
+        long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(budget);
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Result> best = new AtomicReference<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t += 1) {
+                tasks.add(pool.submit(() -> {
+                    Climber climber = new Climber();
+                    for (int r = next.getAndIncrement(); r < restarts;
+                         r = next.getAndIncrement()) {
+                        if (r > 0 && System.nanoTime() >= deadline) {
+                            break;
+                        }
+                        Result result =
+                            climber.climb(r, new Random(seed + r), deadline);
+                        best.accumulateAndGet(result, Result::better);
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return best.get();
+    }
+
+    /** Return the score of the decryption of my ciphertext with plugboard
+     *  PLUGBOARD, found directly. */
+    double score(Permutation plugboard) {
+        int[] plain = new int[_cipher.length];
+        for (int i = 0; i < plain.length; i += 1) {
+            plain[i] = plugboard.permute(
+                _rotors[i * _size + plugboard.permute(_cipher[i])]);
+        }
+        return _scorer.score(plain, 0, plain.length);
+    }
+
+    /** Return the decryption of my ciphertext with the plugboard of
+     *  RESULT. */
+    String decrypt(Result result) {
+        Machine mach = _machine.copy();
+        mach.setPlugboard(new Permutation(result.cycles(), mach.alphabet()));
+        StringBuilder plain = new StringBuilder();
+        for (int c : _cipher) {
+            plain.append(mach.alphabet().toChar(mach.convert(c)));
+        }
+        return plain.toString();
+    }
+
+    /** Sort the indices of CODES by value into POS, setting START[C] to
+     *  the first index in POS of those with value C (and START[SIZE] to
+     *  their number). */
+    private void bucket(int[] codes, int[] start, int[] pos) {
+        Arrays.fill(start, 0);
+        for (int c : codes) {
+            start[c + 1] += 1;
+        }
+        for (int c = 0; c < _size; c += 1) {
+            start[c + 1] += start[c];
+        }
+        int[] fill = Arrays.copyOf(start, _size);
+        for (int i = 0; i < codes.length; i += 1) {
+            pos[fill[codes[i]]] = i;
+            fill[codes[i]] += 1;
+        }
+    }
+
+    /** The outcome of one climb. */
+    static final class Result {
+
+        /** The outcome of climb number RESTART, which reached plugboard
+         *  PLUGS (as a table of an involution on the indices of ALPHA)
+         *  scoring SCORE. */
+        Result(int restart, int[] plugs, double score, Alphabet alpha) {
+            this.restart = restart;
+            this.plugs = plugs;
+            this.score = score;
+            StringBuilder cycles = new StringBuilder();
+            for (int c = 0; c < plugs.length; c += 1) {
+                if (plugs[c] > c) {
+                    if (cycles.length() > 0) {
+                        cycles.append(' ');
+                    }
+                    cycles.append('(').append(alpha.toChar(c))
+                        .append(alpha.toChar(plugs[c])).append(')');
+                }
+            }
+            _cycles = cycles.toString();
+        }
+
+        /** Return the better of A and B: the higher scoring, or the
+         *  earlier climb if they tie, or B if A is null. */
+        static Result better(Result a, Result b) {
+            if (a == null || b.score > a.score
+                || (b.score == a.score && b.restart < a.restart)) {
+                return b;
+            }
+            return a;
+        }
+
+        /** Return my plugboard as cycles, as on a settings line. */
+        String cycles() {
+            return _cycles;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.2f %s", score, cycles());
+        }
+
+        /** The number of the climb. */
+        final int restart;
+
+        /** The plugboard, as a table. */
+        final int[] plugs;
+
+        /** The score of the decryption under it. */
+        final double score;
+
+        /** My plugboard as cycles. */
+        private final String _cycles;
+    }
+
+    /** The working state of one climb at a time, for one thread. */
+    private final class Climber {
+
+        /** A climber for my ciphertext. */
+        Climber() {
+            int len = _cipher.length;
+            _plugs = new int[_size];
+            _out = new int[len];
+            _plain = new int[len];
+            _outStart = new int[_size + 1];
+            _outPos = new int[len];
+            _mark = new int[len];
+            _gramMark = new int[len];
+            _touched = new int[len];
+            _grams = new int[len];
+            _newPlain = new int[len];
+            _oldPlain = new int[len];
+            _pairs = new int[_size * (_size - 1) / 2];
+            for (int a = 0, k = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1, k += 1) {
+                    _pairs[k] = a * _size + b;
+                }
+            }
+        }
+
+        /** Return the result of climb number RESTART, started from the
+         *  empty plugboard if RESTART is 0 and otherwise from one chosen
+         *  with RAND, and ordering its trials with RAND, stopping early
+         *  if System.nanoTime() reaches DEADLINE. */
+        Result climb(int restart, Random rand, long deadline) {
+            for (int c = 0; c < _size; c += 1) {
+                _plugs[c] = c;
+            }
+            _numPairs = 0;
+            if (restart > 0) {
+                for (int k = rand.nextInt(_maxPairs + 1); k > 0; k -= 1) {
+                    int a = rand.nextInt(_size), b = rand.nextInt(_size);
+                    if (a != b && _plugs[a] == a && _plugs[b] == b) {
+                        _plugs[a] = b;
+                        _plugs[b] = a;
+                        _numPairs += 1;
+                    }
+                }
+            }
+            reset();
+            boolean improved = true;
+            while (improved && System.nanoTime() < deadline) {
+                improved = false;
+                shuffle(rand);
+                for (int pair : _pairs) {
+                    improved |= tryToggle(pair / _size, pair % _size);
+                }
+            }
+            return new Result(restart, _plugs.clone(),
+                              _scorer.score(_plain, 0, _plain.length),
+                              _machine.alphabet());
+        }
+
+        /** Decrypt my ciphertext afresh with my plugboard and index the
+         *  rotor outputs. */
+        private void reset() {
+            for (int i = 0; i < _cipher.length; i += 1) {
+                _out[i] = _rotors[i * _size + _plugs[_cipher[i]]];
+                _plain[i] = _plugs[_out[i]];
+            }
+            bucket(_out, _outStart, _outPos);
+        }
+
+        /** Toggle the pair of letters A and B if that raises the score,
+         *  returning true if it does. */
+        private boolean tryToggle(int a, int b) {
+            int pa = _plugs[a], pb = _plugs[b];
+            int pairs = _numPairs;
+            int[] changed = _changed;
+            changed[0] = a;
+            changed[1] = b;
+            changed[2] = pa;
+            changed[3] = pb;
+            if (pa == b) {
+                pairs -= 1;
+            } else {
+                pairs += 1 - (pa != a ? 1 : 0) - (pb != b ? 1 : 0);
+                if (pairs > _maxPairs) {
+                    return false;
+                }
+            }
+            unplug(a);
+            unplug(b);
+            if (pa != b) {
+                _plugs[a] = b;
+                _plugs[b] = a;
+            }
+            double delta = rescore(changed);
+            if (delta > 0) {
+                _numPairs = pairs;
+                for (int k = 0; k < _touchedCount; k += 1) {
+                    int i = _touched[k];
+                    _out[i] = _rotors[i * _size + _plugs[_cipher[i]]];
+                }
+                bucket(_out, _outStart, _outPos);
+                return true;
+            }
+            for (int k = 0; k < _touchedCount; k += 1) {
+                _plain[_touched[k]] = _oldPlain[k];
+            }
+            unplug(a);
+            unplug(b);
+            _plugs[a] = pa;
+            _plugs[pa] = a;
+            _plugs[b] = pb;
+            _plugs[pb] = b;
+            return false;
+        }
+
+        /** Unplug C and whatever it is plugged to. */
+        private void unplug(int c) {
+            int p = _plugs[c];
+            _plugs[p] = p;
+            _plugs[c] = c;
+        }
+
+        /** Update the decryption for the change in the plugboard on the
+         *  letters CHANGED, noting the positions touched and their old
+         *  values, and return the change in the score. */
+        private double rescore(int[] changed) {
+            _stamp += 1;
+            _touchedCount = 0;
+            int numGrams = 0;
+            int order = _scorer.order(), len = _cipher.length;
+            for (int c : changed) {
+                for (int k = _inStart[c]; k < _inStart[c + 1]; k += 1) {
+                    numGrams = touch(_inPos[k], order, len, numGrams);
+                }
+                for (int k = _outStart[c]; k < _outStart[c + 1]; k += 1) {
+                    numGrams = touch(_outPos[k], order, len, numGrams);
+                }
+            }
+            double before = 0.0, after = 0.0;
+            for (int k = 0; k < numGrams; k += 1) {
+                before += _scorer.gram(_plain, _grams[k]);
+            }
+            for (int k = 0; k < _touchedCount; k += 1) {
+                int i = _touched[k];
+                _oldPlain[k] = _plain[i];
+                _plain[i] = _newPlain[k];
+            }
+            for (int k = 0; k < numGrams; k += 1) {
+                after += _scorer.gram(_plain, _grams[k]);
+            }
+            return after - before;
+        }
+
+        /** Note position I, of a text of LEN characters scored by n-grams
+         *  of length ORDER, and its new decryption, if not already noted,
+         *  along with the n-grams covering it, of which NUMGRAMS are
+         *  noted so far.  Return the new number noted. */
+        private int touch(int i, int order, int len, int numGrams) {
+            if (_mark[i] == _stamp) {
+                return numGrams;
+            }
+            _mark[i] = _stamp;
+            _touched[_touchedCount] = i;
+            _newPlain[_touchedCount] =
+                _plugs[_rotors[i * _size + _plugs[_cipher[i]]]];
+            _touchedCount += 1;
+            for (int g = Math.max(0, i - order + 1);
+                 g <= Math.min(i, len - order); g += 1) {
+                if (_gramMark[g] != _stamp) {
+                    _gramMark[g] = _stamp;
+                    _grams[numGrams] = g;
+                    numGrams += 1;
+                }
+            }
+            return numGrams;
+        }
+
+        /** Put my trial pairs in an order chosen with RAND. */
+        private void shuffle(Random rand) {
+            for (int k = _pairs.length - 1; k > 0; k -= 1) {
+                int j = rand.nextInt(k + 1);
+                int t = _pairs[k];
+                _pairs[k] = _pairs[j];
+                _pairs[j] = t;
+            }
+        }
+
+        /** The plugboard, as a table. */
+        private final int[] _plugs;
+
+        /** Number of pairs plugged. */
+        private int _numPairs;
+
+        /** Rotor output and decryption at each position. */
+        private final int[] _out, _plain;
+
+        /** Positions of each rotor output, arranged as for bucket. */
+        private final int[] _outStart, _outPos;
+
+        /** Marks of the positions and n-grams touched by a trial, equal
+         *  to _stamp if touched by the current one. */
+        private final int[] _mark, _gramMark;
+
+        /** Current trial number. */
+        private int _stamp;
+
+        /** Positions touched by the current trial, their new and old
+         *  decryptions, and their number. */
+        private final int[] _touched, _newPlain, _oldPlain;
+
+        /** Number of positions touched. */
+        private int _touchedCount;
+
+        /** Starts of the n-grams touched by the current trial. */
+        private final int[] _grams;
+
+        /** Pairs of letters A < B, as A * SIZE + B. */
+        private final int[] _pairs;
+
+        /** Letters whose plugs the current trial changes. */
+        private final int[] _changed = new int[4];
+    }
+
+    /** Copy of the machine, with no plugboard. */
+    private final Machine _machine;
+
+    /** Scorer of decryptions. */
+    private final NgramScorer _scorer;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The rotors' permutation at each position I, as entries
+     *  I * _size .. (I + 1) * _size - 1. */
+    private final int[] _rotors;
+
+    /** Positions of each ciphertext letter, arranged as for bucket. */
+    private final int[] _inStart, _inPos;
+
+    /** Most pairs plugged. */
+    private int _maxPairs;
+}
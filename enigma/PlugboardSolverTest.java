@@ -0,0 +1,100 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver class.
+ *  @author Yunsu Ha
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String SETTINGS = "* B Beta III IV I AXLE LLLL";
+
+    private static final String PLUGS = "(AQ) (BK) (EW) (HZ) (MR) (SX)";
+
+    /** Return a trigram scorer made from DECLARATION. */
+    private static NgramScorer scorer() {
+        try {
+            return NgramScorer.build(UPPER, 3, new StringReader(DECLARATION));
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /** Return the first LENGTH characters of DECLARATION enciphered with
+     *  the plugboard PLUGS. */
+    private static String cipher(int length, String plugs) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTINGS + " " + plugs);
+        return mach.convert(DECLARATION.substring(0, length));
+    }
+
+    /** Return a solver for CIPHER. */
+    private static PlugboardSolver solver(String cipher) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTINGS);
+        return new PlugboardSolver(mach, cipher, scorer());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRecoversPlugboard() {
+        PlugboardSolver solver = solver(cipher(400, PLUGS));
+        PlugboardSolver.Result best = solver.solve(16, 20000, 4, 1);
+        assertEquals(PLUGS, best.cycles());
+        assertEquals(DECLARATION.substring(0, 400), solver.decrypt(best));
+        assertEquals(solver.score(new Permutation(PLUGS, UPPER)),
+                     best.score, 1e-3);
+    }
+
+    @Test
+    public void testIncrementalScores() {
+        PlugboardSolver solver = solver(cipher(300, PLUGS));
+        for (int r = 0; r < 8; r += 1) {
+            PlugboardSolver.Result result = solver.solve(1, 20000, 1, r);
+            assertEquals(solver.score(new Permutation(result.cycles(),
+                                                      UPPER)),
+                         result.score, 1e-3);
+        }
+    }
+
+    @Test
+    public void testEmptyPlugboard() {
+        PlugboardSolver solver = solver(cipher(300, ""));
+        PlugboardSolver.Result best = solver.solve(4, 20000, 2, 3);
+        assertEquals("", best.cycles());
+        assertEquals(DECLARATION.substring(0, 300), solver.decrypt(best));
+    }
+
+    @Test
+    public void testBudget() {
+        Random rand = new Random(5);
+        StringBuilder noise = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            noise.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        PlugboardSolver solver = solver(noise.toString());
+        solver.maxPairs(13);
+        long start = System.nanoTime();
+        PlugboardSolver.Result best =
+            solver.solve(Integer.MAX_VALUE, 200, 2, 0);
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        assertNotNull(best);
+        assertTrue(best.cycles().split(" ").length <= 13);
+    }
+}
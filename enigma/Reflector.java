@@ -18,6 +18,11 @@ class Reflector extends FixedRotor {
         return 3;
     }
 
+    @Override
+    Rotor copy() {
+        return copyState(new Reflector(name(), permutation()));
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
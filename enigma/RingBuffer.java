@@ -0,0 +1,106 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/** A bounded, lock-free queue for exactly one producer thread and one
+ *  consumer thread.  Items live in a power-of-two array indexed by two
+ *  ever-increasing counters; each counter is written by only one side and
+ *  published with release semantics, so no locks or compare-and-set
+ *  operations are needed.  The blocking put and take spin briefly and
+ *  then park with growing back-off.
+ *  @author Yunsu Ha
+ */
+final class RingBuffer<T> {
+
+    /** Spins before a blocked put or take starts parking. */
+    private static final int SPINS = 128;
+
+    /** Longest park of a blocked put or take, in nanoseconds. */
+    private static final long MAX_PARK = 1 << 20;
+
+    /** A queue holding at least CAPACITY items. */
+    @SuppressWarnings("unchecked")
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        _items = (T[]) new Object[size];
+        _mask = size - 1;
+    }
+
+    /** Add ITEM at the tail and return true, or return false if I am
+     *  full.  Producer only. */
+    boolean offer(T item) {
+        long tail = _tail.get();
+        if (tail - _head.get() == _items.length) {
+            return false;
+        }
+        _items[(int) tail & _mask] = item;
+        _tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /** Remove and return the item at the head, or return null if I am
+     *  empty.  Consumer only. */
+    T poll() {
+        long head = _head.get();
+        if (head == _tail.get()) {
+            return null;
+        }
+        int i = (int) head & _mask;
+        T result = _items[i];
+        _items[i] = null;
+        _head.lazySet(head + 1);
+        return result;
+    }
+
+    /** Add ITEM at the tail, waiting while I am full.  Return false
+     *  without adding it if STOP becomes true while waiting.  Producer
+     *  only. */
+    boolean put(T item, BooleanSupplier stop) {
+        for (int tries = 0; !offer(item); tries += 1) {
+            if (stop.getAsBoolean()) {
+                return false;
+            }
+            backOff(tries);
+        }
+        return true;
+    }
+
+    /** Remove and return the item at the head, waiting while I am empty.
+     *  Return null if STOP becomes true while waiting.  Consumer only. */
+    T take(BooleanSupplier stop) {
+        for (int tries = 0; ; tries += 1) {
+            T result = poll();
+            if (result != null) {
+                return result;
+            }
+            if (stop.getAsBoolean()) {
+                return null;
+            }
+            backOff(tries);
+        }
+    }
+
+    /** Wait a little, longer for larger TRIES. */
+    private static void backOff(int tries) {
+        if (tries < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK,
+                                           1L << Math.min(20, tries - SPINS)));
+        }
+    }
+
+    /** The items; slot I & _mask holds the I-th item ever added. */
+    private final T[] _items;
+
+    /** _items.length - 1. */
+    private final int _mask;
+
+    /** Number of items ever removed. */
+    private final AtomicLong _head = new AtomicLong();
+
+    /** Number of items ever added. */
+    private final AtomicLong _tail = new AtomicLong();
+}
@@ -106,6 +106,19 @@ class Rotor {
     void advance() {
     }
 
+    /** Return a new rotor with my name and permutation, in my current
+     *  setting and ring setting.  The copy moves independently of me. */
+    Rotor copy() {
+        return copyState(new Rotor(name(), permutation()));
+    }
+
+    /** Give R my setting and ring setting, and return R. */
+    Rotor copyState(Rotor r) {
+        r._setting = _setting;
+        r._ringSetting = _ringSetting;
+        return r;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -0,0 +1,340 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import static enigma.EnigmaException.*;
+
+/** Runtime metrics for one run of Main: counts of what was converted,
+ *  the latency of each message block, wall time, the CPU time and bytes
+ *  allocated of the threads doing the work, and the garbage collections
+ *  that happened meanwhile.  The threads measured are the one that made
+ *  me and any that run a task wrapped by measured(), such as the stages
+ *  of a Pipeline, so that figures for different ways of converting can
+ *  be compared.  The counters are written by one thread at a time; a
+ *  periodic reporter may read them concurrently.
+ *  @author Yunsu Ha
+ */
+class RunStats {
+
+    /** Statistics for work done on the current thread from now on. */
+    RunStats() {
+        _thread = Thread.currentThread().getId();
+        _startNanos = System.nanoTime();
+        _startCpu = cpuTime(_thread);
+        _startAllocated = allocated(_thread);
+        _startGcCount = gcCount();
+        _startGcMillis = gcMillis();
+    }
+
+    /** Record the application of a settings line. */
+    void settingsApplied() {
+        _settings += 1;
+    }
+
+    /** Record the start of a new message (the lines following a settings
+     *  line). */
+    void messageStarted() {
+        _messages += 1;
+        _blockStart = System.nanoTime();
+    }
+
+    /** Record the end of the message begun by the last call to
+     *  messageStarted. */
+    void blockFinished() {
+        if (_blocks == _blockNanos.length) {
+            _blockNanos = Arrays.copyOf(_blockNanos,
+                                        2 * _blockNanos.length);
+        }
+        _blockNanos[_blocks] = System.nanoTime() - _blockStart;
+        _blocks += 1;
+    }
+
+    /** Record the conversion of a message line of LENGTH characters. */
+    void lineConverted(int length) {
+        _lines += 1;
+        _characters += length;
+    }
+
+    /** Return TASK, made to add the CPU time and allocation of the
+     *  thread running it to mine. */
+    Runnable measured(Runnable task) {
+        return () -> {
+            long id = Thread.currentThread().getId();
+            long[] start = { cpuTime(id), allocated(id) };
+            synchronized (this) {
+                _workers.put(id, start);
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    if (_workers.remove(id) != null) {
+                        addWorker(id, start);
+                    }
+                }
+            }
+        };
+    }
+
+    /** Print a one-line summary on ERR every SECONDS seconds until
+     *  finish() is called. */
+    void reportEvery(long seconds, PrintStream err) {
+        long period = seconds * MILLIS_PER_SECOND;
+        _timer = new Timer("enigma-stats", true);
+        _timer.scheduleAtFixedRate(new TimerTask() {
+            private long _lastChars;
+            private long _lastNanos = _startNanos;
+
+            @Override
+            public void run() {
+                long now = System.nanoTime(), chars = _characters;
+                err.printf(Locale.ROOT, "[stats] %.1f s: %d chars, "
+                           + "%d messages, %.0f chars/s%n",
+                           (now - _startNanos) / NANOS_PER_SECOND, chars,
+                           _messages, perSecond(chars - _lastChars,
+                                                now - _lastNanos));
+                _lastChars = chars;
+                _lastNanos = now;
+            }
+        }, period, period);
+    }
+
+    /** Stop periodic reports and fix the final values, including the
+     *  work so far of measured tasks still running. */
+    synchronized void finish() {
+        if (_timer != null) {
+            _timer.cancel();
+        }
+        _wallNanos = System.nanoTime() - _startNanos;
+        for (Map.Entry<Long, long[]> worker : _workers.entrySet()) {
+            addWorker(worker.getKey(), worker.getValue());
+        }
+        _workers.clear();
+        _cpuNanos = cpuTime(_thread) - _startCpu + _workerCpu;
+        _allocatedBytes =
+            allocated(_thread) - _startAllocated + _workerAllocated;
+        _gcCount = gcCount() - _startGcCount;
+        _gcMillis = gcMillis() - _startGcMillis;
+        Arrays.sort(_blockNanos, 0, _blocks);
+    }
+
+    /** Print a summary of the final values on OUT. */
+    void report(PrintStream out) {
+        out.printf(Locale.ROOT, "Characters converted: %d%n"
+                   + "Message lines:        %d%n"
+                   + "Settings applied:     %d%n"
+                   + "Messages processed:   %d%n"
+                   + "Wall time:            %.3f s%n"
+                   + "CPU time:             %.3f s%n"
+                   + "Characters/second:    %.0f%n"
+                   + "Allocated bytes/char: %.1f%n"
+                   + "GC pauses:            %d (%d ms)%n"
+                   + "Block latency (ms):   p50 %.3f, p90 %.3f, p99 %.3f,"
+                   + " max %.3f%n",
+                   _characters, _lines, _settings, _messages,
+                   _wallNanos / NANOS_PER_SECOND,
+                   _cpuNanos / NANOS_PER_SECOND,
+                   perSecond(_characters, _wallNanos), bytesPerChar(),
+                   _gcCount, _gcMillis, millis(blockLatency(P50)),
+                   millis(blockLatency(P90)), millis(blockLatency(P99)),
+                   millis(blockLatency(1)));
+    }
+
+    /** Write the final values to FILE as a JSON object. */
+    void writeJson(Path file) {
+        String json = String.format(Locale.ROOT, "{%n"
+            + "  \"characters\": %d,%n"
+            + "  \"lines\": %d,%n"
+            + "  \"settingsApplied\": %d,%n"
+            + "  \"messages\": %d,%n"
+            + "  \"wallSeconds\": %.6f,%n"
+            + "  \"cpuSeconds\": %.6f,%n"
+            + "  \"charsPerSecond\": %.1f,%n"
+            + "  \"allocatedBytes\": %d,%n"
+            + "  \"allocatedBytesPerChar\": %.3f,%n"
+            + "  \"gcCount\": %d,%n"
+            + "  \"gcMillis\": %d,%n"
+            + "  \"blockMillisP50\": %.6f,%n"
+            + "  \"blockMillisP90\": %.6f,%n"
+            + "  \"blockMillisP99\": %.6f,%n"
+            + "  \"blockMillisMax\": %.6f%n"
+            + "}%n", _characters, _lines, _settings, _messages,
+            _wallNanos / NANOS_PER_SECOND, _cpuNanos / NANOS_PER_SECOND,
+            perSecond(_characters, _wallNanos), _allocatedBytes,
+            bytesPerChar(), _gcCount, _gcMillis, millis(blockLatency(P50)),
+            millis(blockLatency(P90)), millis(blockLatency(P99)),
+            millis(blockLatency(1)));
+        try (Writer out = Files.newBufferedWriter(file,
+                                                  StandardCharsets.UTF_8)) {
+            out.write(json);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the number of characters converted. */
+    long characters() {
+        return _characters;
+    }
+
+    /** Return the elapsed time, in nanoseconds, of the last run. */
+    long wallNanos() {
+        return _wallNanos;
+    }
+
+    /** Return the CPU time, in nanoseconds, of the last run. */
+    long cpuNanos() {
+        return _cpuNanos;
+    }
+
+    /** Return the number of message blocks finished. */
+    int blocks() {
+        return _blocks;
+    }
+
+    /** Return the Q-quantile (0 <= Q <= 1) of the block latencies, in
+     *  nanoseconds, or 0 if no block finished.  Valid after finish(). */
+    long blockLatency(double q) {
+        if (_blocks == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(q * _blocks) - 1;
+        return _blockNanos[Math.max(0, Math.min(_blocks - 1, rank))];
+    }
+
+    /** Return the allocated bytes per converted character, or -1 if the
+     *  JVM cannot measure allocation. */
+    double bytesPerChar() {
+        if (_startAllocated < 0) {
+            return -1;
+        }
+        return _characters == 0 ? 0 : (double) _allocatedBytes / _characters;
+    }
+
+    /** Return NANOS in milliseconds. */
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /** Return the rate of COUNT events in NANOS nanoseconds, per
+     *  second. */
+    private static double perSecond(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * NANOS_PER_SECOND / nanos;
+    }
+
+    /** Add the CPU time and allocation of thread ID since the values in
+     *  START to those of my measured tasks. */
+    private void addWorker(long id, long[] start) {
+        _workerCpu += cpuTime(id) - start[0];
+        _workerAllocated += Math.max(0, allocated(id) - start[1]);
+    }
+
+    /** Return the CPU time used by thread ID, in nanoseconds, or 0 if it
+     *  cannot be measured. */
+    private static long cpuTime(long id) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadCpuTimeSupported()) {
+            return 0;
+        }
+        return Math.max(0, threads.getThreadCpuTime(id));
+    }
+
+    /** Return the bytes allocated so far by thread ID, or -1 if this JVM
+     *  cannot say. */
+    private static long allocated(long id) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun =
+                (com.sun.management.ThreadMXBean) threads;
+            if (sun.isThreadAllocatedMemorySupported()
+                && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(id);
+            }
+        }
+        return -1;
+    }
+
+    /** Return the total number of garbage collections so far. */
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /** Return the total time spent in garbage collection so far, in
+     *  milliseconds. */
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Quantiles reported for block latency. */
+    private static final double P50 = 0.5, P90 = 0.9, P99 = 0.99;
+
+    /** Milliseconds per second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** Id of the thread that made me. */
+    private final long _thread;
+
+    /** Starting CPU time and allocation of the threads running measured
+     *  tasks, by thread id. */
+    private final HashMap<Long, long[]> _workers = new HashMap<>();
+
+    /** CPU time and allocation of measured tasks that have finished. */
+    private long _workerCpu, _workerAllocated;
+
+    /** Starting values of the clocks and counters. */
+    private final long _startNanos, _startCpu, _startAllocated,
+        _startGcCount, _startGcMillis;
+
+    /** Counts of work done. */
+    private volatile long _characters, _lines, _settings, _messages;
+
+    /** Start time of the current block. */
+    private long _blockStart;
+
+    /** Latency of each finished block, in nanoseconds; sorted by
+     *  finish(). */
+    private long[] _blockNanos = new long[INITIAL_BLOCKS];
+
+    /** Number of finished blocks. */
+    private int _blocks;
+
+    /** Initial size of _blockNanos. */
+    private static final int INITIAL_BLOCKS = 256;
+
+    /** Final values, set by finish(). */
+    private long _wallNanos, _cpuNanos, _allocatedBytes, _gcCount,
+        _gcMillis;
+
+    /** Periodic reporter, if any. */
+    private Timer _timer;
+}
@@ -0,0 +1,196 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RunStats class.
+ *  @author Yunsu Ha
+ */
+public class RunStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Bytes allocated by each measured task. */
+    private static final int ALLOCATION = 8 << 20;
+
+    /** Number of blocks timed by testPercentiles, more than RunStats
+     *  makes room for at first. */
+    private static final int BLOCKS = 300;
+
+    /** Latency of the one slow block of testPercentiles. */
+    private static final long SLOW_MILLIS = 50;
+
+    /** Arrays allocated by measured tasks, kept so that the allocation
+     *  is not optimized away. */
+    private static volatile byte[] _kept;
+
+    /** Run TASK on a new thread and wait for it to finish. */
+    private static void runOnThread(Runnable task)
+        throws InterruptedException {
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join();
+    }
+
+    /** Spin for about MILLIS milliseconds of CPU time. */
+    private static void spin(long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        long n = 0;
+        while (System.nanoTime() < end) {
+            n += 1;
+        }
+        _kept = new byte[(int) (n & 1)];
+    }
+
+    /** Return a machine configured by CONFIG, read from a file that is
+     *  then removed. */
+    private static Machine machine() throws IOException {
+        Path config = writeConfig(Files.createTempDirectory("enigma-stats"));
+        try {
+            return Main.readConfig(config.toString());
+        } finally {
+            Files.delete(config);
+            Files.delete(config.getParent());
+        }
+    }
+
+    /** Return the JSON written by STATS, which must be finished. */
+    private static String json(RunStats stats) throws IOException {
+        Path file = Files.createTempFile("enigma-stats", ".json");
+        try {
+            stats.writeJson(file);
+            return Files.readString(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return the number given for KEY in JSON. */
+    private static double value(String json, String key) {
+        Matcher field =
+            Pattern.compile("\"" + key + "\": ([-0-9.]+)[,\n]")
+            .matcher(json);
+        assertTrue("no " + key + " in " + json, field.find());
+        return Double.parseDouble(field.group(1));
+    }
+
+    /** Check the counts in the JSON written by STATS after converting
+     *  MESSAGES. */
+    private static void checkCounts(RunStats stats) throws IOException {
+        stats.finish();
+        assertEquals(56, stats.characters());
+        assertEquals(2, stats.blocks());
+        String json = json(stats);
+        assertEquals(56, value(json, "characters"), 0);
+        assertEquals(3, value(json, "lines"), 0);
+        assertEquals(2, value(json, "settingsApplied"), 0);
+        assertEquals(2, value(json, "messages"), 0);
+        assertTrue(value(json, "gcCount") >= 0);
+        assertTrue(value(json, "wallSeconds") > 0);
+        assertTrue(value(json, "blockMillisP50")
+                   <= value(json, "blockMillisMax"));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCounts() throws IOException {
+        RunStats stats = new RunStats();
+        Main main = new Main(machine(), messageInput(), discard());
+        main.recordStats(stats);
+        main.process();
+        checkCounts(stats);
+    }
+
+    @Test
+    public void testPipelineCounts() throws IOException {
+        RunStats stats = new RunStats();
+        Pipeline pipe = new Pipeline(machine(), messageInput(), discard(),
+                                     16, 2);
+        pipe.recordStats(stats);
+        pipe.run();
+        checkCounts(stats);
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        RunStats stats = new RunStats();
+        stats.finish();
+        assertEquals(0, stats.blockLatency(0.5));
+        stats = new RunStats();
+        for (int i = 0; i < BLOCKS; i += 1) {
+            stats.messageStarted();
+            if (i == BLOCKS / 2) {
+                Thread.sleep(SLOW_MILLIS);
+            }
+            stats.blockFinished();
+        }
+        stats.finish();
+        long slow = SLOW_MILLIS * 1_000_000L;
+        assertEquals(BLOCKS, stats.blocks());
+        assertTrue(stats.blockLatency(0) <= stats.blockLatency(0.5));
+        assertTrue(stats.blockLatency(0.5) <= stats.blockLatency(0.99));
+        assertTrue(stats.blockLatency(0.99) < slow);
+        assertTrue(stats.blockLatency(1) >= slow);
+        assertEquals(stats.blockLatency(1), stats.blockLatency(2));
+        assertTrue(value(json(stats), "blockMillisMax") >= SLOW_MILLIS);
+        assertTrue(value(json(stats), "blockMillisP99") < SLOW_MILLIS);
+    }
+
+    @Test
+    public void testMeasuredThreads() throws InterruptedException {
+        RunStats stats = new RunStats();
+        runOnThread(stats.measured(() -> {
+            _kept = new byte[ALLOCATION];
+            spin(100);
+        }));
+        stats.lineConverted(1);
+        stats.finish();
+        if (stats.bytesPerChar() >= 0) {
+            assertTrue(stats.bytesPerChar() >= ALLOCATION);
+        }
+        assertTrue(stats.cpuNanos() == 0 || stats.cpuNanos() >= 50_000_000);
+    }
+
+    @Test
+    public void testRunningAtFinish() throws InterruptedException {
+        RunStats stats = new RunStats();
+        CountDownLatch allocated = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread worker = new Thread(stats.measured(() -> {
+            _kept = new byte[ALLOCATION];
+            allocated.countDown();
+            try {
+                finished.await();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _kept = new byte[ALLOCATION];
+        }));
+        worker.start();
+        allocated.await();
+        stats.lineConverted(1);
+        stats.finish();
+        finished.countDown();
+        worker.join();
+        if (stats.bytesPerChar() >= 0) {
+            assertTrue(stats.bytesPerChar() >= ALLOCATION);
+            assertTrue(stats.bytesPerChar() < 2 * ALLOCATION);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package enigma;
+
+/** An Enigma machine for configurations with very many rotor slots.  A
+ *  character's path through the rotors is P B1 ... Bn R Fn ... F1 P,
+ *  where P is the plugboard, R the reflector, Fk the forward and Bk the
+ *  backward conversion of slot k, and each Bk is the inverse of Fk.  The
+ *  slots other than the reflector and the fastest (rightmost) one are
+ *  kept as the leaves of a segment tree whose nodes hold, as int tables,
+ *  the composition of the forward conversions beneath them and its
+ *  inverse.  The reflector conjugated by the tree's root is cached as a
+ *  single table, so that a character costs a fixed number of lookups
+ *  however many slots there are, and moving a rotor other than the
+ *  fastest recomposes only the O(log n) nodes above it.  The fastest
+ *  rotor, which moves on every character, is applied directly.  It steps
+ *  exactly as Machine does.
+ *  @author Yunsu Ha
+ */
+class SegmentTreeMachine {
+
+    /** A machine whose alphabet, rotor selection, rotor and ring settings
+     *  and plugboard are those of M, which is left unchanged. */
+    SegmentTreeMachine(Machine M) {
+        _alphabet = M.alphabet();
+        _size = _alphabet.size();
+        _numRotors = M.numRotors();
+        _pawls = M.numPawls();
+        _perm = new int[_numRotors][];
+        _inv = new int[_numRotors][];
+        _notch = new boolean[_numRotors][];
+        _rotates = new boolean[_numRotors];
+        _setting = new int[_numRotors];
+        _offset = new int[_numRotors];
+        for (int k = 0; k < _numRotors; k += 1) {
+            Rotor r = M.getRotor(k);
+            _perm[k] = new int[_size];
+            _inv[k] = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                _perm[k][c] = r.permutation().permute(c);
+                _inv[k][_perm[k][c]] = c;
+            }
+            _notch[k] = new boolean[_size];
+            for (int j = 0; j < r.notches().length(); j += 1) {
+                int posn = _alphabet.toInt(r.notches().charAt(j));
+                if (posn >= 0 && r.rotates()) {
+                    _notch[k][posn] = true;
+                }
+            }
+            _rotates[k] = r.rotates();
+            _setting[k] = r.setting();
+            _offset[k] = Math.floorMod(r.setting() - r.ringSetting(), _size);
+        }
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plugboard[c] = M.plugboard().permute(c);
+        }
+
+        _fastest = _numRotors - 1;
+        int inner = Math.max(1, _numRotors - 2);
+        _leaves = Integer.highestOneBit(Math.max(1, inner - 1)) << 1;
+        _fwd = new int[2 * _leaves][_size];
+        _bwd = new int[2 * _leaves][_size];
+        for (int j = 0; j < _leaves; j += 1) {
+            setLeaf(j);
+        }
+        for (int node = _leaves - 1; node >= 1; node -= 1) {
+            compose(node);
+        }
+        _core = new int[_size];
+        _reflector = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _reflector[c] = forward(0, c);
+        }
+        _coreStale = true;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    int convert(int c) {
+        advanceRotors();
+        if (_coreStale) {
+            updateCore();
+        }
+        c = _plugboard[c];
+        if (_fastest > 0) {
+            c = forward(_fastest, c);
+            c = backward(_fastest, _core[c]);
+        } else {
+            c = _core[c];
+        }
+        return _plugboard[c];
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of the
+     *  rotors accordingly. */
+    String convert(String msg) {
+        char[] result = new char[msg.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _alphabet.toChar(convert(_alphabet.toInt(
+                msg.charAt(i))));
+        }
+        return new String(result);
+    }
+
+    /** Return the current setting of the rotor in slot K. */
+    int setting(int k) {
+        return _setting[k];
+    }
+
+    /** Set the rotors of M (which must hold the same rotor selection as
+     *  I do) to my current settings. */
+    void store(Machine M) {
+        for (int k = 1; k < _numRotors; k += 1) {
+            M.getRotor(k).set(_setting[k]);
+        }
+    }
+
+    /** Advance the rotors, following Machine.advanceRotors. */
+    private void advanceRotors() {
+        boolean nextAtNotch = false;
+        for (int i = _numRotors - _pawls; i < _numRotors - 1; i += 1) {
+            if (_notch[i + 1][_setting[i + 1]]) {
+                advance(i);
+                nextAtNotch = true;
+            } else if (nextAtNotch) {
+                advance(i);
+                nextAtNotch = false;
+            }
+        }
+        advance(_numRotors - 1);
+    }
+
+    /** Advance the rotor in slot K one position, if it rotates, updating
+     *  the tree if K is one of its leaves. */
+    private void advance(int k) {
+        if (!_rotates[k]) {
+            return;
+        }
+        _setting[k] = _setting[k] + 1 == _size ? 0 : _setting[k] + 1;
+        _offset[k] = _offset[k] + 1 == _size ? 0 : _offset[k] + 1;
+        if (k > 0 && k < _fastest) {
+            int node = _leaves + k - 1;
+            setLeaf(k - 1);
+            for (node /= 2; node >= 1; node /= 2) {
+                compose(node);
+            }
+            _coreStale = true;
+        }
+    }
+
+    /** Recompute the reflector conjugated by the tree's root. */
+    private void updateCore() {
+        int[] fwd = _fwd[1], bwd = _bwd[1];
+        for (int c = 0; c < _size; c += 1) {
+            _core[c] = bwd[_reflector[fwd[c]]];
+        }
+        _coreStale = false;
+    }
+
+    /** Fill in the tables of leaf J, which holds slot J + 1 (or the
+     *  identity, if there is no such inner slot). */
+    private void setLeaf(int j) {
+        int k = j + 1, node = _leaves + j;
+        boolean inner = k < _fastest;
+        for (int c = 0; c < _size; c += 1) {
+            _fwd[node][c] = inner ? forward(k, c) : c;
+            _bwd[node][c] = inner ? backward(k, c) : c;
+        }
+    }
+
+    /** Recompute the tables of internal NODE from its children.  The left
+     *  child holds lower slots, which a character reaches later on its
+     *  forward path. */
+    private void compose(int node) {
+        int[] fwd = _fwd[node], bwd = _bwd[node];
+        int[] leftF = _fwd[2 * node], rightF = _fwd[2 * node + 1];
+        int[] leftB = _bwd[2 * node], rightB = _bwd[2 * node + 1];
+        for (int c = 0; c < _size; c += 1) {
+            fwd[c] = leftF[rightF[c]];
+            bwd[c] = rightB[leftB[c]];
+        }
+    }
+
+    /** Return the forward conversion of C by the rotor in slot K. */
+    private int forward(int k, int c) {
+        int d = _offset[k];
+        return wrap(_perm[k][wrap(c + d)] - d);
+    }
+
+    /** Return the backward conversion of C by the rotor in slot K. */
+    private int backward(int k, int c) {
+        int d = _offset[k];
+        return wrap(_inv[k][wrap(c + d)] - d);
+    }
+
+    /** Return P modulo the alphabet size, for -size <= P < 2 * size. */
+    private int wrap(int p) {
+        if (p < 0) {
+            return p + _size;
+        } else if (p >= _size) {
+            return p - _size;
+        }
+        return p;
+    }
+
+    /** Alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Slot of the fastest rotor. */
+    private final int _fastest;
+
+    /** Permutation, and its inverse, of the rotor in each slot. */
+    private final int[][] _perm, _inv;
+
+    /** For each slot and position, whether the rotor is at a notch. */
+    private final boolean[][] _notch;
+
+    /** Whether the rotor in each slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Setting of the rotor in each slot. */
+    private final int[] _setting;
+
+    /** Setting less ring setting of the rotor in each slot. */
+    private final int[] _offset;
+
+    /** Plugboard mapping. */
+    private final int[] _plugboard;
+
+    /** Number of leaves (a power of two). */
+    private final int _leaves;
+
+    /** Forward and backward tables of each tree node; node 1 is the root,
+     *  and the children of node I are 2I and 2I + 1. */
+    private final int[][] _fwd, _bwd;
+
+    /** Forward conversion of the reflector. */
+    private final int[] _reflector;
+
+    /** The reflector conjugated by the tree's root. */
+    private final int[] _core;
+
+    /** True iff _core must be recomputed. */
+    private boolean _coreStale;
+}
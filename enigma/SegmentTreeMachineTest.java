@@ -0,0 +1,145 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SegmentTreeMachine class.
+ *  @author Yunsu Ha
+ */
+public class SegmentTreeMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random permutation of UPPER in cycle notation, chosen
+     *  with RAND; it is a derangement made of 2-cycles if REFLECTOR. */
+    private static String randomCycles(Random rand, boolean reflector) {
+        List<Character> chars = new ArrayList<>();
+        for (char c : UPPER_STRING.toCharArray()) {
+            chars.add(c);
+        }
+        Collections.shuffle(chars, rand);
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < chars.size()) {
+            int len = reflector ? 2
+                : Math.min(chars.size() - i, 1 + rand.nextInt(8));
+            result.append('(');
+            for (int j = 0; j < len; j += 1) {
+                result.append(chars.get(i + j));
+            }
+            result.append(')');
+            i += len;
+        }
+        return result.toString();
+    }
+
+    /** Return a machine with SLOTS slots and PAWLS pawls, holding a
+     *  reflector, fixed rotors and notched moving rotors chosen with
+     *  seed SEED, all at random settings. */
+    private static Machine randomMachine(int slots, int pawls, long seed) {
+        Random rand = new Random(seed);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[slots];
+        rotors.add(new Reflector("R", new Permutation(
+            randomCycles(rand, true), UPPER)));
+        names[0] = "R";
+        for (int k = 1; k < slots; k += 1) {
+            Permutation perm = new Permutation(randomCycles(rand, false),
+                                               UPPER);
+            names[k] = "S" + k;
+            if (k < slots - pawls) {
+                rotors.add(new FixedRotor(names[k], perm));
+            } else {
+                StringBuilder notches = new StringBuilder();
+                for (int n = 1 + rand.nextInt(3); n > 0; n -= 1) {
+                    notches.append(UPPER_STRING.charAt(rand.nextInt(26)));
+                }
+                rotors.add(new MovingRotor(names[k], perm,
+                                           notches.toString()));
+            }
+        }
+        Machine mach = new Machine(UPPER, slots, pawls, rotors);
+        mach.insertRotors(names);
+        for (int k = 1; k < slots; k += 1) {
+            mach.getRotor(k).set(rand.nextInt(26));
+            mach.getRotor(k).setRings(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        mach.setPlugboard(new Permutation("(AQ) (EP) (ZX)", UPPER));
+        return mach;
+    }
+
+    /** Check that a SegmentTreeMachine made from MACH converts LENGTH
+     *  characters as MACH does. */
+    private static void checkAgrees(Machine mach, int length) {
+        SegmentTreeMachine tree = new SegmentTreeMachine(mach);
+        Random rand = new Random(length);
+        for (int i = 0; i < length; i += 1) {
+            int c = rand.nextInt(26);
+            assertEquals(msg("segment", "character %d", i),
+                         mach.convert(c), tree.convert(c));
+        }
+        for (int k = 1; k < mach.numRotors(); k += 1) {
+            assertEquals(mach.getRotor(k).setting(), tree.setting(k));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testNavalMachine() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+        SegmentTreeMachine tree = new SegmentTreeMachine(mach);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     tree.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, "* B Beta III IV I AAEQ");
+        checkAgrees(mach, 2000);
+    }
+
+    @Test
+    public void testManySlots() {
+        checkAgrees(randomMachine(100, 100, 1), 5000);
+        checkAgrees(randomMachine(64, 20, 2), 5000);
+        checkAgrees(randomMachine(37, 36, 3), 5000);
+    }
+
+    @Test
+    public void testFewSlots() {
+        checkAgrees(randomMachine(3, 2, 4), 1000);
+        checkAgrees(randomMachine(2, 1, 5), 1000);
+    }
+
+    @Test
+    public void testStore() {
+        Machine mach = randomMachine(50, 50, 6);
+        Machine copy = mach.copy();
+        SegmentTreeMachine tree = new SegmentTreeMachine(mach);
+        for (int i = 0; i < 700; i += 1) {
+            tree.convert(i % 26);
+            copy.convert(i % 26);
+        }
+        tree.store(mach);
+        for (int k = 1; k < mach.numRotors(); k += 1) {
+            assertEquals(copy.getRotor(k).setting(),
+                         mach.getRotor(k).setting());
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package enigma;
+
+/** Checks settings lines against the configuration of a machine without
+ *  allocating, so that rejecting a malformed line costs about as much as
+ *  accepting a good one.  check makes one scan of a line, following the
+ *  grammar of Lexer, and returns a result packing a code, which is OK or
+ *  one of the problem codes below, with the index in the line at which
+ *  the problem was found.  Only at the boundary of an API, where the
+ *  problem must be reported, does reject turn a result into an exception,
+ *  whose message is built from the code and position and which carries no
+ *  stack trace.
+ *
+ *  Besides the problems that Lexer reports, a line is rejected if it
+ *  names a rotor not in the configuration, names one twice, does not put
+ *  a reflector in the first slot and nowhere else, holds more moving
+ *  rotors than there are pawls, or has a position, ring setting or
+ *  plugboard character that is not in the alphabet, or a plugboard that
+ *  holds some character twice.  The problems of form are reported first;
+ *  of the others, the first in the order of the codes.
+ *
+ *  A validator holds only the configuration, and so may be shared
+ *  between threads.
+ *  @author Yunsu Ha
+ */
+final class SettingsValidator {
+
+    /** Result code of a line with no problems. */
+    static final int OK = 0;
+
+    /** Codes for problems of form, as reported by Lexer. */
+    static final int NO_STAR = 1, NO_SPACE = 2, MISSING_ROTORS = 3,
+        MISSING_POSITIONS = 4, POSITIONS_LENGTH = 5, RINGS_LENGTH = 6,
+        BAD_CHARACTER = 7, NO_PAREN = 8, UNCLOSED = 9, BAD_CYCLE = 10;
+
+    /** Codes for problems with the rotors and characters named. */
+    static final int UNKNOWN_ROTOR = 11, DUPLICATE_ROTOR = 12,
+        NOT_REFLECTOR = 13, MISPLACED_REFLECTOR = 14, TOO_MANY_MOVING = 15,
+        BAD_SETTING = 16, BAD_PLUG = 17, DUPLICATE_PLUG = 18;
+
+    /** A validator for settings lines of the configuration of M (its
+     *  alphabet, rotor slots, pawls and available rotors). */
+    SettingsValidator(Machine M) {
+        _alphabet = M.alphabet();
+        _numRotors = M.numRotors();
+        _pawls = M.numPawls();
+        int n = M.allRotors().size();
+        _names = new String[n];
+        _types = new int[n];
+        int size = Integer.highestOneBit(Math.max(1, 2 * n)) << 1;
+        _table = new int[size];
+        for (int i = 0; i < n; i += 1) {
+            Rotor r = M.allRotors().get(i);
+            _names[i] = r.name();
+            _types[i] = r.type();
+            int h = r.name().hashCode() & (size - 1);
+            while (_table[h] != 0) {
+                h = (h + 1) & (size - 1);
+            }
+            _table[h] = i + 1;
+        }
+    }
+
+    /** Return the code packed in RESULT. */
+    static int code(long result) {
+        return (int) result;
+    }
+
+    /** Return the index in its line of the problem reported by
+     *  RESULT. */
+    static int position(long result) {
+        return (int) (result >>> Integer.SIZE);
+    }
+
+    /** Return the result of checking settings line LINE. */
+    long check(CharSequence line) {
+        int n = line.length();
+        int pos = skipBlanks(line, 0);
+        if (pos == n || line.charAt(pos) != '*') {
+            return result(NO_STAR, pos);
+        }
+        pos += 1;
+        if (pos < n && !isBlank(line.charAt(pos))) {
+            return result(NO_SPACE, pos);
+        }
+        long found = result(OK, 0);
+        int moving = 0;
+        int first = skipBlanks(line, pos);
+        for (int k = 0; k < _numRotors; k += 1) {
+            pos = skipBlanks(line, pos);
+            if (pos == n) {
+                return result(MISSING_ROTORS, pos);
+            }
+            int start = pos;
+            pos = wordEnd(line, pos);
+            if (pos < n && !isBlank(line.charAt(pos))) {
+                return result(BAD_CHARACTER, pos);
+            }
+            int r = lookup(line, start, pos);
+            int problem = OK;
+            if (r < 0) {
+                problem = UNKNOWN_ROTOR;
+            } else if (repeats(line, first, start, pos)) {
+                problem = DUPLICATE_ROTOR;
+            } else if (k == 0 && _types[r] != REFLECTOR) {
+                problem = NOT_REFLECTOR;
+            } else if (k > 0 && _types[r] == REFLECTOR) {
+                problem = MISPLACED_REFLECTOR;
+            } else if (_types[r] == MOVING) {
+                moving += 1;
+                if (moving > _pawls) {
+                    problem = TOO_MANY_MOVING;
+                }
+            }
+            found = worst(found, problem, start);
+        }
+        pos = skipBlanks(line, pos);
+        if (pos == n) {
+            return result(MISSING_POSITIONS, pos);
+        }
+        for (int w = 0; w < 2; w += 1) {
+            int start = pos;
+            pos = wordEnd(line, pos);
+            if (pos < n && !isBlank(line.charAt(pos))) {
+                return result(BAD_CHARACTER, pos);
+            }
+            if (pos - start != _numRotors - 1) {
+                return result(w == 0 ? POSITIONS_LENGTH : RINGS_LENGTH,
+                              start);
+            }
+            for (int i = start; i < pos; i += 1) {
+                if (!_alphabet.contains(line.charAt(i))) {
+                    found = worst(found, BAD_SETTING, i);
+                }
+            }
+            pos = skipBlanks(line, pos);
+            if (pos == n || line.charAt(pos) == '(') {
+                break;
+            }
+        }
+        int plugs = pos;
+        while (pos < n) {
+            if (line.charAt(pos) != '(') {
+                return result(NO_PAREN, pos);
+            }
+            int open = pos;
+            pos += 1;
+            while (true) {
+                if (pos == n) {
+                    return result(UNCLOSED, open);
+                }
+                char c = line.charAt(pos);
+                if (c == ')') {
+                    break;
+                } else if (c == '(' || c == '*' || Lexer.isSpace(c)) {
+                    return result(BAD_CYCLE, pos);
+                } else if (!_alphabet.contains(c)) {
+                    found = worst(found, BAD_PLUG, pos);
+                } else if (indexOf(line, c, plugs, pos) >= 0) {
+                    found = worst(found, DUPLICATE_PLUG, pos);
+                }
+                pos += 1;
+            }
+            pos = skipBlanks(line, pos + 1);
+        }
+        return found;
+    }
+
+    /** Return an exception, without a stack trace, reporting the problem
+     *  that check found in settings line LINE, which is line number
+     *  LINENUMBER of its input (or 0 if that is unknown), with RESULT (not
+     *  OK).  The messages for problems of form are those of Lexer. */
+    EnigmaException reject(CharSequence line, long result,
+                           int lineNumber) {
+        int pos = position(result);
+        String msg;
+        switch (code(result)) {
+        case NO_STAR:
+            msg = "settings must begin with '*'";
+            break;
+        case NO_SPACE:
+            msg = "expected space after '*'";
+            break;
+        case MISSING_ROTORS:
+            msg = "expected " + _numRotors + " rotor names, found "
+                + words(line, pos);
+            break;
+        case MISSING_POSITIONS:
+            msg = "missing rotor positions";
+            break;
+        case POSITIONS_LENGTH:
+        case RINGS_LENGTH:
+            msg = "expected " + (_numRotors - 1)
+                + (code(result) == POSITIONS_LENGTH ? " rotor positions"
+                   : " ring settings")
+                + ", found " + (wordEnd(line, pos) - pos);
+            break;
+        case BAD_CHARACTER:
+            msg = "unexpected '" + line.charAt(pos) + "' in "
+                + item(words(line, pos + 1) - 1);
+            break;
+        case NO_PAREN:
+            msg = "expected '(' to begin plugboard cycle";
+            break;
+        case UNCLOSED:
+            msg = "unclosed '('";
+            break;
+        case BAD_CYCLE:
+            msg = "unexpected "
+                + (Lexer.isSpace(line.charAt(pos)) ? "space"
+                   : "'" + line.charAt(pos) + "'")
+                + " in plugboard cycle";
+            break;
+        case UNKNOWN_ROTOR:
+            return new EnigmaException("Invalid rotor name", false);
+        case DUPLICATE_ROTOR:
+            return new EnigmaException("Duplicate rotor name", false);
+        case NOT_REFLECTOR:
+            return new EnigmaException("First rotor is not reflector",
+                                       false);
+        case MISPLACED_REFLECTOR:
+            return new EnigmaException("Reflector in wrong place", false);
+        case TOO_MANY_MOVING:
+            return new EnigmaException("Too many moving rotors", false);
+        case BAD_SETTING:
+            return new EnigmaException("Bad character in rotor settings",
+                                       false);
+        case BAD_PLUG:
+            return new EnigmaException("Bad character in plugboard", false);
+        case DUPLICATE_PLUG:
+            return new EnigmaException("Character repeated in plugboard",
+                                       false);
+        default:
+            throw new IllegalArgumentException("no problem to report");
+        }
+        String where = lineNumber > 0
+            ? "line " + lineNumber + ", column " + (pos + 1)
+            : "column " + (pos + 1);
+        return new EnigmaException(where + ": " + msg, false);
+    }
+
+    /** Return the result with code CODE found at index POS. */
+    private static long result(int code, int pos) {
+        return (long) pos << Integer.SIZE | code;
+    }
+
+    /** Return FOUND, or the result with code CODE at index POS if CODE
+     *  is a problem that comes before FOUND's. */
+    private static long worst(long found, int code, int pos) {
+        if (code != OK && (code(found) == OK || code < code(found))) {
+            return result(code, pos);
+        }
+        return found;
+    }
+
+    /** Return true iff C separates the items of a settings line. */
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /** Return the index of the first character of LINE at or after POS
+     *  that is not a space or tab. */
+    private static int skipBlanks(CharSequence line, int pos) {
+        while (pos < line.length() && isBlank(line.charAt(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return the index after the word of LINE starting at POS, which
+     *  ends before a space, a tab, the end of the line, or a character
+     *  that may not appear in a word ('(', ')' or '*'). */
+    private static int wordEnd(CharSequence line, int pos) {
+        while (pos < line.length()) {
+            char c = line.charAt(pos);
+            if (isBlank(c) || c == '(' || c == ')' || c == '*') {
+                break;
+            }
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return the number of items (runs of characters other than spaces
+     *  and tabs) of LINE after its '*' that start before POS. */
+    private static int words(CharSequence line, int pos) {
+        int count = 0;
+        int i = skipBlanks(line, skipBlanks(line, 0) + 1);
+        while (i < pos) {
+            count += 1;
+            while (i < line.length() && !isBlank(line.charAt(i))) {
+                i += 1;
+            }
+            i = skipBlanks(line, i);
+        }
+        return count;
+    }
+
+    /** Return a description of item number K (from 0) after the '*' of a
+     *  settings line. */
+    private String item(int k) {
+        return k < _numRotors ? "rotor name"
+            : k == _numRotors ? "rotor positions" : "ring settings";
+    }
+
+    /** Return the index of the available rotor named by LINE[START ..
+     *  END-1], or -1 if there is none. */
+    private int lookup(CharSequence line, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i += 1) {
+            h = 31 * h + line.charAt(i);
+        }
+        int mask = _table.length - 1;
+        for (h &= mask; _table[h] != 0; h = (h + 1) & mask) {
+            String name = _names[_table[h] - 1];
+            if (same(line, start, end, name, 0, name.length())) {
+                return _table[h] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return true iff the word LINE[START .. END-1] is among the words
+     *  of LINE that start at FIRST or after and before START. */
+    private static boolean repeats(CharSequence line, int first, int start,
+                                   int end) {
+        for (int i = first; i < start; ) {
+            int e = wordEnd(line, i);
+            if (same(line, start, end, line, i, e)) {
+                return true;
+            }
+            i = skipBlanks(line, e);
+        }
+        return false;
+    }
+
+    /** Return true iff A[A0 .. A1-1] and B[B0 .. B1-1] are the same. */
+    private static boolean same(CharSequence a, int a0, int a1,
+                                CharSequence b, int b0, int b1) {
+        if (a1 - a0 != b1 - b0) {
+            return false;
+        }
+        for (int i = 0; i < a1 - a0; i += 1) {
+            if (a.charAt(a0 + i) != b.charAt(b0 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the index of C in LINE[START .. END-1], or -1. */
+    private static int indexOf(CharSequence line, char c, int start,
+                               int end) {
+        for (int i = start; i < end; i += 1) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Types of rotor (see Rotor.type). */
+    private static final int MOVING = 1, REFLECTOR = 3;
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots and of pawls. */
+    private final int _numRotors, _pawls;
+
+    /** Names of the available rotors. */
+    private final String[] _names;
+
+    /** Types of the available rotors. */
+    private final int[] _types;
+
+    /** Open-addressed hash table of 1 + the indices of the available
+     *  rotors, by the String hash of their names; 0 marks empty
+     *  entries. */
+    private final int[] _table;
+}
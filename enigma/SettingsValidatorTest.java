@@ -0,0 +1,143 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.SettingsValidator.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsValidator class.
+ *  @author Yunsu Ha
+ */
+public class SettingsValidatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Lines that Lexer rejects. */
+    private static final String[] MALFORMED = {
+        "B Beta III IV I AXLE *", "*B Beta III IV I AXLE", "* B Beta III",
+        "* B Beta III IV I ", "* B Beta III IV I AXL",
+        "* B Beta III IV I AXLE B", "* B Beta III IV I AXLE (HQ",
+        "* B Beta III IV I AXLE (HQ E)", "* B Beta III IV I AXLE (HQ) EX",
+        "* B Be(a III IV I AXLE", "* B Beta III IV I (HQ)",
+        "* B Beta III IV I AXLE BC*E", "",
+    };
+
+    /** Return the code and position of checking LINE with the naval
+     *  machine, as CODE@POSITION. */
+    private static String check(String line) {
+        long result = navalMachine().validator().check(line);
+        return code(result) + "@" + position(result);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAccepted() {
+        SettingsValidator validator = navalMachine().validator();
+        assertEquals(OK, validator.check("* B Beta III IV I AXLE"));
+        assertEquals(OK, validator.check(
+            " *\tC Gamma I II V AXLE BCDE (HQ) (EX)(IP) "));
+        assertEquals(OK, validator.check("* B Beta Gamma IV I AXLE"));
+    }
+
+    @Test
+    public void testMalformedAsLexer() {
+        Machine mach = navalMachine();
+        for (String line : MALFORMED) {
+            String expected = null;
+            try {
+                new Lexer().lexSettings(line, 7, 5);
+            } catch (EnigmaException excp) {
+                expected = excp.getMessage();
+            }
+            long result = mach.validator().check(line);
+            assertNotNull(line, expected);
+            assertTrue(line, code(result) < UNKNOWN_ROTOR);
+            assertEquals(line, expected,
+                         mach.validator().reject(line, result, 7)
+                         .getMessage());
+        }
+    }
+
+    @Test
+    public void testProblems() {
+        assertEquals(UNKNOWN_ROTOR + "@13", check("* B Beta III IX I AXLE"));
+        assertEquals(DUPLICATE_ROTOR + "@15",
+                     check("* B Beta III I I AXLE"));
+        assertEquals(NOT_REFLECTOR + "@2", check("* I B II III IV AAAA"));
+        assertEquals(MISPLACED_REFLECTOR + "@9",
+                     check("* B Beta C I II AAAA"));
+        assertEquals(TOO_MANY_MOVING + "@13",
+                     check("* B V III IV I AAAA"));
+        assertEquals(BAD_SETTING + "@19", check("* B Beta III IV I A5AA"));
+        assertEquals(BAD_SETTING + "@26",
+                     check("* B Beta III IV I AAAA BCD?"));
+        assertEquals(BAD_PLUG + "@25", check("* B Beta III IV I AAAA (H7)"));
+        assertEquals(DUPLICATE_PLUG + "@29",
+                     check("* B Beta III IV I AAAA (HQ) (QE)"));
+    }
+
+    @Test
+    public void testOrder() {
+        assertEquals(UNKNOWN_ROTOR + "@2", check("* X V I II C AAAA (AA)"));
+        assertEquals(NOT_REFLECTOR + "@2", check("* I B II III IV A5AA"));
+        assertEquals(POSITIONS_LENGTH + "@13", check("* X V I II C AAA"));
+        assertEquals(UNCLOSED + "@21", check("* B Beta X IV I A5AA (HQ"));
+    }
+
+    @Test
+    public void testRejectedBySetUp() {
+        Machine mach = navalMachine();
+        try {
+            Main.setUp(mach, "* B Beta III IV X AXLE");
+            fail("no error");
+        } catch (EnigmaException excp) {
+            assertEquals("Invalid rotor name", excp.getMessage());
+            assertEquals(0, excp.getStackTrace().length);
+        }
+        try {
+            Main.setUp(mach, "* B Beta III IV I AXL", 4);
+            fail("no error");
+        } catch (EnigmaException excp) {
+            assertEquals("line 4, column 19: expected 4 rotor positions, "
+                         + "found 3", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testNoAllocation() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) bean;
+        SettingsValidator validator = navalMachine().validator();
+        long sum = 0;
+        for (int i = 0; i < 3; i += 1) {
+            long before = threads.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+            for (int n = 0; n < 10000; n += 1) {
+                sum += validator.check("* B Beta III IX I AXLE (HQ)");
+                sum += validator.check("* I B II III IV AAAA");
+                sum += validator.check("* B Beta III IV I AXLE (HQ) (EX)");
+            }
+            long used = threads.getThreadAllocatedBytes(
+                Thread.currentThread().getId()) - before;
+            if (i == 2) {
+                assertTrue("allocated " + used, used < 4096);
+            }
+        }
+        assertTrue(sum != 0);
+    }
+}
@@ -0,0 +1,188 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Checks a fast conversion path against the reference one under real
+ *  traffic.  A fraction of the messages that the fast path converts are
+ *  sampled, and for each, a copy of the machine as it stood before the
+ *  message is handed, with the message and the fast path's output, to a
+ *  single background thread, which converts the message again with
+ *  Machine.convert and compares.  A mismatch is counted and written out
+ *  as a directory holding everything needed to reproduce it: the
+ *  configuration, an input file whose settings line puts the machine
+ *  where it stood followed by the message, and the two outputs.
+ *
+ *  The converting thread never waits on verification: checks are queued
+ *  to a bounded queue, and when it is full a sample is dropped (and
+ *  counted) instead.
+ *  @author Yunsu Ha
+ */
+final class ShadowVerifier implements AutoCloseable {
+
+    /** Checks waiting at most. */
+    static final int QUEUE_LIMIT = 256;
+
+    /** Longest wait for queued checks when closing, in seconds. */
+    static final long CLOSE_TIMEOUT = 60;
+
+    /** A verifier sampling each message with probability FRACTION, using
+     *  random seed SEED, writing reproductions of mismatches for the
+     *  configuration whose text is CONFIG into directory DIR. */
+    ShadowVerifier(String config, double fraction, Path dir, long seed) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw error("shadow fraction must be between 0 and 1");
+        }
+        _config = config;
+        _fraction = fraction;
+        _dir = dir;
+        _random = new SplittableRandom(seed);
+        _executor = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_LIMIT),
+            r -> {
+                Thread t = new Thread(r, "enigma-shadow");
+                t.setDaemon(true);
+                return t;
+            },
+            (r, executor) -> _dropped.incrementAndGet());
+    }
+
+    /** Return true if the next message should be checked.  Called only
+     *  from the converting thread. */
+    boolean sample() {
+        return _fraction > 0 && _random.nextDouble() < _fraction;
+    }
+
+    /** Check, in the background, that START, a machine that no one else
+     *  will use, converts MESSAGE (a message line with its spaces
+     *  removed) to OUTPUT.  SETTINGS is the settings line of the block
+     *  the message is in, for the report. */
+    void check(Machine start, String settings, String message,
+               String output) {
+        _executor.execute(() -> verify(start, settings, message, output));
+    }
+
+    /** Wait for the checks already queued, up to CLOSE_TIMEOUT
+     *  seconds, and stop the background thread. */
+    @Override
+    public void close() {
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Return the number of messages checked so far. */
+    long checked() {
+        return _checked.get();
+    }
+
+    /** Return the number of checks that found a mismatch. */
+    long mismatches() {
+        return _mismatches.get();
+    }
+
+    /** Return the number of samples dropped because the queue was
+     *  full. */
+    long dropped() {
+        return _dropped.get();
+    }
+
+    /** Return my directory for reproductions. */
+    Path dir() {
+        return _dir;
+    }
+
+    /** Return a settings line that puts a machine of the configuration
+     *  of M in M's current state: its rotors, their current positions
+     *  and ring settings, and its plugboard. */
+    static String settingsLine(Machine M) {
+        Alphabet alpha = M.alphabet();
+        StringBuilder line = new StringBuilder("*");
+        for (int k = 0; k < M.numRotors(); k++) {
+            line.append(' ').append(M.getRotor(k).name());
+        }
+        line.append(' ');
+        for (int k = 1; k < M.numRotors(); k++) {
+            line.append(alpha.toChar(M.getRotor(k).setting()));
+        }
+        line.append(' ');
+        for (int k = 1; k < M.numRotors(); k++) {
+            line.append(alpha.toChar(M.getRotor(k).ringSetting()));
+        }
+        Permutation plugs = M.plugboard();
+        boolean[] done = new boolean[alpha.size()];
+        for (int c = 0; c < alpha.size(); c++) {
+            if (!done[c] && plugs.permute(c) != c) {
+                line.append(" (");
+                for (int d = c; !done[d]; d = plugs.permute(d)) {
+                    done[d] = true;
+                    line.append(alpha.toChar(d));
+                }
+                line.append(')');
+            }
+        }
+        return line.toString();
+    }
+
+    /** Convert MESSAGE with START and compare with OUTPUT, reporting any
+     *  mismatch (see check). */
+    private void verify(Machine start, String settings, String message,
+                        String output) {
+        String input = settingsLine(start);
+        String expected = start.convert(message);
+        _checked.incrementAndGet();
+        if (!expected.equals(output)) {
+            long n = _mismatches.incrementAndGet();
+            Path repro = _dir.resolve("mismatch-" + n);
+            try {
+                Files.createDirectories(repro);
+                write(repro.resolve("config.conf"), _config);
+                write(repro.resolve("input.in"),
+                      input + "\n" + message + "\n");
+                write(repro.resolve("expected.out"), expected + "\n");
+                write(repro.resolve("actual.out"), output + "\n");
+                write(repro.resolve("block-settings"), settings + "\n");
+            } catch (IOException excp) {
+                System.err.printf("Warning: could not write %s: %s%n",
+                                  repro, excp.getMessage());
+            }
+        }
+    }
+
+    /** Write TEXT to FILE. */
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Text of the configuration. */
+    private final String _config;
+
+    /** Fraction of messages sampled. */
+    private final double _fraction;
+
+    /** Directory for reproductions. */
+    private final Path _dir;
+
+    /** Source of sampling decisions. */
+    private final SplittableRandom _random;
+
+    /** Runs the checks. */
+    private final ThreadPoolExecutor _executor;
+
+    /** Counts of checks made, mismatches found, and samples dropped. */
+    private final AtomicLong _checked = new AtomicLong(),
+        _mismatches = new AtomicLong(), _dropped = new AtomicLong();
+}
@@ -0,0 +1,128 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ShadowVerifier class.
+ *  @author Yunsu Ha
+ */
+public class ShadowVerifierTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String SETTINGS = "* B Beta III I QEZ LMA (AB) (CXY)";
+
+    /** Return a random message of LENGTH letters chosen with RAND. */
+    private static String message(Random rand, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append((char) ('A' + rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSettingsLine() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-shadow");
+        Machine mach = readConfig(dir);
+        Main.setUp(mach, SETTINGS);
+        Random rand = new Random(46);
+        mach.convert(message(rand, 1000));
+        String line = ShadowVerifier.settingsLine(mach);
+        Machine copy = readConfig(dir);
+        Main.setUp(copy, line);
+        String msg = message(rand, 200);
+        assertEquals(mach.convert(msg), copy.convert(msg));
+        assertTrue(line.endsWith(" LMA (AB) (CXY)"));
+    }
+
+    @Test
+    public void testTablesAgree() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-shadow");
+        Machine mach = readConfig(dir);
+        Main.setUp(mach, SETTINGS);
+        TableMachine fast =
+            new TableMachine(SharedTables.open(mach, dir), mach);
+        Random rand = new Random(47);
+        ShadowVerifier shadow =
+            new ShadowVerifier(CONFIG, 1.0, dir.resolve("repro"), 1);
+        for (int m = 0; m < 50; m += 1) {
+            assertTrue(shadow.sample());
+            Machine start = mach.copy();
+            fast.store(start);
+            String msg = message(rand, 1 + rand.nextInt(300));
+            shadow.check(start, SETTINGS, msg,
+                         fast.convert(msg, mach.alphabet()));
+        }
+        shadow.close();
+        assertEquals(50, shadow.checked() + shadow.dropped());
+        assertEquals(0, shadow.mismatches());
+        assertFalse(Files.exists(dir.resolve("repro")));
+    }
+
+    @Test
+    public void testMismatchReproduced() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-shadow");
+        Machine mach = readConfig(dir);
+        Main.setUp(mach, SETTINGS);
+        mach.convert("SOMEEARLIERTEXT");
+        Machine start = mach.copy();
+        String msg = "ATTACKATDAWN";
+        String wrong = "X" + mach.convert(msg).substring(1);
+        Path repro = dir.resolve("repro");
+        ShadowVerifier shadow = new ShadowVerifier(CONFIG, 1.0, repro, 1);
+        shadow.check(start, SETTINGS, msg, wrong);
+        shadow.close();
+        assertEquals(1, shadow.checked());
+        assertEquals(1, shadow.mismatches());
+        Path found = repro.resolve("mismatch-1");
+        Machine again =
+            Main.readConfig(found.resolve("config.conf").toString());
+        List<String> input = Files.readAllLines(found.resolve("input.in"));
+        Main.setUp(again, input.get(0));
+        String expected = again.convert(input.get(1));
+        assertEquals(msg, input.get(1));
+        assertEquals(List.of(expected),
+                     Files.readAllLines(found.resolve("expected.out")));
+        assertNotEquals(wrong, expected);
+        assertEquals(List.of(wrong),
+                     Files.readAllLines(found.resolve("actual.out")));
+        assertEquals(List.of(SETTINGS),
+                     Files.readAllLines(found.resolve("block-settings")));
+    }
+
+    @Test
+    public void testSampling() {
+        ShadowVerifier none = new ShadowVerifier(CONFIG, 0, null, 1);
+        ShadowVerifier some = new ShadowVerifier(CONFIG, 0.25, null, 1);
+        int count = 0;
+        for (int i = 0; i < 10000; i += 1) {
+            assertFalse(none.sample());
+            count += some.sample() ? 1 : 0;
+        }
+        none.close();
+        some.close();
+        assertTrue(count > 2200 && count < 2800);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadFraction() {
+        new ShadowVerifier(CONFIG, 1.5, null, 1);
+    }
+}
@@ -0,0 +1,264 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Conversion tables for every rotor of a configuration, held off the
+ *  Java heap in a read-only memory-mapped file so that all processes on a
+ *  host converting with the same configuration share one copy through
+ *  the page cache.  The file is named after a checksum of the
+ *  configuration; the first process to need it builds it (writing a
+ *  temporary file and renaming it into place), and later ones just map
+ *  it.  A changed configuration has a different checksum and so gets a
+ *  new file.
+ *
+ *  For a rotor whose permutation is P, on an alphabet of size N, the
+ *  forward table entry D * N + C holds P(C + D) - D (mod N), the
+ *  conversion of C when the rotor's setting less its ring setting is D;
+ *  the backward table likewise holds the inverse.  A notch table has a 1
+ *  at each position at which the rotor is at a notch.
+ *  @author Yunsu Ha
+ */
+final class SharedTables {
+
+    /** Identifies table files ("ENIG"). */
+    private static final int MAGIC = 0x454e4947;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** Number of ints in the file header: magic, version, byte order,
+     *  checksum (two ints), alphabet size, rotor count. */
+    private static final int HEADER = 7;
+
+    /** Return the tables for the configuration of M, mapped from the
+     *  file for that configuration in directory DIR, which is created
+     *  first if need be. */
+    static SharedTables open(Machine M, Path dir) {
+        long checksum = M.checksum();
+        Path file = dir.resolve(String.format("enigma-%016x.tables",
+                                              checksum));
+        SharedTables result = map(file, M, checksum);
+        if (result == null) {
+            build(file, M, checksum);
+            result = map(file, M, checksum);
+            if (result == null) {
+                throw error("could not build tables in %s", file);
+            }
+            result._built = true;
+        }
+        return result;
+    }
+
+    /** Tables for the rotors of M, whose checksum is CHECKSUM, read from
+     *  mapped FILE with contents INTS. */
+    private SharedTables(Path file, Machine M, long checksum,
+                         IntBuffer ints) {
+        _file = file;
+        _checksum = checksum;
+        _ints = ints;
+        _size = M.alphabet().size();
+        _stride = 2 * _size * _size + _size;
+        List<Rotor> rotors = M.allRotors();
+        for (int r = 0; r < rotors.size(); r++) {
+            _index.put(rotors.get(r).name(), r);
+        }
+    }
+
+    /** Return the index of the rotor named NAME in my tables. */
+    int rotorIndex(String name) {
+        Integer result = _index.get(name);
+        if (result == null) {
+            throw error("no tables for rotor %s", name);
+        }
+        return result;
+    }
+
+    /** Return the forward conversion of C by rotor number ROTOR at offset
+     *  D (its setting less its ring setting). */
+    int forward(int rotor, int d, int c) {
+        return _ints.get(HEADER + rotor * _stride + d * _size + c);
+    }
+
+    /** Return the backward conversion of C by rotor number ROTOR at
+     *  offset D. */
+    int backward(int rotor, int d, int c) {
+        return _ints.get(HEADER + rotor * _stride + _size * _size
+                         + d * _size + c);
+    }
+
+    /** Return true iff rotor number ROTOR is at a notch when at
+     *  POSITION. */
+    boolean atNotch(int rotor, int position) {
+        return _ints.get(HEADER + rotor * _stride + 2 * _size * _size
+                         + position) != 0;
+    }
+
+    /** Return the size of the alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the checksum of my configuration. */
+    long checksum() {
+        return _checksum;
+    }
+
+    /** Return the file holding my tables. */
+    Path file() {
+        return _file;
+    }
+
+    /** Return true iff this process built my file, rather than mapping
+     *  one made earlier. */
+    boolean built() {
+        return _built;
+    }
+
+    /** Return the checksum identifying the configuration of M: its
+     *  alphabet, and the name, kind, notches and wiring of each of its
+     *  rotors.  This hashes the whole configuration; M.checksum() gives
+     *  the same value, computed once per configuration. */
+    static long checksum(Machine M) {
+        StringBuilder desc = new StringBuilder();
+        Alphabet alpha = M.alphabet();
+        desc.append(alpha.returnChars()).append('\n');
+        for (Rotor r : M.allRotors()) {
+            desc.append(r.name()).append(' ').append(r.type())
+                .append(r.notches()).append(' ');
+            for (int c = 0; c < alpha.size(); c++) {
+                desc.append(alpha.toChar(r.permutation().permute(c)));
+            }
+            desc.append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(desc.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 unavailable");
+        }
+    }
+
+    /** Return the tables in FILE for M, or null if FILE does not exist or
+     *  does not hold tables for a configuration with checksum
+     *  CHECKSUM. */
+    private static SharedTables map(Path file, Machine M, long checksum) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        int n = M.alphabet().size();
+        long expected = 4L * (HEADER + (long) M.allRotors().size()
+                              * (2 * n * n + n));
+        try (FileChannel ch = FileChannel.open(file)) {
+            if (ch.size() != expected) {
+                return null;
+            }
+            IntBuffer ints = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                                    expected)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+            if (ints.get(0) != MAGIC || ints.get(1) != VERSION
+                || ints.get(2) != 1
+                || ints.get(3) != (int) (checksum >>> Integer.SIZE)
+                || ints.get(4) != (int) checksum
+                || ints.get(5) != n
+                || ints.get(6) != M.allRotors().size()) {
+                return null;
+            }
+            return new SharedTables(file, M, checksum, ints);
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** Write the tables for M, whose checksum is CHECKSUM, to FILE. */
+    private static void build(Path file, Machine M, long checksum) {
+        int n = M.alphabet().size();
+        List<Rotor> rotors = M.allRotors();
+        ByteBuffer bytes = ByteBuffer.allocate(
+            4 * (HEADER + rotors.size() * (2 * n * n + n)))
+            .order(ByteOrder.nativeOrder());
+        IntBuffer ints = bytes.asIntBuffer();
+        ints.put(MAGIC).put(VERSION).put(1)
+            .put((int) (checksum >>> Integer.SIZE)).put((int) checksum)
+            .put(n).put(rotors.size());
+        for (Rotor r : rotors) {
+            Permutation perm = r.permutation();
+            int[] fwd = new int[n], inv = new int[n];
+            for (int c = 0; c < n; c++) {
+                fwd[c] = perm.permute(c);
+                inv[fwd[c]] = c;
+            }
+            for (int d = 0; d < n; d++) {
+                for (int c = 0; c < n; c++) {
+                    ints.put(perm.wrap(fwd[perm.wrap(c + d)] - d));
+                }
+            }
+            for (int d = 0; d < n; d++) {
+                for (int c = 0; c < n; c++) {
+                    ints.put(perm.wrap(inv[perm.wrap(c + d)] - d));
+                }
+            }
+            int[] notches = new int[n];
+            for (int j = 0; j < r.notches().length(); j++) {
+                int posn = M.alphabet().toInt(r.notches().charAt(j));
+                if (posn >= 0 && r.rotates()) {
+                    notches[posn] = 1;
+                }
+            }
+            ints.put(notches);
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(),
+                                            file.getFileName().toString(),
+                                            ".tmp");
+            try (FileChannel ch = FileChannel.open(
+                     tmp, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    ch.write(bytes);
+                }
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** File holding the tables. */
+    private final Path _file;
+
+    /** Checksum of the configuration. */
+    private final long _checksum;
+
+    /** The mapped file contents. */
+    private final IntBuffer _ints;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of ints of table per rotor. */
+    private final int _stride;
+
+    /** Rotor indices by name. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+
+    /** True iff this process built the file. */
+    private boolean _built;
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SharedTables and TableMachine
+ *  classes.
+ *  @author Yunsu Ha
+ */
+public class SharedTablesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-tables");
+        Machine mach = navalMachine();
+        SharedTables tables = SharedTables.open(mach, dir);
+        assertTrue(tables.built());
+        Random random = new Random(42);
+        String[] settings = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* C Gamma VI VII VIII ZZZZ BCDE (AZ)",
+            "* B Beta I II III AADU",
+        };
+        for (String setting : settings) {
+            Main.setUp(mach, setting);
+            TableMachine fast = new TableMachine(tables, mach);
+            for (int i = 0; i < 5000; i += 1) {
+                int c = random.nextInt(UPPER.size());
+                assertEquals(setting, mach.convert(c), fast.convert(c));
+            }
+            Machine copy = mach.copy();
+            Main.setUp(copy, setting);
+            fast.store(copy);
+            for (int k = 1; k < mach.numRotors(); k += 1) {
+                assertEquals(mach.getRotor(k).setting(),
+                             copy.getRotor(k).setting());
+            }
+        }
+    }
+
+    @Test
+    public void testReuseFile() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-tables");
+        Machine mach = navalMachine();
+        SharedTables first = SharedTables.open(mach, dir);
+        SharedTables second = SharedTables.open(navalMachine(), dir);
+        assertTrue(first.built());
+        assertFalse(second.built());
+        assertEquals(first.file(), second.file());
+        assertEquals(first.checksum(), second.checksum());
+        Main.setUp(mach, "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     new TableMachine(second, mach)
+                     .convert("FROMHISSHOULDERHIAWATHA", UPPER));
+    }
+
+    @Test
+    public void testChecksum() {
+        Machine mach = navalMachine();
+        long checksum = SharedTables.checksum(mach);
+        assertEquals(checksum, mach.checksum());
+        Main.setUp(mach, "* B Beta III IV I AXLE LLLL (HQ)");
+        assertEquals(checksum, mach.checksum());
+        assertEquals(checksum, mach.copy().checksum());
+    }
+}
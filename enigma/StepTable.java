@@ -0,0 +1,233 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The stepping of a rotor selection, compiled into a transition table.
+ *  Only the rotating rotors in the pawl slots ever move, and what they do
+ *  on a keypress depends only on their own settings, so those settings
+ *  are packed into one state index (the fastest rotor's setting being the
+ *  lowest digit, in base alphabet size), and the table gives, for each
+ *  state, the state after a keypress and which slots moved to reach it,
+ *  as computed once by the rules of Machine.advanceRotors, double steps
+ *  included.  Following the table from a state gives the exact period
+ *  of a machine started there.
+ *
+ *  On each keypress, Machine.advanceRotors packs the current settings
+ *  into a state and looks up which rotors move, in place of the notch
+ *  tests.  So stepping reads every rotating rotor's setting and then
+ *  does one lookup.  Machine does not carry the state from one keypress
+ *  to the next with next(), because rotors are also set directly
+ *  (by Checkpoint, KeySpace, EnigmaChannel and the engines' store),
+ *  which it would not see.
+ *
+ *  Tables depend only on the alphabet size, the number of slots, and the
+ *  notches of the rotors in the pawl slots, and are shared between all
+ *  rotor selections that agree on those.
+ *  @author Yunsu Ha
+ */
+final class StepTable {
+
+    /** Most states tabulated. */
+    static final int MAX_STATES = 1 << 22;
+
+    /** Most tables kept for reuse. */
+    static final int MAX_CACHED = 64;
+
+    /** Most rotating rotors in a tabulated selection. */
+    static final int MAX_ROTATING = Byte.SIZE;
+
+    /** Return the table for the rotor selection of M, or null if it would
+     *  have more than MAX_STATES states or MAX_ROTATING rotating
+     *  rotors. */
+    static StepTable of(Machine M) {
+        int size = M.alphabet().size();
+        StringBuilder key =
+            new StringBuilder().append(size).append(':').append(M.numRotors());
+        long states = 1;
+        int rotating = 0;
+        for (int k = M.numRotors() - M.numPawls(); k < M.numRotors(); k++) {
+            Rotor r = M.getRotor(k);
+            key.append('|');
+            if (r.rotates()) {
+                key.append(r.notches());
+                states *= size;
+                rotating += 1;
+                if (states > MAX_STATES || rotating > MAX_ROTATING) {
+                    return null;
+                }
+            } else {
+                key.append('-');
+            }
+        }
+        String id = key.toString();
+        StepTable result = CACHE.get(id);
+        if (result == null) {
+            result = new StepTable(M);
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            CACHE.putIfAbsent(id, result);
+        }
+        return result;
+    }
+
+    /** The table for the rotor selection of M. */
+    private StepTable(Machine M) {
+        _size = M.alphabet().size();
+        int first = M.numRotors() - M.numPawls(), count = 0;
+        int[] slots = new int[M.numPawls()];
+        for (int k = first; k < M.numRotors(); k++) {
+            if (M.getRotor(k).rotates()) {
+                slots[count] = k;
+                count += 1;
+            }
+        }
+        _slots = Arrays.copyOf(slots, count);
+        int states = 1;
+        for (int j = 0; j < count; j++) {
+            states *= _size;
+        }
+        boolean[][] notch = new boolean[M.numRotors()][_size];
+        for (int k : _slots) {
+            Rotor r = M.getRotor(k);
+            for (int j = 0; j < r.notches().length(); j++) {
+                int posn = M.alphabet().toInt(r.notches().charAt(j));
+                if (posn >= 0) {
+                    notch[k][posn] = true;
+                }
+            }
+        }
+        _next = new int[states];
+        _moved = new byte[states];
+        int numRotors = M.numRotors();
+        int[] settings = new int[numRotors];
+        boolean[] moves = new boolean[numRotors];
+        for (int s = 0; s < states; s++) {
+            unpack(s, settings);
+            boolean nextAtNotch = false;
+            for (int i = first; i < numRotors - 1; i++) {
+                moves[i] = notch[i + 1][settings[i + 1]] || nextAtNotch;
+                nextAtNotch = notch[i + 1][settings[i + 1]];
+            }
+            moves[numRotors - 1] = true;
+            int next = 0, moved = 0;
+            for (int j = 0; j < count; j++) {
+                int setting = settings[_slots[j]];
+                if (moves[_slots[j]]) {
+                    setting = setting + 1 == _size ? 0 : setting + 1;
+                    moved |= 1 << j;
+                }
+                next = next * _size + setting;
+            }
+            _next[s] = next;
+            _moved[s] = (byte) moved;
+        }
+    }
+
+    /** Return the number of states. */
+    int states() {
+        return _next.length;
+    }
+
+    /** Return the state of the rotors in SLOTS, as Machine.rotorSlots
+     *  returns them, from their current settings. */
+    int state(Rotor[] slots) {
+        int result = 0;
+        for (int k : _slots) {
+            result = result * _size + slots[k].setting();
+        }
+        return result;
+    }
+
+    /** Return the state after a keypress in state STATE. */
+    int next(int state) {
+        return _next[state];
+    }
+
+    /** Return the rotors that move on a keypress in state STATE, as a
+     *  mask in which bit J stands for slot slot(J). */
+    int moved(int state) {
+        return _moved[state] & 0xff;
+    }
+
+    /** Return the number of rotating rotors in the pawl slots. */
+    int rotating() {
+        return _slots.length;
+    }
+
+    /** Return the slot of rotating rotor J, counting from the slowest. */
+    int slot(int j) {
+        return _slots[j];
+    }
+
+    /** Set SETTINGS[K] to the setting in state STATE of the rotating rotor
+     *  in each pawl slot K, leaving other slots alone, and return
+     *  SETTINGS. */
+    int[] unpack(int state, int[] settings) {
+        for (int j = _slots.length - 1; j >= 0; j--) {
+            settings[_slots[j]] = state % _size;
+            state /= _size;
+        }
+        return settings;
+    }
+
+    /** Return the number of keypresses after which a machine in state
+     *  STATE first returns to a state it has been in: its tail (see
+     *  tail) plus the length of the cycle it then repeats forever. */
+    long period(int state) {
+        return tail(state) + cycle(state);
+    }
+
+    /** Return the length of the cycle of states that a machine started
+     *  in STATE eventually repeats, found by Brent's method without
+     *  marking states. */
+    int cycle(int state) {
+        int power = 1, length = 1;
+        int tortoise = state, hare = _next[state];
+        while (tortoise != hare) {
+            if (power == length) {
+                tortoise = hare;
+                power *= 2;
+                length = 0;
+            }
+            hare = _next[hare];
+            length += 1;
+        }
+        return length;
+    }
+
+    /** Return the number of keypresses a machine started in STATE makes
+     *  before it reaches its cycle (nonzero only for states that
+     *  stepping itself never reaches, since double steps skip them). */
+    int tail(int state) {
+        int length = cycle(state);
+        int hare = state;
+        for (int i = 0; i < length; i++) {
+            hare = _next[hare];
+        }
+        int tortoise = state, result = 0;
+        while (tortoise != hare) {
+            tortoise = _next[tortoise];
+            hare = _next[hare];
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Tables by the alphabet size and pawl-slot notches they are for. */
+    private static final ConcurrentHashMap<String, StepTable> CACHE =
+        new ConcurrentHashMap<>();
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** The pawl slots holding rotating rotors, slowest first. */
+    private final int[] _slots;
+
+    /** State after each state. */
+    private final int[] _next;
+
+    /** Slots moved on leaving each state (see moved). */
+    private final byte[] _moved;
+}
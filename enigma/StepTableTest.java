@@ -0,0 +1,133 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StepTable class.
+ *  @author Yunsu Ha
+ */
+public class StepTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Advance the rotors of M by testing their notches, as
+     *  Machine.advanceRotors did before it was tabulated. */
+    private static void referenceStep(Machine M) {
+        boolean nextAtNotch = false;
+        int n = M.numRotors();
+        for (int i = n - M.numPawls(); i < n - 1; i++) {
+            if (M.getRotor(i + 1).atNotch()) {
+                M.getRotor(i).advance();
+                nextAtNotch = true;
+            } else if (nextAtNotch) {
+                M.getRotor(i).advance();
+                nextAtNotch = false;
+            }
+        }
+        M.getRotor(n - 1).advance();
+    }
+
+    /** Return the settings of the rotors of M, as letters. */
+    private static String settings(Machine M) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 1; k < M.numRotors(); k++) {
+            result.append(UPPER.toChar(M.getRotor(k).setting()));
+        }
+        return result.toString();
+    }
+
+    /** Check that M, set up with SETTINGS, steps as referenceStep does
+     *  for STEPS keypresses. */
+    private static void checkSteps(Machine M, String settings, int steps) {
+        Main.setUp(M, settings);
+        Machine ref = M.copy();
+        for (int i = 0; i < steps; i++) {
+            M.advanceRotors();
+            referenceStep(ref);
+            assertEquals(settings(ref), settings(M));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEveryState() {
+        for (String rotors : new String[] { "B Beta I II III",
+                                            "C Gamma VI VII VIII",
+                                            "B Beta VIII IV VI" }) {
+            Machine mach = navalMachine();
+            Main.setUp(mach, "* " + rotors + " AAAA");
+            StepTable steps = StepTable.of(mach);
+            assertEquals(26 * 26 * 26, steps.states());
+            int[] settings = new int[5];
+            for (int s = 0; s < steps.states(); s++) {
+                steps.unpack(s, settings);
+                for (int k = 2; k < 5; k++) {
+                    mach.getRotor(k).set(settings[k]);
+                }
+                assertEquals(s, steps.state(mach.rotorSlots()));
+                referenceStep(mach);
+                assertEquals(steps.next(s), steps.state(mach.rotorSlots()));
+            }
+        }
+    }
+
+    @Test
+    public void testMachineSteps() {
+        checkSteps(navalMachine(), "* B Beta I II III AADQ", 20000);
+        checkSteps(navalMachine(), "* C Gamma VI VII VIII ZZLY BBBB", 20000);
+        Machine many = new Machine(UPPER, 6, 5, navalMachine().allRotors());
+        Main.setUp(many, "* B I II VI VII VIII QEZMA");
+        assertNull(StepTable.of(many));
+        assertEquals(-1, many.period());
+        checkSteps(many, "* B I II VI VII VIII QEZMA", 20000);
+        Machine fixed = new Machine(UPPER, 6, 5, navalMachine().allRotors());
+        Main.setUp(fixed, "* B Beta Gamma I II III QEZMA");
+        assertNotNull(StepTable.of(fixed));
+        checkSteps(fixed, "* B Beta Gamma I II III QEZMA", 20000);
+    }
+
+    @Test
+    public void testPeriod() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, "* B Beta I II III AAAA");
+        assertEquals(26 * 25 * 26, mach.period());
+        Random rand = new Random(45);
+        for (String rotors : new String[] { "B Beta I II III",
+                                            "C Gamma VI VII VIII",
+                                            "B Beta V VI II" }) {
+            for (int t = 0; t < 5; t++) {
+                String start = t == 0 ? "AAEA" : "A";
+                for (int k = start.length() - 1; k < 3; k++) {
+                    start += UPPER.toChar(rand.nextInt(26));
+                }
+                Main.setUp(mach, "* " + rotors + " " + start);
+                long period = mach.period();
+                HashMap<String, Integer> seen = new HashMap<>();
+                int i = 0;
+                while (seen.putIfAbsent(settings(mach), i) == null) {
+                    referenceStep(mach);
+                    i++;
+                }
+                assertEquals(i, period);
+                int tail = seen.get(settings(mach));
+                Main.setUp(mach, "* " + rotors + " " + start);
+                StepTable steps = StepTable.of(mach);
+                int state = steps.state(mach.rotorSlots());
+                assertEquals(tail, steps.tail(state));
+                assertEquals(i - tail, steps.cycle(state));
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Computes the rotor settings of a machine any number of characters
+ *  after a starting point, without stepping through all the characters
+ *  in between.  Stepping follows Machine.advanceRotors.  Only the rotors
+ *  in the pawl slots ever move, and the fastest of them returns to where
+ *  it started every alphabet-size steps; over each such revolution the
+ *  other moving rotors undergo a fixed transformation T of their
+ *  settings.  The orbit of the starting settings under T is computed once
+ *  (it is at most the number of distinct settings of those rotors long,
+ *  676 for a three-pawl machine on 26 letters), after which the settings
+ *  at offset N take one orbit lookup and fewer than one revolution of
+ *  simulated steps.
+ *  @author Yunsu Ha
+ */
+final class Stepper {
+
+    /** Longest orbit recorded; beyond it, revolutions are simulated. */
+    static final int MAX_ORBIT = 1 << 20;
+
+    /** A stepper for the rotors of M, whose current settings are taken
+     *  as the starting point. */
+    Stepper(Machine M) {
+        _size = M.alphabet().size();
+        _numRotors = M.numRotors();
+        _pawls = M.numPawls();
+        _notch = new boolean[_numRotors][_size];
+        _rotates = new boolean[_numRotors];
+        _origin = new int[_numRotors];
+        for (int k = 0; k < _numRotors; k += 1) {
+            Rotor r = M.getRotor(k);
+            _rotates[k] = r.rotates();
+            _origin[k] = r.setting();
+            for (int j = 0; j < r.notches().length(); j += 1) {
+                int posn = M.alphabet().toInt(r.notches().charAt(j));
+                if (posn >= 0 && r.rotates()) {
+                    _notch[k][posn] = true;
+                }
+            }
+        }
+        _slowFrom = _numRotors - _pawls;
+        _width = Math.max(0, _pawls - 1);
+        _orbit = new int[Math.max(1, _width) * INITIAL_ORBIT];
+        System.arraycopy(_origin, _slowFrom, _orbit, 0, _width);
+        _orbitLength = 1;
+        _seen.put(new State(_orbit, 0, _width), 0);
+        extendOrbit();
+    }
+
+    /** Advance SETTINGS, the settings of all my slots, by one character,
+     *  exactly as Machine.advanceRotors would. */
+    void advance(int[] settings) {
+        boolean nextAtNotch = false;
+        for (int i = _numRotors - _pawls; i < _numRotors - 1; i += 1) {
+            if (_notch[i + 1][settings[i + 1]]) {
+                bump(settings, i);
+                nextAtNotch = true;
+            } else if (nextAtNotch) {
+                bump(settings, i);
+                nextAtNotch = false;
+            }
+        }
+        bump(settings, _numRotors - 1);
+    }
+
+    /** Return DEST, filled with the settings of all my slots N characters
+     *  after the starting point (N >= 0). */
+    int[] settingsAt(long n, int[] dest) {
+        long revolutions = n / _size;
+        int rest = (int) (n % _size);
+        System.arraycopy(_origin, 0, dest, 0, _numRotors);
+        if (revolutions < _orbitLength || _cycleStart >= 0) {
+            long index = revolutions;
+            if (index >= _orbitLength) {
+                index = _cycleStart
+                    + (index - _cycleStart) % (_orbitLength - _cycleStart);
+            }
+            System.arraycopy(_orbit, (int) index * _width, dest, _slowFrom,
+                             _width);
+        } else {
+            System.arraycopy(_orbit, (_orbitLength - 1) * _width, dest,
+                             _slowFrom, _width);
+            for (long r = _orbitLength - 1; r < revolutions; r += 1) {
+                revolve(dest);
+            }
+        }
+        for (int i = 0; i < rest; i += 1) {
+            advance(dest);
+        }
+        return dest;
+    }
+
+    /** Return the length of the cycle that the settings at the start of
+     *  each revolution eventually enter, or -1 if it is longer than
+     *  MAX_ORBIT. */
+    int revolutionCycle() {
+        return _cycleStart < 0 ? -1 : _orbitLength - _cycleStart;
+    }
+
+    /** Return the number of revolutions before the settings at the start
+     *  of a revolution enter their cycle, or -1 if unknown. */
+    int revolutionTail() {
+        return _cycleStart;
+    }
+
+    /** Return the alphabet size, which is the number of characters in a
+     *  revolution. */
+    int size() {
+        return _size;
+    }
+
+    /** Record the orbit of the starting slow settings under a revolution
+     *  until it repeats or reaches MAX_ORBIT states. */
+    private void extendOrbit() {
+        int[] settings = _origin.clone();
+        while (_orbitLength < MAX_ORBIT) {
+            revolve(settings);
+            if (_orbit.length < (_orbitLength + 1) * _width) {
+                _orbit = Arrays.copyOf(_orbit, 2 * _orbit.length);
+            }
+            int at = _orbitLength * _width;
+            System.arraycopy(settings, _slowFrom, _orbit, at, _width);
+            Integer prev = _seen.putIfAbsent(new State(_orbit, at, _width),
+                                             _orbitLength);
+            if (prev != null) {
+                _cycleStart = prev;
+                break;
+            }
+            _orbitLength += 1;
+        }
+        _seen.clear();
+    }
+
+    /** Advance SETTINGS, whose fastest rotor is at its starting setting,
+     *  through one revolution. */
+    private void revolve(int[] settings) {
+        settings[_numRotors - 1] = _origin[_numRotors - 1];
+        for (int i = 0; i < _size; i += 1) {
+            advance(settings);
+        }
+    }
+
+    /** Advance the rotor in slot K of SETTINGS one position, if it
+     *  rotates. */
+    private void bump(int[] settings, int k) {
+        if (_rotates[k]) {
+            settings[k] = settings[k] + 1 == _size ? 0 : settings[k] + 1;
+        }
+    }
+
+    /** The settings of the slow rotors at the start of a revolution, used
+     *  as a key while recording the orbit. */
+    private static final class State {
+
+        /** The WIDTH settings starting at AT in STATES. */
+        State(int[] states, int at, int width) {
+            _settings = Arrays.copyOfRange(states, at, at + width);
+            _hash = Arrays.hashCode(_settings);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof State
+                && Arrays.equals(_settings, ((State) obj)._settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The settings. */
+        private final int[] _settings;
+
+        /** Their hash code. */
+        private final int _hash;
+    }
+
+    /** Initial capacity of the orbit, in states. */
+    private static final int INITIAL_ORBIT = 64;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of slots and of pawls. */
+    private final int _numRotors, _pawls;
+
+    /** For each slot and position, whether the rotor is at a notch. */
+    private final boolean[][] _notch;
+
+    /** Whether the rotor in each slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Settings of all slots at the starting point. */
+    private final int[] _origin;
+
+    /** First slot that can move; the slow rotors are those from here to
+     *  the one before the fastest. */
+    private final int _slowFrom;
+
+    /** Number of slow rotors. */
+    private final int _width;
+
+    /** Slow settings at the start of each revolution, _width apiece. */
+    private int[] _orbit;
+
+    /** Number of revolutions recorded in _orbit. */
+    private int _orbitLength;
+
+    /** Index in the orbit at which its cycle starts, or -1 if the orbit
+     *  was cut off at MAX_ORBIT. */
+    private int _cycleStart = -1;
+
+    /** Orbit index of each state, while recording. */
+    private final HashMap<State, Integer> _seen = new HashMap<>();
+}
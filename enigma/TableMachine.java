@@ -0,0 +1,121 @@
+package enigma;
+
+/** An Enigma machine that converts using SharedTables rather than its
+ *  rotors' permutations: each rotor pass is a single lookup into the
+ *  shared, memory-mapped tables.  It steps exactly as Machine does.
+ *  @author Yunsu Ha
+ */
+class TableMachine {
+
+    /** A machine converting with TABLES, whose rotor selection, rotor and
+     *  ring settings, and plugboard are (a copy of) those of M. */
+    TableMachine(SharedTables tables, Machine M) {
+        _tables = tables;
+        _size = tables.size();
+        _numRotors = M.numRotors();
+        _pawls = M.numPawls();
+        _rotor = new int[_numRotors];
+        _rotates = new boolean[_numRotors];
+        _setting = new int[_numRotors];
+        _offset = new int[_numRotors];
+        for (int k = 0; k < _numRotors; k++) {
+            Rotor r = M.getRotor(k);
+            _rotor[k] = tables.rotorIndex(r.name());
+            _rotates[k] = r.rotates();
+            _setting[k] = r.setting();
+            _offset[k] = Math.floorMod(r.setting() - r.ringSetting(), _size);
+        }
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c++) {
+            _plugboard[c] = M.plugboard().permute(c);
+        }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    int convert(int c) {
+        advanceRotors();
+        c = _plugboard[c];
+        for (int k = _numRotors - 1; k >= 0; k--) {
+            c = _tables.forward(_rotor[k], _offset[k], c);
+        }
+        for (int k = 1; k < _numRotors; k++) {
+            c = _tables.backward(_rotor[k], _offset[k], c);
+        }
+        return _plugboard[c];
+    }
+
+    /** Returns the encoding/decoding of MSG (in alphabet ALPHA), updating
+     *  the state of the rotors accordingly. */
+    String convert(String msg, Alphabet alpha) {
+        char[] result = new char[msg.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = alpha.toChar(convert(alpha.toInt(msg.charAt(i))));
+        }
+        return new String(result);
+    }
+
+    /** Set the rotors of M (which must hold the same rotor selection as
+     *  I do) to my current settings. */
+    void store(Machine M) {
+        for (int k = 1; k < _numRotors; k++) {
+            M.getRotor(k).set(_setting[k]);
+        }
+    }
+
+    /** Advance the rotors, following Machine.advanceRotors. */
+    private void advanceRotors() {
+        boolean nextAtNotch = false;
+        for (int i = _numRotors - _pawls; i < _numRotors - 1; i++) {
+            if (atNotch(i + 1)) {
+                advance(i);
+                nextAtNotch = true;
+            } else if (nextAtNotch) {
+                advance(i);
+                nextAtNotch = false;
+            }
+        }
+        advance(_numRotors - 1);
+    }
+
+    /** Return true iff rotor #K is at a notch. */
+    private boolean atNotch(int k) {
+        return _tables.atNotch(_rotor[k], _setting[k]);
+    }
+
+    /** Advance rotor #K one position, if it rotates. */
+    private void advance(int k) {
+        if (_rotates[k]) {
+            _setting[k] = _setting[k] + 1 == _size ? 0 : _setting[k] + 1;
+            _offset[k] = _offset[k] + 1 == _size ? 0 : _offset[k] + 1;
+        }
+    }
+
+    /** The conversion tables. */
+    private final SharedTables _tables;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Table index of the rotor in each slot. */
+    private final int[] _rotor;
+
+    /** Whether the rotor in each slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Setting of the rotor in each slot. */
+    private final int[] _setting;
+
+    /** Setting less ring setting of the rotor in each slot. */
+    private final int[] _offset;
+
+    /** Plugboard mapping. */
+    private final int[] _plugboard;
+}
@@ -1,5 +1,13 @@
 package enigma;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +134,95 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a new 5-slot, 3-pawl machine holding all the naval rotors
+     *  of NAVALA, as described by testing/correct/default.conf. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** A configuration of four slots and two pawls holding reflector B,
+     *  Beta and rotors I to III of the naval machine. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 4 2\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Write CONFIG, followed by the rotor description lines EXTRA, to a
+     *  file in DIR, and return the file. */
+    static Path writeConfig(Path dir, String... extra) throws IOException {
+        Path config = dir.resolve("test.conf");
+        Files.write(config, (CONFIG + String.join("", extra))
+                    .getBytes(StandardCharsets.UTF_8));
+        return config;
+    }
+
+    /** Return a machine read from CONFIG, written to a file in DIR. */
+    static Machine readConfig(Path dir) throws IOException {
+        return Main.readConfig(writeConfig(dir).toString());
+    }
+
+    /** Two messages for a machine configured by CONFIG, of 46 and 10
+     *  characters on two lines and one. */
+    static final String MESSAGES =
+        "* B Beta III I QEZ (AB)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "* B Beta II I AAA\n"
+        + "HELLO WORLD\n";
+
+    /** Return the lines of MESSAGES. */
+    static LineInput messageInput() {
+        return new LineInput(new ByteArrayInputStream(
+            MESSAGES.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Return a stream that discards its output. */
+    static PrintStream discard() {
+        return new PrintStream(new ByteArrayOutputStream(), true);
+    }
+
+    /** The opening of the Declaration of Independence, in capitals
+     *  without spaces. */
+    static final String DECLARATION =
+        "WHENINTHECOURSEOFHUMANEVENTSITBECOMESNECESSARYFORONEPEOPLETO"
+        + "DISSOLVETHEPOLITICALBANDSWHICHHAVECONNECTEDTHEMWITHANOTHERAND"
+        + "TOASSUMEAMONGTHEPOWERSOFTHEEARTHTHESEPARATEANDEQUALSTATIONTO"
+        + "WHICHTHELAWSOFNATUREANDOFNATURESGODENTITLETHEMADECENTRESPECT"
+        + "TOTHEOPINIONSOFMANKINDREQUIRESTHATTHEYSHOULDDECLARETHECAUSES"
+        + "WHICHIMPELTHEMTOTHESEPARATIONWEHOLDTHESETRUTHSTOBESELFEVIDENT"
+        + "THATALLMENARECREATEDEQUALTHATTHEYAREENDOWEDBYTHEIRCREATORWITH"
+        + "CERTAINUNALIENABLERIGHTSTHATAMONGTHESEARELIFELIBERTYANDTHE"
+        + "PURSUITOFHAPPINESSTHATTOSECURETHESERIGHTSGOVERNMENTSARE"
+        + "INSTITUTEDAMONGMENDERIVINGTHEIRJUSTPOWERSFROMTHECONSENTOF"
+        + "THEGOVERNEDTHATWHENEVERANYFORMOFGOVERNMENTBECOMESDESTRUCTIVE";
+
 }
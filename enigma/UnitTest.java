@@ -16,7 +16,31 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                EnigmaProcessorTest.class,
+                MachineCompilerTest.class,
+                SharedTablesTest.class,
+                PipelineTest.class,
+                LexerTest.class,
+                SegmentTreeMachineTest.class,
+                WorkloadGeneratorTest.class,
+                KeystreamCacheTest.class,
+                EnigmaChannelTest.class,
+                NgramScorerTest.class,
+                KeySearchTest.class,
+                BanburismusTest.class,
+                ZygalskiTest.class,
+                PlugboardSolverTest.class,
+                StepTableTest.class,
+                ShadowVerifierTest.class,
+                EngineRegistryTest.class,
+                SettingsValidatorTest.class,
+                FollowingInputTest.class,
+                KeySpliteratorTest.class,
+                BatchRunnerTest.class,
+                CheckpointTest.class,
+                RunStatsTest.class,
+                EnigmaEventsTest.class));
     }
 
 }
@@ -0,0 +1,266 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Generates synthetic input for Main from a configuration: a number of
+ *  settings blocks, each with a random valid choice of reflector and
+ *  rotors, positions, ring settings and plugboard, followed by a message
+ *  whose length is drawn from a chosen distribution.  Messages are
+ *  written in groups of five, several groups to a line.  The same seed
+ *  always gives the same file.
+ *  @author Yunsu Ha
+ */
+public final class WorkloadGenerator {
+
+    /** Write a workload for the configuration file ARGS[0] to the file
+     *  ARGS[1].  Options:
+     *      --blocks=N         number of settings blocks (default 1000);
+     *      --seed=S           random seed (default 1);
+     *      --sizes=DIST       message length distribution, one of
+     *                         fixed:N, uniform:MIN:MAX, exp:MEAN and
+     *                         lognormal:MEDIAN:SIGMA (default exp:2000);
+     *      --line-length=N    message characters per line (default 60);
+     *      --max-plugs=N      most plugboard pairs (default 10). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--blocks=(\\d+) --seed=(-?\\d+) "
+                                + "--sizes=(.+) --line-length=([1-9]\\d*) "
+                                + "--max-plugs=(\\d+) --=(.*){2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.WorkloadGenerator "
+                            + "[--blocks=N] [--seed=S] [--sizes=DIST] "
+                            + "[--line-length=N] [--max-plugs=N] "
+                            + "CONFIG OUTPUT");
+            }
+            WorkloadGenerator gen = new WorkloadGenerator(
+                Main.readConfig(options.get("--").get(0)),
+                Long.parseLong(Main.option(options, "--seed", "1")),
+                Distribution.parse(
+                    Main.option(options, "--sizes", "exp:2000")));
+            gen.lineLength(Integer.parseInt(
+                Main.option(options, "--line-length", "60")));
+            gen.maxPlugs(Integer.parseInt(Main.option(options, "--max-plugs",
+                                                      "10")));
+            String output = options.get("--").get(1);
+            try (Writer out = Files.newBufferedWriter(Paths.get(output))) {
+                gen.write(out, Integer.parseInt(Main.option(options, "--blocks",
+                                                            "1000")));
+            } catch (IOException excp) {
+                throw error("could not write %s", output);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A generator of workloads for the configuration of M, with random
+     *  seed SEED and message lengths drawn from SIZES. */
+    WorkloadGenerator(Machine M, long seed, Distribution sizes) {
+        _machine = M;
+        _random = new Random(seed);
+        _sizes = sizes;
+        for (Rotor r : M.allRotors()) {
+            if (r.type() == 3) {
+                _reflectors.add(r.name());
+            } else if (r.rotates()) {
+                _moving.add(r.name());
+            } else {
+                _fixed.add(r.name());
+            }
+        }
+        String chars = M.alphabet().returnChars();
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            if (!Lexer.isSpace(c) && c != '*' && c != '(' && c != ')') {
+                letters.append(c);
+            }
+        }
+        _letters = letters.toString();
+        int moving = Math.min(M.numPawls(), M.numRotors() - 1);
+        if (_reflectors.isEmpty() || _letters.isEmpty()
+            || _moving.size() < moving
+            || _fixed.size() < M.numRotors() - 1 - moving) {
+            throw error("configuration has too few rotors for a workload");
+        }
+    }
+
+    /** Put LENGTH message characters on each line. */
+    void lineLength(int length) {
+        _lineLength = length;
+    }
+
+    /** Use at most PLUGS plugboard pairs. */
+    void maxPlugs(int plugs) {
+        _maxPlugs = plugs;
+    }
+
+    /** Write BLOCKS settings blocks, each followed by its message, to
+     *  OUT. */
+    void write(Writer out, int blocks) throws IOException {
+        for (int b = 0; b < blocks; b += 1) {
+            out.write(settingsLine());
+            out.write('\n');
+            writeMessage(out, _sizes.next(_random));
+        }
+        out.flush();
+    }
+
+    /** Return a random valid settings line: a reflector, then rotors
+     *  without repeats, moving rotors in the rightmost slots (one per
+     *  pawl, as far as the slots allow) and fixed ones to their left, then
+     *  positions, ring settings and a plugboard. */
+    String settingsLine() {
+        int slots = _machine.numRotors();
+        int moving = Math.min(_machine.numPawls(), slots - 1);
+        List<String> movers = new ArrayList<>(_moving);
+        Collections.shuffle(movers, _random);
+        List<String> fixed = new ArrayList<>(_fixed);
+        Collections.shuffle(fixed, _random);
+
+        StringBuilder line = new StringBuilder("* ");
+        line.append(_reflectors.get(_random.nextInt(_reflectors.size())));
+        for (int k = 0; k < slots - 1 - moving; k += 1) {
+            line.append(' ').append(fixed.get(k));
+        }
+        for (int k = 0; k < moving; k += 1) {
+            line.append(' ').append(movers.get(k));
+        }
+        line.append(' ').append(randomWord(slots - 1));
+        line.append(' ').append(randomWord(slots - 1));
+        List<Character> plugs = new ArrayList<>();
+        for (char c : _letters.toCharArray()) {
+            plugs.add(c);
+        }
+        Collections.shuffle(plugs, _random);
+        int pairs = Math.min(plugs.size() / 2,
+                             _random.nextInt(_maxPlugs + 1));
+        for (int p = 0; p < pairs; p += 1) {
+            line.append(" (").append(plugs.get(2 * p))
+                .append(plugs.get(2 * p + 1)).append(')');
+        }
+        return line.toString();
+    }
+
+    /** Return a word of LENGTH random message letters. */
+    private String randomWord(int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(_letters.charAt(_random.nextInt(_letters.length())));
+        }
+        return result.toString();
+    }
+
+    /** Write a message of LENGTH random letters to OUT, in groups of five
+     *  separated by spaces, _lineLength letters per line.  An empty
+     *  message is written as one empty-looking line of a single space, so
+     *  that it does not echo as a blank line. */
+    private void writeMessage(Writer out, int length) throws IOException {
+        if (length == 0) {
+            out.write(" \n");
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            if (i > 0 && i % _lineLength == 0) {
+                out.write('\n');
+            } else if (i > 0 && i % 5 == 0) {
+                out.write(' ');
+            }
+            out.write(_letters.charAt(_random.nextInt(_letters.length())));
+        }
+        out.write('\n');
+    }
+
+    /** A distribution of message lengths. */
+    abstract static class Distribution {
+
+        /** Return the distribution described by SPEC (see main). */
+        static Distribution parse(String spec) {
+            String[] parts = spec.split(":");
+            try {
+                switch (parts[0]) {
+                case "fixed":
+                    int n = Integer.parseInt(parts[1]);
+                    return uniform(n, n);
+                case "uniform":
+                    return uniform(Integer.parseInt(parts[1]),
+                                   Integer.parseInt(parts[2]));
+                case "exp":
+                    double mean = Double.parseDouble(parts[1]);
+                    return of(rand -> -mean * Math.log(1 - rand.nextDouble()));
+                case "lognormal":
+                    double mu = Math.log(Double.parseDouble(parts[1]));
+                    double sigma = Double.parseDouble(parts[2]);
+                    return of(rand ->
+                              Math.exp(mu + sigma * rand.nextGaussian()));
+                default:
+                    break;
+                }
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                throw error("bad size distribution: %s", spec);
+            }
+            throw error("unknown size distribution: %s", spec);
+        }
+
+        /** Return the uniform distribution on MIN .. MAX. */
+        private static Distribution uniform(int min, int max) {
+            if (min < 0 || max < min) {
+                throw error("bad size range: %d:%d", min, max);
+            }
+            return of(rand -> min + rand.nextInt(max - min + 1));
+        }
+
+        /** Return the distribution that rounds the values of SAMPLE. */
+        private static Distribution of(ToDoubleFunction<Random> sample) {
+            return new Distribution() {
+                @Override
+                int next(Random rand) {
+                    double x = sample.applyAsDouble(rand);
+                    return (int) Math.max(0, Math.min(Integer.MAX_VALUE,
+                                                      Math.round(x)));
+                }
+            };
+        }
+
+        /** Return a length drawn with RAND. */
+        abstract int next(Random rand);
+    }
+
+    /** The configuration. */
+    private final Machine _machine;
+
+    /** Source of randomness. */
+    private final Random _random;
+
+    /** Message length distribution. */
+    private final Distribution _sizes;
+
+    /** Names of the reflectors, moving rotors and other rotors. */
+    private final List<String> _reflectors = new ArrayList<>(),
+        _moving = new ArrayList<>(), _fixed = new ArrayList<>();
+
+    /** Alphabet characters usable in messages and settings. */
+    private final String _letters;
+
+    /** Message characters per line. */
+    private int _lineLength = 60;
+
+    /** Most plugboard pairs. */
+    private int _maxPlugs = 10;
+}
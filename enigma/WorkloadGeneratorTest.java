@@ -0,0 +1,91 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the WorkloadGenerator class.
+ *  @author Yunsu Ha
+ */
+public class WorkloadGeneratorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a workload of BLOCKS blocks with seed SEED and message
+     *  lengths given by distribution SIZES. */
+    private static String workload(long seed, String sizes, int blocks)
+        throws IOException {
+        StringWriter out = new StringWriter();
+        new WorkloadGenerator(navalMachine(), seed,
+                              WorkloadGenerator.Distribution.parse(sizes))
+            .write(out, blocks);
+        return out.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReproducible() throws IOException {
+        assertEquals(workload(5, "exp:300", 50), workload(5, "exp:300", 50));
+        assertNotEquals(workload(5, "exp:300", 50),
+                        workload(6, "exp:300", 50));
+    }
+
+    @Test
+    public void testSettingsAreValid() {
+        Machine mach = navalMachine();
+        WorkloadGenerator gen = new WorkloadGenerator(
+            mach, 9, WorkloadGenerator.Distribution.parse("fixed:0"));
+        for (int i = 0; i < 500; i += 1) {
+            Main.setUp(mach, gen.settingsLine());
+        }
+    }
+
+    @Test
+    public void testConvertsWithMain() throws IOException {
+        String input = workload(3, "uniform:0:400", 100);
+        assertEquals(100, input.split("\\*", -1).length - 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Main(navalMachine(), new LineInput(new ByteArrayInputStream(
+            input.getBytes(StandardCharsets.UTF_8))),
+                 new PrintStream(bytes)).process();
+        assertTrue(bytes.size() > 0);
+    }
+
+    @Test
+    public void testDistributions() {
+        Random rand = new Random(1);
+        WorkloadGenerator.Distribution fixed =
+            WorkloadGenerator.Distribution.parse("fixed:17");
+        WorkloadGenerator.Distribution uniform =
+            WorkloadGenerator.Distribution.parse("uniform:3:5");
+        WorkloadGenerator.Distribution lognormal =
+            WorkloadGenerator.Distribution.parse("lognormal:100:0.5");
+        for (int i = 0; i < 1000; i += 1) {
+            assertEquals(17, fixed.next(rand));
+            int u = uniform.next(rand);
+            assertTrue(u >= 3 && u <= 5);
+            assertTrue(lognormal.next(rand) >= 0);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadDistribution() {
+        WorkloadGenerator.Distribution.parse("normal:3");
+    }
+}
@@ -0,0 +1,485 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers rotor orders and ring settings from doubled message-key
+ *  indicators, as Zygalski's perforated sheets did.  Each indicator is a
+ *  ground setting, sent in clear, followed by a message key of
+ *  KEY_LENGTH letters enciphered twice from that setting.  When the
+ *  letters at I and I + KEY_LENGTH of the doubled key are equal (a
+ *  "female"), the machine's permutations at those two positions agree on
+ *  some letter.  Whether they can is a property of the rotor cores'
+ *  positions (setting less ring setting) alone: the plugboard and the
+ *  message key do not matter.
+ *
+ *  For each rotor order, a sheet records for every core position
+ *  whether the permutations there and KEY_LENGTH characters later agree
+ *  anywhere, assuming (like the original sheets) that only the fastest
+ *  rotor moves in between.  Sheets are computed in parallel, one rotor
+ *  order per task, and stored in a compressed file so later runs just
+ *  read them.  About 1 - 1/e of the bits are set, so in memory each sheet
+ *  is a plain array of words, which at that density beats any
+ *  compressed form.  A query slides the sheet for each female to its
+ *  ground setting and intersects them, leaving the ring settings (for
+ *  each order) consistent with every female.
+ *
+ *  A sheet is laid out for sliding.  It has a row of words for each
+ *  position of the slower rotors' cores, holding a bit for each position
+ *  of the fastest one, F, at offset -F (mod the alphabet size), and
+ *  again at that offset plus the alphabet size.  For a female and ring
+ *  settings R, the fastest core is at the ground setting less R, so the
+ *  bits for every R of the fastest rotor form a run of the row starting
+ *  at an offset fixed by the female: a shift of a word, for alphabets of
+ *  up to 32 letters.  Intersecting a female with the ring settings still
+ *  alive is then one shift and AND per row.
+ *  @author Yunsu Ha
+ */
+public final class Zygalski {
+
+    /** Length of a message key, which is enciphered twice. */
+    static final int KEY_LENGTH = 3;
+
+    /** Largest number of survivors printed. */
+    static final int MAX_PRINTED = 100;
+
+    /** Print the rotor orders and ring settings of the configuration file
+     *  ARGS[0] consistent with the indicators in the file ARGS[1], one per
+     *  line: a ground setting and a doubled message key.  Options:
+     *      --rotors=R,...   use only the named rotors;
+     *      --sheets=FILE    keep the sheets in FILE. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--rotors=(.+) --sheets=(.+) --=(.+){2}",
+                                args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Zygalski [--rotors=R,...] "
+                            + "[--sheets=FILE] CONFIG INDICATORS");
+            }
+            Machine config = Main.readConfig(options.get("--").get(0));
+            List<String> rotors = options.contains("--rotors")
+                ? Arrays.asList(options.get("--rotors").get(0).split(","))
+                : null;
+            Zygalski zyg = options.contains("--sheets")
+                ? open(config, rotors,
+                       Paths.get(options.get("--sheets").get(0)))
+                : new Zygalski(config, rotors);
+            List<String[]> indicators = new ArrayList<>();
+            String file = options.get("--").get(1);
+            try {
+                for (String line : Files.readAllLines(Paths.get(file))) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length == 2) {
+                        indicators.add(fields);
+                    } else if (!line.isBlank()) {
+                        throw error("bad indicator line: %s", line);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", file);
+            }
+            List<Survivor> survivors = zyg.query(indicators);
+            System.out.printf("%d settings survive%n", survivors.size());
+            for (Survivor s : survivors.subList(
+                     0, Math.min(MAX_PRINTED, survivors.size()))) {
+                System.out.println(zyg.describe(s));
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the sheets for the configuration of CONFIG using only
+     *  ROTORS (all, if null), read from FILE if it holds them, and
+     *  otherwise computed and written there. */
+    static Zygalski open(Machine config, Collection<String> rotors,
+                         Path file) {
+        KeySpace space = new KeySpace(config, rotors, 0);
+        Zygalski result = new Zygalski(config, space);
+        if (Files.exists(file) && result.read(file)) {
+            return result;
+        }
+        result.compute();
+        result.write(file);
+        return result;
+    }
+
+    /** Sheets for the configuration of CONFIG using only ROTORS (all, if
+     *  null), computed now. */
+    Zygalski(Machine config, Collection<String> rotors) {
+        this(config, new KeySpace(config, rotors, 0));
+        compute();
+    }
+
+    /** Empty sheets for the configuration of CONFIG and the rotor orders
+     *  of SPACE. */
+    private Zygalski(Machine config, KeySpace space) {
+        _config = config.copy();
+        _space = space;
+        _size = config.alphabet().size();
+        _numRotors = config.numRotors();
+        long positions = 1;
+        for (int k = 1; k < _numRotors; k += 1) {
+            positions = Math.multiplyExact(positions, _size);
+        }
+        _positions = positions;
+        _rows = (int) (positions / _size);
+        _rowWords = (2 * _size + WORD - 1) / WORD;
+        _ringWords = (_size + WORD - 1) / WORD;
+        if ((long) _rows * _rowWords * WORD > Integer.MAX_VALUE) {
+            throw error("too many rotor positions for sheets");
+        }
+        _sheets = new long[space.orders()][];
+    }
+
+    /** Return the number of rotor orders. */
+    int orders() {
+        return _sheets.length;
+    }
+
+    /** Return true iff, in rotor order ORDER, the machine's permutation
+     *  with its rotor cores at positions CORES (one per slot after the
+     *  reflector) agrees on some letter with its permutation after the
+     *  fastest rotor has moved KEY_LENGTH more places. */
+    boolean agrees(int order, int[] cores) {
+        int row = 0;
+        for (int k = 0; k < cores.length - 1; k += 1) {
+            row = row * _size + cores[k];
+        }
+        return get(_sheets[order], bit(row, cores[cores.length - 1]));
+    }
+
+    /** Return the rotor orders and ring settings consistent with every
+     *  female in INDICATORS, each a ground setting and a doubled message
+     *  key, in order of rotor order and then ring settings. */
+    List<Survivor> query(List<String[]> indicators) {
+        Alphabet alpha = _config.alphabet();
+        List<int[]> females = new ArrayList<>();
+        for (String[] ind : indicators) {
+            String ground = ind[0], key = ind[1];
+            if (ground.length() != _numRotors - 1
+                || key.length() != 2 * KEY_LENGTH) {
+                throw error("bad indicator: %s %s", ground, key);
+            }
+            for (int i = 0; i < KEY_LENGTH; i += 1) {
+                if (key.charAt(i) == key.charAt(i + KEY_LENGTH)) {
+                    int[] female = new int[_numRotors];
+                    for (int k = 1; k < _numRotors; k += 1) {
+                        female[k - 1] = alpha.toInt(ground.charAt(k - 1));
+                        if (female[k - 1] < 0) {
+                            throw error("bad ground setting: %s", ground);
+                        }
+                    }
+                    female[_numRotors - 1] = i + 1;
+                    females.add(female);
+                }
+            }
+        }
+        List<List<Survivor>> perOrder = new ArrayList<>();
+        for (int order = 0; order < orders(); order += 1) {
+            perOrder.add(null);
+        }
+        IntStream.range(0, orders()).parallel().forEach(
+            order -> perOrder.set(order, survivors(order, females)));
+        List<Survivor> result = new ArrayList<>();
+        for (List<Survivor> s : perOrder) {
+            result.addAll(s);
+        }
+        return result;
+    }
+
+    /** Return a description of S: its rotor names and ring settings. */
+    String describe(Survivor s) {
+        StringBuilder result =
+            new StringBuilder(String.join(" ", _space.rotorNames(s.order)));
+        result.append(" rings ");
+        for (int ring : s.rings) {
+            result.append(_config.alphabet().toChar(ring));
+        }
+        return result.toString();
+    }
+
+    /** Return the ring settings of rotor order ORDER consistent with
+     *  FEMALES, each a ground setting followed by the number of steps
+     *  after it at which the first letter of the female was
+     *  enciphered. */
+    private List<Survivor> survivors(int order, List<int[]> females) {
+        long[] sheet = _sheets[order];
+        int slots = _numRotors - 1;
+        long[] alive = new long[_rows * _ringWords];
+        for (int q = 0; q < _rows; q += 1) {
+            for (int r = 0; r < _size; r += 1) {
+                alive[q * _ringWords + r / WORD] |= 1L << r;
+            }
+        }
+        int[][] rowOffset = new int[slots - 1][_size];
+        int[] ring = new int[slots - 1];
+        for (int[] female : females) {
+            int weight = 1, row = 0;
+            for (int k = slots - 2; k >= 0; k -= 1) {
+                for (int r = 0; r < _size; r += 1) {
+                    rowOffset[k][r] =
+                        Math.floorMod(female[k] - r, _size) * weight;
+                }
+                row += rowOffset[k][0];
+                ring[k] = 0;
+                weight *= _size;
+            }
+            int shift = bit(0, female[slots - 1] + female[slots]);
+            boolean any = false;
+            for (int q = 0; q < _rows; q += 1) {
+                int base = row * _rowWords;
+                for (int w = 0; w < _ringWords; w += 1) {
+                    int at = q * _ringWords + w;
+                    if (alive[at] == 0) {
+                        continue;
+                    }
+                    int b = shift + w * WORD, a = base + b / WORD;
+                    b %= WORD;
+                    long bits = sheet[a] >>> b;
+                    if (b != 0 && a + 1 < base + _rowWords) {
+                        bits |= sheet[a + 1] << (WORD - b);
+                    }
+                    alive[at] &= bits;
+                    any |= alive[at] != 0;
+                }
+                for (int k = slots - 2; k >= 0; k -= 1) {
+                    row -= rowOffset[k][ring[k]];
+                    ring[k] = (ring[k] + 1) % _size;
+                    row += rowOffset[k][ring[k]];
+                    if (ring[k] != 0) {
+                        break;
+                    }
+                }
+            }
+            if (!any) {
+                return new ArrayList<>();
+            }
+        }
+        List<Survivor> result = new ArrayList<>();
+        for (int q = 0; q < _rows; q += 1) {
+            for (int w = 0; w < _ringWords; w += 1) {
+                for (long bits = alive[q * _ringWords + w]; bits != 0;
+                     bits &= bits - 1) {
+                    int[] rings = new int[slots];
+                    rings[slots - 1] =
+                        w * WORD + Long.numberOfTrailingZeros(bits);
+                    for (int k = slots - 2, rest = q; k >= 0; k -= 1) {
+                        rings[k] = rest % _size;
+                        rest /= _size;
+                    }
+                    result.add(new Survivor(order, rings));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the index in a sheet of the first bit for the fastest
+     *  rotor's core at position F (mod the alphabet size) in row ROW. */
+    private int bit(int row, int f) {
+        return row * _rowWords * WORD + Math.floorMod(-f, _size);
+    }
+
+    /** Compute every sheet, in parallel. */
+    private void compute() {
+        IntStream.range(0, orders()).parallel().forEach(this::computeSheet);
+    }
+
+    /** Compute the sheet for rotor order ORDER.  For each position of the
+     *  slower rotors, the permutation M of all but the fastest rotor is
+     *  found once; with the fastest rotor's core at F, the machine
+     *  converts C to F^-1(M(F(C))), and the bit for F is set when that
+     *  agrees with the conversion at F + KEY_LENGTH for some C. */
+    private void computeSheet(int order) {
+        Machine mach = _config.copy();
+        mach.insertRotors(_space.rotorNames(order));
+        Rotor fast = mach.getRotor(_numRotors - 1);
+        int n = _size;
+        int[][] fwd = new int[n][n], bwd = new int[n][n];
+        for (int f = 0; f < n; f += 1) {
+            fast.set(f);
+            fast.setRings(_config.alphabet().toChar(0));
+            for (int c = 0; c < n; c += 1) {
+                fwd[f][c] = fast.convertForward(c);
+                bwd[f][c] = fast.convertBackward(c);
+            }
+        }
+        long[] sheet = new long[_rows * _rowWords];
+        int slow = _rows;
+        int[] inner = new int[n];
+        int[][] perms = new int[n][n];
+        for (int s = 0; s < slow; s += 1) {
+            for (int k = _numRotors - 2, rest = s; k >= 1; k -= 1) {
+                mach.getRotor(k).set(rest % n);
+                mach.getRotor(k).setRings(_config.alphabet().toChar(0));
+                rest /= n;
+            }
+            for (int c = 0; c < n; c += 1) {
+                int x = c;
+                for (int k = _numRotors - 2; k >= 0; k -= 1) {
+                    x = mach.getRotor(k).convertForward(x);
+                }
+                for (int k = 1; k <= _numRotors - 2; k += 1) {
+                    x = mach.getRotor(k).convertBackward(x);
+                }
+                inner[c] = x;
+            }
+            for (int f = 0; f < n; f += 1) {
+                for (int c = 0; c < n; c += 1) {
+                    perms[f][c] = bwd[f][inner[fwd[f][c]]];
+                }
+            }
+            for (int f = 0; f < n; f += 1) {
+                int[] a = perms[f], b = perms[(f + KEY_LENGTH) % n];
+                for (int c = 0; c < n; c += 1) {
+                    if (a[c] == b[c]) {
+                        int i = bit(s, f);
+                        sheet[i / WORD] |= 1L << i;
+                        sheet[(i + n) / WORD] |= 1L << (i + n);
+                        break;
+                    }
+                }
+            }
+        }
+        _sheets[order] = sheet;
+    }
+
+    /** Return bit I of SHEET. */
+    private static boolean get(long[] sheet, int i) {
+        return (sheet[i / WORD] >>> i & 1) != 0;
+    }
+
+    /** Read my sheets from FILE, returning false if it holds sheets for
+     *  something else. */
+    private boolean read(Path file) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new InflaterInputStream(
+                     Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                || in.readLong() != _config.checksum()
+                || in.readInt() != KEY_LENGTH || in.readInt() != orders()
+                || in.readLong() != _positions) {
+                return false;
+            }
+            for (int order = 0; order < orders(); order += 1) {
+                if (!in.readUTF().equals(
+                        String.join(" ", _space.rotorNames(order)))) {
+                    return false;
+                }
+                long[] sheet = new long[in.readInt()];
+                for (int w = 0; w < sheet.length; w += 1) {
+                    sheet[w] = in.readLong();
+                }
+                _sheets[order] = sheet;
+            }
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Write my sheets to FILE, replacing it atomically. */
+    private void write(Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new DeflaterOutputStream(
+                         Files.newOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(_config.checksum());
+                out.writeInt(KEY_LENGTH);
+                out.writeInt(orders());
+                out.writeLong(_positions);
+                for (int order = 0; order < orders(); order += 1) {
+                    out.writeUTF(String.join(" ", _space.rotorNames(order)));
+                    out.writeInt(_sheets[order].length);
+                    for (long w : _sheets[order]) {
+                        out.writeLong(w);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write sheets to %s", file);
+        }
+    }
+
+    /** A rotor order and ring settings consistent with the indicators. */
+    static final class Survivor {
+
+        /** A survivor with rotor order ORDER and ring settings RINGS, as
+         *  indices, one per slot after the reflector. */
+        Survivor(int order, int[] rings) {
+            this.order = order;
+            this.rings = rings;
+        }
+
+        /** The rotor order, as an index. */
+        final int order;
+
+        /** The ring settings. */
+        final int[] rings;
+    }
+
+    /** Identifies sheet files ("ZYGA"). */
+    private static final int MAGIC = 0x5a594741;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 2;
+
+    /** Bits per word. */
+    private static final int WORD = 64;
+
+    /** Prototype machine of the configuration. */
+    private final Machine _config;
+
+    /** The rotor orders. */
+    private final KeySpace _space;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of core positions. */
+    private final long _positions;
+
+    /** Number of rows of a sheet: positions of the slower rotors. */
+    private final int _rows;
+
+    /** Words per row of a sheet, holding twice the alphabet size of
+     *  bits. */
+    private final int _rowWords;
+
+    /** Words per row of the ring settings alive in a query, holding the
+     *  alphabet size of bits. */
+    private final int _ringWords;
+
+    /** The sheets, by rotor order. */
+    private final long[][] _sheets;
+}
@@ -0,0 +1,204 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Zygalski class.
+ *  @author Yunsu Ha
+ */
+public class ZygalskiTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final List<String> ROTORS =
+        Arrays.asList("B", "Beta", "I", "II", "III");
+
+    /** Sheets shared by the tests. */
+    private static Zygalski sheets;
+
+    /** Return the sheets for ROTORS in the naval machine. */
+    private static synchronized Zygalski sheets() {
+        if (sheets == null) {
+            sheets = new Zygalski(navalMachine(), ROTORS);
+        }
+        return sheets;
+    }
+
+    /** Return a random word of LENGTH letters chosen with RAND. */
+    private static String randomWord(Random rand, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(UPPER_STRING.charAt(rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return COUNT indicators chosen with RAND for rotors ORDER with
+     *  ring settings RINGS and plugboard PLUGS, avoiding ground settings
+     *  from which a rotor other than the fastest moves during the doubled
+     *  key. */
+    private static List<String[]> indicators(Random rand, int count,
+                                             String order, String rings,
+                                             String plugs) {
+        List<String[]> result = new ArrayList<>();
+        while (result.size() < count) {
+            String ground = randomWord(rand, 4);
+            String key = randomWord(rand, Zygalski.KEY_LENGTH);
+            Machine mach = navalMachine();
+            Main.setUp(mach, "* " + order + " " + ground + " " + rings
+                       + " " + plugs);
+            String doubled = mach.convert(key + key);
+            if (mach.getRotor(3).setting() == UPPER.toInt(ground.charAt(2))) {
+                result.add(new String[] { ground, doubled });
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSheetMatchesMachine() {
+        Zygalski zyg = sheets();
+        KeySpace space = new KeySpace(navalMachine(), ROTORS, 0);
+        Random rand = new Random(43);
+        for (int t = 0; t < 2000; t += 1) {
+            int order = rand.nextInt(zyg.orders());
+            int[] cores = new int[4];
+            Machine mach = navalMachine();
+            mach.insertRotors(space.rotorNames(order));
+            mach.setPlugboard(new Permutation("", UPPER));
+            for (int k = 0; k < 4; k += 1) {
+                cores[k] = rand.nextInt(26);
+                mach.getRotor(k + 1).setRings('A');
+                mach.getRotor(k + 1).set(cores[k]);
+            }
+            int[] first = new int[26];
+            for (int c = 0; c < 26; c += 1) {
+                first[c] = mach.map(c);
+            }
+            mach.getRotor(4).set(cores[3] + Zygalski.KEY_LENGTH);
+            boolean agree = false;
+            for (int c = 0; c < 26; c += 1) {
+                agree |= first[c] == mach.map(c);
+            }
+            assertEquals(agree, zyg.agrees(order, cores));
+        }
+    }
+
+    @Test
+    public void testQueryMatchesSheets() {
+        Zygalski zyg = sheets();
+        List<String[]> inds = indicators(new Random(12), 30,
+                                         "B Beta III I II", "QAZM", "");
+        List<int[]> females = new ArrayList<>();
+        for (String[] ind : inds) {
+            for (int i = 0; i < Zygalski.KEY_LENGTH; i += 1) {
+                if (ind[1].charAt(i)
+                    == ind[1].charAt(i + Zygalski.KEY_LENGTH)) {
+                    int[] female = new int[5];
+                    for (int k = 0; k < 4; k += 1) {
+                        female[k] = UPPER.toInt(ind[0].charAt(k));
+                    }
+                    female[4] = i + 1;
+                    females.add(female);
+                }
+            }
+        }
+        List<String> expected = new ArrayList<>();
+        int[] cores = new int[4];
+        for (int order = 0; order < zyg.orders(); order += 1) {
+            for (int r = 0; r < 26 * 26 * 26 * 26; r += 1) {
+                boolean alive = true;
+                for (int[] female : females) {
+                    for (int k = 3, rest = r; k >= 0; k -= 1) {
+                        cores[k] = Math.floorMod(female[k] - rest % 26, 26);
+                        rest /= 26;
+                    }
+                    cores[3] = (cores[3] + female[4]) % 26;
+                    alive &= zyg.agrees(order, cores);
+                }
+                if (alive) {
+                    expected.add(order + " " + r);
+                }
+            }
+        }
+        List<String> actual = new ArrayList<>();
+        for (Zygalski.Survivor s : zyg.query(inds)) {
+            int r = 0;
+            for (int ring : s.rings) {
+                r = r * 26 + ring;
+            }
+            actual.add(s.order + " " + r);
+        }
+        assertTrue(females.size() > 0 && expected.size() > 1);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testRecoversRings() {
+        Zygalski zyg = sheets();
+        List<String[]> inds = indicators(new Random(3), 400,
+                                         "B Beta II III I", "CXLE",
+                                         "(AQ) (WE) (RT) (YU) (OP)");
+        List<Zygalski.Survivor> survivors = zyg.query(inds);
+        assertTrue(survivors.size() >= 1 && survivors.size() < 10);
+        boolean found = false;
+        for (Zygalski.Survivor s : survivors) {
+            found |= zyg.describe(s).equals("B Beta II III I rings CXLE");
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void testPersisted() throws IOException {
+        Path file = Files.createTempFile("enigma", ".sheets");
+        try {
+            Files.delete(file);
+            Zygalski built = Zygalski.open(navalMachine(), ROTORS, file);
+            assertTrue(Files.size(file) > 0);
+            Zygalski read = Zygalski.open(navalMachine(), ROTORS, file);
+            List<String[]> inds = indicators(new Random(4), 200,
+                                             "B Beta I II III", "AAAA", "");
+            assertEquals(describe(built, built.query(inds)),
+                         describe(read, read.query(inds)));
+            assertEquals(describe(sheets(), sheets().query(inds)),
+                         describe(read, read.query(inds)));
+            Zygalski other = Zygalski.open(
+                navalMachine(), Arrays.asList("B", "Gamma", "I", "II", "III"),
+                file);
+            inds = indicators(new Random(5), 200, "B Gamma III I II", "AAAA",
+                              "");
+            assertTrue(describe(other, other.query(inds))
+                       .contains("B Gamma III I II rings AAAA"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Return descriptions of SURVIVORS of ZYG. */
+    private static List<String> describe(Zygalski zyg,
+                                         List<Zygalski.Survivor> survivors) {
+        List<String> result = new ArrayList<>();
+        for (Zygalski.Survivor s : survivors) {
+            result.add(zyg.describe(s));
+        }
+        return result;
+    }
+}